@@ -11,13 +11,21 @@ package com.eyeq.pivot4j;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
+import org.olap4j.Axis;
 import org.olap4j.CellSet;
 import org.olap4j.CellSetAxis;
+import org.olap4j.OlapDataSource;
 import org.olap4j.Position;
 import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Member;
 
+import com.eyeq.pivot4j.cache.MetadataCache;
+import com.eyeq.pivot4j.mdx.MdxFingerprint;
+import com.eyeq.pivot4j.metrics.MetricsCollector;
+import com.eyeq.pivot4j.query.AxisIndex;
 import com.eyeq.pivot4j.sort.SortCriteria;
 import com.eyeq.pivot4j.state.Bookmarkable;
 import com.eyeq.pivot4j.state.Configurable;
@@ -38,6 +46,8 @@ public interface PivotModel extends Configurable, Bookmarkable {
 	 */
 	void destroy() throws NotInitializedException;
 
+	OlapDataSource getDataSource();
+
 	Cube getCube() throws NotInitializedException;
 
 	/**
@@ -45,6 +55,38 @@ public interface PivotModel extends Configurable, Bookmarkable {
 	 */
 	CellSet getCellSet() throws NotInitializedException;
 
+	/**
+	 * Returns the index of the positions on the specified axis of the current
+	 * result, which is built only once per result. The query is executed if
+	 * it has not been executed yet.
+	 * 
+	 * @return index of the result axis, or null if the model is not
+	 *         initialized or the result does not have the axis
+	 */
+	AxisIndex getAxisIndex(Axis axis);
+
+	/**
+	 * Runs the query with the given executor and returns a future for the
+	 * result. Cancelling the returned future aborts the query if it's already
+	 * running.
+	 */
+	Future<CellSet> getCellSetAsync(Executor executor)
+			throws NotInitializedException;
+
+	/**
+	 * Cancels the currently running query if there's any.
+	 * 
+	 * @return true if a running query has been cancelled
+	 */
+	boolean cancelQuery();
+
+	/**
+	 * Returns the query timeout in seconds, or 0 if there's no limit.
+	 */
+	int getQueryTimeout();
+
+	void setQueryTimeout(int queryTimeout);
+
 	/**
 	 * Flushes the last query result.
 	 */
@@ -71,6 +113,22 @@ public interface PivotModel extends Configurable, Bookmarkable {
 	 */
 	String getEvaluatedMdx();
 
+	/**
+	 * Returns the canonical form of the evaluated MDX query, which is
+	 * identical for the queries that differ only in insignificant details like
+	 * white spaces, case of the keywords or redundant parentheses, or null if
+	 * the model is not initialized.
+	 * 
+	 * @see com.eyeq.pivot4j.mdx.MdxCanonicalizer
+	 */
+	String getCanonicalMdx();
+
+	/**
+	 * Returns the fingerprint of {@link #getCanonicalMdx()}, or null if the
+	 * model is not initialized.
+	 */
+	MdxFingerprint getMdxFingerprint();
+
 	Locale getLocale();
 
 	/**
@@ -84,6 +142,19 @@ public interface PivotModel extends Configurable, Bookmarkable {
 
 	Map<String, Object> getExpressionContext();
 
+	/**
+	 * Returns the collector which receives timings of each query and render
+	 * phase, or null if the metrics are not collected.
+	 */
+	MetricsCollector getMetricsCollector();
+
+	/**
+	 * Returns the cache of the metadata resolved from the current connection,
+	 * which can be shared by the components working on the same model, or
+	 * null if the metadata is not cached.
+	 */
+	MetadataCache getMetadataCache();
+
 	/**
 	 * Adds a model change listener
 	 */
@@ -104,6 +175,31 @@ public interface PivotModel extends Configurable, Bookmarkable {
 	 */
 	void removeQueryListener(QueryListener listener);
 
+	/**
+	 * Starts a batch of changes, so that applying multiple transforms results
+	 * in a single query. Until the matching {@link #endUpdate()} is called, the
+	 * query is not regenerated, the model change listeners are not notified
+	 * and the current result is not discarded. Calls can be nested.
+	 * <p>
+	 * As {@link #getCellSet()} keeps returning the result of the query before
+	 * the batch, which does not reflect the changes made so far, nothing should
+	 * be rendered until the outermost batch is finished.
+	 */
+	void beginUpdate();
+
+	/**
+	 * Ends a batch of changes started by {@link #beginUpdate()}. When the
+	 * outermost batch is finished, the query is regenerated and the listeners
+	 * are notified only once if anything has been changed. It should be called
+	 * in a finally block.
+	 */
+	void endUpdate();
+
+	/**
+	 * Returns true if a batch of changes is in progress.
+	 */
+	boolean isUpdating();
+
 	/**
 	 * Returns the registered transform instance for the given type.
 	 */
@@ -0,0 +1,39 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j;
+
+public class QueryCancelledException extends PivotException {
+
+	private static final long serialVersionUID = -4312675489925342119L;
+
+	/**
+	 * Constructor for QueryCancelledException.
+	 */
+	public QueryCancelledException() {
+	}
+
+	/**
+	 * Constructor for QueryCancelledException.
+	 * 
+	 * @param msg
+	 */
+	public QueryCancelledException(String msg) {
+		super(msg);
+	}
+
+	/**
+	 * Constructor for QueryCancelledException.
+	 * 
+	 * @param msg
+	 * @param cause
+	 */
+	public QueryCancelledException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+}
@@ -28,6 +28,10 @@ public class QueryEvent extends EventObject {
 	
 	private transient CellSet cellSet;
 
+	private int coalescedCount = 0;
+
+	private Throwable error;
+
 	/**
 	 * Constructor for QueryEvent.
 	 * 
@@ -95,6 +99,37 @@ public class QueryEvent extends EventObject {
 		this.mdx = mdx;
 	}
 
+	/**
+	 * @return number of other callers which shared the result of this query
+	 *         execution
+	 */
+	public int getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * @param coalescedCount
+	 *            the coalescedCount to set
+	 */
+	public void setCoalescedCount(int coalescedCount) {
+		this.coalescedCount = coalescedCount;
+	}
+
+	/**
+	 * @return the error which caused the query to fail, if any
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * @param error
+	 *            the error to set
+	 */
+	public void setError(Throwable error) {
+		this.error = error;
+	}
+
 	/**
 	 * @return the cellSet
 	 */
@@ -0,0 +1,27 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j;
+
+/**
+ * Query listener which is also notified of the queries which did not
+ * complete. Implementations are recommended to extend
+ * {@link QueryListenerAdapter} instead of implementing the interface
+ * directly, as more events may be added to it.
+ */
+public interface QueryExecutionListener extends QueryListener {
+
+	/** Query execution has been cancelled */
+	void queryCancelled(QueryEvent e);
+
+	/** Query execution has been aborted as it exceeded the timeout */
+	void queryTimedOut(QueryEvent e);
+
+	/** Query execution has failed */
+	void queryFailed(QueryEvent e);
+}
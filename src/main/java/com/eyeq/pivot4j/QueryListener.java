@@ -10,6 +10,11 @@ package com.eyeq.pivot4j;
 
 import java.util.EventListener;
 
+/**
+ * Listener of query executions. To be notified of the queries which did not
+ * complete, implement {@link QueryExecutionListener} or extend
+ * {@link QueryListenerAdapter} instead.
+ */
 public interface QueryListener extends EventListener {
 
 	/** Query has been executed */
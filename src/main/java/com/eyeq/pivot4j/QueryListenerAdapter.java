@@ -0,0 +1,41 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j;
+
+/**
+ * Empty implementation of {@link QueryExecutionListener}, which can be
+ * extended to handle only the events of interest. Listeners which extend this
+ * class are not affected when new events are added to the interface.
+ */
+public class QueryListenerAdapter implements QueryExecutionListener {
+
+	/**
+	 * @see com.eyeq.pivot4j.QueryListener#queryExecuted(com.eyeq.pivot4j.QueryEvent)
+	 */
+	public void queryExecuted(QueryEvent e) {
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.QueryExecutionListener#queryCancelled(com.eyeq.pivot4j.QueryEvent)
+	 */
+	public void queryCancelled(QueryEvent e) {
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.QueryExecutionListener#queryTimedOut(com.eyeq.pivot4j.QueryEvent)
+	 */
+	public void queryTimedOut(QueryEvent e) {
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.QueryExecutionListener#queryFailed(com.eyeq.pivot4j.QueryEvent)
+	 */
+	public void queryFailed(QueryEvent e) {
+	}
+}
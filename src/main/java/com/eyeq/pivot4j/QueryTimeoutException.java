@@ -0,0 +1,39 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j;
+
+public class QueryTimeoutException extends QueryCancelledException {
+
+	private static final long serialVersionUID = 6092881364713509257L;
+
+	/**
+	 * Constructor for QueryTimeoutException.
+	 */
+	public QueryTimeoutException() {
+	}
+
+	/**
+	 * Constructor for QueryTimeoutException.
+	 * 
+	 * @param msg
+	 */
+	public QueryTimeoutException(String msg) {
+		super(msg);
+	}
+
+	/**
+	 * Constructor for QueryTimeoutException.
+	 * 
+	 * @param msg
+	 * @param cause
+	 */
+	public QueryTimeoutException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+}
@@ -0,0 +1,473 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.CellSet;
+import org.olap4j.OlapDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.QueryEvent;
+import com.eyeq.pivot4j.QueryExecutionListener;
+import com.eyeq.pivot4j.QueryListener;
+import com.eyeq.pivot4j.QueryTimeoutException;
+
+/**
+ * Runs the queries of many pivot models (e.g. on a dashboard) in parallel.
+ * <p>
+ * The number of queries which run at the same time is bounded by the size of
+ * the executor, and optionally by a limit for each data source. Models which
+ * do not complete before the deadline are cancelled, while the results of
+ * the other ones are still returned.
+ * <p>
+ * Registered listeners are notified as soon as each model completes, so they
+ * may be called concurrently from the worker threads.
+ */
+public class BatchQueryExecutor {
+
+	public static final int DEFAULT_POOL_SIZE = 4;
+
+	protected Logger logger = LoggerFactory.getLogger(getClass());
+
+	private ExecutorService executor;
+
+	private boolean sharedExecutor;
+
+	private int defaultConcurrencyLimit = 0;
+
+	private Map<OlapDataSource, Integer> concurrencyLimits = new IdentityHashMap<OlapDataSource, Integer>();
+
+	private Map<OlapDataSource, Semaphore> semaphores = new IdentityHashMap<OlapDataSource, Semaphore>();
+
+	private Collection<QueryListener> listeners = new ArrayList<QueryListener>();
+
+	public BatchQueryExecutor() {
+		this(DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * @param poolSize
+	 *            maximum number of queries to be executed at the same time
+	 */
+	public BatchQueryExecutor(int poolSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException(
+					"Pool size should be a positive number : " + poolSize);
+		}
+
+		this.executor = Executors.newFixedThreadPool(poolSize);
+		this.sharedExecutor = false;
+	}
+
+	/**
+	 * @param executor
+	 *            executor to run the queries, which is not shut down by this
+	 *            instance
+	 */
+	public BatchQueryExecutor(ExecutorService executor) {
+		if (executor == null) {
+			throw new NullArgumentException("executor");
+		}
+
+		this.executor = executor;
+		this.sharedExecutor = true;
+	}
+
+	/**
+	 * @return the defaultConcurrencyLimit
+	 */
+	public int getDefaultConcurrencyLimit() {
+		return defaultConcurrencyLimit;
+	}
+
+	/**
+	 * @param defaultConcurrencyLimit
+	 *            maximum number of concurrent queries for a data source which
+	 *            does not have its own limit, or 0 if there's no limit
+	 */
+	public void setDefaultConcurrencyLimit(int defaultConcurrencyLimit) {
+		if (defaultConcurrencyLimit < 0) {
+			throw new IllegalArgumentException(
+					"Concurrency limit should not be a negative number : "
+							+ defaultConcurrencyLimit);
+		}
+
+		synchronized (semaphores) {
+			this.defaultConcurrencyLimit = defaultConcurrencyLimit;
+			semaphores.clear();
+		}
+	}
+
+	/**
+	 * @param dataSource
+	 * @return maximum number of concurrent queries for the data source, or 0
+	 *         if there's no limit
+	 */
+	public int getConcurrencyLimit(OlapDataSource dataSource) {
+		if (dataSource == null) {
+			throw new NullArgumentException("dataSource");
+		}
+
+		synchronized (semaphores) {
+			Integer limit = concurrencyLimits.get(dataSource);
+			return limit == null ? defaultConcurrencyLimit : limit;
+		}
+	}
+
+	/**
+	 * @param dataSource
+	 * @param limit
+	 *            maximum number of concurrent queries for the data source, or
+	 *            0 if there's no limit
+	 */
+	public void setConcurrencyLimit(OlapDataSource dataSource, int limit) {
+		if (dataSource == null) {
+			throw new NullArgumentException("dataSource");
+		}
+
+		if (limit < 0) {
+			throw new IllegalArgumentException(
+					"Concurrency limit should not be a negative number : "
+							+ limit);
+		}
+
+		synchronized (semaphores) {
+			concurrencyLimits.put(dataSource, limit);
+
+			// Queries which are already running keep the previous permits.
+			semaphores.remove(dataSource);
+		}
+	}
+
+	/**
+	 * @param dataSource
+	 * @return
+	 */
+	protected Semaphore getSemaphore(OlapDataSource dataSource) {
+		if (dataSource == null) {
+			return null;
+		}
+
+		synchronized (semaphores) {
+			Semaphore semaphore = semaphores.get(dataSource);
+
+			if (semaphore == null) {
+				int limit = getConcurrencyLimit(dataSource);
+				if (limit > 0) {
+					semaphore = new Semaphore(limit, true);
+					semaphores.put(dataSource, semaphore);
+				}
+			}
+
+			return semaphore;
+		}
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void addQueryListener(QueryListener listener) {
+		synchronized (listeners) {
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void removeQueryListener(QueryListener listener) {
+		synchronized (listeners) {
+			listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Runs the queries of the given models in parallel and waits until all of
+	 * them complete, or the timeout expires.
+	 *
+	 * @param models
+	 * @param timeout
+	 *            maximum time to wait, or 0 to wait until all the models
+	 *            complete
+	 * @param unit
+	 * @return
+	 */
+	public BatchResult execute(Collection<? extends PivotModel> models,
+			long timeout, TimeUnit unit) {
+		if (models == null) {
+			throw new NullArgumentException("models");
+		}
+
+		if (unit == null) {
+			throw new NullArgumentException("unit");
+		}
+
+		long startTime = System.currentTimeMillis();
+		long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout)
+				: 0;
+
+		List<BatchTask> tasks = new ArrayList<BatchTask>(models.size());
+		List<Future<CellSet>> futures = new ArrayList<Future<CellSet>>(
+				models.size());
+
+		for (PivotModel model : new LinkedHashSet<PivotModel>(models)) {
+			BatchTask task = new BatchTask(model, deadline,
+					getSemaphore(model.getDataSource()));
+
+			tasks.add(task);
+			futures.add(executor.submit(task));
+		}
+
+		BatchResult result = new BatchResult();
+
+		for (int i = 0; i < tasks.size(); i++) {
+			BatchTask task = tasks.get(i);
+			Future<CellSet> future = futures.get(i);
+
+			try {
+				if (deadline == 0) {
+					future.get();
+				} else {
+					future.get(Math.max(0, deadline - System.nanoTime()),
+							TimeUnit.NANOSECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// already reported by the task
+			} catch (TimeoutException e) {
+				// handled below
+			}
+
+			if (task.claim()) {
+				// the task has not completed yet, so abort it.
+				future.cancel(true);
+				task.getModel().cancelQuery();
+
+				result.addTimedOutModel(task.getModel());
+
+				if (logger.isWarnEnabled()) {
+					logger.warn("Query execution did not complete before the deadline : "
+							+ task.getModel());
+				}
+
+				fireQueryTimedOut(task);
+			} else if (task.getError() != null) {
+				result.addError(task.getModel(), task.getError());
+			} else {
+				result.addResult(task.getModel(), task.getCellSet());
+			}
+		}
+
+		result.setDuration(System.currentTimeMillis() - startTime);
+
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format(
+					"Batch execution time : %d ms (%d models, %d failed, %d timed out)",
+					result.getDuration(), tasks.size(), result.getErrors()
+							.size(), result.getTimedOutModels().size()));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Shuts down the executor unless it's given by the caller.
+	 */
+	public void shutdown() {
+		if (!sharedExecutor) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param task
+	 */
+	protected void fireQueryExecuted(BatchTask task) {
+		QueryEvent e = task.createEvent();
+
+		for (QueryListener listener : getListeners()) {
+			listener.queryExecuted(e);
+		}
+	}
+
+	/**
+	 * @param task
+	 */
+	protected void fireQueryFailed(BatchTask task) {
+		QueryEvent e = task.createEvent();
+		e.setError(task.getError());
+
+		for (QueryListener listener : getListeners()) {
+			if (listener instanceof QueryExecutionListener) {
+				((QueryExecutionListener) listener).queryFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * @param task
+	 */
+	protected void fireQueryTimedOut(BatchTask task) {
+		QueryEvent e = task.createEvent();
+
+		for (QueryListener listener : getListeners()) {
+			if (listener instanceof QueryExecutionListener) {
+				((QueryExecutionListener) listener).queryTimedOut(e);
+			}
+		}
+	}
+
+	/**
+	 * @return
+	 */
+	private List<QueryListener> getListeners() {
+		synchronized (listeners) {
+			return new ArrayList<QueryListener>(listeners);
+		}
+	}
+
+	protected class BatchTask implements Callable<CellSet> {
+
+		private PivotModel model;
+
+		private long deadline;
+
+		private Semaphore semaphore;
+
+		private AtomicBoolean claimed = new AtomicBoolean(false);
+
+		private volatile Date start;
+
+		private volatile String mdx;
+
+		private volatile CellSet cellSet;
+
+		private volatile Throwable error;
+
+		/**
+		 * @param model
+		 * @param deadline
+		 *            deadline in nanoseconds, or 0 if there's none
+		 * @param semaphore
+		 */
+		BatchTask(PivotModel model, long deadline, Semaphore semaphore) {
+			this.model = model;
+			this.deadline = deadline;
+			this.semaphore = semaphore;
+		}
+
+		/**
+		 * @return the model
+		 */
+		public PivotModel getModel() {
+			return model;
+		}
+
+		/**
+		 * @return the cellSet
+		 */
+		public CellSet getCellSet() {
+			return cellSet;
+		}
+
+		/**
+		 * @return the error
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		/**
+		 * Marks the task as completed, so that it's reported only once either
+		 * by the worker or by the caller.
+		 *
+		 * @return true if the task has not been completed yet
+		 */
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		/**
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public CellSet call() throws Exception {
+			this.start = new Date();
+
+			boolean acquired = false;
+
+			try {
+				if (semaphore != null) {
+					if (deadline == 0) {
+						semaphore.acquire();
+					} else if (!semaphore.tryAcquire(deadline - System.nanoTime(),
+							TimeUnit.NANOSECONDS)) {
+						throw new QueryTimeoutException(
+								"Timed out while waiting for other queries on the same data source.");
+					}
+
+					acquired = true;
+				}
+
+				CellSet result = model.getCellSet();
+
+				this.mdx = model.getEvaluatedMdx();
+				this.cellSet = result;
+
+				if (claim()) {
+					fireQueryExecuted(this);
+				}
+
+				return result;
+			} catch (Exception e) {
+				this.error = e;
+
+				if (claim()) {
+					fireQueryFailed(this);
+				}
+
+				throw e;
+			} finally {
+				if (acquired) {
+					semaphore.release();
+				}
+			}
+		}
+
+		/**
+		 * @return
+		 */
+		QueryEvent createEvent() {
+			long duration = start == null ? 0 : System.currentTimeMillis()
+					- start.getTime();
+
+			return new QueryEvent(model, start, duration, mdx, cellSet);
+		}
+	}
+}
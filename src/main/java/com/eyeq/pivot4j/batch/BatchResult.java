@@ -0,0 +1,116 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.olap4j.CellSet;
+
+import com.eyeq.pivot4j.PivotModel;
+
+/**
+ * Outcome of a batch execution, which holds the results of the models which
+ * completed in time along with the errors of the failed ones.
+ */
+public class BatchResult {
+
+	private Map<PivotModel, CellSet> results = new LinkedHashMap<PivotModel, CellSet>();
+
+	private Map<PivotModel, Throwable> errors = new LinkedHashMap<PivotModel, Throwable>();
+
+	private List<PivotModel> timedOutModels = new ArrayList<PivotModel>();
+
+	private long duration;
+
+	/**
+	 * @param model
+	 * @param cellSet
+	 */
+	void addResult(PivotModel model, CellSet cellSet) {
+		results.put(model, cellSet);
+	}
+
+	/**
+	 * @param model
+	 * @param error
+	 */
+	void addError(PivotModel model, Throwable error) {
+		errors.put(model, error);
+	}
+
+	/**
+	 * @param model
+	 */
+	void addTimedOutModel(PivotModel model) {
+		timedOutModels.add(model);
+	}
+
+	/**
+	 * @param duration
+	 */
+	void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * @param model
+	 * @return result of the model, or null if it has failed or not completed
+	 *         in time
+	 */
+	public CellSet getCellSet(PivotModel model) {
+		return results.get(model);
+	}
+
+	/**
+	 * @param model
+	 * @return error of the model, or null if it has not failed
+	 */
+	public Throwable getError(PivotModel model) {
+		return errors.get(model);
+	}
+
+	/**
+	 * @return results of the models which completed in time
+	 */
+	public Map<PivotModel, CellSet> getResults() {
+		return Collections.unmodifiableMap(results);
+	}
+
+	/**
+	 * @return errors of the models which failed
+	 */
+	public Map<PivotModel, Throwable> getErrors() {
+		return Collections.unmodifiableMap(errors);
+	}
+
+	/**
+	 * @return models which did not complete before the deadline
+	 */
+	public List<PivotModel> getTimedOutModels() {
+		return Collections.unmodifiableList(timedOutModels);
+	}
+
+	/**
+	 * @return true if all the models completed successfully
+	 */
+	public boolean isComplete() {
+		return errors.isEmpty() && timedOutModels.isEmpty();
+	}
+
+	/**
+	 * @return elapsed time of the batch in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.metadata.Member;
+
+/**
+ * Index of the ancestor chains of members, which assigns each member a
+ * compact id and keeps the ids of its ancestors in an array indexed by their
+ * position in the chain (0 being the root member of the hierarchy).
+ * <p>
+ * Parent of each member is resolved only once, so the index avoids repeated
+ * calls to {@link Member#getParentMember()} which can be very slow with some
+ * drivers, and it answers "is ancestor of" and "ancestor at depth" queries in
+ * constant time once the members are registered.
+ * <p>
+ * Ids are only valid until the index is cleared, which happens automatically
+ * when the number of indexed members exceeds the configured size.
+ * <p>
+ * Parents of the unregistered members are resolved without holding the lock
+ * of the index, so a slow driver call made by one thread does not block the
+ * others.
+ *
+ * @see http://jira.pentaho.com/browse/MONDRIAN-1292
+ */
+public class AncestorIndex {
+
+	public static final int DEFAULT_MAX_SIZE = 50000;
+
+	private int maxSize;
+
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+
+	private List<Member> members = new ArrayList<Member>();
+
+	private List<int[]> chains = new ArrayList<int[]>();
+
+	private long clearCount = 0;
+
+	public AncestorIndex() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum number of members to be indexed
+	 */
+	public AncestorIndex(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Maximum index size should be a positive number : "
+							+ maxSize);
+		}
+
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param member
+	 * @return compact id of the member
+	 */
+	public int getId(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<Member> path = resolve(member);
+
+		synchronized (this) {
+			return register(path);
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return member with the given id, or null if the id is not valid
+	 */
+	public synchronized Member getMember(int id) {
+		if (id < 0 || id >= members.size()) {
+			return null;
+		}
+
+		return members.get(id);
+	}
+
+	/**
+	 * @param member
+	 * @return number of the ancestors of the member
+	 */
+	public int getDepth(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<Member> path = resolve(member);
+
+		synchronized (this) {
+			return chains.get(register(path)).length - 1;
+		}
+	}
+
+	/**
+	 * @param member
+	 * @return parent of the member, or null if it's a root member
+	 */
+	public Member getParentMember(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<Member> path = resolve(member);
+
+		synchronized (this) {
+			int[] chain = chains.get(register(path));
+
+			if (chain.length < 2) {
+				return null;
+			}
+
+			return members.get(chain[chain.length - 2]);
+		}
+	}
+
+	/**
+	 * @param member
+	 * @param depth
+	 *            position in the ancestor chain of the member, starting from 0
+	 *            for the root member
+	 * @return ancestor of the member at the given depth, or null if the depth
+	 *         is not lower than that of the member
+	 */
+	public Member getAncestorAt(Member member, int depth) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<Member> path = resolve(member);
+
+		synchronized (this) {
+			int[] chain = chains.get(register(path));
+
+			if (depth < 0 || depth >= chain.length - 1) {
+				return null;
+			}
+
+			return members.get(chain[depth]);
+		}
+	}
+
+	/**
+	 * @param ancestor
+	 * @param member
+	 * @return true if the first member is one of the ancestors of the second
+	 *         member
+	 */
+	public boolean isAncestor(Member ancestor, Member member) {
+		if (ancestor == null) {
+			throw new NullArgumentException("ancestor");
+		}
+
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<Member> path = resolve(member);
+
+		synchronized (this) {
+			int[] chain = chains.get(register(path));
+
+			// all the ancestors have been registered along with the member.
+			Integer ancestorId = ids.get(ancestor.getUniqueName());
+			if (ancestorId == null) {
+				return false;
+			}
+
+			int depth = chains.get(ancestorId).length - 1;
+
+			return depth < chain.length - 1 && chain[depth] == ancestorId;
+		}
+	}
+
+	/**
+	 * @param member
+	 * @return ancestors of the member, starting from its parent
+	 */
+	public List<Member> getAncestorMembers(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<Member> path = resolve(member);
+
+		synchronized (this) {
+			int[] chain = chains.get(register(path));
+
+			List<Member> ancestors = new ArrayList<Member>(chain.length - 1);
+
+			for (int i = chain.length - 2; i >= 0; i--) {
+				ancestors.add(members.get(chain[i]));
+			}
+
+			return Collections.unmodifiableList(ancestors);
+		}
+	}
+
+	/**
+	 * Walks up the ancestor chain of the member without holding the lock,
+	 * until it reaches an already registered ancestor or the root member.
+	 * 
+	 * @param member
+	 * @return the member followed by its unregistered ancestors and the first
+	 *         registered one, terminated by null if the root was reached
+	 */
+	private List<Member> resolve(Member member) {
+		List<Member> path = new ArrayList<Member>();
+
+		Member current = member;
+
+		while (true) {
+			path.add(current);
+
+			if (current == null || isRegistered(current)) {
+				break;
+			}
+
+			current = current.getParentMember();
+		}
+
+		return path;
+	}
+
+	/**
+	 * @param member
+	 * @return
+	 */
+	private synchronized boolean isRegistered(Member member) {
+		return ids.containsKey(member.getUniqueName());
+	}
+
+	/**
+	 * Should be called while holding the lock of the index.
+	 * 
+	 * @param path
+	 *            ancestor chain returned by {@link #resolve(Member)}
+	 * @return
+	 */
+	private int register(List<Member> path) {
+		Member member = path.get(0);
+
+		Integer id = ids.get(member.getUniqueName());
+
+		if (id != null) {
+			return id;
+		}
+
+		// Collect the unregistered part of the chain first, so that the index
+		// can be cleared safely before registering it.
+		List<Member> unregistered = new ArrayList<Member>();
+
+		int[] parentChain = null;
+
+		int index = 0;
+
+		Member current = member;
+
+		while (current != null) {
+			Integer currentId = ids.get(current.getUniqueName());
+
+			if (currentId != null) {
+				parentChain = chains.get(currentId);
+				break;
+			}
+
+			unregistered.add(current);
+
+			if (++index < path.size()) {
+				current = path.get(index);
+			} else {
+				// the registered ancestor has been discarded in the meantime.
+				current = current.getParentMember();
+			}
+		}
+
+		if (members.size() + unregistered.size() > maxSize) {
+			clear();
+
+			if (parentChain != null) {
+				// registered ancestors have been discarded.
+				return register(path);
+			}
+		}
+
+		for (int i = unregistered.size() - 1; i >= 0; i--) {
+			Member pathMember = unregistered.get(i);
+
+			int newId = members.size();
+
+			int[] chain;
+
+			if (parentChain == null) {
+				chain = new int[] { newId };
+			} else {
+				chain = new int[parentChain.length + 1];
+				System.arraycopy(parentChain, 0, chain, 0, parentChain.length);
+				chain[parentChain.length] = newId;
+			}
+
+			ids.put(pathMember.getUniqueName(), newId);
+			members.add(pathMember);
+			chains.add(chain);
+
+			parentChain = chain;
+		}
+
+		return parentChain[parentChain.length - 1];
+	}
+
+	/**
+	 * @return number of the indexed members
+	 */
+	public synchronized int size() {
+		return members.size();
+	}
+
+	public synchronized void clear() {
+		ids.clear();
+		members.clear();
+		chains.clear();
+
+		clearCount++;
+	}
+
+	/**
+	 * @return number of times the index has been cleared
+	 */
+	public synchronized long getClearCount() {
+		return clearCount;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import org.olap4j.CellSet;
+
+/**
+ * Query result cache which can be shared among multiple pivot model
+ * instances.
+ * <p>
+ * As the entries are shared, only the results which do not depend on the
+ * statement of a particular model (e.g.
+ * {@link com.eyeq.pivot4j.snapshot.CellSetSnapshot}) should be put into the
+ * cache.
+ */
+public interface CellSetCache {
+
+	/**
+	 * @param key
+	 * @return cached result or null if there's no valid entry for the key
+	 */
+	CellSet get(CellSetCacheKey key);
+
+	/**
+	 * @param key
+	 * @param cellSet
+	 */
+	void put(CellSetCacheKey key, CellSet cellSet);
+
+	/**
+	 * @param key
+	 */
+	void remove(CellSetCacheKey key);
+
+	void clear();
+
+	/**
+	 * @return number of cached entries
+	 */
+	int size();
+
+	/**
+	 * @return number of lookups which returned a cached result
+	 */
+	long getHitCount();
+
+	/**
+	 * @return number of lookups which did not return a cached result
+	 */
+	long getMissCount();
+}
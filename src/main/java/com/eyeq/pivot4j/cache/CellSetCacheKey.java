@@ -0,0 +1,134 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import java.util.Locale;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+/**
+ * Identifies a query result by the evaluated MDX, the cube and the security
+ * context (role and locale) it was executed with. The source object (usually
+ * the OLAP data source) is compared by identity so that results from different
+ * servers never get mixed up.
+ */
+public class CellSetCacheKey {
+
+	private Object source;
+
+	private String cubeName;
+
+	private String mdx;
+
+	private String roleName;
+
+	private Locale locale;
+
+	private int hashCode;
+
+	/**
+	 * @param source
+	 * @param cubeName
+	 * @param mdx
+	 * @param roleName
+	 * @param locale
+	 */
+	public CellSetCacheKey(Object source, String cubeName, String mdx,
+			String roleName, Locale locale) {
+		if (mdx == null) {
+			throw new NullArgumentException("mdx");
+		}
+
+		this.source = source;
+		this.cubeName = cubeName;
+		this.mdx = mdx;
+		this.roleName = roleName;
+		this.locale = locale;
+
+		this.hashCode = new HashCodeBuilder()
+				.append(System.identityHashCode(source)).append(cubeName)
+				.append(mdx).append(roleName).append(locale).toHashCode();
+	}
+
+	/**
+	 * @return the source
+	 */
+	public Object getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the cubeName
+	 */
+	public String getCubeName() {
+		return cubeName;
+	}
+
+	/**
+	 * @return the mdx
+	 */
+	public String getMdx() {
+		return mdx;
+	}
+
+	/**
+	 * @return the roleName
+	 */
+	public String getRoleName() {
+		return roleName;
+	}
+
+	/**
+	 * @return the locale
+	 */
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (obj == null) {
+			return false;
+		} else if (getClass() != obj.getClass()) {
+			return false;
+		}
+
+		CellSetCacheKey other = (CellSetCacheKey) obj;
+
+		return hashCode == other.hashCode && source == other.source
+				&& mdx.equals(other.mdx)
+				&& ObjectUtils.equals(cubeName, other.cubeName)
+				&& ObjectUtils.equals(roleName, other.roleName)
+				&& ObjectUtils.equals(locale, other.locale);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CellSetCacheKey [cube=" + cubeName + ", role=" + roleName
+				+ ", locale=" + locale + ", mdx=" + mdx + "]";
+	}
+}
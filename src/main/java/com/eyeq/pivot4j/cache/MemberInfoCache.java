@@ -0,0 +1,261 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
+import org.olap4j.OlapException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.PivotException;
+
+/**
+ * Keeps the child member counts and the calculated flags of members, which
+ * are needed to decide whether a member can be expanded or drilled down.
+ * <p>
+ * Instead of asking each member every time a header cell is rendered, which
+ * might cost a metadata round trip for every cell with some drivers, the
+ * information for all the visible members can be fetched in a single pass by
+ * calling {@link #prefetch(CellSet)} after a query is executed. Only the
+ * visible members which are not cached yet are asked, so each of them costs
+ * at most one lookup per result.
+ */
+public class MemberInfoCache {
+
+	public static final int DEFAULT_MAX_SIZE = 50000;
+
+	private int maxSize = DEFAULT_MAX_SIZE;
+
+	private Map<String, Integer> childCounts = new HashMap<String, Integer>();
+
+	private Map<String, Boolean> calculatedFlags = new HashMap<String, Boolean>();
+
+	private AtomicLong hitCount = new AtomicLong();
+
+	private AtomicLong missCount = new AtomicLong();
+
+	private AtomicLong fetchCount = new AtomicLong();
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum number of members to be cached
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Maximum cache size should be a positive number : "
+							+ maxSize);
+		}
+
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Fetches the information of all the members on the axes of the result.
+	 *
+	 * @param cellSet
+	 */
+	public void prefetch(CellSet cellSet) {
+		if (cellSet == null) {
+			throw new NullArgumentException("cellSet");
+		}
+
+		Map<String, Member> members = new LinkedHashMap<String, Member>();
+
+		for (CellSetAxis axis : cellSet.getAxes()) {
+			for (Position position : axis.getPositions()) {
+				for (Member member : position.getMembers()) {
+					if (!members.containsKey(member.getUniqueName())) {
+						members.put(member.getUniqueName(), member);
+					}
+				}
+			}
+		}
+
+		prefetch(new ArrayList<Member>(members.values()));
+	}
+
+	/**
+	 * Fetches the information of the given members which are not cached yet.
+	 *
+	 * @param members
+	 */
+	public void prefetch(List<Member> members) {
+		if (members == null) {
+			throw new NullArgumentException("members");
+		}
+
+		Map<String, Member> missingMembers = new LinkedHashMap<String, Member>();
+
+		synchronized (this) {
+			for (Member member : members) {
+				String name = member.getUniqueName();
+
+				if (!calculatedFlags.containsKey(name)) {
+					calculatedFlags.put(name, member.isCalculated());
+				}
+
+				if (!childCounts.containsKey(name) && !member.isCalculated()) {
+					missingMembers.put(name, member);
+				}
+			}
+		}
+
+		Map<String, Integer> fetched = new HashMap<String, Integer>(
+				missingMembers.size());
+
+		try {
+			for (Member member : missingMembers.values()) {
+				fetchCount.incrementAndGet();
+
+				fetched.put(member.getUniqueName(),
+						member.getChildMemberCount());
+			}
+		} catch (OlapException e) {
+			throw new PivotException(e);
+		}
+
+		synchronized (this) {
+			ensureCapacity(fetched.size());
+			childCounts.putAll(fetched);
+		}
+	}
+
+	/**
+	 * @param member
+	 * @return number of the child members
+	 */
+	public int getChildMemberCount(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		Integer count;
+
+		synchronized (this) {
+			count = childCounts.get(member.getUniqueName());
+		}
+
+		if (count == null) {
+			missCount.incrementAndGet();
+
+			try {
+				count = member.getChildMemberCount();
+			} catch (OlapException e) {
+				throw new PivotException(e);
+			}
+
+			synchronized (this) {
+				ensureCapacity(1);
+				childCounts.put(member.getUniqueName(), count);
+			}
+		} else {
+			hitCount.incrementAndGet();
+		}
+
+		return count;
+	}
+
+	/**
+	 * @param member
+	 * @return true if the member is a calculated member
+	 */
+	public boolean isCalculated(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		Boolean calculated;
+
+		synchronized (this) {
+			calculated = calculatedFlags.get(member.getUniqueName());
+		}
+
+		if (calculated == null) {
+			missCount.incrementAndGet();
+
+			calculated = member.isCalculated();
+
+			synchronized (this) {
+				ensureCapacity(1);
+				calculatedFlags.put(member.getUniqueName(), calculated);
+			}
+		} else {
+			hitCount.incrementAndGet();
+		}
+
+		return calculated;
+	}
+
+	/**
+	 * @param count
+	 */
+	private void ensureCapacity(int count) {
+		int size = Math.max(childCounts.size(), calculatedFlags.size());
+
+		if (size + count > maxSize) {
+			clear();
+		}
+	}
+
+	public synchronized void clear() {
+		childCounts.clear();
+		calculatedFlags.clear();
+	}
+
+	/**
+	 * @return number of members of which child counts are cached
+	 */
+	public synchronized int size() {
+		return childCounts.size();
+	}
+
+	/**
+	 * @return the hitCount
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the missCount
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of child member counts which have been prefetched
+	 */
+	public long getFetchCount() {
+		return fetchCount.get();
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		fetchCount.set(0);
+	}
+}
@@ -0,0 +1,369 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.OlapException;
+import org.olap4j.mdx.IdentifierNode;
+import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.PivotException;
+
+/**
+ * Resolves members of a cube by their unique names, and keeps the most
+ * recently used ones up to the configured size. The instance is thread safe,
+ * so it can be shared among all the components which look up members of the
+ * same cube.
+ */
+public class MemberLookupCache {
+
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private Cube cube;
+
+	private int maxSize;
+
+	private Map<String, Member> members;
+
+	private AtomicLong hitCount = new AtomicLong();
+
+	private AtomicLong missCount = new AtomicLong();
+
+	private AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param cube
+	 */
+	public MemberLookupCache(Cube cube) {
+		this(cube, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param cube
+	 * @param maxSize
+	 *            maximum number of members to be cached
+	 */
+	public MemberLookupCache(Cube cube, int maxSize) {
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Maximum cache size should be a positive number : "
+							+ maxSize);
+		}
+
+		this.cube = cube;
+		this.maxSize = maxSize;
+		this.members = new LinkedHashMap<String, Member>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -3521465734436390470L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Member> eldest) {
+				boolean evict = size() > MemberLookupCache.this.maxSize;
+				if (evict) {
+					evictionCount.incrementAndGet();
+				}
+
+				return evict;
+			}
+		};
+	}
+
+	/**
+	 * @return the cube
+	 */
+	public Cube getCube() {
+		return cube;
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param uniqueName
+	 * @return the member, or null if it does not exist
+	 */
+	public Member lookupMember(String uniqueName) {
+		if (uniqueName == null) {
+			throw new NullArgumentException("uniqueName");
+		}
+
+		Member member;
+
+		synchronized (members) {
+			member = members.get(uniqueName);
+		}
+
+		if (member == null) {
+			missCount.incrementAndGet();
+
+			member = resolve(uniqueName);
+
+			if (member != null) {
+				synchronized (members) {
+					members.put(uniqueName, member);
+				}
+			}
+		} else {
+			hitCount.incrementAndGet();
+		}
+
+		return member;
+	}
+
+	/**
+	 * Resolves the members with the given unique names. Cached members are
+	 * read at once, and only the rest of them are looked up from the cube.
+	 * Missing members which share the same parent are resolved together by
+	 * fetching the children of the parent only once.
+	 *
+	 * @param uniqueNames
+	 * @return list of the members in the same order, which contains null for
+	 *         the names which cannot be resolved
+	 */
+	public List<Member> lookupMembers(List<String> uniqueNames) {
+		if (uniqueNames == null) {
+			throw new NullArgumentException("uniqueNames");
+		}
+
+		List<Member> result = new ArrayList<Member>(uniqueNames.size());
+		List<Integer> missing = new ArrayList<Integer>();
+
+		synchronized (members) {
+			for (String uniqueName : uniqueNames) {
+				Member member = uniqueName == null ? null : members
+						.get(uniqueName);
+				if (member == null && uniqueName != null) {
+					missing.add(result.size());
+				}
+
+				result.add(member);
+			}
+		}
+
+		hitCount.addAndGet(uniqueNames.size() - missing.size());
+
+		if (missing.isEmpty()) {
+			return result;
+		}
+
+		Set<String> names = new LinkedHashSet<String>(missing.size());
+
+		for (Integer index : missing) {
+			names.add(uniqueNames.get(index));
+		}
+
+		missCount.addAndGet(names.size());
+
+		Map<String, Member> resolved = resolve(names);
+
+		for (Integer index : missing) {
+			result.set(index, resolved.get(uniqueNames.get(index)));
+		}
+
+		synchronized (members) {
+			for (Map.Entry<String, Member> entry : resolved.entrySet()) {
+				if (entry.getValue() != null) {
+					members.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Adds a member which has already been resolved elsewhere (e.g. from a
+	 * query result).
+	 *
+	 * @param member
+	 */
+	public void put(Member member) {
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		synchronized (members) {
+			members.put(member.getUniqueName(), member);
+		}
+	}
+
+	/**
+	 * Resolves the members with the given unique names from the cube. Names
+	 * are grouped by their parent, and the children of each parent with more
+	 * than one requested member are fetched at once. Members which can't be
+	 * found among the children (e.g. when the name is not in its unique form)
+	 * are looked up one by one.
+	 * 
+	 * @param uniqueNames
+	 * @return map of the unique names and the resolved members, which does
+	 *         not contain the names which cannot be resolved
+	 */
+	protected Map<String, Member> resolve(Collection<String> uniqueNames) {
+		Map<String, Member> result = new HashMap<String, Member>(
+				uniqueNames.size());
+
+		Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+		Map<String, List<IdentifierSegment>> parents = new HashMap<String, List<IdentifierSegment>>();
+
+		for (String uniqueName : uniqueNames) {
+			List<IdentifierSegment> segments = IdentifierNode.parseIdentifier(
+					uniqueName).getSegmentList();
+
+			// members right below a hierarchy are looked up by themselves
+			String parentKey = null;
+
+			if (segments.size() > 2) {
+				List<IdentifierSegment> parentSegments = segments.subList(0,
+						segments.size() - 1);
+
+				StringBuilder builder = new StringBuilder();
+				for (IdentifierSegment segment : parentSegments) {
+					builder.append(segment).append('.');
+				}
+
+				parentKey = builder.toString();
+				parents.put(parentKey, parentSegments);
+			}
+
+			List<String> names = groups.get(parentKey);
+			if (names == null) {
+				names = new ArrayList<String>();
+				groups.put(parentKey, names);
+			}
+
+			names.add(uniqueName);
+		}
+
+		for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+			List<String> names = entry.getValue();
+
+			if (entry.getKey() != null && names.size() > 1) {
+				Set<String> nameSet = new HashSet<String>(names);
+
+				for (Member child : resolveChildren(parents.get(entry
+						.getKey()))) {
+					if (nameSet.contains(child.getUniqueName())) {
+						result.put(child.getUniqueName(), child);
+					}
+				}
+			}
+
+			for (String name : names) {
+				if (!result.containsKey(name)) {
+					Member member = resolve(name);
+
+					if (member != null) {
+						result.put(name, member);
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param parentSegments
+	 * @return children of the member with the given name, or an empty list if
+	 *         it does not exist
+	 */
+	protected List<Member> resolveChildren(
+			List<IdentifierSegment> parentSegments) {
+		try {
+			List<Member> children = cube.lookupMembers(
+					EnumSet.of(Member.TreeOp.CHILDREN), parentSegments);
+
+			if (children == null) {
+				return Collections.emptyList();
+			}
+
+			return children;
+		} catch (OlapException e) {
+			throw new PivotException(e);
+		}
+	}
+
+	/**
+	 * @param uniqueName
+	 * @return
+	 */
+	protected Member resolve(String uniqueName) {
+		try {
+			return cube.lookupMember(IdentifierNode.parseIdentifier(uniqueName)
+					.getSegmentList());
+		} catch (OlapException e) {
+			throw new PivotException(e);
+		}
+	}
+
+	public void clear() {
+		synchronized (members) {
+			members.clear();
+		}
+	}
+
+	/**
+	 * @return number of cached members
+	 */
+	public int size() {
+		synchronized (members) {
+			return members.size();
+		}
+	}
+
+	/**
+	 * @return the hitCount
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the missCount
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return the evictionCount
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.metadata.Catalog;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Level;
+
+/**
+ * Memoizes metadata objects resolved from a connection, so that frequently
+ * called methods like {@link com.eyeq.pivot4j.PivotModel#getCube()} don't
+ * have to walk the schema every time.
+ * <p>
+ * The cached objects are only valid for the connection and the role they
+ * were resolved with, so the owner is responsible for invalidating the cache
+ * when either of them changes (e.g. when a leased connection is returned), or
+ * when the schema has been modified.
+ */
+public class MetadataCache {
+
+	private Catalog catalog;
+
+	private Map<String, Cube> cubes = new HashMap<String, Cube>();
+
+	private Map<String, Hierarchy> hierarchies = new HashMap<String, Hierarchy>();
+
+	private Map<String, Level> levels = new HashMap<String, Level>();
+
+	private Map<String, MemberLookupCache> memberCaches = new HashMap<String, MemberLookupCache>();
+
+	private Map<String, AncestorIndex> ancestorIndexes = new HashMap<String, AncestorIndex>();
+
+	private Map<String, MemberInfoCache> memberInfoCaches = new HashMap<String, MemberInfoCache>();
+
+	private AtomicLong hitCount = new AtomicLong();
+
+	private AtomicLong missCount = new AtomicLong();
+
+	private AtomicLong invalidationCount = new AtomicLong();
+
+	/**
+	 * @return cached catalog, or null if it's not cached yet
+	 */
+	public synchronized Catalog getCatalog() {
+		return record(catalog);
+	}
+
+	/**
+	 * @param catalog
+	 */
+	public synchronized void putCatalog(Catalog catalog) {
+		this.catalog = catalog;
+	}
+
+	/**
+	 * @param name
+	 * @return cached cube, or null if it's not cached yet
+	 */
+	public synchronized Cube getCube(String name) {
+		if (name == null) {
+			throw new NullArgumentException("name");
+		}
+
+		return record(cubes.get(name));
+	}
+
+	/**
+	 * @param name
+	 * @param cube
+	 */
+	public synchronized void putCube(String name, Cube cube) {
+		if (name == null) {
+			throw new NullArgumentException("name");
+		}
+
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		cubes.put(name, cube);
+	}
+
+	/**
+	 * Resolves a hierarchy of the cube by its name.
+	 * 
+	 * @param cube
+	 * @param name
+	 * @return the hierarchy, or null if it does not exist
+	 */
+	public synchronized Hierarchy getHierarchy(Cube cube, String name) {
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		if (name == null) {
+			throw new NullArgumentException("name");
+		}
+
+		String key = cube.getUniqueName() + "." + name;
+
+		Hierarchy hierarchy = record(hierarchies.get(key));
+
+		if (hierarchy == null) {
+			hierarchy = cube.getHierarchies().get(name);
+
+			if (hierarchy != null) {
+				hierarchies.put(key, hierarchy);
+			}
+		}
+
+		return hierarchy;
+	}
+
+	/**
+	 * Resolves a level of the cube by its name and the name of its hierarchy.
+	 * 
+	 * @param cube
+	 * @param hierarchyName
+	 * @param name
+	 * @return the level, or null if it does not exist
+	 */
+	public synchronized Level getLevel(Cube cube, String hierarchyName,
+			String name) {
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		if (hierarchyName == null) {
+			throw new NullArgumentException("hierarchyName");
+		}
+
+		if (name == null) {
+			throw new NullArgumentException("name");
+		}
+
+		String key = cube.getUniqueName() + "." + hierarchyName + "." + name;
+
+		Level level = record(levels.get(key));
+
+		if (level == null) {
+			Hierarchy hierarchy = getHierarchy(cube, hierarchyName);
+
+			if (hierarchy != null) {
+				level = hierarchy.getLevels().get(name);
+			}
+
+			if (level != null) {
+				levels.put(key, level);
+			}
+		}
+
+		return level;
+	}
+
+	/**
+	 * @param cube
+	 * @return member lookup cache which is shared for the cube
+	 */
+	public synchronized MemberLookupCache getMemberCache(Cube cube) {
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		MemberLookupCache memberCache = memberCaches
+				.get(cube.getUniqueName());
+
+		if (memberCache == null || memberCache.getCube() != cube) {
+			memberCache = createMemberCache(cube);
+			memberCaches.put(cube.getUniqueName(), memberCache);
+		}
+
+		return memberCache;
+	}
+
+	/**
+	 * @param cube
+	 * @return
+	 */
+	protected MemberLookupCache createMemberCache(Cube cube) {
+		return new MemberLookupCache(cube);
+	}
+
+	/**
+	 * @param cube
+	 * @return ancestor index which is shared for the cube
+	 */
+	public synchronized AncestorIndex getAncestorIndex(Cube cube) {
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		AncestorIndex index = ancestorIndexes.get(cube.getUniqueName());
+
+		if (index == null) {
+			index = createAncestorIndex(cube);
+			ancestorIndexes.put(cube.getUniqueName(), index);
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param cube
+	 * @return
+	 */
+	protected AncestorIndex createAncestorIndex(Cube cube) {
+		return new AncestorIndex();
+	}
+
+	/**
+	 * @param cube
+	 * @return cache of the child member counts which is shared for the cube
+	 */
+	public synchronized MemberInfoCache getMemberInfoCache(Cube cube) {
+		if (cube == null) {
+			throw new NullArgumentException("cube");
+		}
+
+		MemberInfoCache infoCache = memberInfoCaches.get(cube.getUniqueName());
+
+		if (infoCache == null) {
+			infoCache = createMemberInfoCache(cube);
+			memberInfoCaches.put(cube.getUniqueName(), infoCache);
+		}
+
+		return infoCache;
+	}
+
+	/**
+	 * @param cube
+	 * @return
+	 */
+	protected MemberInfoCache createMemberInfoCache(Cube cube) {
+		return new MemberInfoCache();
+	}
+
+	/**
+	 * Discards all the cached metadata.
+	 */
+	public synchronized void invalidate() {
+		this.catalog = null;
+
+		cubes.clear();
+		hierarchies.clear();
+		levels.clear();
+		memberCaches.clear();
+		ancestorIndexes.clear();
+		memberInfoCaches.clear();
+
+		invalidationCount.incrementAndGet();
+	}
+
+	/**
+	 * @param value
+	 * @return
+	 */
+	private <T> T record(T value) {
+		if (value == null) {
+			missCount.incrementAndGet();
+		} else {
+			hitCount.incrementAndGet();
+		}
+
+		return value;
+	}
+
+	/**
+	 * @return number of lookups which have been avoided by the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of lookups which have been delegated to the connection
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of times the cache has been invalidated
+	 */
+	public long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		invalidationCount.set(0);
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.CellSet;
+import org.olap4j.OlapException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eyeq.pivot4j.QueryCancelledException;
+import com.eyeq.pivot4j.QueryTimeoutException;
+
+/**
+ * Registry of queries in progress which lets concurrent callers with the same
+ * key share a single execution and its result, instead of running identical
+ * queries at the same time. The instance is meant to be shared among pivot
+ * models.
+ */
+public class QueryCoalescer {
+
+	protected Logger logger = LoggerFactory.getLogger(getClass());
+
+	private Map<CellSetCacheKey, Flight> flights = new HashMap<CellSetCacheKey, Flight>();
+
+	private AtomicLong executionCount = new AtomicLong();
+
+	private AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Runs the execution, or waits for the result of an identical one which is
+	 * already in progress.
+	 *
+	 * @param key
+	 * @param execution
+	 * @return
+	 * @throws OlapException
+	 */
+	public CellSet execute(CellSetCacheKey key, Execution execution)
+			throws OlapException {
+		return execute(key, execution, new Request(0));
+	}
+
+	/**
+	 * Runs the execution, or waits for the result of an identical one which is
+	 * already in progress within the timeout of the given request, unless the
+	 * request gets cancelled in the meantime.
+	 *
+	 * @param key
+	 * @param execution
+	 * @param request
+	 * @return
+	 * @throws OlapException
+	 */
+	public CellSet execute(CellSetCacheKey key, Execution execution,
+			Request request) throws OlapException {
+		if (key == null) {
+			throw new NullArgumentException("key");
+		}
+
+		if (execution == null) {
+			throw new NullArgumentException("execution");
+		}
+
+		if (request == null) {
+			throw new NullArgumentException("request");
+		}
+
+		Flight flight;
+
+		boolean leader = false;
+
+		synchronized (flights) {
+			flight = flights.get(key);
+
+			if (flight == null) {
+				flight = new Flight();
+				flights.put(key, flight);
+
+				leader = true;
+			} else {
+				flight.waiterCount.incrementAndGet();
+			}
+		}
+
+		if (leader) {
+			executionCount.incrementAndGet();
+
+			return lead(key, flight, execution);
+		}
+
+		coalescedCount.incrementAndGet();
+
+		request.coalesced = true;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Waiting for the result of an identical query : "
+					+ key);
+		}
+
+		try {
+			return flight.await(request);
+		} catch (QueryCancelledException e) {
+			if (e instanceof QueryTimeoutException || request.isCancelled()
+					|| Thread.currentThread().isInterrupted()) {
+				throw e;
+			}
+
+			// The shared execution was cancelled by its own caller, which
+			// should not affect the other ones.
+			if (logger.isDebugEnabled()) {
+				logger.debug("Shared query has been cancelled, retrying : "
+						+ key);
+			}
+
+			return execute(key, execution, request);
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param flight
+	 * @param execution
+	 * @return
+	 * @throws OlapException
+	 */
+	private CellSet lead(CellSetCacheKey key, Flight flight,
+			Execution execution) throws OlapException {
+		CellSet result = null;
+		Throwable error = null;
+
+		try {
+			result = execution.execute(flight);
+			return result;
+		} catch (OlapException e) {
+			error = e;
+			throw e;
+		} catch (RuntimeException e) {
+			error = e;
+			throw e;
+		} catch (Error e) {
+			error = e;
+			throw e;
+		} finally {
+			synchronized (flights) {
+				flights.remove(key);
+			}
+
+			flight.complete(result, error);
+		}
+	}
+
+	/**
+	 * @return number of queries being executed
+	 */
+	public int getInFlightCount() {
+		synchronized (flights) {
+			return flights.size();
+		}
+	}
+
+	/**
+	 * @return number of executions which actually ran a query
+	 */
+	public long getExecutionCount() {
+		return executionCount.get();
+	}
+
+	/**
+	 * @return number of callers which shared a result of other execution
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	public interface Execution {
+
+		/**
+		 * @param flight
+		 * @return
+		 * @throws OlapException
+		 */
+		CellSet execute(Flight flight) throws OlapException;
+	}
+
+	/**
+	 * Represents a single caller, which may stop waiting for a shared result
+	 * on its own timeout or cancellation without affecting the execution.
+	 */
+	public static class Request {
+
+		private final long deadline;
+
+		private volatile boolean cancelled = false;
+
+		private volatile boolean coalesced = false;
+
+		private volatile Flight flight;
+
+		/**
+		 * @param timeout
+		 *            maximum time in seconds to wait for the result, or 0 to
+		 *            wait indefinitely
+		 */
+		public Request(int timeout) {
+			if (timeout < 0) {
+				throw new IllegalArgumentException(
+						"Timeout should not be a negative number : " + timeout);
+			}
+
+			this.deadline = timeout == 0 ? 0 : System.currentTimeMillis()
+					+ timeout * 1000L;
+		}
+
+		/**
+		 * Stops waiting for the result of the shared execution. It does not
+		 * cancel the execution itself, which is still used by the other
+		 * callers.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+
+			Flight waitingFlight = flight;
+
+			if (waitingFlight != null) {
+				synchronized (waitingFlight) {
+					waitingFlight.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * @return true if the request has been cancelled
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * @return true if the result was shared by an execution of other
+		 *         caller
+		 */
+		public boolean isCoalesced() {
+			return coalesced;
+		}
+	}
+
+	/**
+	 * Represents a single execution shared by one or more callers.
+	 */
+	public static class Flight {
+
+		private AtomicInteger waiterCount = new AtomicInteger();
+
+		private boolean completed = false;
+
+		private CellSet result;
+
+		private Throwable error;
+
+		/**
+		 * @return number of callers waiting for the result, excluding the one
+		 *         which runs the query
+		 */
+		public int getWaiterCount() {
+			return waiterCount.get();
+		}
+
+		/**
+		 * @param result
+		 * @param error
+		 */
+		synchronized void complete(CellSet result, Throwable error) {
+			this.result = result;
+			this.error = error;
+			this.completed = true;
+
+			notifyAll();
+		}
+
+		/**
+		 * @param request
+		 * @return
+		 * @throws OlapException
+		 */
+		synchronized CellSet await(Request request) throws OlapException {
+			request.flight = this;
+
+			try {
+				while (!completed) {
+					if (request.isCancelled()) {
+						throw new QueryCancelledException(
+								"Waiting for the query result has been cancelled.");
+					}
+
+					long timeout = 0;
+
+					if (request.deadline > 0) {
+						timeout = request.deadline - System.currentTimeMillis();
+
+						if (timeout <= 0) {
+							throw new QueryTimeoutException(
+									"Waiting for the query result exceeded the timeout.");
+						}
+					}
+
+					wait(timeout);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new QueryCancelledException(
+						"Interrupted while waiting for the query result.", e);
+			} finally {
+				request.flight = null;
+			}
+
+			if (error instanceof OlapException) {
+				throw (OlapException) error;
+			} else if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			}
+
+			return result;
+		}
+	}
+}
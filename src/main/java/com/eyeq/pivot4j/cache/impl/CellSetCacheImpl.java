@@ -0,0 +1,256 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.CellSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eyeq.pivot4j.cache.CellSetCache;
+import com.eyeq.pivot4j.cache.CellSetCacheKey;
+
+/**
+ * Default cell set cache implementation which keeps the most recently used
+ * results up to the configured size, and optionally expires them after a
+ * given time.
+ * <p>
+ * As the cached snapshots retain the metadata of the connections which
+ * executed them (see {@link com.eyeq.pivot4j.snapshot.CellSetSnapshot}), the
+ * size and the time to live also bound how long such metadata can outlive
+ * the sessions which used it. It's recommended to set a time to live when the
+ * connections are frequently replaced, and to call {@link #clear()} when the
+ * data source is closed.
+ */
+public class CellSetCacheImpl implements CellSetCache {
+
+	public static final int DEFAULT_MAX_SIZE = 100;
+
+	protected Logger logger = LoggerFactory.getLogger(getClass());
+
+	private int maxSize;
+
+	private long timeToLive;
+
+	private AtomicLong hitCount = new AtomicLong();
+
+	private AtomicLong missCount = new AtomicLong();
+
+	private AtomicLong evictionCount = new AtomicLong();
+
+	private Map<CellSetCacheKey, CacheEntry> entries;
+
+	public CellSetCacheImpl() {
+		this(DEFAULT_MAX_SIZE, 0);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum number of results to be cached
+	 * @param timeToLive
+	 *            time in milliseconds before a cached result expires, or 0 if
+	 *            they never expire.
+	 */
+	public CellSetCacheImpl(int maxSize, long timeToLive) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Maximum cache size should be a positive number : "
+							+ maxSize);
+		}
+
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException(
+					"Time to live should not be a negative number : "
+							+ timeToLive);
+		}
+
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<CellSetCacheKey, CacheEntry>(16,
+				0.75f, true) {
+
+			private static final long serialVersionUID = 2867419870366862434L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<CellSetCacheKey, CacheEntry> eldest) {
+				boolean evict = size() > CellSetCacheImpl.this.maxSize;
+				if (evict) {
+					evictionCount.incrementAndGet();
+				}
+
+				return evict;
+			}
+		};
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the timeToLive
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#get(com.eyeq.pivot4j.cache.CellSetCacheKey)
+	 */
+	@Override
+	public CellSet get(CellSetCacheKey key) {
+		if (key == null) {
+			throw new NullArgumentException("key");
+		}
+
+		CellSet cellSet = null;
+
+		synchronized (entries) {
+			CacheEntry entry = entries.get(key);
+
+			if (entry != null) {
+				if (entry.isExpired()) {
+					entries.remove(key);
+					evictionCount.incrementAndGet();
+				} else {
+					cellSet = entry.getCellSet();
+				}
+			}
+		}
+
+		if (cellSet == null) {
+			missCount.incrementAndGet();
+		} else {
+			hitCount.incrementAndGet();
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Returning cached result for " + key);
+			}
+		}
+
+		return cellSet;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#put(com.eyeq.pivot4j.cache.CellSetCacheKey,
+	 *      org.olap4j.CellSet)
+	 */
+	@Override
+	public void put(CellSetCacheKey key, CellSet cellSet) {
+		if (key == null) {
+			throw new NullArgumentException("key");
+		}
+
+		if (cellSet == null) {
+			throw new NullArgumentException("cellSet");
+		}
+
+		synchronized (entries) {
+			entries.put(key, new CacheEntry(cellSet));
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#remove(com.eyeq.pivot4j.cache.CellSetCacheKey)
+	 */
+	@Override
+	public void remove(CellSetCacheKey key) {
+		if (key == null) {
+			throw new NullArgumentException("key");
+		}
+
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#clear()
+	 */
+	@Override
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#size()
+	 */
+	@Override
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#getHitCount()
+	 */
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.cache.CellSetCache#getMissCount()
+	 */
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of entries removed because of the size limit or
+	 *         expiration
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+
+	class CacheEntry {
+
+		private CellSet cellSet;
+
+		private long created = System.currentTimeMillis();
+
+		/**
+		 * @param cellSet
+		 */
+		CacheEntry(CellSet cellSet) {
+			this.cellSet = cellSet;
+		}
+
+		/**
+		 * @return the cellSet
+		 */
+		CellSet getCellSet() {
+			return cellSet;
+		}
+
+		boolean isExpired() {
+			return timeToLive > 0
+					&& System.currentTimeMillis() - created > timeToLive;
+		}
+	}
+}
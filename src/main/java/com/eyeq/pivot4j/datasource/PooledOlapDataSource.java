@@ -12,8 +12,10 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.SQLException;
+import java.util.Locale;
 
 import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.pool.PoolableObjectFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.olap4j.OlapConnection;
@@ -234,38 +236,33 @@ public class PooledOlapDataSource extends AbstractOlapDataSource {
 		 */
 		@Override
 		public OlapConnection makeObject() throws Exception {
-			final OlapConnection connection = super.makeObject();
+			OlapConnection connection = super.makeObject();
 
-			InvocationHandler handler = new InvocationHandler() {
+			InvocationHandler handler = new PooledConnectionHandler(connection);
 
-				@Override
-				public Object invoke(Object proxy, Method method, Object[] args)
-						throws Throwable {
-
-					if (method.getName().equals("close")) {
-						if (logger.isDebugEnabled()) {
-							logger.debug("Return a connection to the pool : "
-									+ connection);
-						}
+			return (OlapConnection) Proxy.newProxyInstance(getClass()
+					.getClassLoader(), new Class[] { OlapConnection.class },
+					handler);
+		}
 
-						pool.returnObject((OlapConnection) proxy);
+		/**
+		 * Restores the role and the locale which the connection had when it
+		 * was created, so the next borrower does not inherit the ones set by
+		 * the previous one.
+		 * 
+		 * @see org.apache.commons.pool.BasePoolableObjectFactory#passivateObject(java.lang.Object)
+		 */
+		@Override
+		public void passivateObject(OlapConnection con) throws Exception {
+			super.passivateObject(con);
 
-						if (logger.isDebugEnabled()) {
-							logger.debug("	- current pool size : "
-									+ pool.getNumActive() + " / "
-									+ pool.getMaxActive());
-						}
+			if (Proxy.isProxyClass(con.getClass())) {
+				InvocationHandler handler = Proxy.getInvocationHandler(con);
 
-						return null;
-					} else {
-						return method.invoke(connection, args);
-					}
+				if (handler instanceof PooledConnectionHandler) {
+					((PooledConnectionHandler) handler).reset();
 				}
-			};
-
-			return (OlapConnection) Proxy.newProxyInstance(getClass()
-					.getClassLoader(), new Class[] { OlapConnection.class },
-					handler);
+			}
 		}
 
 		/**
@@ -281,4 +278,62 @@ public class PooledOlapDataSource extends AbstractOlapDataSource {
 			con.unwrap(OlapConnection.class).close();
 		}
 	}
+
+	class PooledConnectionHandler implements InvocationHandler {
+
+		private OlapConnection connection;
+
+		private String roleName;
+
+		private Locale locale;
+
+		/**
+		 * @param connection
+		 */
+		PooledConnectionHandler(OlapConnection connection) {
+			this.connection = connection;
+			this.roleName = connection.getRoleName();
+			this.locale = connection.getLocale();
+		}
+
+		/**
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+		 *      java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			if (method.getName().equals("close")) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Return a connection to the pool : "
+							+ connection);
+				}
+
+				pool.returnObject((OlapConnection) proxy);
+
+				if (logger.isDebugEnabled()) {
+					logger.debug("	- current pool size : "
+							+ pool.getNumActive() + " / " + pool.getMaxActive());
+				}
+
+				return null;
+			} else {
+				return method.invoke(connection, args);
+			}
+		}
+
+		/**
+		 * @throws SQLException
+		 */
+		void reset() throws SQLException {
+			if (!ObjectUtils.equals(roleName, connection.getRoleName())) {
+				connection.setRoleName(roleName);
+			}
+
+			if (locale != null
+					&& !ObjectUtils.equals(locale, connection.getLocale())) {
+				connection.setLocale(locale);
+			}
+		}
+	}
 }
@@ -14,6 +14,11 @@ import java.util.Map;
 import com.eyeq.pivot4j.el.freemarker.FreeMarkerExpressionEvaluator;
 import com.eyeq.pivot4j.el.simple.SimpleExpressionEvaluator;
 
+/**
+ * Each factory has its own evaluators, so the compiled templates are cached
+ * only for the models which share the same factory instance (e.g. with
+ * {@link com.eyeq.pivot4j.impl.PivotModelImpl#setExpressionEvaluatorFactory(ExpressionEvaluatorFactory)}).
+ */
 public class ExpressionEvaluatorFactoryImpl implements
 		ExpressionEvaluatorFactory {
 
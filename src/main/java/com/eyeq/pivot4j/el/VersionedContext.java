@@ -0,0 +1,29 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.el;
+
+import java.util.Map;
+
+/**
+ * Expression context which can tell whether the value of a key has changed,
+ * so the results of the expressions which read it can be reused until then.
+ */
+public interface VersionedContext extends Map<String, Object> {
+
+	/**
+	 * Returns an object which stays equal to the previously returned one as
+	 * long as the value of the specified key is not changed. Only the
+	 * replacement of the value is tracked, not the changes of its internal
+	 * state.
+	 *
+	 * @param key
+	 * @return current version of the key, or null if it has never been set
+	 */
+	Object getVersion(String key);
+}
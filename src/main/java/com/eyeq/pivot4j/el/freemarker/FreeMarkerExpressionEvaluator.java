@@ -11,8 +11,13 @@ package com.eyeq.pivot4j.el.freemarker;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.builder.HashCodeBuilder;
 
 import com.eyeq.pivot4j.el.AbstractExpressionEvaluator;
 
@@ -20,14 +25,65 @@ import freemarker.ext.beans.BeansWrapper;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 
+/**
+ * Evaluates FreeMarker templates. Compiled templates of the recently used
+ * expressions are cached for each locale, so the same parameter is parsed
+ * only once however many times it's evaluated.
+ * <p>
+ * The instance is thread safe as long as the configuration is not modified
+ * after it's created, so it can be shared among the models.
+ */
 public class FreeMarkerExpressionEvaluator extends AbstractExpressionEvaluator {
 
 	public static final String NAMESPACE = "fm";
 
-	private Configuration configuration;
+	public static final int DEFAULT_MAX_SIZE = 500;
+
+	private final Configuration configuration;
+
+	private int maxSize;
+
+	private Map<TemplateKey, Template> templates;
+
+	private AtomicLong hitCount = new AtomicLong();
+
+	private AtomicLong missCount = new AtomicLong();
+
+	private AtomicLong evictionCount = new AtomicLong();
 
 	public FreeMarkerExpressionEvaluator() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum number of compiled templates to be cached
+	 */
+	public FreeMarkerExpressionEvaluator(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Maximum cache size should be a positive number : "
+							+ maxSize);
+		}
+
 		this.configuration = createConfiguration();
+		this.maxSize = maxSize;
+		this.templates = new LinkedHashMap<TemplateKey, Template>(16,
+				0.75f, true) {
+
+			private static final long serialVersionUID = -3850461239409563245L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<TemplateKey, Template> eldest) {
+				boolean evict = size() > FreeMarkerExpressionEvaluator.this.maxSize;
+				if (evict) {
+					evictionCount.incrementAndGet();
+				}
+
+				return evict;
+			}
+		};
 	}
 
 	/**
@@ -55,6 +111,13 @@ public class FreeMarkerExpressionEvaluator extends AbstractExpressionEvaluator {
 		return configuration;
 	}
 
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
 	/**
 	 * @param expression
 	 * @param configuration
@@ -67,6 +130,45 @@ public class FreeMarkerExpressionEvaluator extends AbstractExpressionEvaluator {
 				configuration);
 	}
 
+	/**
+	 * Returns a cached template for the expression, or compiles a new one.
+	 * Templates are never modified once they are cached, so the locale is set
+	 * before and is a part of the cache key.
+	 *
+	 * @param expression
+	 * @param locale
+	 * @return
+	 * @throws IOException
+	 */
+	protected Template getTemplate(String expression, Locale locale)
+			throws IOException {
+		TemplateKey key = new TemplateKey(expression, locale);
+
+		Template template;
+
+		synchronized (templates) {
+			template = templates.get(key);
+		}
+
+		if (template == null) {
+			missCount.incrementAndGet();
+
+			template = createTemplate(expression, getConfiguration());
+
+			if (locale != null) {
+				template.setLocale(locale);
+			}
+
+			synchronized (templates) {
+				templates.put(key, template);
+			}
+		} else {
+			hitCount.incrementAndGet();
+		}
+
+		return template;
+	}
+
 	/**
 	 * @see com.eyeq.pivot4j.el.AbstractExpressionEvaluator#doEvaluate(java.lang.
 	 *      String, java.util.Map)
@@ -74,12 +176,9 @@ public class FreeMarkerExpressionEvaluator extends AbstractExpressionEvaluator {
 	@Override
 	protected Object doEvaluate(String expression, Map<String, Object> context)
 			throws Exception {
-		Template template = createTemplate(expression, getConfiguration());
-
 		Locale locale = (Locale) context.get("locale");
-		if (locale != null) {
-			template.setLocale(locale);
-		}
+
+		Template template = getTemplate(expression, locale);
 
 		StringWriter writer = new StringWriter();
 
@@ -88,4 +187,100 @@ public class FreeMarkerExpressionEvaluator extends AbstractExpressionEvaluator {
 
 		return writer.toString();
 	}
+
+	public void clear() {
+		synchronized (templates) {
+			templates.clear();
+		}
+	}
+
+	/**
+	 * @return number of cached templates
+	 */
+	public int size() {
+		synchronized (templates) {
+			return templates.size();
+		}
+	}
+
+	/**
+	 * @return the hitCount
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the missCount
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return ratio of the evaluations which have used a cached template
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the evictionCount
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+
+	static class TemplateKey {
+
+		private String expression;
+
+		private Locale locale;
+
+		/**
+		 * @param expression
+		 * @param locale
+		 */
+		TemplateKey(String expression, Locale locale) {
+			this.expression = expression;
+			this.locale = locale;
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder().append(expression).append(locale)
+					.toHashCode();
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == null) {
+				return false;
+			}
+
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+
+			TemplateKey otherKey = (TemplateKey) obj;
+
+			return ObjectUtils.equals(expression, otherKey.expression)
+					&& ObjectUtils.equals(locale, otherKey.locale);
+		}
+	}
 }
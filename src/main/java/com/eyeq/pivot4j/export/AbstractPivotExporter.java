@@ -11,6 +11,8 @@ package com.eyeq.pivot4j.export;
 import java.io.OutputStream;
 
 import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.metrics.MetricsCollector;
+import com.eyeq.pivot4j.metrics.Phase;
 import com.eyeq.pivot4j.ui.AbstractPivotRenderer;
 
 public abstract class AbstractPivotExporter extends AbstractPivotRenderer
@@ -55,4 +57,22 @@ public abstract class AbstractPivotExporter extends AbstractPivotRenderer
 
 		super.render(model);
 	}
+
+	/**
+	 * @param model
+	 * @param start
+	 *            time in nanoseconds when the exporter started to write the
+	 *            output
+	 * @param bytes
+	 *            number of bytes written
+	 */
+	protected void recordFlush(PivotModel model, long start, long bytes) {
+		MetricsCollector collector = model.getMetricsCollector();
+
+		if (collector != null) {
+			collector.recordTime(model, Phase.EXPORT_FLUSH, System.nanoTime()
+					- start);
+			collector.recordBytesWritten(model, bytes);
+		}
+	}
 }
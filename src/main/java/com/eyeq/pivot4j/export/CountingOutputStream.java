@@ -0,0 +1,53 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.export;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream decorator which counts the number of bytes written.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private long count = 0;
+
+	/**
+	 * @param out
+	 */
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * @return number of bytes written so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @see java.io.FilterOutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	/**
+	 * @see java.io.FilterOutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+}
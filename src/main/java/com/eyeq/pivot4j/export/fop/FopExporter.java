@@ -30,6 +30,7 @@ import org.xml.sax.helpers.DefaultHandler;
 import com.eyeq.pivot4j.PivotException;
 import com.eyeq.pivot4j.PivotModel;
 import com.eyeq.pivot4j.export.AbstractPivotExporter;
+import com.eyeq.pivot4j.export.CountingOutputStream;
 import com.eyeq.pivot4j.ui.RenderContext;
 
 public class FopExporter extends AbstractPivotExporter {
@@ -341,9 +342,11 @@ public class FopExporter extends AbstractPivotExporter {
 	@Override
 	public void render(PivotModel model) {
 		try {
-			Fop fop = createFop(getFopFactory(), getUserAgent(),
+			CountingOutputStream out = new CountingOutputStream(
 					getOutputStream());
 
+			Fop fop = createFop(getFopFactory(), getUserAgent(), out);
+
 			this.documentHandler = fop.getDefaultHandler();
 
 			startDocument(model);
@@ -355,9 +358,13 @@ public class FopExporter extends AbstractPivotExporter {
 
 			super.render(model);
 
+			long start = System.nanoTime();
+
 			endPageSequence(model);
 
 			endDocument(model);
+
+			recordFlush(model, start, out.getCount());
 		} catch (Exception e) {
 			throw new PivotException(e);
 		}
@@ -35,6 +35,7 @@ import org.olap4j.OlapException;
 import com.eyeq.pivot4j.PivotException;
 import com.eyeq.pivot4j.PivotModel;
 import com.eyeq.pivot4j.export.AbstractPivotExporter;
+import com.eyeq.pivot4j.export.CountingOutputStream;
 import com.eyeq.pivot4j.ui.RenderContext;
 
 public class ExcelExporter extends AbstractPivotExporter {
@@ -154,12 +155,19 @@ public class ExcelExporter extends AbstractPivotExporter {
 
 		super.render(model);
 
+		long start = System.nanoTime();
+
+		CountingOutputStream out = new CountingOutputStream(
+				getOutputStream());
+
 		try {
-			workbook.write(getOutputStream());
+			workbook.write(out);
 		} catch (IOException e) {
 			throw new PivotException(e);
 		}
 
+		recordFlush(model, start, out.getCount());
+
 		reset();
 	}
 
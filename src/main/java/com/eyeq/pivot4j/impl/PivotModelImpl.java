@@ -11,8 +11,10 @@ package com.eyeq.pivot4j.impl;
 import java.io.Serializable;
 import java.sql.Date;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -22,10 +24,18 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.logging.LogFactory;
+import org.olap4j.Axis;
 import org.olap4j.CellSet;
 import org.olap4j.CellSetAxis;
 import org.olap4j.OlapConnection;
@@ -33,7 +43,6 @@ import org.olap4j.OlapDataSource;
 import org.olap4j.OlapException;
 import org.olap4j.OlapStatement;
 import org.olap4j.Position;
-import org.olap4j.mdx.IdentifierNode;
 import org.olap4j.metadata.Catalog;
 import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Dimension;
@@ -49,13 +58,31 @@ import com.eyeq.pivot4j.NotInitializedException;
 import com.eyeq.pivot4j.PivotException;
 import com.eyeq.pivot4j.PivotModel;
 import com.eyeq.pivot4j.QueryEvent;
+import com.eyeq.pivot4j.QueryCancelledException;
+import com.eyeq.pivot4j.QueryExecutionListener;
 import com.eyeq.pivot4j.QueryListener;
+import com.eyeq.pivot4j.QueryTimeoutException;
+import com.eyeq.pivot4j.cache.CellSetCache;
+import com.eyeq.pivot4j.cache.CellSetCacheKey;
+import com.eyeq.pivot4j.cache.MemberLookupCache;
+import com.eyeq.pivot4j.cache.MetadataCache;
+import com.eyeq.pivot4j.cache.QueryCoalescer;
+import com.eyeq.pivot4j.cache.QueryCoalescer.Flight;
 import com.eyeq.pivot4j.el.ExpressionEvaluatorFactory;
 import com.eyeq.pivot4j.el.ExpressionEvaluatorFactoryImpl;
+import com.eyeq.pivot4j.el.VersionedContext;
+import com.eyeq.pivot4j.mdx.MdxFingerprint;
+import com.eyeq.pivot4j.mdx.MdxParser;
+import com.eyeq.pivot4j.metrics.MetricsCollector;
+import com.eyeq.pivot4j.metrics.Phase;
+import com.eyeq.pivot4j.query.AxisExpansion;
+import com.eyeq.pivot4j.query.AxisIndex;
 import com.eyeq.pivot4j.query.Quax;
 import com.eyeq.pivot4j.query.QueryAdapter;
 import com.eyeq.pivot4j.query.QueryChangeEvent;
 import com.eyeq.pivot4j.query.QueryChangeListener;
+import com.eyeq.pivot4j.snapshot.CellSetSnapshot;
+import com.eyeq.pivot4j.snapshot.CellSetSplicer;
 import com.eyeq.pivot4j.sort.SortCriteria;
 import com.eyeq.pivot4j.transform.Transform;
 import com.eyeq.pivot4j.transform.TransformFactory;
@@ -89,6 +116,62 @@ public class PivotModelImpl implements PivotModel {
 
 	private ExpressionEvaluatorFactory expressionEvaluatorFactory = new ExpressionEvaluatorFactoryImpl();
 
+	private CellSetCache cellSetCache;
+
+	private MdxParser mdxParser;
+
+	private QueryCoalescer queryCoalescer;
+
+	private MetadataCache metadataCache = new MetadataCache();
+
+	private Flight currentFlight;
+
+	private MetricsCollector metricsCollector;
+
+	private boolean snapshotMode = false;
+
+	private boolean connectionLeasing = false;
+
+	private Serializable detachedState;
+
+	private Locale connectionLocale;
+
+	private boolean incrementalDrill = false;
+
+	private boolean incrementalEvaluation = false;
+
+	private boolean compactAxes = false;
+
+	private boolean verifyCompactedAxes = false;
+
+	private int updateLevel = 0;
+
+	private boolean modelChangeDeferred = false;
+
+	private boolean structureChangeDeferred = false;
+
+	private CellSetSnapshot lastSnapshot;
+
+	private String lastMdx;
+
+	private int queryTimeout = 0;
+
+	private final Object statementLock = new Object();
+
+	private OlapStatement runningStatement;
+
+	private Thread runningThread;
+
+	private QueryCoalescer.Request waitingRequest;
+
+	private Thread waitingThread;
+
+	private boolean cancelled = false;
+
+	private boolean timedOut = false;
+
+	private static Timer timeoutTimer;
+
 	private int topBottomCount = 10;
 
 	private SortCriteria sortCriteria = SortCriteria.ASC;
@@ -146,8 +229,10 @@ public class PivotModelImpl implements PivotModel {
 	public void setLocale(Locale locale) {
 		this.locale = locale;
 
+		metadataCache.invalidate();
+
 		if (connection != null) {
-			connection.setLocale(locale);
+			applyLocale(connection);
 		}
 	}
 
@@ -167,6 +252,8 @@ public class PivotModelImpl implements PivotModel {
 	public void setRoleName(String roleName) {
 		this.roleName = roleName;
 
+		metadataCache.invalidate();
+
 		if (connection != null) {
 			try {
 				connection.setRoleName(roleName);
@@ -188,10 +275,12 @@ public class PivotModelImpl implements PivotModel {
 			throw new PivotException("Initial MDX query is null.");
 		}
 
-		try {
-			this.connection = createConnection(dataSource);
-		} catch (SQLException e) {
-			throw new PivotException(e);
+		if (!connectionLeasing) {
+			try {
+				this.connection = createConnection(dataSource);
+			} catch (SQLException e) {
+				throw new PivotException(e);
+			}
 		}
 
 		this.initialized = true;
@@ -207,10 +296,21 @@ public class PivotModelImpl implements PivotModel {
 		queryAdapter.updateQuery();
 		queryAdapter.addChangeListener(queryChangeListener);
 
+		if (updateLevel > 0) {
+			queryAdapter.beginUpdate();
+		}
+
 		fireModelInitialized();
 	}
 
 	/**
+	 * Obtains a connection from the data source and applies the role and the
+	 * locale of the model. If no role or locale is specified, those of the
+	 * connection (e.g. the <code>Locale</code> property of the connect string)
+	 * are used. The locale of the connection is restored when it's closed, and
+	 * the role is restored when the connection is returned to
+	 * {@link com.eyeq.pivot4j.datasource.PooledOlapDataSource}.
+	 * 
 	 * @param dataSource
 	 * @return
 	 * @throws SQLException
@@ -219,15 +319,33 @@ public class PivotModelImpl implements PivotModel {
 			throws SQLException {
 		OlapConnection connection = dataSource.getConnection();
 
-		if (roleName != null) {
+		if (roleName != null
+				&& !roleName.equals(connection.getRoleName())) {
 			connection.setRoleName(roleName);
 		}
 
+		applyLocale(connection);
+
+		return connection;
+	}
+
+	/**
+	 * Sets the locale of the model to the connection, or restores its original
+	 * locale if the model does not have one.
+	 * 
+	 * @param connection
+	 */
+	private void applyLocale(OlapConnection connection) {
 		if (locale != null) {
+			if (connectionLocale == null) {
+				this.connectionLocale = connection.getLocale();
+			}
+
 			connection.setLocale(locale);
+		} else if (connectionLocale != null) {
+			connection.setLocale(connectionLocale);
+			this.connectionLocale = null;
 		}
-
-		return connection;
 	}
 
 	/**
@@ -269,23 +387,135 @@ public class PivotModelImpl implements PivotModel {
 			this.connection = null;
 		}
 
+		this.detachedState = null;
 		this.sortPosMembers = null;
 		this.sortCriteria = SortCriteria.ASC;
 		this.sorting = false;
 		this.cellSet = null;
+		this.lastSnapshot = null;
+		this.lastMdx = null;
 		this.initialized = false;
 
+		metadataCache.invalidate();
+
 		fireModelDestroyed();
 	}
 
 	/**
-	 * @param dataSource
-	 * @return
+	 * @param connection
 	 * @throws SQLException
 	 */
 	protected void closeConnection(OlapConnection connection)
 			throws SQLException {
-		connection.close();
+		try {
+			if (connectionLocale != null) {
+				connection.setLocale(connectionLocale);
+			}
+		} finally {
+			this.connectionLocale = null;
+
+			connection.close();
+		}
+	}
+
+	/**
+	 * Returns the connection to be used for an operation. If the connection
+	 * leasing is enabled, a connection is obtained from the data source when
+	 * it's needed for the first time, and it's kept until
+	 * {@link #returnConnection()} is called so that the metadata resolved from
+	 * it remains valid.
+	 * 
+	 * @return
+	 * @throws SQLException
+	 */
+	protected OlapConnection borrowConnection() throws SQLException {
+		if (connectionLeasing && connection == null) {
+			this.connection = createConnection(dataSource);
+		}
+
+		return connection;
+	}
+
+	/**
+	 * Returns the leased connection to the data source, along with the
+	 * metadata and the query result obtained from it. The current state of
+	 * the model is kept, and it's restored against a newly leased connection
+	 * when the model is used next time. It does nothing if the model does not
+	 * hold a connection at the moment.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the connection leasing is not enabled
+	 * @see #setConnectionLeasing(boolean)
+	 */
+	public synchronized void returnConnection() {
+		if (!connectionLeasing) {
+			throw new IllegalStateException(
+					"Connection leasing mode is not enabled.");
+		}
+
+		if (connection == null) {
+			return;
+		}
+
+		if (detachedState == null && queryAdapter != null
+				&& queryAdapter.isInitialized()) {
+			// serialized copy does not keep the metadata resolved from the
+			// connection, so it will be resolved again on the next lease.
+			this.detachedState = (Serializable) SerializationUtils
+					.clone(saveState());
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Returning OLAP connection " + connection);
+		}
+
+		try {
+			closeConnection(connection);
+		} catch (SQLException e) {
+			throw new PivotException(e);
+		} finally {
+			this.connection = null;
+
+			this.cellSet = null;
+			this.lastSnapshot = null;
+			this.lastMdx = null;
+
+			metadataCache.invalidate();
+		}
+	}
+
+	/**
+	 * Restores the state of the model saved when the connection was returned,
+	 * resolving the cube and the members again from a new connection.
+	 */
+	private void attach() {
+		if (detachedState == null) {
+			return;
+		}
+
+		Serializable[] states = (Serializable[]) detachedState;
+
+		this.detachedState = null;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Restoring the model state with a new connection.");
+		}
+
+		// restore the current query while keeping the initial MDX
+		String initialMdx = mdxQuery;
+
+		this.mdxQuery = (String) states[0];
+
+		try {
+			queryAdapter.initialize();
+			queryAdapter.updateQuery();
+
+			restoreSortState(states[1]);
+
+			queryAdapter.restoreState(states[2]);
+		} finally {
+			this.mdxQuery = initialMdx;
+		}
 	}
 
 	private void checkInitialization() throws NotInitializedException {
@@ -296,12 +526,16 @@ public class PivotModelImpl implements PivotModel {
 	}
 
 	/**
-	 * Returns the connection.
+	 * Returns the connection, or null if the connection leasing mode is
+	 * enabled and no connection is leased at the moment.
 	 */
 	protected OlapConnection getConnection() {
 		return connection;
 	}
 
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getDataSource()
+	 */
 	public OlapDataSource getDataSource() {
 		return dataSource;
 	}
@@ -312,9 +546,23 @@ public class PivotModelImpl implements PivotModel {
 	public Catalog getCatalog() throws NotInitializedException {
 		checkInitialization();
 
+		attach();
+
+		Catalog catalog = metadataCache.getCatalog();
+		if (catalog != null) {
+			return catalog;
+		}
+
 		try {
-			return connection.getOlapCatalog();
-		} catch (OlapException e) {
+			OlapConnection con = borrowConnection();
+
+			catalog = con.getOlapCatalog();
+			if (catalog != null) {
+				metadataCache.putCatalog(catalog);
+			}
+
+			return catalog;
+		} catch (SQLException e) {
 			throw new PivotException(e);
 		}
 	}
@@ -325,12 +573,24 @@ public class PivotModelImpl implements PivotModel {
 	public Cube getCube() throws NotInitializedException {
 		checkInitialization();
 
+		attach();
+
+		String cubeName = queryAdapter.getCubeName();
+
 		Cube cube = null;
 
+		if (cubeName != null) {
+			cube = metadataCache.getCube(cubeName);
+
+			if (cube != null) {
+				return cube;
+			}
+		}
+
 		try {
-			String cubeName = queryAdapter.getCubeName();
+			OlapConnection con = borrowConnection();
 
-			Schema schema = connection.getOlapSchema();
+			Schema schema = con.getOlapSchema();
 			cube = schema.getCubes().get(cubeName);
 
 			if (cube == null && cubeName != null) {
@@ -348,8 +608,10 @@ public class PivotModelImpl implements PivotModel {
 						logger.debug(c.getCaption() + " - " + c.getUniqueName());
 					}
 				}
+			} else if (cube != null) {
+				metadataCache.putCube(cubeName, cube);
 			}
-		} catch (OlapException e) {
+		} catch (SQLException e) {
 			throw new PivotException(e);
 		}
 
@@ -362,6 +624,8 @@ public class PivotModelImpl implements PivotModel {
 	public synchronized CellSet getCellSet() throws NotInitializedException {
 		checkInitialization();
 
+		attach();
+
 		if (cellSet != null) {
 			return cellSet;
 		}
@@ -370,25 +634,580 @@ public class PivotModelImpl implements PivotModel {
 			throw new IllegalStateException("Initial MDX is not specified.");
 		}
 
+		long start = System.nanoTime();
+
 		if (expressionEvaluatorFactory != null) {
 			queryAdapter.evaluate(expressionEvaluatorFactory);
+
+			start = recordTime(Phase.EVALUATE, start);
 		}
 
 		String mdx = normalizeMdx(getCurrentMdx(true));
 
-		try {
-			this.cellSet = executeMdx(connection, mdx);
-		} catch (OlapException e) {
-			throw new PivotException(e);
+		start = recordTime(Phase.GENERATE_MDX, start);
+
+		CellSetCacheKey cacheKey = null;
+
+		if (cellSetCache != null) {
+			cacheKey = createCacheKey(getCanonicalMdx());
+			this.cellSet = cellSetCache.get(cacheKey);
+		}
+
+		if (cellSet == null) {
+			try {
+				if (incrementalDrill) {
+					this.cellSet = executeDeltaQuery(mdx);
+				}
+
+				if (cellSet != null) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Merged the delta result of the expansion.");
+					}
+				} else if (queryCoalescer == null) {
+					this.cellSet = executeQuery(mdx);
+				} else {
+					if (cacheKey == null) {
+						cacheKey = createCacheKey(getCanonicalMdx());
+					}
+
+					this.cellSet = executeCoalescedQuery(cacheKey, mdx);
+				}
+			} catch (OlapException e) {
+				throw new PivotException(e);
+			}
+
+			if (verifyCompactedAxes) {
+				verifyCompactedAxes(mdx, cellSet);
+			}
+
+			if (cellSetCache != null) {
+				// live results depend on the statement of this model, so only
+				// the detached copies can be shared with the other ones
+				this.cellSet = detach(cellSet);
+
+				cellSetCache.put(cacheKey, cellSet);
+			}
+		}
+
+		start = recordTime(Phase.EXECUTE, start);
+
+		if (incrementalDrill && cellSet instanceof CellSetSnapshot) {
+			this.lastSnapshot = (CellSetSnapshot) cellSet;
+			this.lastMdx = mdx;
+		} else {
+			this.lastSnapshot = null;
+			this.lastMdx = null;
+		}
+
+		if (metricsCollector != null) {
+			metricsCollector.recordCellCount(this, getCellCount(cellSet));
 		}
 
 		expressionContext.put("cellSet", cellSet);
 
 		queryAdapter.afterExecute(cellSet);
 
+		recordTime(Phase.AFTER_EXECUTE, start);
+
 		return cellSet;
 	}
 
+	/**
+	 * Executes the query, or waits for the result of an identical one run by
+	 * other model which shares the same coalescer. While waiting, the query
+	 * timeout and the cancellation of this model still apply.
+	 * 
+	 * @param cacheKey
+	 * @param mdx
+	 *            normalized and evaluated MDX query
+	 * @return
+	 * @throws OlapException
+	 */
+	protected CellSet executeCoalescedQuery(CellSetCacheKey cacheKey,
+			final String mdx) throws OlapException {
+		QueryCoalescer.Request request = new QueryCoalescer.Request(
+				queryTimeout);
+
+		synchronized (statementLock) {
+			this.waitingRequest = request;
+			this.waitingThread = Thread.currentThread();
+		}
+
+		Date start = new Date(System.currentTimeMillis());
+
+		CellSet result;
+
+		try {
+			result = queryCoalescer.execute(cacheKey,
+					new QueryCoalescer.Execution() {
+
+						@Override
+						public CellSet execute(Flight flight)
+								throws OlapException {
+							currentFlight = flight;
+
+							try {
+								// the result is handed to the other models as
+								// well, so it should not depend on the
+								// statement of this one
+								return detach(executeQuery(mdx));
+							} finally {
+								currentFlight = null;
+							}
+						}
+					}, request);
+		} catch (QueryCancelledException e) {
+			if (request.isCoalesced()) {
+				long duration = System.currentTimeMillis() - start.getTime();
+
+				if (e instanceof QueryTimeoutException) {
+					fireQueryTimedOut(start, duration, mdx);
+				} else {
+					fireQueryCancelled(start, duration, mdx);
+				}
+			}
+
+			throw e;
+		} finally {
+			synchronized (statementLock) {
+				this.waitingRequest = null;
+				this.waitingThread = null;
+			}
+		}
+
+		if (request.isCoalesced() && metricsCollector != null) {
+			metricsCollector.recordCoalescedQuery(this);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Executes a query which returns only the positions added by the last
+	 * expansion, and merges them into the snapshot of the previous result.
+	 * 
+	 * @param mdx
+	 *            normalized and evaluated MDX query
+	 * @return merged result, or null if the query cannot be executed
+	 *         incrementally
+	 * @throws OlapException
+	 */
+	protected CellSet executeDeltaQuery(String mdx) throws OlapException {
+		AxisExpansion expansion = queryAdapter.getLastExpansion();
+
+		if (lastSnapshot == null || expansion == null || isSortOnQuery()) {
+			return null;
+		}
+
+		// the previous result should be the same as the current query except
+		// for the expanded axis, otherwise it has been changed in other ways
+		// (e.g. parameters or slicer).
+		String previousMdx = normalizeMdx(queryAdapter.getPreviousMdx(
+				expansion, true));
+		if (!previousMdx.equals(lastMdx)) {
+			return null;
+		}
+
+		CellSetSplicer splicer = new CellSetSplicer();
+
+		// no need to send the delta query if its result cannot be merged
+		if (!splicer.canSplice(lastSnapshot, expansion.getAxis(),
+				expansion.getMember())) {
+			return null;
+		}
+
+		String deltaMdx = normalizeMdx(queryAdapter.getDeltaMdx(expansion,
+				true));
+
+		CellSet delta = executeQuery(deltaMdx);
+
+		return splicer.splice(lastSnapshot, delta,
+				expansion.getAxis(), expansion.getHierarchy());
+	}
+
+	/**
+	 * Executes the query before its axes were compacted, and logs an error if
+	 * it returns different positions than the compacted one.
+	 * 
+	 * @param mdx
+	 *            normalized and evaluated MDX query
+	 * @param cellSet
+	 *            result of the query
+	 * @see QueryAdapter#getUncompactedMdx(boolean)
+	 */
+	protected void verifyCompactedAxes(String mdx, CellSet cellSet) {
+		String uncompactedMdx = normalizeMdx(queryAdapter
+				.getUncompactedMdx(true));
+		if (uncompactedMdx == null) {
+			return;
+		}
+
+		CellSet expected;
+
+		try {
+			expected = executeQuery(uncompactedMdx);
+		} catch (OlapException e) {
+			throw new PivotException(e);
+		}
+
+		try {
+			String difference = compareAxes(expected, cellSet);
+
+			if (difference == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Compacted axes returned the same positions.");
+				}
+			} else if (logger.isErrorEnabled()) {
+				logger.error("Compacted axes returned different positions ("
+						+ difference + ").\nCompacted MDX : " + mdx
+						+ "\nOriginal MDX : " + uncompactedMdx);
+			}
+		} finally {
+			if (!(expected instanceof CellSetSnapshot)) {
+				try {
+					OlapStatement statement = expected.getStatement();
+
+					expected.close();
+
+					if (statement != null) {
+						statement.close();
+					}
+				} catch (SQLException e) {
+					if (logger.isWarnEnabled()) {
+						logger.warn("Failed to close the query result : " + e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param expected
+	 * @param actual
+	 * @return description of the first difference, or null if the axes of
+	 *         both results have the same positions
+	 */
+	private String compareAxes(CellSet expected, CellSet actual) {
+		List<CellSetAxis> expectedAxes = expected.getAxes();
+		List<CellSetAxis> actualAxes = actual.getAxes();
+
+		if (expectedAxes.size() != actualAxes.size()) {
+			return "axis count " + expectedAxes.size() + " / "
+					+ actualAxes.size();
+		}
+
+		for (int i = 0; i < expectedAxes.size(); i++) {
+			List<Position> expectedPositions = expectedAxes.get(i)
+					.getPositions();
+			List<Position> actualPositions = actualAxes.get(i).getPositions();
+
+			if (expectedPositions.size() != actualPositions.size()) {
+				return "axis " + i + ", position count "
+						+ expectedPositions.size() + " / "
+						+ actualPositions.size();
+			}
+
+			for (int j = 0; j < expectedPositions.size(); j++) {
+				List<Member> expectedMembers = expectedPositions.get(j)
+						.getMembers();
+				List<Member> actualMembers = actualPositions.get(j)
+						.getMembers();
+
+				boolean same = expectedMembers.size() == actualMembers.size();
+
+				for (int k = 0; same && k < expectedMembers.size(); k++) {
+					same = OlapUtils.equals(expectedMembers.get(k),
+							actualMembers.get(k));
+				}
+
+				if (!same) {
+					return "axis " + i + ", position " + j + " : "
+							+ expectedMembers + " / " + actualMembers;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param phase
+	 * @param start
+	 *            start time of the phase in nanoseconds
+	 * @return end time of the phase, which can be used as the start time of
+	 *         the next phase
+	 */
+	protected long recordTime(Phase phase, long start) {
+		long now = System.nanoTime();
+
+		if (metricsCollector != null) {
+			metricsCollector.recordTime(this, phase, now - start);
+		}
+
+		return now;
+	}
+
+	/**
+	 * @param cellSet
+	 * @return
+	 */
+	private long getCellCount(CellSet cellSet) {
+		long count = 1;
+
+		for (CellSetAxis axis : cellSet.getAxes()) {
+			count *= axis.getPositionCount();
+		}
+
+		return count;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getCellSetAsync(java.util.concurrent.Executor)
+	 */
+	@Override
+	public Future<CellSet> getCellSetAsync(Executor executor)
+			throws NotInitializedException {
+		if (executor == null) {
+			throw new NullArgumentException("executor");
+		}
+
+		checkInitialization();
+
+		QueryTask task = new QueryTask();
+
+		executor.execute(task);
+
+		return task;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#cancelQuery()
+	 */
+	@Override
+	public boolean cancelQuery() {
+		return cancelQuery(null);
+	}
+
+	/**
+	 * @param thread
+	 *            thread which is running the query to be cancelled, or null to
+	 *            cancel any running query.
+	 * @return true if a running query has been cancelled
+	 */
+	protected boolean cancelQuery(Thread thread) {
+		synchronized (statementLock) {
+			if (runningStatement == null && waitingRequest != null
+					&& (thread == null || thread == waitingThread)) {
+				if (logger.isInfoEnabled()) {
+					logger.info("Cancelling the wait for the shared query result.");
+				}
+
+				waitingRequest.cancel();
+
+				return true;
+			}
+
+			if (runningStatement == null
+					|| (thread != null && thread != runningThread)) {
+				return false;
+			}
+
+			if (logger.isInfoEnabled()) {
+				logger.info("Cancelling the running query.");
+			}
+
+			this.cancelled = true;
+
+			try {
+				runningStatement.cancel();
+			} catch (SQLException e) {
+				this.cancelled = false;
+				throw new PivotException(e);
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getMetadataCache()
+	 */
+	@Override
+	public MetadataCache getMetadataCache() {
+		return metadataCache;
+	}
+
+	/**
+	 * Discards the cached metadata, which should be called when the schema
+	 * has been modified.
+	 */
+	public void invalidateMetadata() {
+		metadataCache.invalidate();
+	}
+
+	/**
+	 * @return the snapshotMode
+	 */
+	public boolean isSnapshotMode() {
+		return snapshotMode;
+	}
+
+	/**
+	 * @param snapshotMode
+	 *            true to keep query results as detached, compact snapshots
+	 *            instead of live cell sets
+	 * @see com.eyeq.pivot4j.snapshot.CellSetSnapshot
+	 */
+	public void setSnapshotMode(boolean snapshotMode) {
+		this.snapshotMode = snapshotMode;
+	}
+
+	/**
+	 * @return the incrementalDrill
+	 */
+	public boolean isIncrementalDrill() {
+		return incrementalDrill;
+	}
+
+	/**
+	 * @param incrementalDrill
+	 *            true to query only the new positions when a member gets
+	 *            expanded, and merge them into the previous result. It
+	 *            implies the snapshot mode.
+	 * @see com.eyeq.pivot4j.snapshot.CellSetSplicer
+	 */
+	public void setIncrementalDrill(boolean incrementalDrill) {
+		this.incrementalDrill = incrementalDrill;
+
+		if (!incrementalDrill) {
+			this.lastSnapshot = null;
+			this.lastMdx = null;
+		}
+	}
+
+	/**
+	 * @return the incrementalEvaluation
+	 */
+	public boolean isIncrementalEvaluation() {
+		return incrementalEvaluation;
+	}
+
+	/**
+	 * @param incrementalEvaluation
+	 *            true to reuse the result of a parameter until a value it has
+	 *            read from the expression context is changed. It should be
+	 *            enabled only when the expressions depend on nothing but the
+	 *            expression context.
+	 * @see com.eyeq.pivot4j.query.QueryAdapter#setIncrementalEvaluation(boolean)
+	 */
+	public void setIncrementalEvaluation(boolean incrementalEvaluation) {
+		this.incrementalEvaluation = incrementalEvaluation;
+
+		if (queryAdapter != null) {
+			queryAdapter.setIncrementalEvaluation(incrementalEvaluation);
+		}
+	}
+
+	/**
+	 * @return the compactAxes
+	 */
+	public boolean isCompactAxes() {
+		return compactAxes;
+	}
+
+	/**
+	 * @param compactAxes
+	 *            true to rewrite the member lists of the generated axes as
+	 *            equivalent Children, Descendants, Range or level Members
+	 *            sets, which makes large queries much shorter. It takes effect
+	 *            when the query is changed next time.
+	 * @see com.eyeq.pivot4j.query.ExpOptimizer
+	 */
+	public void setCompactAxes(boolean compactAxes) {
+		this.compactAxes = compactAxes;
+
+		if (queryAdapter != null) {
+			queryAdapter.setCompactAxes(compactAxes);
+		}
+	}
+
+	/**
+	 * @return the verifyCompactedAxes
+	 */
+	public boolean isVerifyCompactedAxes() {
+		return verifyCompactedAxes;
+	}
+
+	/**
+	 * @param verifyCompactedAxes
+	 *            true to execute the query before compacting its axes as well,
+	 *            and log an error if the results have different positions.
+	 *            It's meant to be used only for debugging.
+	 * @see #setCompactAxes(boolean)
+	 */
+	public void setVerifyCompactedAxes(boolean verifyCompactedAxes) {
+		this.verifyCompactedAxes = verifyCompactedAxes;
+
+		if (queryAdapter != null) {
+			queryAdapter.setVerifyCompactedAxes(verifyCompactedAxes);
+		}
+	}
+
+	/**
+	 * @return the connectionLeasing
+	 */
+	public boolean isConnectionLeasing() {
+		return connectionLeasing;
+	}
+
+	/**
+	 * Enables or disables the connection leasing mode. If enabled, the model
+	 * does not hold a connection for its whole lifetime but borrows one from
+	 * the data source when it's first needed, and gives it back when
+	 * {@link #returnConnection()} is called (e.g. at the end of each request),
+	 * so it's best used with a pooled data source. The metadata obtained from
+	 * the connection is discarded when it's returned, and the cube and the
+	 * members of the current state are resolved again from the next leased
+	 * connection. Query results are always kept as detached snapshots in this
+	 * mode.
+	 * <p>
+	 * This property should be set before the model is initialized.
+	 * 
+	 * @param connectionLeasing
+	 *            the connectionLeasing to set
+	 * @see com.eyeq.pivot4j.datasource.PooledOlapDataSource
+	 */
+	public void setConnectionLeasing(boolean connectionLeasing) {
+		if (isInitialized()) {
+			throw new IllegalStateException(
+					"Connection leasing mode cannot be changed after the model is initialized.");
+		}
+
+		this.connectionLeasing = connectionLeasing;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getQueryTimeout()
+	 */
+	@Override
+	public int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#setQueryTimeout(int)
+	 */
+	@Override
+	public void setQueryTimeout(int queryTimeout) {
+		if (queryTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Query timeout should not be a negative number : "
+							+ queryTimeout);
+		}
+
+		this.queryTimeout = queryTimeout;
+	}
+
 	/**
 	 * @see com.eyeq.pivot4j.PivotModel#refresh()
 	 */
@@ -417,19 +1236,240 @@ public class PivotModelImpl implements PivotModel {
 			logger.debug(mdx);
 		}
 
-		Date start = new Date(System.currentTimeMillis());
-
-		OlapStatement stmt = connection.createStatement();
-		CellSet cellSet = stmt.executeOlapQuery(mdx);
+		Date start = new Date(System.currentTimeMillis());
+
+		OlapStatement stmt = connection.createStatement();
+
+		TimerTask timeoutTask = null;
+
+		synchronized (statementLock) {
+			this.runningStatement = stmt;
+			this.runningThread = Thread.currentThread();
+			this.cancelled = false;
+			this.timedOut = false;
+		}
+
+		if (queryTimeout > 0) {
+			try {
+				stmt.setQueryTimeout(queryTimeout);
+			} catch (SQLException e) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Unable to set the query timeout : " + e);
+				}
+			}
+
+			// not all the drivers support the timeout, or report it in a way
+			// which can be told apart from other errors.
+			timeoutTask = scheduleTimeout(stmt);
+		}
+
+		CellSet cellSet;
+
+		try {
+			cellSet = stmt.executeOlapQuery(mdx);
+		} catch (OlapException e) {
+			long duration = System.currentTimeMillis() - start.getTime();
+
+			boolean wasCancelled;
+			boolean wasTimedOut;
+
+			synchronized (statementLock) {
+				wasCancelled = cancelled;
+				wasTimedOut = timedOut;
+			}
+
+			if (wasTimedOut || (queryTimeout > 0 && isTimeoutError(e))) {
+				fireQueryTimedOut(start, duration, mdx);
+
+				throw new QueryTimeoutException(String.format(
+						"Query execution exceeded the timeout : %d s",
+						queryTimeout), e);
+			} else if (wasCancelled) {
+				fireQueryCancelled(start, duration, mdx);
+
+				throw new QueryCancelledException(
+						"Query execution has been cancelled.", e);
+			}
+
+			fireQueryFailed(start, duration, mdx, e);
+
+			throw e;
+		} finally {
+			if (timeoutTask != null) {
+				timeoutTask.cancel();
+			}
+
+			synchronized (statementLock) {
+				this.runningStatement = null;
+				this.runningThread = null;
+			}
+		}
+
+		long duration = System.currentTimeMillis() - start.getTime();
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format("Query execution time : %d ms", duration));
+		}
+
+		fireQueryExecuted(start, duration, mdx);
+
+		return cellSet;
+	}
+
+	/**
+	 * Schedules a task which cancels the statement when it's still running
+	 * after the query timeout.
+	 * 
+	 * @param statement
+	 * @return
+	 */
+	private TimerTask scheduleTimeout(final OlapStatement statement) {
+		TimerTask task = new TimerTask() {
+
+			@Override
+			public void run() {
+				synchronized (statementLock) {
+					if (runningStatement != statement) {
+						return;
+					}
+
+					if (logger.isInfoEnabled()) {
+						logger.info("Cancelling the query which exceeded the timeout.");
+					}
+
+					timedOut = true;
+
+					try {
+						statement.cancel();
+					} catch (SQLException e) {
+						if (logger.isWarnEnabled()) {
+							logger.warn("Failed to cancel the query : " + e);
+						}
+					}
+				}
+			}
+		};
+
+		getTimeoutTimer().schedule(task, queryTimeout * 1000L);
+
+		return task;
+	}
+
+	/**
+	 * @return timer shared by all the models to cancel the queries which
+	 *         exceeded the timeout
+	 */
+	private static synchronized Timer getTimeoutTimer() {
+		if (timeoutTimer == null) {
+			timeoutTimer = new Timer("pivot4j-query-timeout", true);
+		}
+
+		return timeoutTimer;
+	}
+
+	/**
+	 * @param error
+	 * @return true if the error was reported by the driver because the query
+	 *         exceeded the timeout
+	 */
+	private static boolean isTimeoutError(Throwable error) {
+		Throwable cause = error;
+
+		while (cause != null) {
+			if (cause instanceof SQLTimeoutException) {
+				return true;
+			}
+
+			if (cause.getCause() == cause) {
+				break;
+			}
+
+			cause = cause.getCause();
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param mdx
+	 *            normalized and evaluated MDX query
+	 * @return
+	 * @throws OlapException
+	 */
+	protected CellSet executeQuery(String mdx) throws OlapException {
+		CellSet result;
+
+		try {
+			OlapConnection con = borrowConnection();
+
+			result = executeMdx(con, mdx);
+
+			if (snapshotMode || connectionLeasing || incrementalDrill) {
+				result = createSnapshot(result);
+			}
+		} catch (OlapException e) {
+			throw e;
+		} catch (SQLException e) {
+			throw new PivotException(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Copies the given result into a detached snapshot and releases the
+	 * statement which produced it.
+	 * 
+	 * @param cellSet
+	 * @return
+	 * @throws OlapException
+	 */
+	protected CellSet createSnapshot(CellSet cellSet) throws OlapException {
+		CellSet snapshot = new CellSetSnapshot(cellSet);
+
+		try {
+			OlapStatement statement = cellSet.getStatement();
+
+			cellSet.close();
+
+			if (statement != null) {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Failed to close the query result : " + e);
+			}
+		}
+
+		return snapshot;
+	}
 
-		long duration = System.currentTimeMillis() - start.getTime();
-		if (logger.isInfoEnabled()) {
-			logger.info(String.format("Query execution time : %d ms", duration));
+	/**
+	 * @param cellSet
+	 * @return the given result if it's already a snapshot, or a snapshot of
+	 *         it otherwise
+	 * @throws PivotException
+	 */
+	private CellSet detach(CellSet cellSet) {
+		if (cellSet instanceof CellSetSnapshot) {
+			return cellSet;
 		}
 
-		fireQueryExecuted(start, duration, mdx);
+		try {
+			return createSnapshot(cellSet);
+		} catch (OlapException e) {
+			throw new PivotException(e);
+		}
+	}
 
-		return cellSet;
+	/**
+	 * @param mdx
+	 *            canonical form of the evaluated MDX query
+	 * @return
+	 * @see #getCanonicalMdx()
+	 */
+	protected CellSetCacheKey createCacheKey(String mdx) {
+		return new CellSetCacheKey(dataSource, queryAdapter.getCubeName(), mdx,
+				roleName, getLocale());
 	}
 
 	protected String normalizeMdx(String mdx) {
@@ -454,6 +1494,45 @@ public class PivotModelImpl implements PivotModel {
 		return getCurrentMdx(true);
 	}
 
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getCanonicalMdx()
+	 */
+	@Override
+	public String getCanonicalMdx() {
+		if (queryAdapter == null) {
+			return null;
+		} else {
+			return queryAdapter.getCanonicalMdx(true);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getMdxFingerprint()
+	 */
+	@Override
+	public MdxFingerprint getMdxFingerprint() {
+		if (queryAdapter == null) {
+			return null;
+		} else {
+			return queryAdapter.getMdxFingerprint(true);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getAxisIndex(org.olap4j.Axis)
+	 */
+	@Override
+	public AxisIndex getAxisIndex(Axis axis) {
+		if (queryAdapter == null) {
+			return null;
+		}
+
+		// make sure the index is built for the current result
+		getCellSet();
+
+		return queryAdapter.getAxisIndex(axis);
+	}
+
 	/**
 	 * @param evaluated
 	 * @return
@@ -503,6 +1582,7 @@ public class PivotModelImpl implements PivotModel {
 		}
 
 		this.cellSet = null;
+		this.detachedState = null;
 		this.topBottomCount = 10;
 		this.sortCriteria = SortCriteria.ASC;
 		this.sorting = false;
@@ -517,7 +1597,13 @@ public class PivotModelImpl implements PivotModel {
 	}
 
 	protected QueryAdapter createQueryAdapter() {
-		return new QueryAdapter(this);
+		QueryAdapter adapter = new QueryAdapter(this, metadataCache);
+		adapter.setMdxParser(mdxParser);
+		adapter.setIncrementalEvaluation(incrementalEvaluation);
+		adapter.setCompactAxes(compactAxes);
+		adapter.setVerifyCompactedAxes(verifyCompactedAxes);
+
+		return adapter;
 	}
 
 	/**
@@ -526,6 +1612,10 @@ public class PivotModelImpl implements PivotModel {
 	 * @return QueryAdapter
 	 */
 	protected QueryAdapter getQueryAdapter() {
+		if (queryAdapter != null) {
+			attach();
+		}
+
 		return queryAdapter;
 	}
 
@@ -559,6 +1649,82 @@ public class PivotModelImpl implements PivotModel {
 		this.expressionEvaluatorFactory = factory;
 	}
 
+	/**
+	 * @return the cellSetCache
+	 */
+	public CellSetCache getCellSetCache() {
+		return cellSetCache;
+	}
+
+	/**
+	 * @param cellSetCache
+	 *            the cellSetCache to set, which might be shared with other
+	 *            model instances. Set it to null to disable result caching.
+	 *            Results are always kept as detached snapshots when the cache
+	 *            is enabled, as they should outlive the statement of the model
+	 *            which executed them.
+	 */
+	public void setCellSetCache(CellSetCache cellSetCache) {
+		this.cellSetCache = cellSetCache;
+	}
+
+	/**
+	 * @return the mdxParser
+	 */
+	public MdxParser getMdxParser() {
+		return mdxParser;
+	}
+
+	/**
+	 * @param mdxParser
+	 *            the mdxParser to set, which might be shared with other model
+	 *            instances to cache the parsed queries. Set it to null to use
+	 *            the default parser.
+	 * @see com.eyeq.pivot4j.mdx.impl.CachingMdxParser
+	 */
+	public void setMdxParser(MdxParser mdxParser) {
+		this.mdxParser = mdxParser;
+
+		if (queryAdapter != null) {
+			queryAdapter.setMdxParser(mdxParser);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#getMetricsCollector()
+	 */
+	@Override
+	public MetricsCollector getMetricsCollector() {
+		return metricsCollector;
+	}
+
+	/**
+	 * @param metricsCollector
+	 *            the metricsCollector to set
+	 */
+	public void setMetricsCollector(MetricsCollector metricsCollector) {
+		this.metricsCollector = metricsCollector;
+	}
+
+	/**
+	 * @return the queryCoalescer
+	 */
+	public QueryCoalescer getQueryCoalescer() {
+		return queryCoalescer;
+	}
+
+	/**
+	 * @param queryCoalescer
+	 *            the queryCoalescer to set, which should be shared with other
+	 *            model instances to let them run identical queries only once.
+	 *            Set it to null to disable coalescing. As the result will be
+	 *            shared among the models, it's always kept as a detached
+	 *            snapshot when coalescing is enabled.
+	 */
+	public void setQueryCoalescer(QueryCoalescer queryCoalescer) {
+		this.queryCoalescer = queryCoalescer;
+	}
+
 	/**
 	 * @see com.eyeq.pivot4j.tonbeller.jpivot.core.Model#addModelChangeListener(ModelChangeListener)
 	 */
@@ -583,7 +1749,69 @@ public class PivotModelImpl implements PivotModel {
 		}
 	}
 
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#beginUpdate()
+	 */
+	@Override
+	public synchronized void beginUpdate() {
+		if (updateLevel++ == 0 && queryAdapter != null) {
+			queryAdapter.beginUpdate();
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#endUpdate()
+	 */
+	@Override
+	public synchronized void endUpdate() {
+		if (updateLevel == 0) {
+			throw new IllegalStateException(
+					"endUpdate() was called without beginUpdate().");
+		}
+
+		if (updateLevel > 1) {
+			updateLevel--;
+			return;
+		}
+
+		try {
+			// the query change is turned into a deferred structure change
+			if (queryAdapter != null && queryAdapter.isUpdating()) {
+				queryAdapter.endUpdate();
+			}
+		} finally {
+			this.updateLevel = 0;
+		}
+
+		boolean structureChanged = structureChangeDeferred;
+		boolean modelChanged = modelChangeDeferred;
+
+		this.structureChangeDeferred = false;
+		this.modelChangeDeferred = false;
+
+		if (structureChanged) {
+			fireStructureChanged();
+		}
+
+		if (modelChanged) {
+			fireModelChanged();
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.PivotModel#isUpdating()
+	 */
+	@Override
+	public boolean isUpdating() {
+		return updateLevel > 0;
+	}
+
 	protected void fireModelChanged() {
+		if (updateLevel > 0) {
+			this.modelChangeDeferred = true;
+			return;
+		}
+
 		this.cellSet = null;
 
 		ModelChangeEvent e = new ModelChangeEvent(this);
@@ -596,6 +1824,11 @@ public class PivotModelImpl implements PivotModel {
 	}
 
 	protected void fireStructureChanged() {
+		if (updateLevel > 0) {
+			this.structureChangeDeferred = true;
+			return;
+		}
+
 		this.cellSet = null;
 
 		ModelChangeEvent e = new ModelChangeEvent(this);
@@ -634,6 +1867,10 @@ public class PivotModelImpl implements PivotModel {
 	protected void fireQueryExecuted(Date start, long duration, String mdx) {
 		QueryEvent e = new QueryEvent(this, start, duration, mdx, cellSet);
 
+		if (currentFlight != null) {
+			e.setCoalescedCount(currentFlight.getWaiterCount());
+		}
+
 		List<QueryListener> copiedListeners = new ArrayList<QueryListener>(
 				queryListeners);
 		for (QueryListener listener : copiedListeners) {
@@ -641,6 +1878,44 @@ public class PivotModelImpl implements PivotModel {
 		}
 	}
 
+	protected void fireQueryCancelled(Date start, long duration, String mdx) {
+		QueryEvent e = new QueryEvent(this, start, duration, mdx, null);
+
+		List<QueryListener> copiedListeners = new ArrayList<QueryListener>(
+				queryListeners);
+		for (QueryListener listener : copiedListeners) {
+			if (listener instanceof QueryExecutionListener) {
+				((QueryExecutionListener) listener).queryCancelled(e);
+			}
+		}
+	}
+
+	protected void fireQueryTimedOut(Date start, long duration, String mdx) {
+		QueryEvent e = new QueryEvent(this, start, duration, mdx, null);
+
+		List<QueryListener> copiedListeners = new ArrayList<QueryListener>(
+				queryListeners);
+		for (QueryListener listener : copiedListeners) {
+			if (listener instanceof QueryExecutionListener) {
+				((QueryExecutionListener) listener).queryTimedOut(e);
+			}
+		}
+	}
+
+	protected void fireQueryFailed(Date start, long duration, String mdx,
+			Throwable error) {
+		QueryEvent e = new QueryEvent(this, start, duration, mdx, null);
+		e.setError(error);
+
+		List<QueryListener> copiedListeners = new ArrayList<QueryListener>(
+				queryListeners);
+		for (QueryListener listener : copiedListeners) {
+			if (listener instanceof QueryExecutionListener) {
+				((QueryExecutionListener) listener).queryFailed(e);
+			}
+		}
+	}
+
 	/**
 	 * @see com.eyeq.pivot4j.PivotModel#getTransform(java.lang.Class)
 	 */
@@ -650,7 +1925,7 @@ public class PivotModelImpl implements PivotModel {
 					"No transform factory instance is available.");
 		}
 
-		return transformFactory.createTransform(type, queryAdapter);
+		return transformFactory.createTransform(type, getQueryAdapter());
 	}
 
 	/**
@@ -868,6 +2143,10 @@ public class PivotModelImpl implements PivotModel {
 	 */
 	@Override
 	public synchronized Serializable saveState() {
+		if (detachedState != null) {
+			return detachedState;
+		}
+
 		Serializable[] state = new Serializable[3];
 
 		state[0] = getCurrentMdx(false);
@@ -905,56 +2184,44 @@ public class PivotModelImpl implements PivotModel {
 
 		Serializable[] states = (Serializable[]) state;
 
+		if (queryAdapter != null) {
+			attach();
+		}
+
 		setMdx((String) states[0]);
 
 		if (!isInitialized()) {
 			initialize();
 		}
 
-		// sorting
-		if (states[1] == null) {
-			this.sortPosMembers = null;
-		} else {
-			try {
-				Cube cube = getCube();
-
-				Serializable[] sortStates = (Serializable[]) states[1];
+		restoreSortState(states[1]);
 
-				String[] sortPosUniqueNames = (String[]) sortStates[0];
-				if (sortPosUniqueNames == null) {
-					this.sortPosMembers = null;
-				} else {
-					this.sortPosMembers = new ArrayList<Member>(
-							sortPosUniqueNames.length);
-
-					for (int i = 0; i < sortPosUniqueNames.length; i++) {
-						Member member = cube.lookupMember(IdentifierNode
-								.parseIdentifier(sortPosUniqueNames[i])
-								.getSegmentList());
-						if (member == null) {
-							if (logger.isWarnEnabled()) {
-								logger.warn("Sort position member not found "
-										+ sortPosUniqueNames[i]);
-							}
-
-							break;
-						}
+		this.cellSet = null;
 
-						sortPosMembers.add(member);
-					}
+		queryAdapter.restoreState(states[2]);
+	}
 
-					this.topBottomCount = (Integer) sortStates[1];
-					this.sortCriteria = (SortCriteria) sortStates[2];
-					this.sorting = (Boolean) sortStates[3];
-				}
-			} catch (OlapException e) {
-				throw new PivotException(e);
+	/**
+	 * @param state
+	 */
+	private void restoreSortState(Serializable state) {
+		if (state == null) {
+			this.sortPosMembers = null;
+		} else {
+			Serializable[] sortStates = (Serializable[]) state;
+
+			String[] sortPosUniqueNames = (String[]) sortStates[0];
+			if (sortPosUniqueNames == null) {
+				this.sortPosMembers = null;
+			} else {
+				this.sortPosMembers = lookupSortMembers(Arrays
+						.asList(sortPosUniqueNames));
+
+				this.topBottomCount = (Integer) sortStates[1];
+				this.sortCriteria = (SortCriteria) sortStates[2];
+				this.sorting = (Boolean) sortStates[3];
 			}
 		}
-
-		this.cellSet = null;
-
-		queryAdapter.restoreState(states[2]);
 	}
 
 	/**
@@ -993,6 +2260,35 @@ public class PivotModelImpl implements PivotModel {
 		}
 	}
 
+	/**
+	 * @param uniqueNames
+	 * @return members of the given names up to the first one which cannot be
+	 *         found
+	 */
+	protected List<Member> lookupSortMembers(List<String> uniqueNames) {
+		MemberLookupCache memberCache = metadataCache.getMemberCache(getCube());
+
+		List<Member> members = memberCache.lookupMembers(uniqueNames);
+		List<Member> result = new ArrayList<Member>(members.size());
+
+		int index = 0;
+		for (Member member : members) {
+			if (member == null) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Sort position member not found "
+							+ uniqueNames.get(index));
+				}
+
+				break;
+			}
+
+			result.add(member);
+			index++;
+		}
+
+		return result;
+	}
+
 	/**
 	 * @see com.eyeq.pivot4j.state.Configurable#restoreSettings(org.apache.commons.configuration.HierarchicalConfiguration)
 	 */
@@ -1014,30 +2310,14 @@ public class PivotModelImpl implements PivotModel {
 		if (sortPosUniqueNames == null || sortPosUniqueNames.isEmpty()) {
 			this.sortPosMembers = null;
 		} else {
-			try {
-				Cube cube = getCube();
-
-				this.sortPosMembers = new ArrayList<Member>(
-						sortPosUniqueNames.size());
-
-				for (Object uniqueName : sortPosUniqueNames) {
-					Member member = cube.lookupMember(IdentifierNode
-							.parseIdentifier(uniqueName.toString())
-							.getSegmentList());
-					if (member == null) {
-						if (logger.isWarnEnabled()) {
-							logger.warn("Sort position member not found "
-									+ uniqueName);
-						}
-
-						break;
-					}
+			List<String> uniqueNames = new ArrayList<String>(
+					sortPosUniqueNames.size());
 
-					sortPosMembers.add(member);
-				}
-			} catch (OlapException e) {
-				throw new PivotException(e);
+			for (Object uniqueName : sortPosUniqueNames) {
+				uniqueNames.add(uniqueName.toString());
 			}
+
+			this.sortPosMembers = lookupSortMembers(uniqueNames);
 		}
 
 		this.topBottomCount = configuration.getInt(
@@ -1054,6 +2334,51 @@ public class PivotModelImpl implements PivotModel {
 		this.cellSet = null;
 	}
 
+	class QueryTask extends FutureTask<CellSet> {
+
+		private volatile Thread worker;
+
+		QueryTask() {
+			super(new Callable<CellSet>() {
+
+				@Override
+				public CellSet call() throws Exception {
+					return getCellSet();
+				}
+			});
+		}
+
+		/**
+		 * @see java.util.concurrent.FutureTask#run()
+		 */
+		@Override
+		public void run() {
+			this.worker = Thread.currentThread();
+
+			try {
+				super.run();
+			} finally {
+				this.worker = null;
+			}
+		}
+
+		/**
+		 * @see java.util.concurrent.FutureTask#cancel(boolean)
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			Thread thread = worker;
+
+			boolean result = super.cancel(mayInterruptIfRunning);
+
+			if (result && thread != null) {
+				cancelQuery(thread);
+			}
+
+			return result;
+		}
+	}
+
 	enum PredefinedNames {
 
 		cube {
@@ -1083,7 +2408,14 @@ public class PivotModelImpl implements PivotModel {
 		memberUtils {
 			@Override
 			Object getValue(PivotModelImpl model) {
-				return new OlapUtils(model.getCube());
+				Cube cube = model.getCube();
+				return new OlapUtils(cube, model.getMetadataCache()
+						.getMemberCache(cube));
+			}
+
+			@Override
+			Object getVersion(PivotModelImpl model) {
+				return model.getCube();
 			}
 		},
 		connection {
@@ -1094,12 +2426,25 @@ public class PivotModelImpl implements PivotModel {
 		};
 
 		abstract Object getValue(PivotModelImpl model);
+
+		/**
+		 * @param model
+		 * @return object which changes whenever the value changes
+		 */
+		Object getVersion(PivotModelImpl model) {
+			return getValue(model);
+		}
 	};
 
-	protected class ExpressionContext extends AbstractMap<String, Object> {
+	protected class ExpressionContext extends AbstractMap<String, Object>
+			implements VersionedContext {
 
 		private Map<String, Object> attributes = new HashMap<String, Object>();
 
+		private Map<String, Long> versions = new HashMap<String, Long>();
+
+		private long version = 0;
+
 		protected boolean isPredefined(String key) {
 			try {
 				PredefinedNames.valueOf(key);
@@ -1120,6 +2465,10 @@ public class PivotModelImpl implements PivotModel {
 								+ key);
 			}
 
+			if (value != attributes.get(key) || !attributes.containsKey(key)) {
+				versions.put(key, ++version);
+			}
+
 			return attributes.put(key, value);
 		}
 
@@ -1136,7 +2485,10 @@ public class PivotModelImpl implements PivotModel {
 				}
 			}
 
-			attributes.putAll(m);
+			for (Entry<? extends String, ? extends Object> entry : m
+					.entrySet()) {
+				put(entry.getKey(), entry.getValue());
+			}
 		}
 
 		/**
@@ -1150,9 +2502,26 @@ public class PivotModelImpl implements PivotModel {
 								+ key);
 			}
 
+			if (attributes.containsKey(key)) {
+				versions.put((String) key, ++version);
+			}
+
 			return attributes.remove(key);
 		}
 
+		/**
+		 * @see com.eyeq.pivot4j.el.VersionedContext#getVersion(java.lang.String)
+		 */
+		@Override
+		public Object getVersion(String key) {
+			if (isPredefined(key)) {
+				return PredefinedNames.valueOf(key).getVersion(
+						PivotModelImpl.this);
+			}
+
+			return versions.get(key);
+		}
+
 		/**
 		 * @see java.util.HashMap#clear()
 		 */
@@ -97,6 +97,16 @@ public abstract class ExpressionParameter extends AbstractExp {
 	 */
 	@Override
 	public String toMdx() {
+		return toMdx(evaluated);
+	}
+
+	/**
+	 * @param evaluated
+	 *            true to return the evaluated result, or false to return the
+	 *            original expression regardless of the evaluated flag
+	 * @return
+	 */
+	public String toMdx(boolean evaluated) {
 		if (evaluated) {
 			return result == null ? "" : result;
 		} else {
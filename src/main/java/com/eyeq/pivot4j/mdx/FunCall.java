@@ -9,8 +9,16 @@
 package com.eyeq.pivot4j.mdx;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Function call of which arguments cannot be changed once it's created, so
+ * that it can be shared by the copies of a statement. Build the arguments
+ * first, and create a new instance to replace an existing call.
+ * 
+ * @see MdxStatement#copy()
+ */
 public class FunCall extends AbstractExp {
 
 	private static final long serialVersionUID = -1747077227822699594L;
@@ -19,9 +27,10 @@ public class FunCall extends AbstractExp {
 
 	private String function;
 
-	private List<Exp> args = new ArrayList<Exp>();
+	private List<Exp> args;
 
 	public FunCall() {
+		this(null, null, null);
 	}
 
 	/**
@@ -48,8 +57,11 @@ public class FunCall extends AbstractExp {
 		this.function = function;
 		this.type = type;
 
-		if (args != null) {
-			this.args.addAll(args);
+		if (args == null || args.isEmpty()) {
+			this.args = Collections.emptyList();
+		} else {
+			this.args = Collections
+					.unmodifiableList(new ArrayList<Exp>(args));
 		}
 	}
 
@@ -60,14 +72,6 @@ public class FunCall extends AbstractExp {
 		return function;
 	}
 
-	/**
-	 * @param function
-	 *            the function to set
-	 */
-	public void setFunction(String function) {
-		this.function = function;
-	}
-
 	/**
 	 * @return the type
 	 */
@@ -75,18 +79,10 @@ public class FunCall extends AbstractExp {
 		return type;
 	}
 
-	/**
-	 * @param type
-	 *            the type to set
-	 */
-	public void setType(Syntax type) {
-		this.type = type;
-	}
-
 	/**
 	 * Returns the args.
 	 * 
-	 * @return Exp[]
+	 * @return unmodifiable list of the arguments
 	 */
 	public List<Exp> getArgs() {
 		return args;
@@ -0,0 +1,240 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.NullArgumentException;
+
+/**
+ * Writes statements in a canonical form, so that queries which differ only
+ * in insignificant details are written identically. Along with the
+ * differences which are already lost while parsing (e.g. white spaces and
+ * case of the keywords), the following are normalized :
+ * <ul>
+ * <li>Names of the functions, properties and methods are written in upper
+ * case.</li>
+ * <li>Unquoted parts of multi-part identifiers and the cube name are enclosed
+ * in brackets.</li>
+ * <li>Parentheses directly enclosing another parenthesized expression are
+ * removed. Parentheses around a single operand are kept whether the operand
+ * is parsed (e.g. an identifier) or generated (e.g. a member), since they
+ * can't be told apart from a tuple with a single member.</li>
+ * <li>Unquoted names of the cell and dimension properties are written in
+ * upper case, and cell properties are sorted without duplicates. Dimension
+ * properties are kept in their original order since it decides the order of
+ * the properties in the result.</li>
+ * </ul>
+ * Only the names of the functions, keywords and properties are folded.
+ * Identifiers of the metadata objects (e.g. the hierarchy and level parts of
+ * a dimension property) are kept as they are, since whether they are case
+ * sensitive depends on the server.
+ *
+ * @see MdxFingerprint
+ */
+public class MdxCanonicalizer extends MdxSerializer {
+
+	public MdxCanonicalizer() {
+	}
+
+	/**
+	 * @param evaluated
+	 *            true to write the evaluated results of parameters, false to
+	 *            write their original expressions, or null to respect their
+	 *            own evaluated flags
+	 */
+	public MdxCanonicalizer(Boolean evaluated) {
+		super(evaluated);
+	}
+
+	/**
+	 * @param statement
+	 * @return fingerprint of the canonical form of the statement
+	 */
+	public MdxFingerprint fingerprint(MdxStatement statement) {
+		if (statement == null) {
+			throw new NullArgumentException("statement");
+		}
+
+		return MdxFingerprint.compute(toMdx(statement));
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.mdx.MdxSerializer#appendStatement(com.eyeq.pivot4j.mdx.MdxStatement,
+	 *      java.lang.Appendable)
+	 */
+	@Override
+	protected boolean appendStatement(MdxStatement exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		MdxStatement statement = exp.copy();
+
+		CompoundId cube = statement.getCube();
+
+		if (cube != null && cube.getNames().size() == 1) {
+			String name = cube.getNames().get(0).getName();
+
+			if (name != null && !isQuoted(name)) {
+				statement.setCube(new CompoundId(quote(name)));
+			}
+		}
+
+		if (!statement.getCellProperties().isEmpty()) {
+			TreeSet<String> names = new TreeSet<String>();
+
+			for (CompoundId property : statement.getCellProperties()) {
+				names.add(upperCase(property).toMdx());
+			}
+
+			statement.getCellProperties().clear();
+
+			for (String name : names) {
+				statement.getCellProperties().add(new CompoundId(name));
+			}
+		}
+
+		for (QueryAxis axis : statement.getAxes()) {
+			List<CompoundId> properties = axis.getDimensionProperties();
+
+			if (!properties.isEmpty()) {
+				List<CompoundId> names = new ArrayList<CompoundId>(
+						properties.size());
+
+				for (CompoundId property : properties) {
+					names.add(upperCase(property));
+				}
+
+				properties.clear();
+				properties.addAll(names);
+			}
+		}
+
+		return super.appendStatement(statement, out, evaluated);
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.mdx.MdxSerializer#appendFunCallSyntax(com.eyeq.pivot4j.mdx.FunCall,
+	 *      java.lang.Appendable)
+	 */
+	@Override
+	protected boolean appendFunCallSyntax(FunCall exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		Syntax type = exp.getType();
+
+		if (type == Syntax.Parentheses && exp.getArgs().size() == 1) {
+			Exp arg = exp.getArgs().get(0);
+
+			if (arg instanceof FunCall
+					&& ((FunCall) arg).getType() == Syntax.Parentheses) {
+				return append(arg, out, evaluated);
+			}
+		}
+
+		String function = exp.getFunction();
+
+		boolean named = type == Syntax.Function || type == Syntax.Property
+				|| type == Syntax.Method;
+
+		if (named && function != null && !isQuoted(function)) {
+			String name = function.toUpperCase(Locale.ENGLISH);
+
+			if (!name.equals(function)) {
+				exp = new FunCall(name, type, exp.getArgs());
+			}
+		}
+
+		return super.appendFunCallSyntax(exp, out, evaluated);
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.mdx.MdxSerializer#appendCompoundId(com.eyeq.pivot4j.mdx.CompoundId,
+	 *      java.lang.Appendable)
+	 */
+	@Override
+	protected void appendCompoundId(CompoundId exp, Appendable out)
+			throws IOException {
+		List<CompoundId.NamePart> names = exp.getNames();
+
+		if (names.size() < 2) {
+			super.appendCompoundId(exp, out);
+			return;
+		}
+
+		boolean isFollow = false;
+
+		for (CompoundId.NamePart part : names) {
+			if (isFollow) {
+				out.append('.');
+			} else {
+				isFollow = true;
+			}
+
+			if (part.isKey()) {
+				out.append('&');
+			}
+
+			String name = part.getName();
+
+			if (name == null || isQuoted(name)) {
+				out.append(String.valueOf(name));
+			} else {
+				out.append(quote(name));
+			}
+		}
+	}
+
+	/**
+	 * Writes the property name, which is the last part of the identifier, in
+	 * upper case unless it's quoted. Preceding parts identify the hierarchy
+	 * or level of the property, so they are kept as they are.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	private CompoundId upperCase(CompoundId id) {
+		CompoundId result = new CompoundId();
+
+		List<CompoundId.NamePart> parts = id.getNames();
+
+		int last = parts.size() - 1;
+
+		for (int i = 0; i <= last; i++) {
+			CompoundId.NamePart part = parts.get(i);
+
+			String name = part.getName();
+
+			if (i == last && name != null && !isQuoted(name)) {
+				name = name.toUpperCase(Locale.ENGLISH);
+			}
+
+			result.append(name, part.isKey());
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	private static boolean isQuoted(String name) {
+		return name.startsWith("[");
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	private static String quote(String name) {
+		return "[" + name.replace("]", "]]") + "]";
+	}
+}
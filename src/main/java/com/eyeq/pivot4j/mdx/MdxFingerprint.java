@@ -0,0 +1,213 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang.NullArgumentException;
+
+/**
+ * 128 bit fingerprint of a canonical MDX query, computed with the x64 variant
+ * of MurmurHash3 over its UTF-8 representation. Either half of it can be used
+ * as a 64 bit fingerprint.
+ *
+ * @see MdxCanonicalizer
+ */
+public class MdxFingerprint implements Serializable {
+
+	private static final long serialVersionUID = -1823460157283659711L;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final long C1 = 0x87c37b91114253d5L;
+
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final long high;
+
+	private final long low;
+
+	/**
+	 * @param high
+	 * @param low
+	 */
+	public MdxFingerprint(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * @param mdx
+	 * @return
+	 */
+	public static MdxFingerprint compute(String mdx) {
+		if (mdx == null) {
+			throw new NullArgumentException("mdx");
+		}
+
+		byte[] data = mdx.getBytes(UTF8);
+
+		int length = data.length;
+		int blocks = length / 16;
+
+		long h1 = 0;
+		long h2 = 0;
+
+		for (int i = 0; i < blocks; i++) {
+			long k1 = getLong(data, i * 16);
+			long k2 = getLong(data, i * 16 + 8);
+
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		int tail = blocks * 16;
+		int remaining = length - tail;
+
+		long k1 = 0;
+		long k2 = 0;
+
+		for (int i = remaining - 1; i >= 8; i--) {
+			k2 ^= (data[tail + i] & 0xffL) << ((i - 8) * 8);
+		}
+
+		if (remaining > 8) {
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+		}
+
+		for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+			k1 ^= (data[tail + i] & 0xffL) << (i * 8);
+		}
+
+		if (remaining > 0) {
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+
+		h1 += h2;
+		h2 += h1;
+
+		h1 = mix(h1);
+		h2 = mix(h2);
+
+		h1 += h2;
+		h2 += h1;
+
+		return new MdxFingerprint(h1, h2);
+	}
+
+	/**
+	 * @param data
+	 * @param offset
+	 * @return
+	 */
+	private static long getLong(byte[] data, int offset) {
+		long value = 0;
+
+		for (int i = 7; i >= 0; i--) {
+			value = (value << 8) | (data[offset + i] & 0xffL);
+		}
+
+		return value;
+	}
+
+	/**
+	 * @param k
+	 * @return
+	 */
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+
+		return k;
+	}
+
+	/**
+	 * @return the high
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the low
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * @return 64 bit fingerprint
+	 */
+	public long longValue() {
+		return high;
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (int) high;
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (obj == null) {
+			return false;
+		} else if (getClass() != obj.getClass()) {
+			return false;
+		}
+
+		MdxFingerprint other = (MdxFingerprint) obj;
+
+		return high == other.high && low == other.low;
+	}
+
+	/**
+	 * @return 32 digit hexadecimal representation of the fingerprint
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+}
@@ -0,0 +1,821 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import com.eyeq.pivot4j.PivotException;
+import com.eyeq.pivot4j.mdx.metadata.AbstractMetadataExp;
+
+/**
+ * Writes an expression tree into a single {@link Appendable}, instead of
+ * concatenating the strings returned by {@link Exp#toMdx()} of each node,
+ * which copies the same characters over and over for deeply nested axis
+ * sets.
+ * <p>
+ * The output is identical to that of {@link Exp#toMdx()}. Expression types
+ * which are not known to the serializer are written with their own
+ * {@link Exp#toMdx()} methods.
+ * <p>
+ * Optionally, fragments of large function calls can be memoized so that
+ * subtrees which are shared among the successive versions of a query (e.g.
+ * the axes which have not been changed) are written without being traversed
+ * again. It relies on the copy-on-write convention of the query model, so
+ * it should not be enabled when the expressions are modified in place after
+ * they have been written. Subtrees which contain parameters are never
+ * memoized since their results might change on each evaluation.
+ */
+public class MdxSerializer {
+
+	public static final int DEFAULT_MIN_FRAGMENT_LENGTH = 256;
+
+	private Boolean evaluated;
+
+	private boolean estimateSize = false;
+
+	private boolean memoizeFragments = false;
+
+	private int minFragmentLength = DEFAULT_MIN_FRAGMENT_LENGTH;
+
+	private Map<Exp, String> fragments = new WeakHashMap<Exp, String>();
+
+	public MdxSerializer() {
+	}
+
+	/**
+	 * @param evaluated
+	 *            true to write the evaluated results of parameters, false to
+	 *            write their original expressions, or null to respect their
+	 *            own evaluated flags
+	 */
+	public MdxSerializer(Boolean evaluated) {
+		this.evaluated = evaluated;
+	}
+
+	/**
+	 * @return the evaluated
+	 */
+	public Boolean getEvaluated() {
+		return evaluated;
+	}
+
+	/**
+	 * @param evaluated
+	 *            true to write the evaluated results of parameters, false to
+	 *            write their original expressions, or null to respect their
+	 *            own evaluated flags
+	 */
+	public void setEvaluated(Boolean evaluated) {
+		this.evaluated = evaluated;
+	}
+
+	/**
+	 * @return the estimateSize
+	 */
+	public boolean isEstimateSize() {
+		return estimateSize;
+	}
+
+	/**
+	 * @param estimateSize
+	 *            true to allocate the buffer of {@link #toMdx(Exp)} with the
+	 *            estimated size of the output
+	 */
+	public void setEstimateSize(boolean estimateSize) {
+		this.estimateSize = estimateSize;
+	}
+
+	/**
+	 * @return the memoizeFragments
+	 */
+	public boolean isMemoizeFragments() {
+		return memoizeFragments;
+	}
+
+	/**
+	 * @param memoizeFragments
+	 *            true to keep the output of large subtrees to be reused
+	 */
+	public void setMemoizeFragments(boolean memoizeFragments) {
+		this.memoizeFragments = memoizeFragments;
+
+		if (!memoizeFragments) {
+			clearFragments();
+		}
+	}
+
+	/**
+	 * @return the minFragmentLength
+	 */
+	public int getMinFragmentLength() {
+		return minFragmentLength;
+	}
+
+	/**
+	 * @param minFragmentLength
+	 *            minimum length of a fragment to be memoized
+	 */
+	public void setMinFragmentLength(int minFragmentLength) {
+		this.minFragmentLength = minFragmentLength;
+	}
+
+	public void clearFragments() {
+		synchronized (fragments) {
+			fragments.clear();
+		}
+	}
+
+	/**
+	 * @param exp
+	 * @return
+	 */
+	public String toMdx(Exp exp) {
+		return toMdx(exp, evaluated);
+	}
+
+	/**
+	 * @param exp
+	 * @param evaluated
+	 *            true to write the evaluated results of parameters, false to
+	 *            write their original expressions, or null to respect their
+	 *            own evaluated flags
+	 * @return
+	 */
+	public String toMdx(Exp exp, Boolean evaluated) {
+		if (exp == null) {
+			throw new NullArgumentException("exp");
+		}
+
+		StringBuilder builder;
+
+		if (estimateSize) {
+			builder = new StringBuilder(estimateSize(exp));
+		} else {
+			builder = new StringBuilder();
+		}
+
+		try {
+			write(exp, builder, evaluated);
+		} catch (IOException e) {
+			// should not happen with StringBuilder.
+			throw new PivotException(e);
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(Exp exp, Appendable out) throws IOException {
+		write(exp, out, evaluated);
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 *            true to write the evaluated results of parameters, false to
+	 *            write their original expressions, or null to respect their
+	 *            own evaluated flags
+	 * @throws IOException
+	 */
+	public void write(Exp exp, Appendable out, Boolean evaluated)
+			throws IOException {
+		if (exp == null) {
+			throw new NullArgumentException("exp");
+		}
+
+		if (out == null) {
+			throw new NullArgumentException("out");
+		}
+
+		append(exp, out, evaluated);
+	}
+
+	/**
+	 * Returns the approximate length of the output, which is usually a little
+	 * larger than the actual length.
+	 *
+	 * @param exp
+	 * @return
+	 */
+	public int estimateSize(Exp exp) {
+		if (exp == null) {
+			return 4;
+		}
+
+		if (memoizeFragments) {
+			String fragment;
+
+			synchronized (fragments) {
+				fragment = fragments.get(exp);
+			}
+
+			if (fragment != null) {
+				return fragment.length();
+			}
+		}
+
+		int size = 0;
+
+		if (exp instanceof MdxStatement) {
+			MdxStatement stmt = (MdxStatement) exp;
+
+			size += 32;
+
+			for (Formula formula : stmt.getFormulas()) {
+				size += estimateSize(formula) + 1;
+			}
+
+			for (QueryAxis axis : stmt.getAxes()) {
+				size += estimateSize(axis) + 2;
+			}
+
+			size += estimateSize(stmt.getCube());
+
+			if (stmt.getSlicer() != null) {
+				size += estimateSize(stmt.getSlicer()) + 7;
+			}
+
+			for (CompoundId property : stmt.getCellProperties()) {
+				size += estimateSize(property) + 2;
+			}
+
+			for (SapVariable variable : stmt.getSapVariables()) {
+				size += estimateSize(variable) + 2;
+			}
+		} else if (exp instanceof QueryAxis) {
+			QueryAxis axis = (QueryAxis) exp;
+
+			size += 24 + estimateSize(axis.getExp());
+
+			for (CompoundId property : axis.getDimensionProperties()) {
+				size += estimateSize(property) + 1;
+			}
+		} else if (exp instanceof FunCall) {
+			FunCall call = (FunCall) exp;
+
+			String function = call.getFunction();
+
+			size += (function == null ? 4 : function.length()) + 2;
+
+			for (Exp arg : call.getArgs()) {
+				size += estimateSize(arg) + 2;
+			}
+		} else if (exp instanceof CompoundId) {
+			for (CompoundId.NamePart part : ((CompoundId) exp).getNames()) {
+				String name = part.getName();
+				size += (name == null ? 4 : name.length()) + 2;
+			}
+		} else if (exp instanceof AbstractMetadataExp<?>) {
+			String uniqueName = ((AbstractMetadataExp<?>) exp).getUniqueName();
+			size += uniqueName == null ? 0 : uniqueName.length();
+		} else if (exp instanceof Formula) {
+			Formula formula = (Formula) exp;
+
+			size += 16 + estimateSize(formula.getName())
+					+ estimateSize(formula.getExp());
+
+			for (Formula.Property property : formula.getProperties()) {
+				size += estimateSize(property.getExp()) + 16;
+			}
+		} else {
+			// literals, parameters and unknown expressions
+			size += 16;
+		}
+
+		return size;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return true if the output of the expression can be memoized
+	 * @throws IOException
+	 */
+	protected boolean append(Exp exp, Appendable out, Boolean evaluated)
+			throws IOException {
+		if (exp instanceof FunCall) {
+			return appendFunCall((FunCall) exp, out, evaluated);
+		} else if (exp instanceof CompoundId) {
+			appendCompoundId((CompoundId) exp, out);
+		} else if (exp instanceof AbstractMetadataExp<?>) {
+			String uniqueName = ((AbstractMetadataExp<?>) exp).getUniqueName();
+			if (uniqueName != null) {
+				out.append(uniqueName);
+			}
+		} else if (exp instanceof Literal) {
+			out.append(exp.toMdx());
+		} else if (exp instanceof MdxStatement) {
+			return appendStatement((MdxStatement) exp, out, evaluated);
+		} else if (exp instanceof QueryAxis) {
+			return appendQueryAxis((QueryAxis) exp, out, evaluated);
+		} else if (exp instanceof Formula) {
+			return appendFormula((Formula) exp, out, evaluated);
+		} else if (exp instanceof Formula.Property) {
+			return appendFormulaProperty((Formula.Property) exp, out,
+					evaluated);
+		} else if (exp instanceof SapVariable) {
+			return appendSapVariable((SapVariable) exp, out, evaluated);
+		} else if (exp instanceof SapVariable.Value) {
+			return appendSapVariableValue((SapVariable.Value) exp, out,
+					evaluated);
+		} else if (exp instanceof ExpressionParameter) {
+			ExpressionParameter parameter = (ExpressionParameter) exp;
+
+			if (evaluated == null) {
+				out.append(parameter.toMdx());
+			} else {
+				out.append(parameter.toMdx(evaluated));
+			}
+
+			return false;
+		} else {
+			out.append(exp.toMdx());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 */
+	protected boolean appendFunCall(FunCall exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		if (!memoizeFragments || !(out instanceof StringBuilder)) {
+			return appendFunCallSyntax(exp, out, evaluated);
+		}
+
+		String fragment;
+
+		synchronized (fragments) {
+			fragment = fragments.get(exp);
+		}
+
+		if (fragment != null) {
+			out.append(fragment);
+			return true;
+		}
+
+		StringBuilder builder = (StringBuilder) out;
+
+		int start = builder.length();
+
+		boolean cacheable = appendFunCallSyntax(exp, out, evaluated);
+
+		if (cacheable && builder.length() - start >= minFragmentLength) {
+			synchronized (fragments) {
+				fragments.put(exp, builder.substring(start));
+			}
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see Syntax#toMdx(String, List)
+	 */
+	protected boolean appendFunCallSyntax(FunCall exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		Syntax type = exp.getType();
+
+		if (type == null) {
+			out.append(exp.toMdx());
+			return false;
+		}
+
+		String function = exp.getFunction();
+		List<Exp> args = exp.getArgs();
+
+		boolean cacheable = true;
+
+		switch (type) {
+		case Function:
+			out.append(String.valueOf(function));
+			cacheable = appendList(args, "(", ")", out, evaluated);
+			break;
+		case Braces:
+			cacheable = appendList(args, "{", "}", out, evaluated);
+			break;
+		case Parentheses:
+			cacheable = appendList(args, "(", ")", out, evaluated);
+			break;
+		case Property:
+			if (!args.isEmpty()) {
+				cacheable = append(args.get(0), out, evaluated);
+			}
+
+			out.append('.');
+			out.append(String.valueOf(function));
+			break;
+		case PropertyQuoted:
+		case PropertyAmpQuoted:
+			if (!args.isEmpty()) {
+				cacheable = append(args.get(0), out, evaluated);
+
+				out.append('.');
+				out.append(String.valueOf(function));
+			}
+			break;
+		case Method:
+			if (!args.isEmpty()) {
+				cacheable = append(args.get(0), out, evaluated);
+			}
+
+			out.append('.');
+			out.append(String.valueOf(function));
+			out.append('(');
+
+			if (args.size() > 1) {
+				cacheable &= append(args.get(1), out, evaluated);
+			}
+
+			out.append(')');
+			break;
+		case Infix:
+			if (!args.isEmpty()) {
+				cacheable = append(args.get(0), out, evaluated);
+				out.append(' ');
+			}
+
+			out.append(String.valueOf(function));
+
+			if (args.size() > 1) {
+				out.append(' ');
+				cacheable &= append(args.get(1), out, evaluated);
+			}
+			break;
+		case Prefix:
+			out.append(String.valueOf(function));
+
+			if (!args.isEmpty()) {
+				out.append(' ');
+				cacheable = append(args.get(0), out, evaluated);
+			}
+			break;
+		default:
+			// let it fail in the same way
+			out.append(type.toMdx(function, args));
+			cacheable = false;
+			break;
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param args
+	 * @param open
+	 * @param close
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 */
+	private boolean appendList(List<Exp> args, String open, String close,
+			Appendable out,
+			Boolean evaluated) throws IOException {
+		boolean cacheable = true;
+
+		out.append(open);
+
+		boolean isFollow = false;
+		for (Exp arg : args) {
+			if (isFollow) {
+				out.append(", ");
+			} else {
+				isFollow = true;
+			}
+
+			cacheable &= append(arg, out, evaluated);
+		}
+
+		out.append(close);
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @throws IOException
+	 * @see CompoundId#toMdx()
+	 */
+	protected void appendCompoundId(CompoundId exp, Appendable out)
+			throws IOException {
+		boolean isFollow = false;
+
+		for (CompoundId.NamePart part : exp.getNames()) {
+			if (isFollow) {
+				out.append('.');
+			} else {
+				isFollow = true;
+			}
+
+			if (part.isKey()) {
+				out.append('&');
+			}
+
+			out.append(String.valueOf(part.getName()));
+		}
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see MdxStatement#toMdx()
+	 */
+	protected boolean appendStatement(MdxStatement exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		boolean cacheable = true;
+
+		boolean isFollow;
+
+		if (!exp.getFormulas().isEmpty()) {
+			out.append("WITH");
+
+			for (Formula element : exp.getFormulas()) {
+				out.append(' ');
+				cacheable &= appendFormula(element, out, evaluated);
+			}
+
+			out.append(' ');
+		}
+
+		out.append("SELECT");
+
+		isFollow = false;
+
+		for (QueryAxis qa : exp.getAxes()) {
+			if (isFollow) {
+				out.append(", ");
+			} else {
+				out.append(' ');
+			}
+
+			isFollow = true;
+			cacheable &= appendQueryAxis(qa, out, evaluated);
+		}
+
+		out.append(" FROM ");
+
+		if (exp.getCube() == null) {
+			out.append("null");
+		} else {
+			appendCompoundId(exp.getCube(), out);
+		}
+
+		if (exp.getSlicer() != null) {
+			out.append(" WHERE ");
+			cacheable &= append(exp.getSlicer(), out, evaluated);
+		}
+
+		if (!exp.getCellProperties().isEmpty()) {
+			out.append(" CELL PROPERTIES VALUE, FORMATTED_VALUE");
+
+			for (CompoundId cid : exp.getCellProperties()) {
+				String str = cid.toMdx();
+
+				if (str.equalsIgnoreCase("VALUE")) {
+					continue; // default
+				} else if (str.equalsIgnoreCase("FORMATTED_VALUE")) {
+					continue; // default
+				}
+
+				out.append(" ,");
+				out.append(str);
+			}
+		}
+
+		if (!exp.getSapVariables().isEmpty()) {
+			out.append(" SAP VARIABLES ");
+
+			isFollow = false;
+
+			for (SapVariable sapVariable : exp.getSapVariables()) {
+				if (isFollow) {
+					out.append(", ");
+				} else {
+					isFollow = true;
+				}
+
+				cacheable &= appendSapVariable(sapVariable, out, evaluated);
+			}
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see QueryAxis#toMdx()
+	 */
+	protected boolean appendQueryAxis(QueryAxis exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		boolean cacheable = true;
+
+		if (exp.getExp() == null) {
+			out.append("{}");
+		} else {
+			if (exp.isNonEmpty()) {
+				out.append("NON EMPTY ");
+			}
+
+			cacheable = append(exp.getExp(), out, evaluated);
+
+			if (!exp.getDimensionProperties().isEmpty()) {
+				out.append(" DIMENSION PROPERTIES ");
+
+				boolean isFollow = false;
+
+				for (CompoundId property : exp.getDimensionProperties()) {
+					if (isFollow) {
+						out.append(',');
+					} else {
+						isFollow = true;
+					}
+
+					appendCompoundId(property, out);
+				}
+			}
+		}
+
+		out.append(" ON ");
+
+		if (exp.getAxis() != null) {
+			out.append(exp.getAxis().name());
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see Formula#toMdx()
+	 */
+	protected boolean appendFormula(Formula exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		boolean cacheable = true;
+
+		if (exp.getType() != null) {
+			out.append(exp.getType().name());
+			out.append(' ');
+		}
+
+		if (exp.getName() != null) {
+			appendCompoundId(exp.getName(), out);
+		}
+
+		out.append(" AS '");
+
+		if (exp.getExp() != null) {
+			cacheable = append(exp.getExp(), out, evaluated);
+		}
+
+		out.append('\'');
+
+		for (Formula.Property property : exp.getProperties()) {
+			out.append(',');
+			cacheable &= appendFormulaProperty(property, out, evaluated);
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see Formula.Property#toMdx()
+	 */
+	protected boolean appendFormulaProperty(Formula.Property exp,
+			Appendable out,
+			Boolean evaluated) throws IOException {
+		boolean cacheable = true;
+
+		if (exp.getName() != null) {
+			out.append(exp.getName());
+		}
+
+		out.append(" = ");
+
+		if (exp.getExp() != null) {
+			cacheable = append(exp.getExp(), out, evaluated);
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see SapVariable#toMdx()
+	 */
+	protected boolean appendSapVariable(SapVariable exp, Appendable out,
+			Boolean evaluated) throws IOException {
+		if (exp.getValues().isEmpty()) {
+			return true;
+		}
+
+		boolean cacheable = true;
+
+		if (exp.getName() != null) {
+			appendCompoundId(exp.getName(), out);
+			out.append(' ');
+		}
+
+		boolean first = true;
+
+		for (SapVariable.Value value : exp.getValues()) {
+			if (first) {
+				first = false;
+			} else {
+				out.append(' ');
+			}
+
+			cacheable &= appendSapVariableValue(value, out, evaluated);
+		}
+
+		return cacheable;
+	}
+
+	/**
+	 * @param exp
+	 * @param out
+	 * @param evaluated
+	 * @return
+	 * @throws IOException
+	 * @see SapVariable.Value#toMdx()
+	 */
+	protected boolean appendSapVariableValue(SapVariable.Value exp,
+			Appendable out,
+			Boolean evaluated) throws IOException {
+		Exp lowValue = exp.getLowValue();
+		Exp highValue = exp.getHighValue();
+
+		if (lowValue == null || exp.isInterval() && highValue == null) {
+			return true;
+		}
+
+		if (exp.isIncluding()) {
+			out.append("INCLUDING ");
+		} else {
+			out.append("EXCLUDING ");
+		}
+
+		if (exp.getOption() != null) {
+			out.append(exp.getOption());
+			out.append(' ');
+		}
+
+		boolean cacheable = append(lowValue, out, evaluated);
+
+		if (exp.isInterval()) {
+			out.append(':');
+			cacheable &= append(highValue, out, evaluated);
+		}
+
+		return cacheable;
+	}
+}
@@ -236,6 +236,49 @@ public class MdxStatement extends AbstractExp {
 		return mdx.toString();
 	}
 
+	/**
+	 * Formats the statement with all the parameters rendered either as their
+	 * evaluated results or as the original expressions, regardless of their
+	 * own evaluated flags. Unlike setting the flags, the statement is not
+	 * modified so it can be serialized without being cloned first.
+	 * 
+	 * @param evaluated
+	 * @return
+	 */
+	public String toMdx(boolean evaluated) {
+		return new MdxSerializer(evaluated).toMdx(this);
+	}
+
+	/**
+	 * Returns a copy of the statement which shares the expression nodes with
+	 * this instance, so that its cost depends only on the number of axes
+	 * rather than the size of the expressions.
+	 * <p>
+	 * The statement and its axes can be freely modified, but shared
+	 * expressions must be replaced instead of being modified in place (i.e.
+	 * copy-on-write), which {@link FunCall} enforces by being immutable. Use
+	 * {@link #clone()} for an independent deep copy.
+	 * 
+	 * @return
+	 */
+	public MdxStatement copy() {
+		MdxStatement copy = new MdxStatement();
+
+		copy.formulas.addAll(formulas);
+
+		for (QueryAxis axis : axes) {
+			copy.axes.add(axis.copy());
+		}
+
+		copy.cube = cube;
+		copy.slicer = slicer;
+		copy.cellProperties.addAll(cellProperties);
+		copy.sapVariables.addAll(sapVariables);
+		copy.axesSwapped = axesSwapped;
+
+		return copy;
+	}
+
 	/**
 	 * @see java.lang.Object#clone()
 	 */
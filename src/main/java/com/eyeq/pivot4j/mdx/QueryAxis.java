@@ -157,6 +157,20 @@ public class QueryAxis extends AbstractExp {
 		return sb.toString();
 	}
 
+	/**
+	 * Returns a copy of the axis which shares the expression with this
+	 * instance.
+	 * 
+	 * @return
+	 * @see MdxStatement#copy()
+	 */
+	public QueryAxis copy() {
+		QueryAxis copy = new QueryAxis(axis, exp, nonEmpty);
+		copy.dimensionProperties.addAll(dimensionProperties);
+
+		return copy;
+	}
+
 	/**
 	 * 
 	 * @see java.lang.Object#clone()
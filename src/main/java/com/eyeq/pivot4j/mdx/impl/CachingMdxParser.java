@@ -0,0 +1,323 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eyeq.pivot4j.mdx.AbstractExpVisitor;
+import com.eyeq.pivot4j.mdx.MdxParser;
+import com.eyeq.pivot4j.mdx.MdxStatement;
+import com.eyeq.pivot4j.mdx.MemberParameter;
+import com.eyeq.pivot4j.mdx.ValueParameter;
+
+/**
+ * Parser which keeps the parsed statements of the recently used queries, so
+ * that the same report opened by many sessions is parsed only once.
+ * <p>
+ * Queries are looked up by their text with insignificant white spaces
+ * removed. Each caller receives a shallow copy of the cached statement (see
+ * {@link MdxStatement#copy()}) which shares the immutable expression nodes, so
+ * neither a parse nor a complete expression tree is needed for a cache hit.
+ * <p>
+ * Statements containing parameters are deep cloned instead, since the results
+ * of the parameters are evaluated in place by each model.
+ * <p>
+ * The instance is thread safe, and it's meant to be shared among the models
+ * with {@link com.eyeq.pivot4j.impl.PivotModelImpl#setMdxParser(MdxParser)}.
+ */
+public class CachingMdxParser implements MdxParser {
+
+	public static final int DEFAULT_MAX_SIZE = 200;
+
+	protected Logger logger = LoggerFactory.getLogger(getClass());
+
+	private MdxParser parser;
+
+	private int maxSize;
+
+	private Map<String, CachedStatement> statements;
+
+	private AtomicLong hitCount = new AtomicLong();
+
+	private AtomicLong missCount = new AtomicLong();
+
+	private AtomicLong evictionCount = new AtomicLong();
+
+	private AtomicLong parseTime = new AtomicLong();
+
+	public CachingMdxParser() {
+		this(new MdxParserImpl(), DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param parser
+	 *            parser to be used when the query is not cached yet
+	 * @param maxSize
+	 *            maximum number of statements to be cached
+	 */
+	public CachingMdxParser(MdxParser parser, int maxSize) {
+		if (parser == null) {
+			throw new NullArgumentException("parser");
+		}
+
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Maximum cache size should be a positive number : "
+							+ maxSize);
+		}
+
+		this.parser = parser;
+		this.maxSize = maxSize;
+		this.statements = new LinkedHashMap<String, CachedStatement>(16,
+				0.75f, true) {
+
+			private static final long serialVersionUID = 6427384722165305313L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, CachedStatement> eldest) {
+				boolean evict = size() > CachingMdxParser.this.maxSize;
+				if (evict) {
+					evictionCount.incrementAndGet();
+				}
+
+				return evict;
+			}
+		};
+	}
+
+	/**
+	 * @return the parser
+	 */
+	public MdxParser getParser() {
+		return parser;
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns a copy of the cached statement which shares its expression
+	 * nodes, or a deep clone of it if it contains parameters.
+	 * 
+	 * @see com.eyeq.pivot4j.mdx.MdxParser#parse(java.lang.String)
+	 */
+	@Override
+	public MdxStatement parse(String mdx) {
+		if (mdx == null) {
+			throw new NullArgumentException("mdx");
+		}
+
+		CachedStatement cached;
+
+		// queries generated by the models are already normalized, so the
+		// text is looked up as it is first to save normalizing long queries.
+		synchronized (statements) {
+			cached = statements.get(mdx);
+		}
+
+		String key = mdx;
+
+		if (cached == null) {
+			key = normalize(mdx);
+
+			synchronized (statements) {
+				cached = statements.get(key);
+			}
+		}
+
+		if (cached == null) {
+			missCount.incrementAndGet();
+
+			long start = System.nanoTime();
+
+			MdxStatement statement = parser.parse(mdx);
+
+			long elapsed = System.nanoTime() - start;
+
+			parseTime.addAndGet(elapsed);
+
+			cached = new CachedStatement(statement);
+
+			synchronized (statements) {
+				statements.put(key, cached);
+			}
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Parsed MDX query in " + elapsed / 1000000
+						+ " ms.");
+			}
+		} else {
+			hitCount.incrementAndGet();
+		}
+
+		return cached.get();
+	}
+
+	/**
+	 * Removes redundant white spaces which are not enclosed by quotes or
+	 * brackets. Line breaks are kept since they terminate comments.
+	 *
+	 * @param mdx
+	 * @return
+	 */
+	protected String normalize(String mdx) {
+		StringBuilder builder = new StringBuilder(mdx.length());
+
+		int length = mdx.length();
+
+		char quote = 0;
+		char space = 0;
+
+		for (int i = 0; i < length; i++) {
+			char ch = mdx.charAt(i);
+
+			if (quote != 0) {
+				builder.append(ch);
+
+				if (ch == quote) {
+					if (i + 1 < length && mdx.charAt(i + 1) == quote) {
+						// escaped quote
+						builder.append(quote);
+						i++;
+					} else {
+						quote = 0;
+					}
+				}
+			} else if (Character.isWhitespace(ch)) {
+				if (builder.length() > 0 && space != '\n') {
+					space = (ch == '\n' || ch == '\r') ? '\n' : ' ';
+				}
+			} else {
+				if (space != 0) {
+					builder.append(space);
+					space = 0;
+				}
+
+				if (ch == '[') {
+					quote = ']';
+				} else if (ch == '"' || ch == '\'') {
+					quote = ch;
+				}
+
+				builder.append(ch);
+			}
+		}
+
+		return builder.toString();
+	}
+
+	public void clear() {
+		synchronized (statements) {
+			statements.clear();
+		}
+	}
+
+	/**
+	 * @return number of cached statements
+	 */
+	public int size() {
+		synchronized (statements) {
+			return statements.size();
+		}
+	}
+
+	/**
+	 * @return the hitCount
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the missCount
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return ratio of the queries which have been served from the cache
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the evictionCount
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return total time spent to parse the queries in nanoseconds
+	 */
+	public long getParseTime() {
+		return parseTime.get();
+	}
+
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+		parseTime.set(0);
+	}
+
+	static class CachedStatement {
+
+		private MdxStatement statement;
+
+		private boolean parameterized;
+
+		/**
+		 * @param statement
+		 */
+		CachedStatement(MdxStatement statement) {
+			this.statement = statement;
+
+			final boolean[] found = new boolean[1];
+
+			statement.accept(new AbstractExpVisitor() {
+
+				@Override
+				public void visitMemberParameter(MemberParameter exp) {
+					found[0] = true;
+				}
+
+				@Override
+				public void visitValueParameter(ValueParameter exp) {
+					found[0] = true;
+				}
+			});
+
+			this.parameterized = found[0];
+		}
+
+		/**
+		 * @return statement to be handed out to a caller
+		 */
+		MdxStatement get() {
+			return parameterized ? statement.clone() : statement.copy();
+		}
+	}
+}
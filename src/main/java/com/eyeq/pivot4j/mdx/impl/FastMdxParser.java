@@ -0,0 +1,1337 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.Axis;
+
+import com.eyeq.pivot4j.mdx.CompoundId;
+import com.eyeq.pivot4j.mdx.Exp;
+import com.eyeq.pivot4j.mdx.Formula;
+import com.eyeq.pivot4j.mdx.FunCall;
+import com.eyeq.pivot4j.mdx.Literal;
+import com.eyeq.pivot4j.mdx.MdxParser;
+import com.eyeq.pivot4j.mdx.MdxStatement;
+import com.eyeq.pivot4j.mdx.MemberParameter;
+import com.eyeq.pivot4j.mdx.ParseException;
+import com.eyeq.pivot4j.mdx.QueryAxis;
+import com.eyeq.pivot4j.mdx.SapVariable;
+import com.eyeq.pivot4j.mdx.Syntax;
+import com.eyeq.pivot4j.mdx.ValueParameter;
+
+/**
+ * Hand written recursive descent parser which accepts the same grammar as
+ * {@link MdxParserImpl} (see <code>src/main/parser/mdxparse.cup</code>) and
+ * builds the same statement, but scans the query directly from a character
+ * array without allocating a symbol object for each token. It's considerably
+ * faster for the long queries generated by the query model.
+ * <p>
+ * The instance is thread safe and it can be used with
+ * {@link com.eyeq.pivot4j.impl.PivotModelImpl#setMdxParser(MdxParser)} or
+ * {@link CachingMdxParser}.
+ */
+public class FastMdxParser implements MdxParser {
+
+	private static final int EOF = 0;
+
+	private static final int ID = 1;
+
+	private static final int QUOTED_ID = 2;
+
+	private static final int AMP_QUOTED_ID = 3;
+
+	private static final int STRING = 4;
+
+	private static final int NUMBER = 5;
+
+	private static final int MEMBER_PARAM = 6;
+
+	private static final int VALUE_PARAM = 7;
+
+	private static final int QUOTE = 8;
+
+	private static final int COLON = 10;
+
+	private static final int COMMA = 11;
+
+	private static final int CONCAT = 12;
+
+	private static final int DOT = 13;
+
+	private static final int EQ = 14;
+
+	private static final int NE = 15;
+
+	private static final int LT = 16;
+
+	private static final int GT = 17;
+
+	private static final int LE = 18;
+
+	private static final int GE = 19;
+
+	private static final int LBRACE = 20;
+
+	private static final int RBRACE = 21;
+
+	private static final int LPAREN = 22;
+
+	private static final int RPAREN = 23;
+
+	private static final int PLUS = 24;
+
+	private static final int MINUS = 25;
+
+	private static final int ASTERISK = 26;
+
+	private static final int SOLIDUS = 27;
+
+	private static final int AND = 30;
+
+	private static final int AS = 31;
+
+	private static final int CASE = 32;
+
+	private static final int CELL = 33;
+
+	private static final int DIMENSION = 34;
+
+	private static final int DRILLTHROUGH = 35;
+
+	private static final int ELSE = 36;
+
+	private static final int EMPTY = 37;
+
+	private static final int END = 38;
+
+	private static final int FROM = 39;
+
+	private static final int MEMBER = 40;
+
+	private static final int NON = 41;
+
+	private static final int NOT = 42;
+
+	private static final int ON = 43;
+
+	private static final int OR = 44;
+
+	private static final int PROPERTIES = 45;
+
+	private static final int SELECT = 46;
+
+	private static final int SET = 47;
+
+	private static final int THEN = 48;
+
+	private static final int WHEN = 49;
+
+	private static final int WITH = 50;
+
+	private static final int WHERE = 51;
+
+	private static final int SAP = 52;
+
+	private static final int VARIABLES = 53;
+
+	private static final int INCLUDING = 54;
+
+	private static final int EXCLUDING = 55;
+
+	private static final int XOR = 56;
+
+	private static final String[] KEYWORDS = { "AND", "AS", "CASE", "CELL",
+			"DIMENSION", "DRILLTHROUGH", "ELSE", "EMPTY", "END", "FROM",
+			"MEMBER", "NON", "NOT", "ON", "OR", "PROPERTIES", "SELECT", "SET",
+			"THEN", "WHEN", "WITH", "WHERE", "SAP", "VARIABLES", "INCLUDING",
+			"EXCLUDING", "XOR" };
+
+	private static final int[] KEYWORD_TOKENS = { AND, AS, CASE, CELL,
+			DIMENSION, DRILLTHROUGH, ELSE, EMPTY, END, FROM, MEMBER, NON, NOT,
+			ON, OR, PROPERTIES, SELECT, SET, THEN, WHEN, WITH, WHERE, SAP,
+			VARIABLES, INCLUDING, EXCLUDING, XOR };
+
+	private static final int MAX_KEYWORD_LENGTH = 12;
+
+	/**
+	 * @see com.eyeq.pivot4j.mdx.MdxParser#parse(java.lang.String)
+	 */
+	@Override
+	public MdxStatement parse(String mdx) {
+		if (mdx == null) {
+			throw new NullArgumentException("mdx");
+		}
+
+		return new Parser(mdx).parseStatement();
+	}
+
+	/**
+	 * Holds the state of a single parse.
+	 */
+	private static class Parser {
+
+		// states of the scanner which decide how a single quote is read.
+		private static final int INITIAL = 0;
+
+		private static final int AFTER_AS1 = 1;
+
+		private static final int AFTER_AS2 = 2;
+
+		private String mdx;
+
+		private char[] input;
+
+		private int length;
+
+		private int position = 0;
+
+		private int state = INITIAL;
+
+		private int token;
+
+		private int tokenStart;
+
+		private String text;
+
+		private double number;
+
+		/**
+		 * @param mdx
+		 */
+		Parser(String mdx) {
+			this.mdx = mdx;
+			this.input = mdx.toCharArray();
+			this.length = input.length;
+
+			next();
+		}
+
+		MdxStatement parseStatement() {
+			MdxStatement statement = new MdxStatement();
+
+			if (token == WITH) {
+				next();
+
+				do {
+					statement.getFormulas().add(parseFormula());
+				} while (token == MEMBER || token == SET);
+			}
+
+			if (token == DRILLTHROUGH) {
+				next();
+			}
+
+			expect(SELECT);
+
+			if (token != FROM) {
+				statement.getAxes().add(parseAxis());
+
+				while (token == COMMA) {
+					next();
+					statement.getAxes().add(parseAxis());
+				}
+			}
+
+			expect(FROM);
+
+			statement.setCube(parseCompoundId());
+
+			if (token == WHERE) {
+				next();
+				statement.setSlicer(parseExpression());
+			}
+
+			if (token == CELL) {
+				next();
+				expect(PROPERTIES);
+
+				statement.getCellProperties().add(
+						new CompoundId(parseIdentifier()));
+
+				while (token == COMMA) {
+					next();
+					statement.getCellProperties().add(
+							new CompoundId(parseIdentifier()));
+				}
+			}
+
+			if (token == SAP) {
+				next();
+				expect(VARIABLES);
+
+				statement.getSapVariables().add(parseSapVariable());
+
+				while (token == COMMA) {
+					next();
+					statement.getSapVariables().add(parseSapVariable());
+				}
+			}
+
+			expect(EOF);
+
+			return statement;
+		}
+
+		/**
+		 * @return
+		 */
+		private Formula parseFormula() {
+			boolean member;
+
+			if (token == MEMBER) {
+				member = true;
+			} else if (token == SET) {
+				member = false;
+			} else {
+				throw unexpected();
+			}
+
+			next();
+
+			CompoundId name = parseCompoundId();
+
+			expect(AS);
+
+			Exp exp;
+
+			if (token == QUOTE) {
+				next();
+				exp = member ? parseValueExpression() : parseExpression();
+				expect(QUOTE);
+			} else {
+				exp = member ? parseValueExpression() : parseExpression();
+			}
+
+			if (!member) {
+				return new Formula(name, exp, Formula.Type.SET);
+			}
+
+			Formula formula = new Formula(name, exp, Formula.Type.MEMBER);
+
+			while (token == COMMA) {
+				next();
+
+				String property = parseIdentifier();
+
+				expect(EQ);
+
+				formula.getProperties().add(
+						new Formula.Property(property, parseValueExpression()));
+			}
+
+			return formula;
+		}
+
+		/**
+		 * @return
+		 */
+		private QueryAxis parseAxis() {
+			boolean nonEmpty = false;
+
+			if (token == NON) {
+				next();
+				expect(EMPTY);
+
+				nonEmpty = true;
+			}
+
+			Exp exp = parseExpression();
+
+			List<CompoundId> properties = null;
+
+			if (token == DIMENSION) {
+				next();
+				expect(PROPERTIES);
+
+				properties = new ArrayList<CompoundId>();
+				properties.add(parseCompoundId());
+
+				while (token == COMMA) {
+					next();
+					properties.add(parseCompoundId());
+				}
+
+				// the generated parser collects the properties in the reverse
+				// order.
+				Collections.reverse(properties);
+			}
+
+			expect(ON);
+
+			int start = tokenStart;
+
+			String name = parseIdentifier();
+
+			Axis axis;
+
+			try {
+				axis = Axis.Standard.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				throw error("Invalid axis name '" + name + "'", start);
+			}
+
+			QueryAxis queryAxis = new QueryAxis(axis, exp, nonEmpty);
+
+			if (properties != null) {
+				queryAxis.getDimensionProperties().addAll(properties);
+			}
+
+			return queryAxis;
+		}
+
+		/**
+		 * @return
+		 */
+		private SapVariable parseSapVariable() {
+			SapVariable variable = new SapVariable(parseCompoundId());
+
+			variable.getValues().add(parseSapVariableValue());
+
+			if (token == INCLUDING || token == EXCLUDING) {
+				variable.getValues().add(parseSapVariableValue());
+			}
+
+			return variable;
+		}
+
+		/**
+		 * @return
+		 */
+		private SapVariable.Value parseSapVariableValue() {
+			boolean including;
+
+			if (token == INCLUDING) {
+				including = true;
+			} else if (token == EXCLUDING) {
+				including = false;
+			} else {
+				throw unexpected();
+			}
+
+			next();
+
+			// the generated parser accepts but ignores the option.
+			if (token >= EQ && token <= GE) {
+				next();
+			}
+
+			int type = literalType(token);
+
+			Exp lowValue = parseSapVariableLiteral();
+
+			if (token != COLON) {
+				return new SapVariable.Value(lowValue, including, null);
+			}
+
+			next();
+
+			// both ends of an interval should be of the same type.
+			if (literalType(token) != type) {
+				throw unexpected();
+			}
+
+			Exp highValue = parseSapVariableLiteral();
+
+			return new SapVariable.Value(lowValue, highValue, including, null);
+		}
+
+		/**
+		 * @param type
+		 * @return
+		 */
+		private int literalType(int type) {
+			return type == QUOTED_ID ? ID : type;
+		}
+
+		/**
+		 * @return
+		 */
+		private Exp parseSapVariableLiteral() {
+			Exp exp;
+
+			switch (token) {
+			case NUMBER:
+				exp = Literal.create(number);
+				next();
+				break;
+			case STRING:
+				exp = Literal.createString(text);
+				next();
+				break;
+			case ID:
+			case QUOTED_ID:
+				exp = parseCompoundId();
+				break;
+			default:
+				throw unexpected();
+			}
+
+			return exp;
+		}
+
+		/**
+		 * @return
+		 */
+		private CompoundId parseCompoundId() {
+			CompoundId id = new CompoundId(parseIdentifier());
+
+			while (token == DOT) {
+				next();
+				id.append(parseIdentifier());
+			}
+
+			return id;
+		}
+
+		/**
+		 * @return
+		 */
+		private String parseIdentifier() {
+			if (token != ID && token != QUOTED_ID) {
+				throw unexpected();
+			}
+
+			String identifier = text;
+
+			next();
+
+			return identifier;
+		}
+
+		/**
+		 * expression ::= value_expression (':' value_expression)*
+		 *
+		 * @return
+		 */
+		private Exp parseExpression() {
+			Exp exp = parseValueExpression();
+
+			while (token == COLON) {
+				next();
+				exp = infix(":", exp, parseValueExpression());
+			}
+
+			return exp;
+		}
+
+		/**
+		 * @return
+		 */
+		private List<Exp> parseExpressionList() {
+			List<Exp> list = new ArrayList<Exp>();
+
+			list.add(parseExpression());
+
+			while (token == COMMA) {
+				next();
+				list.add(parseExpression());
+			}
+
+			return list;
+		}
+
+		/**
+		 * value_expression ::= term5 ((OR | XOR) term5)*
+		 *
+		 * @return
+		 */
+		private Exp parseValueExpression() {
+			Exp exp = parseTerm5();
+
+			while (true) {
+				if (token == OR) {
+					next();
+					exp = infix("OR", exp, parseTerm5());
+				} else if (token == XOR) {
+					next();
+					exp = infix("XOR", exp, parseTerm5());
+				} else {
+					return exp;
+				}
+			}
+		}
+
+		/**
+		 * term5 ::= term4 (AND term4)*
+		 *
+		 * @return
+		 */
+		private Exp parseTerm5() {
+			Exp exp = parseTerm4();
+
+			while (token == AND) {
+				next();
+				exp = infix("AND", exp, parseTerm4());
+			}
+
+			return exp;
+		}
+
+		/**
+		 * term4 ::= NOT term4 | term3
+		 *
+		 * @return
+		 */
+		private Exp parseTerm4() {
+			if (token == NOT) {
+				next();
+				return prefix("NOT", parseTerm4());
+			}
+
+			return parseTerm3();
+		}
+
+		/**
+		 * term3 ::= term2 (comp_op term2)*
+		 *
+		 * @return
+		 */
+		private Exp parseTerm3() {
+			Exp exp = parseTerm2();
+
+			while (true) {
+				String operator;
+
+				switch (token) {
+				case EQ:
+					operator = "=";
+					break;
+				case NE:
+					operator = "<>";
+					break;
+				case LT:
+					operator = "<";
+					break;
+				case GT:
+					operator = ">";
+					break;
+				case LE:
+					operator = "<=";
+					break;
+				case GE:
+					operator = ">=";
+					break;
+				default:
+					return exp;
+				}
+
+				next();
+				exp = infix(operator, exp, parseTerm2());
+			}
+		}
+
+		/**
+		 * term2 ::= term (('+' | '-' | '||') term)*
+		 *
+		 * @return
+		 */
+		private Exp parseTerm2() {
+			Exp exp = parseTerm();
+
+			while (true) {
+				if (token == PLUS) {
+					next();
+					exp = infix("+", exp, parseTerm());
+				} else if (token == MINUS) {
+					next();
+					exp = infix("-", exp, parseTerm());
+				} else if (token == CONCAT) {
+					next();
+					exp = infix("||", exp, parseTerm());
+				} else {
+					return exp;
+				}
+			}
+		}
+
+		/**
+		 * term ::= factor (('*' | '/') factor)*
+		 *
+		 * @return
+		 */
+		private Exp parseTerm() {
+			Exp exp = parseFactor();
+
+			while (true) {
+				if (token == ASTERISK) {
+					next();
+					exp = infix("*", exp, parseFactor());
+				} else if (token == SOLIDUS) {
+					next();
+					exp = infix("/", exp, parseFactor());
+				} else {
+					return exp;
+				}
+			}
+		}
+
+		/**
+		 * factor ::= ('+' | '-')? value_expression_primary
+		 *
+		 * @return
+		 */
+		private Exp parseFactor() {
+			if (token == PLUS) {
+				next();
+				return parsePrimary();
+			} else if (token == MINUS) {
+				next();
+				return prefix("-", parsePrimary());
+			}
+
+			return parsePrimary();
+		}
+
+		/**
+		 * @return
+		 */
+		private Exp parsePrimary() {
+			Exp exp;
+
+			switch (token) {
+			case STRING:
+				exp = Literal.createString(text);
+				next();
+				break;
+			case NUMBER:
+				exp = Literal.create(number);
+				next();
+				break;
+			case ID:
+			case QUOTED_ID:
+				String name = text;
+
+				next();
+
+				if (token == LPAREN) {
+					next();
+					exp = new FunCall(name, Syntax.Function,
+							parseArguments(RPAREN));
+				} else {
+					exp = new CompoundId(name);
+				}
+				break;
+			case LPAREN:
+				next();
+
+				// Whereas ([Sales],[Time]) and () are tuples, ([Sales]) and
+				// (5) are just expressions.
+				exp = new FunCall("()", Syntax.Parentheses,
+						parseExpressionList());
+
+				expect(RPAREN);
+				break;
+			case LBRACE:
+				next();
+				exp = new FunCall("{}", Syntax.Braces, parseArguments(RBRACE));
+				break;
+			case MEMBER_PARAM:
+			case VALUE_PARAM:
+				exp = createParameter();
+				next();
+				break;
+			case CASE:
+				next();
+				exp = parseCase();
+				break;
+			default:
+				throw unexpected();
+			}
+
+			while (token == DOT) {
+				next();
+
+				switch (token) {
+				case ID:
+				case QUOTED_ID:
+					int type = token;
+					String name = text;
+
+					next();
+
+					if (token == LPAREN) {
+						next();
+
+						List<Exp> args = parseArguments(RPAREN);
+						args.add(0, exp);
+
+						exp = new FunCall(name, Syntax.Method, args);
+					} else if (type == ID) {
+						exp = new FunCall(name, Syntax.Property, single(exp));
+					} else if (exp instanceof CompoundId) {
+						((CompoundId) exp).append(name);
+					} else {
+						exp = new FunCall(name, Syntax.PropertyQuoted,
+								single(exp));
+					}
+					break;
+				case AMP_QUOTED_ID:
+					if (exp instanceof CompoundId) {
+						((CompoundId) exp).append(text.substring(1), true);
+					} else {
+						exp = new FunCall(text, Syntax.PropertyAmpQuoted,
+								single(exp));
+					}
+
+					next();
+					break;
+				default:
+					throw unexpected();
+				}
+			}
+
+			return exp;
+		}
+
+		/**
+		 * Parses an optional list of expressions and the closing token.
+		 *
+		 * @param close
+		 * @return
+		 */
+		private List<Exp> parseArguments(int close) {
+			List<Exp> args;
+
+			if (token == close) {
+				args = new ArrayList<Exp>();
+			} else {
+				args = parseExpressionList();
+			}
+
+			expect(close);
+
+			return args;
+		}
+
+		/**
+		 * @return
+		 */
+		private Exp parseCase() {
+			List<Exp> args = new ArrayList<Exp>();
+
+			boolean match = false;
+
+			if (token != WHEN && token != ELSE && token != END) {
+				args.add(parseValueExpression());
+				match = true;
+			}
+
+			while (token == WHEN) {
+				next();
+				args.add(parseValueExpression());
+
+				expect(THEN);
+				args.add(parseValueExpression());
+			}
+
+			if (token == ELSE) {
+				next();
+				args.add(parseValueExpression());
+			}
+
+			expect(END);
+
+			return new FunCall(match ? "_CaseMatch" : "_CaseTest", Syntax.Case,
+					args);
+		}
+
+		/**
+		 * @return parameter of the current token
+		 */
+		private Exp createParameter() {
+			String[] values = text.substring(2, text.length() - 1)
+					.replace("]]", "]").split(":");
+
+			if (values.length < 2) {
+				throw error("Invalid parameter expression", tokenStart);
+			}
+
+			if (token == MEMBER_PARAM) {
+				return new MemberParameter(values[0], values[1]);
+			} else {
+				return new ValueParameter(values[0], values[1]);
+			}
+		}
+
+		/**
+		 * @param function
+		 * @param left
+		 * @param right
+		 * @return
+		 */
+		private FunCall infix(String function, Exp left, Exp right) {
+			List<Exp> args = new ArrayList<Exp>(2);
+			args.add(left);
+			args.add(right);
+
+			return new FunCall(function, Syntax.Infix, args);
+		}
+
+		/**
+		 * @param function
+		 * @param exp
+		 * @return
+		 */
+		private FunCall prefix(String function, Exp exp) {
+			return new FunCall(function, Syntax.Prefix, single(exp));
+		}
+
+		/**
+		 * @param exp
+		 * @return
+		 */
+		private List<Exp> single(Exp exp) {
+			return Collections.singletonList(exp);
+		}
+
+		/**
+		 * @param expected
+		 */
+		private void expect(int expected) {
+			if (token != expected) {
+				throw unexpected();
+			}
+
+			next();
+		}
+
+		/**
+		 * @return
+		 */
+		private ParseException unexpected() {
+			if (token == EOF) {
+				return error("Unexpected end of input", tokenStart);
+			}
+
+			return error("Unexpected token '"
+					+ mdx.substring(tokenStart, position) + "'", tokenStart);
+		}
+
+		/**
+		 * @param message
+		 * @param offset
+		 * @return
+		 */
+		private ParseException error(String message, int offset) {
+			return new ParseException("Failed to parse MDX query : " + message
+					+ " at character " + offset + " of input : " + mdx);
+		}
+
+		/**
+		 * Reads the next token, following the rules of
+		 * <code>src/main/parser/mdxparse.jlex</code>.
+		 */
+		private void next() {
+			char ch = 0;
+
+			while (position < length) {
+				ch = input[position];
+
+				if (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n'
+						|| ch == '\f') {
+					position++;
+				} else {
+					break;
+				}
+			}
+
+			this.tokenStart = position;
+			this.text = null;
+
+			if (position >= length) {
+				this.token = EOF;
+				return;
+			}
+
+			int start = position;
+
+			if (isAlpha(ch)) {
+				position++;
+
+				while (position < length && isAlphaNumeric(input[position])) {
+					position++;
+				}
+
+				this.token = keyword(start, position - start);
+
+				if (token == ID) {
+					this.text = mdx.substring(start, position);
+				} else if (token == AS) {
+					this.state = AFTER_AS1;
+				}
+
+				return;
+			}
+
+			if (ch >= '0' && ch <= '9' || ch == '.' && position + 1 < length
+					&& isDigit(input[position + 1])) {
+				scanNumber();
+				return;
+			}
+
+			switch (ch) {
+			case '[':
+				this.position = scanBracket(start, false);
+				this.token = QUOTED_ID;
+				this.text = mdx.substring(start, position);
+				return;
+			case '&':
+				if (position + 1 < length && input[position + 1] == '[') {
+					this.position = scanBracket(start + 1, false);
+					this.token = AMP_QUOTED_ID;
+					this.text = mdx.substring(start, position);
+					return;
+				}
+				break;
+			case '$':
+				if (position + 1 < length) {
+					char open = input[position + 1];
+
+					if (open == '[') {
+						this.position = scanBracket(start + 1, true);
+						this.token = MEMBER_PARAM;
+						this.text = mdx.substring(start, position);
+						return;
+					} else if (open == '{') {
+						this.position = scanBrace(start + 1);
+						this.token = VALUE_PARAM;
+						this.text = mdx.substring(start, position);
+						return;
+					}
+				}
+				break;
+			case '"':
+				this.position = scanString(start, '"');
+				this.token = STRING;
+				this.text = mdx.substring(start, position);
+				return;
+			case '\'':
+				if (state == AFTER_AS1) {
+					this.state = AFTER_AS2;
+				} else if (state == AFTER_AS2) {
+					this.state = INITIAL;
+				} else {
+					this.position = scanString(start, '\'');
+					this.token = STRING;
+					this.text = mdx.substring(start, position);
+					return;
+				}
+
+				this.position++;
+				this.token = QUOTE;
+				return;
+			case ':':
+				this.position++;
+				this.token = COLON;
+				return;
+			case ',':
+				this.position++;
+				this.token = COMMA;
+				return;
+			case '=':
+				this.position++;
+				this.token = EQ;
+				return;
+			case '<':
+				this.position++;
+
+				if (position < length && input[position] == '>') {
+					this.position++;
+					this.token = NE;
+				} else if (position < length && input[position] == '=') {
+					this.position++;
+					this.token = LE;
+				} else {
+					this.token = LT;
+				}
+				return;
+			case '>':
+				this.position++;
+
+				if (position < length && input[position] == '=') {
+					this.position++;
+					this.token = GE;
+				} else {
+					this.token = GT;
+				}
+				return;
+			case '{':
+				this.position++;
+				this.token = LBRACE;
+				return;
+			case '}':
+				this.position++;
+				this.token = RBRACE;
+				return;
+			case '(':
+				this.position++;
+				this.token = LPAREN;
+				return;
+			case ')':
+				this.position++;
+				this.token = RPAREN;
+				return;
+			case '+':
+				this.position++;
+				this.token = PLUS;
+				return;
+			case '-':
+				this.position++;
+				this.token = MINUS;
+				return;
+			case '*':
+				this.position++;
+				this.token = ASTERISK;
+				return;
+			case '/':
+				this.position++;
+				this.token = SOLIDUS;
+				return;
+			case '|':
+				if (position + 1 < length && input[position + 1] == '|') {
+					this.position += 2;
+					this.token = CONCAT;
+					return;
+				}
+				break;
+			case '.':
+				this.position++;
+				this.token = DOT;
+				return;
+			default:
+				break;
+			}
+
+			throw error("Unmatched input '" + ch + "'", start);
+		}
+
+		/**
+		 * @param start
+		 * @param count
+		 * @return keyword token of the identifier, or ID if it's not a
+		 *         keyword
+		 */
+		private int keyword(int start, int count) {
+			if (count <= MAX_KEYWORD_LENGTH) {
+				for (int i = 0; i < KEYWORDS.length; i++) {
+					String keyword = KEYWORDS[i];
+
+					if (keyword.length() == count
+							&& mdx.regionMatches(true, start, keyword, 0,
+									count)) {
+						return KEYWORD_TOKENS[i];
+					}
+				}
+			}
+
+			return ID;
+		}
+
+		private void scanNumber() {
+			int start = position;
+
+			boolean integer = true;
+
+			while (position < length && isDigit(input[position])) {
+				position++;
+			}
+
+			if (position < length && input[position] == '.') {
+				integer = false;
+				position++;
+
+				while (position < length && isDigit(input[position])) {
+					position++;
+				}
+			}
+
+			// exponent is only taken when it's complete.
+			if (position < length
+					&& (input[position] == 'e' || input[position] == 'E')) {
+				int index = position + 1;
+
+				if (index < length
+						&& (input[index] == '+' || input[index] == '-')) {
+					index++;
+				}
+
+				if (index < length && isDigit(input[index])) {
+					while (index < length && isDigit(input[index])) {
+						index++;
+					}
+
+					integer = false;
+					this.position = index;
+				}
+			}
+
+			String value = mdx.substring(start, position);
+
+			this.token = NUMBER;
+
+			if (integer && position - start < 10) {
+				this.number = Integer.parseInt(value);
+			} else {
+				this.number = Double.parseDouble(value);
+			}
+		}
+
+		/**
+		 * Scans a bracketed identifier, or a member parameter expression.
+		 * Closing brackets are escaped by doubling them, and the longest
+		 * possible match is taken.
+		 *
+		 * @param start
+		 *            position of the opening bracket
+		 * @param parameter
+		 * @return end position of the token
+		 */
+		private int scanBracket(int start, boolean parameter) {
+			int index = start + 1;
+
+			if (parameter) {
+				index = scanParameterName(index, start);
+			}
+
+			int end = -1;
+
+			while (index < length) {
+				char ch = input[index];
+
+				if (ch == ']') {
+					end = index + 1;
+
+					if (index + 1 < length && input[index + 1] == ']') {
+						index += 2;
+					} else {
+						break;
+					}
+				} else if (!parameter
+						&& (ch == '\n' || ch == '\f' || ch == '\r' || ch == '\t')) {
+					break;
+				} else {
+					index++;
+				}
+			}
+
+			if (end < 0) {
+				throw error("Unclosed bracket", start);
+			}
+
+			return end;
+		}
+
+		/**
+		 * Scans a value parameter expression, taking the longest possible
+		 * match as the generated scanner does.
+		 *
+		 * @param start
+		 *            position of the opening brace
+		 * @return end position of the token
+		 */
+		private int scanBrace(int start) {
+			int index = scanParameterName(start + 1, start);
+
+			int end = -1;
+
+			while (index < length) {
+				char ch = input[index];
+
+				if (ch == ']') {
+					if (index + 1 < length && input[index + 1] == ']') {
+						index += 2;
+					} else {
+						break;
+					}
+				} else {
+					if (ch == '}') {
+						end = index + 1;
+					}
+
+					index++;
+				}
+			}
+
+			if (end < 0) {
+				throw error("Unclosed brace", start);
+			}
+
+			return end;
+		}
+
+		/**
+		 * @param index
+		 * @param start
+		 * @return position after the colon which follows the name
+		 */
+		private int scanParameterName(int index, int start) {
+			if (index >= length || !isAlpha(input[index])) {
+				throw error("Invalid parameter expression", start - 1);
+			}
+
+			while (index < length && isAlphaNumeric(input[index])) {
+				index++;
+			}
+
+			if (index >= length || input[index] != ':') {
+				throw error("Invalid parameter expression", start - 1);
+			}
+
+			return index + 1;
+		}
+
+		/**
+		 * @param start
+		 * @param quote
+		 * @return end position of the token
+		 */
+		private int scanString(int start, char quote) {
+			for (int index = start + 1; index < length; index++) {
+				char ch = input[index];
+
+				if (ch == quote) {
+					return index + 1;
+				} else if (ch == '\n' || ch == '\f' || ch == '\r'
+						|| ch == '\t') {
+					break;
+				}
+			}
+
+			throw error("Unclosed string", start);
+		}
+
+		/**
+		 * @param ch
+		 * @return
+		 */
+		private static boolean isAlpha(char ch) {
+			return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z';
+		}
+
+		/**
+		 * @param ch
+		 * @return
+		 */
+		private static boolean isDigit(char ch) {
+			return ch >= '0' && ch <= '9';
+		}
+
+		/**
+		 * @param ch
+		 * @return
+		 */
+		private static boolean isAlphaNumeric(char ch) {
+			return isAlpha(ch) || isDigit(ch) || ch == '_';
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.metrics;
+
+import com.eyeq.pivot4j.PivotModel;
+
+/**
+ * Receives timings and sizes measured while executing and rendering a pivot
+ * model. Implementations should be thread safe, as a single instance is
+ * usually shared by many models.
+ */
+public interface MetricsCollector {
+
+	/**
+	 * @param model
+	 * @param phase
+	 * @param nanos
+	 *            elapsed time in nanoseconds
+	 */
+	void recordTime(PivotModel model, Phase phase, long nanos);
+
+	/**
+	 * @param model
+	 * @param count
+	 *            number of cells returned by a query
+	 */
+	void recordCellCount(PivotModel model, long count);
+
+	/**
+	 * @param model
+	 * @param bytes
+	 *            number of bytes written by an exporter
+	 */
+	void recordBytesWritten(PivotModel model, long bytes);
+
+	/**
+	 * @param model
+	 *            model which received the result of a query executed by other
+	 *            model instead of running it by itself
+	 */
+	void recordCoalescedQuery(PivotModel model);
+}
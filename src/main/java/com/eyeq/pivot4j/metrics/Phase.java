@@ -0,0 +1,71 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.metrics;
+
+/**
+ * Stages of the query and render cycle which can be timed. Each phase is
+ * recorded once whenever the corresponding operation runs, that is, once per
+ * parsing, query execution, rendering or export respectively.
+ */
+public enum Phase {
+
+	/**
+	 * Parsing of the MDX query into the query model, which happens when the
+	 * model is initialized or its MDX is changed.
+	 */
+	PARSE,
+
+	/**
+	 * Evaluation of parameter expressions in the query. It's not recorded if
+	 * the model has no expression evaluator factory.
+	 */
+	EVALUATE,
+
+	/**
+	 * Generation of the MDX string from the parsed query.
+	 */
+	GENERATE_MDX,
+
+	/**
+	 * Query execution, including any result post processing like taking a
+	 * snapshot. It's also recorded when the result is taken from a cache or
+	 * shared with a concurrent execution.
+	 */
+	EXECUTE,
+
+	/**
+	 * Initialization of the query model from the executed result.
+	 */
+	AFTER_EXECUTE,
+
+	/**
+	 * Creation of the header trees of the row and column axes.
+	 */
+	CREATE_AXIS_TREE,
+
+	/**
+	 * Configuration and invalidation of the header trees of both axes.
+	 */
+	CONFIGURE_AXIS_TREE,
+
+	/**
+	 * Rendering of the column headers.
+	 */
+	RENDER_HEADER,
+
+	/**
+	 * Rendering of the row headers and the cells.
+	 */
+	RENDER_BODY,
+
+	/**
+	 * Writing the exported document to the output stream.
+	 */
+	EXPORT_FLUSH
+}
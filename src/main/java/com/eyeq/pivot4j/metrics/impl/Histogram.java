@@ -0,0 +1,144 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.metrics.impl;
+
+/**
+ * Thread safe histogram of durations in nanoseconds. Values are grouped into
+ * buckets of powers of two, so percentiles are approximated within a factor
+ * of two, while the memory footprint stays constant.
+ */
+public class Histogram {
+
+	private static final int BUCKET_COUNT = 64;
+
+	private long[] buckets = new long[BUCKET_COUNT];
+
+	private long count = 0;
+
+	private long total = 0;
+
+	private long min = Long.MAX_VALUE;
+
+	private long max = 0;
+
+	/**
+	 * @param value
+	 */
+	public synchronized void record(long value) {
+		long nanos = Math.max(0, value);
+
+		buckets[bucketOf(nanos)]++;
+
+		count++;
+		total += nanos;
+
+		min = Math.min(min, nanos);
+		max = Math.max(max, nanos);
+	}
+
+	/**
+	 * @param value
+	 * @return
+	 */
+	private int bucketOf(long value) {
+		if (value == 0) {
+			return 0;
+		}
+
+		return BUCKET_COUNT - 1 - Long.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * @return the count
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the total
+	 */
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the min, or 0 if no value has been recorded
+	 */
+	public synchronized long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return the max
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the mean
+	 */
+	public synchronized double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * @param percentile
+	 *            a number between 0 and 100
+	 * @return upper bound of the bucket which contains the given percentile
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"Percentile should be between 0 and 100 : " + percentile);
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long threshold = (long) Math.ceil(count * percentile / 100);
+
+		long sum = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			sum += buckets[i];
+
+			if (sum >= threshold && buckets[i] > 0) {
+				long upperBound = (1L << (i + 1)) - 1;
+				return Math.min(upperBound, max);
+			}
+		}
+
+		return max;
+	}
+
+	public synchronized void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets[i] = 0;
+		}
+
+		this.count = 0;
+		this.total = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"count=%d, mean=%.0f ns, min=%d ns, p50=%d ns, p95=%d ns, max=%d ns",
+				count, getMean(), getMin(), getPercentile(50),
+				getPercentile(95), max);
+	}
+}
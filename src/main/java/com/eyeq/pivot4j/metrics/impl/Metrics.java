@@ -0,0 +1,138 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.metrics.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import com.eyeq.pivot4j.metrics.Phase;
+
+/**
+ * Aggregated timings and sizes, either of a single model or of all models.
+ */
+public class Metrics {
+
+	private Map<Phase, Histogram> histograms = new EnumMap<Phase, Histogram>(
+			Phase.class);
+
+	private AtomicLong cellCount = new AtomicLong();
+
+	private AtomicLong bytesWritten = new AtomicLong();
+
+	private AtomicLong coalescedCount = new AtomicLong();
+
+	public Metrics() {
+		for (Phase phase : Phase.values()) {
+			histograms.put(phase, new Histogram());
+		}
+	}
+
+	/**
+	 * @param phase
+	 * @return
+	 */
+	public Histogram getHistogram(Phase phase) {
+		if (phase == null) {
+			throw new NullArgumentException("phase");
+		}
+
+		return histograms.get(phase);
+	}
+
+	/**
+	 * @return total number of cells returned by queries
+	 */
+	public long getCellCount() {
+		return cellCount.get();
+	}
+
+	/**
+	 * @return total number of bytes written by exporters
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * @return number of query results shared by other models
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * @param phase
+	 * @param nanos
+	 */
+	void recordTime(Phase phase, long nanos) {
+		getHistogram(phase).record(nanos);
+	}
+
+	/**
+	 * @param count
+	 */
+	void addCellCount(long count) {
+		cellCount.addAndGet(count);
+	}
+
+	/**
+	 * @param bytes
+	 */
+	void addBytesWritten(long bytes) {
+		bytesWritten.addAndGet(bytes);
+	}
+
+	/**
+	 * @param count
+	 */
+	void addCoalescedCount(long count) {
+		coalescedCount.addAndGet(count);
+	}
+
+	public void reset() {
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+
+		cellCount.set(0);
+		bytesWritten.set(0);
+		coalescedCount.set(0);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+
+		for (Phase phase : Phase.values()) {
+			Histogram histogram = histograms.get(phase);
+
+			if (histogram.getCount() > 0) {
+				builder.append(phase);
+				builder.append(" : ");
+				builder.append(histogram);
+				builder.append('\n');
+			}
+		}
+
+		builder.append("cells=");
+		builder.append(cellCount.get());
+		builder.append(", bytes=");
+		builder.append(bytesWritten.get());
+		builder.append(", coalesced=");
+		builder.append(coalescedCount.get());
+
+		return builder.toString();
+	}
+}
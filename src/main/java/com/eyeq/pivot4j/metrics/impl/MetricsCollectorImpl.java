@@ -0,0 +1,133 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.metrics.impl;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.metrics.MetricsCollector;
+import com.eyeq.pivot4j.metrics.Phase;
+
+/**
+ * Default metrics collector which keeps histograms in memory, both for each
+ * model and for all the models which share the instance. Models are only
+ * weakly referenced, so their metrics are discarded once they become
+ * unreachable.
+ */
+public class MetricsCollectorImpl implements MetricsCollector {
+
+	private Metrics globalMetrics = new Metrics();
+
+	private Map<PivotModel, Metrics> modelMetrics = new WeakHashMap<PivotModel, Metrics>();
+
+	/**
+	 * @see com.eyeq.pivot4j.metrics.MetricsCollector#recordTime(com.eyeq.pivot4j.PivotModel,
+	 *      com.eyeq.pivot4j.metrics.Phase, long)
+	 */
+	@Override
+	public void recordTime(PivotModel model, Phase phase, long nanos) {
+		if (phase == null) {
+			throw new NullArgumentException("phase");
+		}
+
+		globalMetrics.recordTime(phase, nanos);
+
+		if (model != null) {
+			getOrCreateMetrics(model).recordTime(phase, nanos);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.metrics.MetricsCollector#recordCellCount(com.eyeq.pivot4j.PivotModel,
+	 *      long)
+	 */
+	@Override
+	public void recordCellCount(PivotModel model, long count) {
+		globalMetrics.addCellCount(count);
+
+		if (model != null) {
+			getOrCreateMetrics(model).addCellCount(count);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.metrics.MetricsCollector#recordBytesWritten(com.eyeq.pivot4j.PivotModel,
+	 *      long)
+	 */
+	@Override
+	public void recordBytesWritten(PivotModel model, long bytes) {
+		globalMetrics.addBytesWritten(bytes);
+
+		if (model != null) {
+			getOrCreateMetrics(model).addBytesWritten(bytes);
+		}
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.metrics.MetricsCollector#recordCoalescedQuery(com.eyeq.pivot4j.PivotModel)
+	 */
+	@Override
+	public void recordCoalescedQuery(PivotModel model) {
+		globalMetrics.addCoalescedCount(1);
+
+		if (model != null) {
+			getOrCreateMetrics(model).addCoalescedCount(1);
+		}
+	}
+
+	/**
+	 * @param model
+	 * @return
+	 */
+	protected Metrics getOrCreateMetrics(PivotModel model) {
+		synchronized (modelMetrics) {
+			Metrics metrics = modelMetrics.get(model);
+
+			if (metrics == null) {
+				metrics = new Metrics();
+				modelMetrics.put(model, metrics);
+			}
+
+			return metrics;
+		}
+	}
+
+	/**
+	 * @return metrics aggregated for all models
+	 */
+	public Metrics getGlobalMetrics() {
+		return globalMetrics;
+	}
+
+	/**
+	 * @param model
+	 * @return metrics for the given model, or null if nothing has been
+	 *         recorded for it.
+	 */
+	public Metrics getMetrics(PivotModel model) {
+		if (model == null) {
+			throw new NullArgumentException("model");
+		}
+
+		synchronized (modelMetrics) {
+			return modelMetrics.get(model);
+		}
+	}
+
+	public void reset() {
+		globalMetrics.reset();
+
+		synchronized (modelMetrics) {
+			modelMetrics.clear();
+		}
+	}
+}
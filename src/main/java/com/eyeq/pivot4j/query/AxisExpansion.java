@@ -0,0 +1,82 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import org.olap4j.Axis;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.mdx.Exp;
+
+/**
+ * Records an expansion applied to a query axis along with the axis expression
+ * before the change, so that only the positions added by the expansion can be
+ * queried afterwards.
+ */
+public class AxisExpansion {
+
+	private int axisIndex;
+
+	private Axis axis;
+
+	private Member member;
+
+	private Exp previousExp;
+
+	/**
+	 * @param axisIndex
+	 *            index of the query axis in the parsed statement
+	 * @param axis
+	 * @param member
+	 *            expanded member
+	 * @param previousExp
+	 *            axis expression before the expansion
+	 */
+	AxisExpansion(int axisIndex, Axis axis, Member member, Exp previousExp) {
+		this.axisIndex = axisIndex;
+		this.axis = axis;
+		this.member = member;
+		this.previousExp = previousExp;
+	}
+
+	/**
+	 * @return the axisIndex
+	 */
+	int getAxisIndex() {
+		return axisIndex;
+	}
+
+	/**
+	 * @return the axis
+	 */
+	public Axis getAxis() {
+		return axis;
+	}
+
+	/**
+	 * @return the hierarchy
+	 */
+	public Hierarchy getHierarchy() {
+		return member.getLevel().getHierarchy();
+	}
+
+	/**
+	 * @return the member
+	 */
+	public Member getMember() {
+		return member;
+	}
+
+	/**
+	 * @return the previousExp
+	 */
+	Exp getPreviousExp() {
+		return previousExp;
+	}
+}
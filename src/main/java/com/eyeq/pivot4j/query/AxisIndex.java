@@ -0,0 +1,287 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.util.OlapUtils;
+
+/**
+ * Index of the positions of a result axis, which is built in a single pass
+ * over the positions and then answers the following queries without
+ * scanning them again :
+ * <ul>
+ * <li>Distinct members of each hierarchy, in the order of their first
+ * appearance.</li>
+ * <li>Distinct members of the whole axis, in the order of their first
+ * appearance.</li>
+ * <li>Member of a hierarchy on a position, as an ordinal of the distinct
+ * members.</li>
+ * <li>Positions on which a member appears, as a bitmap of position
+ * ordinals.</li>
+ * </ul>
+ * Members are identified by their unique names. Null members are skipped.
+ * <p>
+ * The index is immutable, so it can be shared by all the components which
+ * need to inspect the same result.
+ */
+public class AxisIndex {
+
+	private static final int NO_MEMBER = -1;
+
+	private int positionCount;
+
+	private List<Hierarchy> hierarchies;
+
+	private List<List<Member>> members;
+
+	private List<Map<String, Integer>> memberOrdinals;
+
+	private int[][] positionMembers;
+
+	private List<Member> axisMembers;
+
+	private BitSet[][] bitmaps;
+
+	/**
+	 * @param positions
+	 */
+	public AxisIndex(List<Position> positions) {
+		if (positions == null) {
+			throw new NullArgumentException("positions");
+		}
+
+		this.positionCount = positions.size();
+
+		int hierarchyCount = 0;
+
+		if (positionCount > 0) {
+			hierarchyCount = positions.get(0).getMembers().size();
+		}
+
+		this.hierarchies = new ArrayList<Hierarchy>(hierarchyCount);
+		this.members = new ArrayList<List<Member>>(hierarchyCount);
+		this.memberOrdinals = new ArrayList<Map<String, Integer>>(
+				hierarchyCount);
+		this.positionMembers = new int[hierarchyCount][positionCount];
+		this.bitmaps = new BitSet[hierarchyCount][];
+
+		if (positionCount > 0) {
+			for (Member member : positions.get(0).getMembers()) {
+				hierarchies.add(member == null ? null : member.getHierarchy());
+			}
+		}
+
+		for (int i = 0; i < hierarchyCount; i++) {
+			members.add(new ArrayList<Member>());
+			memberOrdinals.add(new HashMap<String, Integer>());
+		}
+
+		List<Member> axisMembers = new ArrayList<Member>();
+
+		int ordinal = 0;
+
+		for (Position position : positions) {
+			List<Member> positionMemberList = position.getMembers();
+
+			for (int i = 0; i < hierarchyCount; i++) {
+				Member member = positionMemberList.get(i);
+
+				int memberOrdinal = NO_MEMBER;
+
+				if (member != null) {
+					Map<String, Integer> ordinals = memberOrdinals.get(i);
+
+					Integer value = ordinals.get(member.getUniqueName());
+
+					if (value == null) {
+						List<Member> list = members.get(i);
+
+						memberOrdinal = list.size();
+
+						list.add(member);
+						ordinals.put(member.getUniqueName(), memberOrdinal);
+
+						axisMembers.add(member);
+					} else {
+						memberOrdinal = value;
+					}
+				}
+
+				positionMembers[i][ordinal] = memberOrdinal;
+			}
+
+			ordinal++;
+		}
+
+		this.axisMembers = Collections.unmodifiableList(axisMembers);
+	}
+
+	/**
+	 * @return the positionCount
+	 */
+	public int getPositionCount() {
+		return positionCount;
+	}
+
+	/**
+	 * @return number of the hierarchies on the axis
+	 */
+	public int getHierarchyCount() {
+		return hierarchies.size();
+	}
+
+	/**
+	 * @return hierarchies of the members of the first position
+	 */
+	public List<Hierarchy> getHierarchies() {
+		return Collections.unmodifiableList(hierarchies);
+	}
+
+	/**
+	 * @param hierarchy
+	 * @return index of the hierarchy, or -1 if it's not on the axis
+	 */
+	public int getHierarchyIndex(Hierarchy hierarchy) {
+		int index = 0;
+
+		for (Hierarchy hier : hierarchies) {
+			if (OlapUtils.equals(hier, hierarchy)) {
+				return index;
+			}
+
+			index++;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return distinct members of all the hierarchies, in the order of their
+	 *         first appearance while scanning the positions
+	 */
+	public List<Member> getMembers() {
+		return axisMembers;
+	}
+
+	/**
+	 * @param hierarchyIndex
+	 * @return distinct members of the hierarchy, in the order of their first
+	 *         appearance
+	 */
+	public List<Member> getMembers(int hierarchyIndex) {
+		return Collections.unmodifiableList(members.get(hierarchyIndex));
+	}
+
+	/**
+	 * @param hierarchyIndex
+	 * @param member
+	 * @return ordinal of the member in {@link #getMembers(int)}, or -1 if it's
+	 *         not on the axis
+	 */
+	public int getMemberOrdinal(int hierarchyIndex, Member member) {
+		if (member == null) {
+			return NO_MEMBER;
+		}
+
+		Integer ordinal = memberOrdinals.get(hierarchyIndex).get(
+				member.getUniqueName());
+
+		return ordinal == null ? NO_MEMBER : ordinal;
+	}
+
+	/**
+	 * @param positionOrdinal
+	 * @param hierarchyIndex
+	 * @return ordinal of the member in {@link #getMembers(int)}, or -1 if the
+	 *         member is null
+	 */
+	public int getMemberOrdinal(int positionOrdinal, int hierarchyIndex) {
+		return positionMembers[hierarchyIndex][positionOrdinal];
+	}
+
+	/**
+	 * @param positionOrdinal
+	 * @param hierarchyIndex
+	 * @return member of the hierarchy on the position
+	 */
+	public Member getMember(int positionOrdinal, int hierarchyIndex) {
+		int ordinal = positionMembers[hierarchyIndex][positionOrdinal];
+
+		return ordinal == NO_MEMBER ? null : members.get(hierarchyIndex).get(
+				ordinal);
+	}
+
+	/**
+	 * @param hierarchyIndex
+	 * @param member
+	 * @return ordinals of the positions which contain the member
+	 */
+	public BitSet getPositions(int hierarchyIndex, Member member) {
+		int ordinal = getMemberOrdinal(hierarchyIndex, member);
+
+		if (ordinal == NO_MEMBER) {
+			return new BitSet(0);
+		}
+
+		return (BitSet) getBitmaps(hierarchyIndex)[ordinal].clone();
+	}
+
+	/**
+	 * @param hierarchyIndex
+	 * @param member
+	 * @return true if the member is on the axis
+	 */
+	public boolean contains(int hierarchyIndex, Member member) {
+		return getMemberOrdinal(hierarchyIndex, member) != NO_MEMBER;
+	}
+
+	/**
+	 * Creates the bitmaps of a hierarchy when they are requested for the first
+	 * time, as most of the users only need the distinct members.
+	 *
+	 * @param hierarchyIndex
+	 * @return
+	 */
+	private synchronized BitSet[] getBitmaps(int hierarchyIndex) {
+		BitSet[] result = bitmaps[hierarchyIndex];
+
+		if (result == null) {
+			int count = members.get(hierarchyIndex).size();
+
+			result = new BitSet[count];
+
+			for (int i = 0; i < count; i++) {
+				result[i] = new BitSet(positionCount);
+			}
+
+			int[] ordinals = positionMembers[hierarchyIndex];
+
+			for (int i = 0; i < positionCount; i++) {
+				if (ordinals[i] != NO_MEMBER) {
+					result[ordinals[i]].set(i);
+				}
+			}
+
+			bitmaps[hierarchyIndex] = result;
+		}
+
+		return result;
+	}
+}
@@ -82,11 +82,8 @@ public class ExpGenerator {
 					exp = set;
 				} else {
 					// generate Union
-					FunCall call = new FunCall("Union", Syntax.Function);
-					call.getArgs().add(exp);
-					call.getArgs().add(set);
-
-					exp = call;
+					exp = new FunCall("Union", Syntax.Function, Arrays.asList(
+							exp, set));
 				}
 
 				openSet.clear();
@@ -96,11 +93,8 @@ public class ExpGenerator {
 				exp = expForNode;
 			} else {
 				// generate Union of Exp and expForNode
-				FunCall call = new FunCall("Union", Syntax.Function);
-				call.getArgs().add(exp);
-				call.getArgs().add(expForNode);
-
-				exp = call;
+				exp = new FunCall("Union", Syntax.Function, Arrays.asList(exp,
+						expForNode));
 			}
 		}
 
@@ -112,11 +106,8 @@ public class ExpGenerator {
 				exp = set;
 			} else {
 				// generate Union
-				FunCall call = new FunCall("Union", Syntax.Function);
-				call.getArgs().add(exp);
-				call.getArgs().add(set);
-
-				exp = call;
+				exp = new FunCall("Union", Syntax.Function, Arrays.asList(exp,
+						set));
 			}
 
 			openSet.clear();
@@ -161,10 +152,7 @@ public class ExpGenerator {
 				eSet = eNode;
 			} else {
 				// member
-				FunCall call = new FunCall("{}", Syntax.Braces);
-				call.getArgs().add(eNode);
-
-				eSet = call;
+				eSet = new FunCall("{}", Syntax.Braces, Arrays.asList(eNode));
 			}
 
 			if (childExp == null) {
@@ -172,18 +160,14 @@ public class ExpGenerator {
 			} else {
 				Exp childSet = bracesAround(childExp);
 
-				FunCall cj = new FunCall("CrossJoin", Syntax.Function);
-				cj.getArgs().add(eSet);
-				cj.getArgs().add(childSet);
+				Exp cj = new FunCall("CrossJoin", Syntax.Function,
+						Arrays.asList(eSet, childSet));
 
 				if (exp == null) {
 					exp = cj;
 				} else {
-					FunCall call = new FunCall("Union", Syntax.Function);
-					call.getArgs().add(exp);
-					call.getArgs().add(cj);
-
-					exp = call;
+					exp = new FunCall("Union", Syntax.Function, Arrays.asList(
+							exp, cj));
 				}
 			}
 		}
@@ -200,10 +184,7 @@ public class ExpGenerator {
 		Exp oSet;
 
 		if (quaxUtil.isMember(oExp) || quaxUtil.isFunCallTo(oExp, "()")) {
-			FunCall call = new FunCall("{}", Syntax.Braces);
-			call.getArgs().add(oExp);
-
-			oSet = call;
+			oSet = new FunCall("{}", Syntax.Braces, Arrays.asList(oExp));
 		} else {
 			oSet = oExp;
 		}
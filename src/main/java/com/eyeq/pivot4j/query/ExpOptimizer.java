@@ -0,0 +1,556 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.OlapException;
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.PivotException;
+import com.eyeq.pivot4j.mdx.Exp;
+import com.eyeq.pivot4j.mdx.FunCall;
+import com.eyeq.pivot4j.mdx.Syntax;
+import com.eyeq.pivot4j.util.OlapUtils;
+
+/**
+ * Compacts the explicit member and tuple lists of an axis expression generated
+ * by {@link ExpGenerator}, without changing the tuples it returns or their
+ * order.
+ * <p>
+ * Runs of members in a set are rewritten as follows :
+ * <ul>
+ * <li>All the members of a level : <code>level.Members</code></li>
+ * <li>All the children of a member : <code>member.Children</code></li>
+ * <li>All the descendants of a member on a level :
+ * <code>Descendants(member, level)</code></li>
+ * <li>Consecutive siblings : <code>first : last</code></li>
+ * </ul>
+ * Runs of tuples which differ only by their last member are rewritten as a
+ * CrossJoin of the common members and the compacted set of the last members.
+ * <p>
+ * Calculated members and measures are always kept as they are.
+ */
+public class ExpOptimizer {
+
+	private static final int MIN_SET_LENGTH = 2;
+
+	private static final int MIN_RANGE_LENGTH = 3;
+
+	private QuaxUtil quaxUtil;
+
+	private Map<String, List<Member>> childMembers = new HashMap<String, List<Member>>();
+
+	private Map<String, List<Member>> rootMembers = new HashMap<String, List<Member>>();
+
+	/**
+	 * @param quaxUtil
+	 */
+	public ExpOptimizer(QuaxUtil quaxUtil) {
+		if (quaxUtil == null) {
+			throw new NullArgumentException("quaxUtil");
+		}
+
+		this.quaxUtil = quaxUtil;
+	}
+
+	/**
+	 * @param exp
+	 * @return compacted expression, or the same instance if nothing could be
+	 *         compacted. The given expression is not modified.
+	 */
+	public Exp optimize(Exp exp) {
+		try {
+			return optimizeExp(exp);
+		} finally {
+			childMembers.clear();
+			rootMembers.clear();
+		}
+	}
+
+	/**
+	 * @param exp
+	 * @return
+	 */
+	private Exp optimizeExp(Exp exp) {
+		if (!quaxUtil.isFunCall(exp) || quaxUtil.isFunCallTo(exp, "()")) {
+			return exp;
+		}
+
+		FunCall f = (FunCall) exp;
+
+		List<Exp> args = f.getArgs();
+		List<Exp> newArgs = null;
+
+		for (int i = 0; i < args.size(); i++) {
+			Exp arg = args.get(i);
+			Exp newArg = optimizeExp(arg);
+
+			if (newArg != arg && newArgs == null) {
+				newArgs = new ArrayList<Exp>(args);
+			}
+
+			if (newArgs != null) {
+				newArgs.set(i, newArg);
+			}
+		}
+
+		if (newArgs != null) {
+			f = new FunCall(f.getFunction(), f.getType(), newArgs);
+		}
+
+		if (f.isCallTo("{}")) {
+			return compactSet(f);
+		}
+
+		return f;
+	}
+
+	/**
+	 * @param set
+	 * @return
+	 */
+	private Exp compactSet(FunCall set) {
+		List<Exp> args = set.getArgs();
+		if (args.size() < MIN_SET_LENGTH) {
+			return set;
+		}
+
+		List<Exp> result;
+
+		List<Member> members = getMembers(args);
+		if (members != null) {
+			result = compactMembers(members);
+		} else {
+			List<List<Member>> tuples = getTuples(args);
+			if (tuples == null) {
+				return set;
+			}
+
+			result = compactTuples(tuples);
+		}
+
+		if (result.size() == args.size()) {
+			return set;
+		}
+
+		if (result.size() == 1 && quaxUtil.isFunCall(result.get(0))
+				&& !quaxUtil.isFunCallTo(result.get(0), ":")) {
+			return result.get(0);
+		}
+
+		return new FunCall("{}", Syntax.Braces, result);
+	}
+
+	/**
+	 * @param args
+	 * @return members of the set, or null if it contains anything else
+	 */
+	private List<Member> getMembers(List<Exp> args) {
+		List<Member> members = new ArrayList<Member>(args.size());
+
+		for (Exp arg : args) {
+			if (!quaxUtil.isMember(arg)) {
+				return null;
+			}
+
+			Member member = quaxUtil.memberForExp(arg);
+			if (member == null) {
+				return null;
+			}
+
+			members.add(member);
+		}
+
+		return members;
+	}
+
+	/**
+	 * @param args
+	 * @return members of the tuples in the set, or null if it contains
+	 *         anything else
+	 */
+	private List<List<Member>> getTuples(List<Exp> args) {
+		List<List<Member>> tuples = new ArrayList<List<Member>>(args.size());
+
+		int size = -1;
+
+		for (Exp arg : args) {
+			if (!quaxUtil.isFunCallTo(arg, "()")) {
+				return null;
+			}
+
+			List<Member> members = getMembers(((FunCall) arg).getArgs());
+			if (members == null || members.size() < 2
+					|| (size >= 0 && members.size() != size)) {
+				return null;
+			}
+
+			size = members.size();
+
+			tuples.add(members);
+		}
+
+		return tuples;
+	}
+
+	/**
+	 * @param tuples
+	 * @return
+	 */
+	private List<Exp> compactTuples(List<List<Member>> tuples) {
+		List<Exp> result = new ArrayList<Exp>(tuples.size());
+
+		int size = tuples.get(0).size();
+
+		int start = 0;
+
+		while (start < tuples.size()) {
+			List<Member> prefix = tuples.get(start).subList(0, size - 1);
+
+			// tuples which differ only by their last member
+			int end = start + 1;
+			while (end < tuples.size()
+					&& equals(prefix, tuples.get(end).subList(0, size - 1))) {
+				end++;
+			}
+
+			List<Member> lastMembers = new ArrayList<Member>(end - start);
+			for (int i = start; i < end; i++) {
+				lastMembers.add(tuples.get(i).get(size - 1));
+			}
+
+			List<Exp> compacted = compactMembers(lastMembers);
+
+			if (compacted.size() == lastMembers.size()) {
+				for (int i = start; i < end; i++) {
+					result.add(createTuple(tuples.get(i)));
+				}
+			} else {
+				Exp prefixExp;
+
+				if (prefix.size() == 1) {
+					prefixExp = quaxUtil.expForMember(prefix.get(0));
+				} else {
+					prefixExp = createTuple(prefix);
+				}
+
+				Exp prefixSet = new FunCall("{}", Syntax.Braces,
+						Arrays.asList(prefixExp));
+
+				Exp lastSet;
+				if (compacted.size() == 1
+						&& !quaxUtil.isFunCallTo(compacted.get(0), ":")) {
+					lastSet = compacted.get(0);
+				} else {
+					lastSet = new FunCall("{}", Syntax.Braces, compacted);
+				}
+
+				result.add(new FunCall("CrossJoin", Syntax.Function, Arrays
+						.asList(prefixSet, lastSet)));
+			}
+
+			start = end;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param members
+	 * @return
+	 */
+	private FunCall createTuple(List<Member> members) {
+		List<Exp> args = new ArrayList<Exp>(members.size());
+
+		for (Member member : members) {
+			args.add(quaxUtil.expForMember(member));
+		}
+
+		return new FunCall("()", Syntax.Parentheses, args);
+	}
+
+	/**
+	 * @param members
+	 * @return
+	 */
+	private List<Exp> compactMembers(List<Member> members) {
+		List<Exp> result = new ArrayList<Exp>(members.size());
+
+		int index = 0;
+
+		while (index < members.size()) {
+			Member member = members.get(index);
+
+			int end = -1;
+
+			// calculated members are not returned by the level Members
+			// function, and the measures are not ordered hierarchically
+			if (!member.isCalculated()
+					&& member.getMemberType() != Member.Type.MEASURE) {
+				end = compactDescendants(members, index, result);
+
+				if (end < 0) {
+					end = compactRange(members, index, result);
+				}
+			}
+
+			if (end < 0) {
+				result.add(quaxUtil.expForMember(member));
+				index++;
+			} else {
+				index = end;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Find the topmost ancestor of which all the descendants on the level of
+	 * the member appear in the list, starting from the member.
+	 *
+	 * @param members
+	 * @param index
+	 * @param result
+	 * @return end index of the run, or -1 if no run was found
+	 */
+	private int compactDescendants(List<Member> members, int index,
+			List<Exp> result) {
+		Member member = members.get(index);
+		Level level = member.getLevel();
+
+		List<Member> ancestors = new ArrayList<Member>();
+
+		Member parent = member.getParentMember();
+		while (parent != null) {
+			ancestors.add(0, parent);
+			parent = parent.getParentMember();
+		}
+
+		List<Member> roots = getRootMembers(member);
+
+		// all the members of the level
+		if ((roots.size() == 1 && !ancestors.isEmpty())
+				|| (roots.size() > 1 && ancestors.isEmpty())) {
+			int end = ancestors.isEmpty() ? matchMembers(members, index, roots)
+					: matchDescendants(members, index, roots.get(0),
+							level.getDepth());
+
+			if (end - index >= MIN_SET_LENGTH) {
+				result.add(new FunCall("Members", Syntax.Property, Arrays
+						.asList(quaxUtil.expForLevel(level))));
+				return end;
+			}
+		}
+
+		for (Member ancestor : ancestors) {
+			int end = matchDescendants(members, index, ancestor,
+					level.getDepth());
+
+			if (end - index >= MIN_SET_LENGTH) {
+				Exp exp = quaxUtil.expForMember(ancestor);
+
+				if (OlapUtils.equals(ancestor, member.getParentMember())) {
+					result.add(new FunCall("Children", Syntax.Property, Arrays
+							.asList(exp)));
+				} else {
+					result.add(new FunCall("Descendants", Syntax.Function,
+							Arrays.asList(exp, quaxUtil.expForLevel(level))));
+				}
+
+				return end;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Find the consecutive siblings which start from the member.
+	 *
+	 * @param members
+	 * @param index
+	 * @param result
+	 * @return end index of the run, or -1 if no run was found
+	 */
+	private int compactRange(List<Member> members, int index, List<Exp> result) {
+		Member member = members.get(index);
+		Member parent = member.getParentMember();
+
+		List<Member> siblings;
+		if (parent == null) {
+			siblings = getRootMembers(member);
+		} else {
+			siblings = getChildMembers(parent);
+		}
+
+		int offset = indexOf(siblings, member);
+		if (offset < 0) {
+			return -1;
+		}
+
+		int end = index + 1;
+
+		while (end < members.size() && offset + end - index < siblings.size()
+				&& OlapUtils.equals(members.get(end),
+						siblings.get(offset + end - index))) {
+			end++;
+		}
+
+		if (end - index < MIN_RANGE_LENGTH) {
+			return -1;
+		}
+
+		result.add(new FunCall(":", Syntax.Infix, Arrays.asList(
+				quaxUtil.expForMember(member),
+				quaxUtil.expForMember(members.get(end - 1)))));
+
+		return end;
+	}
+
+	/**
+	 * @param members
+	 * @param index
+	 * @param expected
+	 * @return end index if the list contains all the expected members from the
+	 *         index, or -1
+	 */
+	private int matchMembers(List<Member> members, int index,
+			List<Member> expected) {
+		for (Member member : expected) {
+			if (index >= members.size()
+					|| !OlapUtils.equals(member, members.get(index))) {
+				return -1;
+			}
+
+			index++;
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param members
+	 * @param index
+	 * @param parent
+	 * @param depth
+	 * @return end index if the list contains all the descendants of the parent
+	 *         on the depth from the index, or -1
+	 */
+	private int matchDescendants(List<Member> members, int index,
+			Member parent, int depth) {
+		for (Member child : getChildMembers(parent)) {
+			int childDepth = child.getLevel().getDepth();
+
+			if (childDepth == depth) {
+				if (index >= members.size()
+						|| !OlapUtils.equals(child, members.get(index))) {
+					return -1;
+				}
+
+				index++;
+			} else if (childDepth < depth) {
+				index = matchDescendants(members, index, child, depth);
+
+				if (index < 0) {
+					return -1;
+				}
+			} else {
+				// ragged hierarchy
+				return -1;
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param members
+	 * @param member
+	 * @return
+	 */
+	private int indexOf(List<Member> members, Member member) {
+		int index = 0;
+
+		for (Member m : members) {
+			if (OlapUtils.equals(m, member)) {
+				return index;
+			}
+
+			index++;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param member
+	 * @return
+	 */
+	private List<Member> getChildMembers(Member member) {
+		List<Member> children = childMembers.get(member.getUniqueName());
+
+		if (children == null) {
+			try {
+				children = new ArrayList<Member>(member.getChildMembers());
+			} catch (OlapException e) {
+				throw new PivotException(e);
+			}
+
+			childMembers.put(member.getUniqueName(), children);
+		}
+
+		return children;
+	}
+
+	/**
+	 * @param member
+	 * @return root members of the member's hierarchy
+	 */
+	private List<Member> getRootMembers(Member member) {
+		String key = member.getHierarchy().getUniqueName();
+
+		List<Member> roots = rootMembers.get(key);
+
+		if (roots == null) {
+			try {
+				roots = new ArrayList<Member>(member.getHierarchy()
+						.getRootMembers());
+			} catch (OlapException e) {
+				throw new PivotException(e);
+			}
+
+			rootMembers.put(key, roots);
+		}
+
+		return roots;
+	}
+
+	/**
+	 * @param members1
+	 * @param members2
+	 * @return
+	 */
+	private static boolean equals(List<Member> members1, List<Member> members2) {
+		for (int i = 0; i < members1.size(); i++) {
+			if (!OlapUtils.equals(members1.get(i), members2.get(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
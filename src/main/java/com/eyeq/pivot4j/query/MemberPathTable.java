@@ -0,0 +1,322 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.metadata.Member;
+
+/**
+ * Table of boolean values keyed by member paths, which is used to memoize the
+ * navigation checks of a query axis.
+ * <p>
+ * Members are interned as int ids by their unique names, and the paths are
+ * stored as arrays of those ids in an open addressing hash table, so the
+ * lookups do not need to hash or compare the members themselves.
+ * <p>
+ * This class is not thread safe.
+ */
+class MemberPathTable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final int NOT_INTERNED = -1;
+
+	private Map<String, Integer> memberIds = new HashMap<String, Integer>();
+
+	private int[][] keys;
+
+	private int[] hashes;
+
+	private boolean[] values;
+
+	private int size = 0;
+
+	private int[] buffer = new int[4];
+
+	MemberPathTable() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param memberPath
+	 * @return value of the path, or null if it's not in the table
+	 */
+	Boolean get(List<Member> memberPath) {
+		if (memberPath == null) {
+			throw new NullArgumentException("memberPath");
+		}
+
+		int length = memberPath.size();
+		int[] ids = toIds(memberPath, false);
+
+		for (int i = 0; i < length; i++) {
+			if (ids[i] == NOT_INTERNED) {
+				return null;
+			}
+		}
+
+		int hash = hash(ids, length);
+		int slot = findSlot(ids, length, hash);
+
+		if (keys[slot] == null) {
+			return null;
+		}
+
+		return values[slot];
+	}
+
+	/**
+	 * @param memberPath
+	 * @param value
+	 */
+	void put(List<Member> memberPath, boolean value) {
+		if (memberPath == null) {
+			throw new NullArgumentException("memberPath");
+		}
+
+		int length = memberPath.size();
+		int[] ids = toIds(memberPath, true);
+
+		int hash = hash(ids, length);
+		int slot = findSlot(ids, length, hash);
+
+		if (keys[slot] == null) {
+			int[] key = new int[length];
+			System.arraycopy(ids, 0, key, 0, length);
+
+			keys[slot] = key;
+			hashes[slot] = hash;
+
+			size++;
+		}
+
+		values[slot] = value;
+
+		if (size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Removes the paths which might be affected when the child positions of
+	 * the specified path have been added or removed, that is, the paths of
+	 * which all but the last members are the same as the leading members of
+	 * the changed path (up to its parent path).
+	 *
+	 * @param changedPath
+	 */
+	void invalidate(List<Member> changedPath) {
+		if (changedPath == null) {
+			throw new NullArgumentException("changedPath");
+		}
+
+		if (size == 0) {
+			return;
+		}
+
+		int prefixLength = changedPath.size() - 1;
+		int[] ids = toIds(changedPath, false);
+
+		int[][] oldKeys = keys;
+		int[] oldHashes = hashes;
+		boolean[] oldValues = values;
+
+		allocate(oldKeys.length);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			int[] key = oldKeys[i];
+
+			if (key == null) {
+				continue;
+			}
+
+			int length = Math.min(key.length - 1, prefixLength);
+
+			if (!startsWith(key, ids, length)) {
+				insert(key, oldHashes[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Removes all the paths along with the interned members.
+	 */
+	void clear() {
+		memberIds.clear();
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @return number of the paths in the table
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param key
+	 * @param ids
+	 * @param length
+	 * @return
+	 */
+	private static boolean startsWith(int[] key, int[] ids, int length) {
+		for (int i = 0; i < length; i++) {
+			if (key[i] != ids[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Converts the path to member ids in the internal buffer.
+	 *
+	 * @param memberPath
+	 * @param intern
+	 *            true to assign ids to the members which are not interned yet
+	 * @return
+	 */
+	private int[] toIds(List<Member> memberPath, boolean intern) {
+		int length = memberPath.size();
+
+		if (buffer.length < length) {
+			this.buffer = new int[Math.max(length, buffer.length * 2)];
+		}
+
+		int index = 0;
+
+		for (Member member : memberPath) {
+			String name = member.getUniqueName();
+
+			Integer id = memberIds.get(name);
+
+			if (id == null) {
+				if (intern) {
+					id = memberIds.size();
+					memberIds.put(name, id);
+				} else {
+					id = NOT_INTERNED;
+				}
+			}
+
+			buffer[index++] = id;
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * @param ids
+	 * @param length
+	 * @param hash
+	 * @return slot of the path, or an empty slot where it should be inserted
+	 */
+	private int findSlot(int[] ids, int length, int hash) {
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+
+		while (keys[slot] != null) {
+			if (hashes[slot] == hash && equals(keys[slot], ids, length)) {
+				break;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * @param key
+	 * @param hash
+	 * @param value
+	 */
+	private void insert(int[] key, int hash, boolean value) {
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+
+		while (keys[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		hashes[slot] = hash;
+		values[slot] = value;
+
+		size++;
+	}
+
+	/**
+	 * @param capacity
+	 */
+	private void rehash(int capacity) {
+		int[][] oldKeys = keys;
+		int[] oldHashes = hashes;
+		boolean[] oldValues = values;
+
+		allocate(capacity);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				insert(oldKeys[i], oldHashes[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param capacity
+	 */
+	private void allocate(int capacity) {
+		this.keys = new int[capacity][];
+		this.hashes = new int[capacity];
+		this.values = new boolean[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * @param key
+	 * @param ids
+	 * @param length
+	 * @return
+	 */
+	private static boolean equals(int[] key, int[] ids, int length) {
+		if (key.length != length) {
+			return false;
+		}
+
+		return startsWith(key, ids, length);
+	}
+
+	/**
+	 * @param ids
+	 * @param length
+	 * @return
+	 */
+	private static int hash(int[] ids, int length) {
+		int hash = length;
+
+		for (int i = 0; i < length; i++) {
+			hash = hash * 31 + ids[i];
+		}
+
+		// spread the bits as the table uses the lower bits as the slot
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+
+		return hash;
+	}
+}
@@ -0,0 +1,552 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.mdx.Exp;
+import com.eyeq.pivot4j.mdx.FunCall;
+import com.eyeq.pivot4j.util.TreeNode;
+
+/**
+ * Index of the position tree nodes of a query axis by the unique names of
+ * the members they contain, and of the parents of those members.
+ * <p>
+ * Lookups return candidate nodes in the order in which a walk through the
+ * tree would visit them. The candidates include every node which might match
+ * (i.e. nodes with set expressions which cannot be indexed are always
+ * included), so the callers are still expected to check them.
+ * <p>
+ * The index is built in a single pass, and is kept up to date when the tree
+ * is modified through {@link #addChild(TreeNode, TreeNode)},
+ * {@link #remove(TreeNode)} and {@link #setReference(TreeNode, Exp)}. Any
+ * other modification of the tree makes it stale, which can be detected with
+ * {@link #isValid(TreeNode)}. As the indexed expressions are immutable, they
+ * can't be modified without changing the modification count of the tree.
+ */
+class PosTreeIndex {
+
+	// distance between the ordinals of the nodes when they are numbered, to
+	// leave room for the nodes added afterwards
+	private static final long ORDINAL_GAP = 1L << 32;
+
+	private TreeNode<Exp> root;
+
+	private int modificationCount;
+
+	private QuaxUtil quaxUtil;
+
+	private List<LevelIndex> levels = new ArrayList<LevelIndex>();
+
+	private Map<TreeNode<Exp>, Long> ordinals = new IdentityHashMap<TreeNode<Exp>, Long>();
+
+	private Comparator<TreeNode<Exp>> comparator = new Comparator<TreeNode<Exp>>() {
+
+		public int compare(TreeNode<Exp> node1, TreeNode<Exp> node2) {
+			return PosTreeIndex.this.compare(node1, node2);
+		}
+	};
+
+	/**
+	 * @param root
+	 * @param quaxUtil
+	 */
+	PosTreeIndex(TreeNode<Exp> root, QuaxUtil quaxUtil) {
+		this.root = root;
+		this.modificationCount = root.getModificationCount();
+		this.quaxUtil = quaxUtil;
+
+		renumber();
+
+		for (TreeNode<Exp> child : root.getChildren()) {
+			addNode(child, 1);
+		}
+	}
+
+	/**
+	 * @param root
+	 * @return true if the index reflects the current state of the given tree
+	 */
+	boolean isValid(TreeNode<Exp> root) {
+		return this.root == root
+				&& modificationCount == root.getModificationCount();
+	}
+
+	/**
+	 * Adds a child node to the tree, and indexes it along with its
+	 * descendants if the index is still valid.
+	 * 
+	 * @param parent
+	 * @param child
+	 */
+	void addChild(TreeNode<Exp> parent, TreeNode<Exp> child) {
+		boolean valid = isValid(parent.getRoot());
+
+		parent.addChild(child);
+
+		if (valid) {
+			List<TreeNode<Exp>> nodes = new ArrayList<TreeNode<Exp>>();
+			collectNodes(child, nodes);
+
+			long lower = getOrdinal(getPreviousNode(child));
+			long step = ORDINAL_GAP;
+
+			TreeNode<Exp> next = getNextNode(child);
+			if (next != null) {
+				step = (getOrdinal(next) - lower) / (nodes.size() + 1);
+			}
+
+			if (step == 0) {
+				renumber();
+			} else {
+				for (TreeNode<Exp> node : nodes) {
+					lower += step;
+					ordinals.put(node, lower);
+				}
+			}
+
+			addNode(child, child.getLevel());
+
+			this.modificationCount = root.getModificationCount();
+		}
+	}
+
+	/**
+	 * Removes a node from the tree, and from the index along with its
+	 * descendants if the index is still valid.
+	 * 
+	 * @param node
+	 */
+	void remove(TreeNode<Exp> node) {
+		boolean valid = isValid(node.getRoot());
+
+		if (valid) {
+			removeNode(node, node.getLevel());
+
+			List<TreeNode<Exp>> nodes = new ArrayList<TreeNode<Exp>>();
+			collectNodes(node, nodes);
+
+			for (TreeNode<Exp> descendant : nodes) {
+				ordinals.remove(descendant);
+			}
+		}
+
+		node.remove();
+
+		if (valid) {
+			this.modificationCount = root.getModificationCount();
+		}
+	}
+
+	/**
+	 * Replaces the expression of a node, and updates the index if it is
+	 * still valid.
+	 * 
+	 * @param node
+	 * @param exp
+	 */
+	void setReference(TreeNode<Exp> node, Exp exp) {
+		boolean valid = isValid(node.getRoot());
+
+		int level = node.getLevel();
+
+		if (valid) {
+			update(node, level, false);
+		}
+
+		node.setReference(exp);
+
+		if (valid) {
+			update(node, level, true);
+
+			this.modificationCount = root.getModificationCount();
+		}
+	}
+
+	/**
+	 * Compares the nodes in the order in which a walk through the tree would
+	 * visit them.
+	 * 
+	 * @param node1
+	 * @param node2
+	 * @return
+	 */
+	int compare(TreeNode<Exp> node1, TreeNode<Exp> node2) {
+		long ordinal1 = getOrdinal(node1);
+		long ordinal2 = getOrdinal(node2);
+
+		if (ordinal1 < ordinal2) {
+			return -1;
+		} else if (ordinal1 > ordinal2) {
+			return 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @param node
+	 * @return
+	 */
+	private long getOrdinal(TreeNode<Exp> node) {
+		Long ordinal = ordinals.get(node);
+
+		if (ordinal == null) {
+			throw new IllegalArgumentException(
+					"The node does not belong to the tree : " + node);
+		}
+
+		return ordinal;
+	}
+
+	/**
+	 * Numbers all the nodes of the tree again, keeping their order.
+	 */
+	private void renumber() {
+		List<TreeNode<Exp>> nodes = new ArrayList<TreeNode<Exp>>();
+		collectNodes(root, nodes);
+
+		ordinals.clear();
+
+		long ordinal = 0;
+
+		for (TreeNode<Exp> node : nodes) {
+			ordinals.put(node, ordinal);
+			ordinal += ORDINAL_GAP;
+		}
+	}
+
+	/**
+	 * @param node
+	 * @param nodes
+	 *            list to which the node and its descendants are added in the
+	 *            order in which a walk through the tree would visit them
+	 */
+	private static void collectNodes(TreeNode<Exp> node,
+			List<TreeNode<Exp>> nodes) {
+		nodes.add(node);
+
+		for (TreeNode<Exp> child : node.getChildren()) {
+			collectNodes(child, nodes);
+		}
+	}
+
+	/**
+	 * @param node
+	 * @return node which a walk through the tree would visit right before
+	 *         the node
+	 */
+	private static TreeNode<Exp> getPreviousNode(TreeNode<Exp> node) {
+		TreeNode<Exp> parent = node.getParent();
+
+		int index = indexOf(parent.getChildren(), node);
+		if (index == 0) {
+			return parent;
+		}
+
+		TreeNode<Exp> previous = parent.getChildren().get(index - 1);
+
+		while (!previous.getChildren().isEmpty()) {
+			List<TreeNode<Exp>> children = previous.getChildren();
+			previous = children.get(children.size() - 1);
+		}
+
+		return previous;
+	}
+
+	/**
+	 * @param node
+	 * @return node which a walk through the tree would visit right after the
+	 *         node and its descendants, or null if there is none
+	 */
+	private static TreeNode<Exp> getNextNode(TreeNode<Exp> node) {
+		TreeNode<Exp> current = node;
+
+		while (current.getParent() != null) {
+			List<TreeNode<Exp>> siblings = current.getParent().getChildren();
+
+			int index = indexOf(siblings, current);
+			if (index < siblings.size() - 1) {
+				return siblings.get(index + 1);
+			}
+
+			current = current.getParent();
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param nodes
+	 * @param node
+	 * @return
+	 */
+	private static int indexOf(List<TreeNode<Exp>> nodes, TreeNode<Exp> node) {
+		// nodes are usually added as the last child
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			if (nodes.get(i) == node) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException(
+				"The node does not belong to the tree : " + node);
+	}
+
+	/**
+	 * @param node
+	 * @param level
+	 */
+	private void addNode(TreeNode<Exp> node, int level) {
+		update(node, level, true);
+
+		for (TreeNode<Exp> child : node.getChildren()) {
+			addNode(child, level + 1);
+		}
+	}
+
+	/**
+	 * @param node
+	 * @param level
+	 */
+	private void removeNode(TreeNode<Exp> node, int level) {
+		update(node, level, false);
+
+		for (TreeNode<Exp> child : node.getChildren()) {
+			removeNode(child, level + 1);
+		}
+	}
+
+	/**
+	 * @param node
+	 * @param level
+	 * @param add
+	 *            true to add the node to the index, false to remove it
+	 */
+	private void update(TreeNode<Exp> node, int level, boolean add) {
+		while (levels.size() <= level) {
+			levels.add(new LevelIndex());
+		}
+
+		LevelIndex index = levels.get(level);
+
+		Exp exp = node.getReference();
+
+		if (quaxUtil.isMember(exp)) {
+			Member member = quaxUtil.memberForExp(exp);
+
+			// unresolved members cannot match any member
+			if (member != null) {
+				index.updateMember(member, node, add);
+			}
+		} else if (quaxUtil.isFunCallTo(exp, "Children")
+				&& ((FunCall) exp).getArgs().size() == 1) {
+			Member parent = quaxUtil.memberForExp(((FunCall) exp).getArgs()
+					.get(0));
+
+			if (parent == null) {
+				index.updateOther(node, add);
+			} else {
+				index.update(index.childrenCalls, parent.getUniqueName(),
+						node, add);
+				index.update(index.childNodes, parent.getUniqueName(), node,
+						add);
+			}
+		} else if (quaxUtil.isFunCallTo(exp, "{}")
+				&& isMemberSet((FunCall) exp)) {
+			for (Exp arg : ((FunCall) exp).getArgs()) {
+				index.updateMember(quaxUtil.memberForExp(arg), node, add);
+			}
+		} else {
+			index.updateOther(node, add);
+		}
+	}
+
+	/**
+	 * @param set
+	 * @return true if all the elements of the set are resolved members
+	 */
+	private boolean isMemberSet(FunCall set) {
+		for (Exp arg : set.getArgs()) {
+			if (!quaxUtil.isMember(arg)
+					|| quaxUtil.memberForExp(arg) == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param member
+	 * @param level
+	 * @return nodes on the level which may contain the member
+	 */
+	List<TreeNode<Exp>> findMemberNodes(Member member, int level) {
+		if (level >= levels.size()) {
+			return Collections.emptyList();
+		}
+
+		LevelIndex index = levels.get(level);
+
+		List<List<TreeNode<Exp>>> lists = new ArrayList<List<TreeNode<Exp>>>(
+				3);
+
+		lists.add(index.memberNodes.get(member.getUniqueName()));
+
+		Member parent = member.getParentMember();
+		if (parent != null) {
+			lists.add(index.childrenCalls.get(parent.getUniqueName()));
+		}
+
+		lists.add(index.otherNodes);
+
+		return merge(lists);
+	}
+
+	/**
+	 * @param member
+	 * @param level
+	 * @return nodes on the level which may contain a child of the member
+	 */
+	List<TreeNode<Exp>> findChildNodes(Member member, int level) {
+		if (level >= levels.size()) {
+			return Collections.emptyList();
+		}
+
+		LevelIndex index = levels.get(level);
+
+		List<List<TreeNode<Exp>>> lists = new ArrayList<List<TreeNode<Exp>>>(
+				2);
+
+		lists.add(index.childNodes.get(member.getUniqueName()));
+		lists.add(index.otherNodes);
+
+		return merge(lists);
+	}
+
+	/**
+	 * @param lists
+	 * @return
+	 */
+	private List<TreeNode<Exp>> merge(List<List<TreeNode<Exp>>> lists) {
+		List<TreeNode<Exp>> result = null;
+
+		int count = 0;
+
+		for (List<TreeNode<Exp>> list : lists) {
+			if (list != null && !list.isEmpty()) {
+				if (result == null) {
+					result = list;
+				} else {
+					if (count == 1) {
+						result = new ArrayList<TreeNode<Exp>>(result);
+					}
+
+					result.addAll(list);
+				}
+
+				count++;
+			}
+		}
+
+		if (result == null) {
+			return Collections.emptyList();
+		} else if (count > 1) {
+			Collections.sort(result, comparator);
+		}
+
+		return result;
+	}
+
+	class LevelIndex {
+
+		private Map<String, List<TreeNode<Exp>>> memberNodes = new HashMap<String, List<TreeNode<Exp>>>();
+
+		private Map<String, List<TreeNode<Exp>>> childNodes = new HashMap<String, List<TreeNode<Exp>>>();
+
+		private Map<String, List<TreeNode<Exp>>> childrenCalls = new HashMap<String, List<TreeNode<Exp>>>();
+
+		private List<TreeNode<Exp>> otherNodes = new ArrayList<TreeNode<Exp>>();
+
+		/**
+		 * @param member
+		 * @param node
+		 * @param add
+		 */
+		void updateMember(Member member, TreeNode<Exp> node, boolean add) {
+			update(memberNodes, member.getUniqueName(), node, add);
+
+			Member parent = member.getParentMember();
+			if (parent != null) {
+				update(childNodes, parent.getUniqueName(), node, add);
+			}
+		}
+
+		/**
+		 * @param node
+		 * @param add
+		 */
+		void updateOther(TreeNode<Exp> node, boolean add) {
+			update(otherNodes, node, add);
+		}
+
+		/**
+		 * @param map
+		 * @param key
+		 * @param node
+		 * @param add
+		 */
+		void update(Map<String, List<TreeNode<Exp>>> map, String key,
+				TreeNode<Exp> node, boolean add) {
+			List<TreeNode<Exp>> nodes = map.get(key);
+
+			if (nodes == null) {
+				if (!add) {
+					return;
+				}
+
+				nodes = new ArrayList<TreeNode<Exp>>(1);
+				map.put(key, nodes);
+			}
+
+			update(nodes, node, add);
+
+			if (nodes.isEmpty()) {
+				map.remove(key);
+			}
+		}
+
+		/**
+		 * Keeps the nodes in the order in which a walk through the tree would
+		 * visit them, and each node only once.
+		 * 
+		 * @param nodes
+		 * @param node
+		 * @param add
+		 */
+		void update(List<TreeNode<Exp>> nodes, TreeNode<Exp> node, boolean add) {
+			int index = Collections.binarySearch(nodes, node, comparator);
+
+			if (add && index < 0) {
+				nodes.add(-index - 1, node);
+			} else if (!add && index >= 0) {
+				nodes.remove(index);
+			}
+		}
+	}
+}
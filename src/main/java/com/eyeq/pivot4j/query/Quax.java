@@ -21,7 +21,6 @@ import java.util.Map;
 import org.apache.commons.lang.NullArgumentException;
 import org.olap4j.OlapException;
 import org.olap4j.Position;
-import org.olap4j.mdx.IdentifierNode;
 import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Dimension;
 import org.olap4j.metadata.Hierarchy;
@@ -31,6 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.eyeq.pivot4j.PivotException;
+import com.eyeq.pivot4j.cache.MemberLookupCache;
+import com.eyeq.pivot4j.cache.MetadataCache;
 import com.eyeq.pivot4j.mdx.Exp;
 import com.eyeq.pivot4j.mdx.ExpNode;
 import com.eyeq.pivot4j.mdx.FunCall;
@@ -89,28 +90,62 @@ public class Quax implements Bookmarkable {
 
 	private Map<Member, Boolean> canExpandMemberMap = new HashMap<Member, Boolean>();
 
-	private Map<List<Member>, Boolean> canExpandPosMap = new HashMap<List<Member>, Boolean>();
-
 	private Map<Member, Boolean> canCollapseMemberMap = new HashMap<Member, Boolean>();
 
-	private Map<List<Member>, Boolean> canCollapsePosMap = new HashMap<List<Member>, Boolean>();
+	// whether the position paths have child positions, which is shared by
+	// canExpand(List) and canCollapse(List)
+	private MemberPathTable childPositionMap = new MemberPathTable();
+
+	private MemberLookupCache memberCache;
 
-	private Map<String, Member> memberMap = new HashMap<String, Member>();
+	private MetadataCache metadataCache;
 
 	private Map<String, Hierarchy> hierarchyMap = new HashMap<String, Hierarchy>();
 
+	private PosTreeIndex posTreeIndex;
+
 	/**
 	 * @param ordinal
 	 * @param cube
 	 */
 	public Quax(int ordinal, Cube cube) {
+		this(ordinal, cube, new MemberLookupCache(cube));
+	}
+
+	/**
+	 * @param ordinal
+	 * @param cube
+	 * @param memberCache
+	 *            cache to be used to look up members by their unique names
+	 */
+	public Quax(int ordinal, Cube cube, MemberLookupCache memberCache) {
+		this(ordinal, cube, memberCache, null);
+	}
+
+	/**
+	 * @param ordinal
+	 * @param cube
+	 * @param memberCache
+	 *            cache to be used to look up members by their unique names
+	 * @param metadataCache
+	 *            cache to be used to resolve hierarchies and levels by their
+	 *            names, or null
+	 */
+	public Quax(int ordinal, Cube cube, MemberLookupCache memberCache,
+			MetadataCache metadataCache) {
 		if (cube == null) {
 			throw new NullArgumentException("cube");
 		}
 
+		if (memberCache == null) {
+			throw new NullArgumentException("memberCache");
+		}
+
 		this.ordinal = ordinal;
 		this.cube = cube;
-		this.quaxUtil = new QuaxUtil(cube);
+		this.quaxUtil = new QuaxUtil(cube, metadataCache);
+		this.memberCache = memberCache;
+		this.metadataCache = metadataCache;
 	}
 
 	/**
@@ -156,6 +191,20 @@ public class Quax implements Bookmarkable {
 	 *            true if the memberset was changed by the navigator
 	 */
 	protected void fireQuaxChanged(boolean changedByNavigator) {
+		fireQuaxChanged(changedByNavigator, null);
+	}
+
+	/**
+	 * Handle change
+	 * 
+	 * @param changedByNavigator
+	 *            true if the memberset was changed by the navigator
+	 * @param changedPath
+	 *            member path of which only the child positions were changed,
+	 *            or null if any position might have been changed
+	 */
+	protected void fireQuaxChanged(boolean changedByNavigator,
+			List<Member> changedPath) {
 		QuaxChangeEvent e = new QuaxChangeEvent(this, changedByNavigator);
 
 		List<QuaxChangeListener> copiedListeners = new ArrayList<QuaxChangeListener>(
@@ -165,9 +214,13 @@ public class Quax implements Bookmarkable {
 		}
 
 		canExpandMemberMap.clear();
-		canExpandPosMap.clear();
 		canCollapseMemberMap.clear();
-		canCollapsePosMap.clear();
+
+		if (changedPath == null) {
+			childPositionMap.clear();
+		} else {
+			childPositionMap.invalidate(changedPath);
+		}
 	}
 
 	/**
@@ -176,37 +229,35 @@ public class Quax implements Bookmarkable {
 	 * @param positions
 	 */
 	public void initialize(List<Position> positions) {
-		List<List<Member>> posMembers;
-
-		int nDimension = 0;
+		initialize(new AxisIndex(positions));
+	}
 
+	/**
+	 * Initialize quax from the index of result positions
+	 * 
+	 * @param index
+	 */
+	public void initialize(AxisIndex index) {
 		this.hierarchizeNeeded = false;
 		this.nHierExclude = 0;
 		this.qubonMode = true;
 
-		if (positions.isEmpty()) {
+		if (index.getPositionCount() == 0) {
 			// the axis does not have any positions
-			posMembers = new ArrayList<List<Member>>(0);
 			setHierarchies(new ArrayList<Hierarchy>(0));
 			return;
-		} else {
-			nDimension = positions.get(0).getMembers().size();
-			posMembers = new ArrayList<List<Member>>(positions.size());
-
-			for (Position position : positions) {
-				posMembers.add(new ArrayList<Member>(position.getMembers()));
-			}
 		}
 
+		int nDimension = index.getHierarchyCount();
+
 		List<Hierarchy> hiers = new ArrayList<Hierarchy>(nDimension);
 
-		List<Member> firstMembers = posMembers.get(0);
-		for (Member member : firstMembers) {
-			hiers.add(member.getLevel().getHierarchy());
+		for (int i = 0; i < nDimension; i++) {
+			hiers.add(index.getMember(0, i).getLevel().getHierarchy());
 		}
 
 		setHierarchies(hiers);
-		initPositions(posMembers);
+		initPositions(index);
 
 		// initialize the dimension flags
 		// if there is only one set node per dimension,
@@ -241,11 +292,13 @@ public class Quax implements Bookmarkable {
 	/**
 	 * Initialize position member list after first result gotten
 	 * 
-	 * @param posMemStart
+	 * @param index
 	 */
-	private void initPositions(List<List<Member>> posMemStart) {
+	private void initPositions(AxisIndex index) {
+		int positionCount = index.getPositionCount();
+
 		// no positions - no tree
-		if (posMemStart.isEmpty()) {
+		if (positionCount == 0) {
 			this.posTreeRoot = null;
 			return;
 		}
@@ -258,11 +311,9 @@ public class Quax implements Bookmarkable {
 
 		// init position tree
 		this.posTreeRoot = new ExpNode(null); // root
-		int end = addToPosTree(posMemStart, 0, posMemStart.size(), 0,
-				posTreeRoot);
-		while (end < posMemStart.size()) {
-			end = addToPosTree(posMemStart, end, posMemStart.size(), 0,
-					posTreeRoot);
+		int end = addToPosTree(index, 0, positionCount, 0, posTreeRoot);
+		while (end < positionCount) {
+			end = addToPosTree(index, end, positionCount, 0, posTreeRoot);
 		}
 
 		// try to factor out the members of the last dimension
@@ -307,8 +358,6 @@ public class Quax implements Bookmarkable {
 		this.containsUF = new boolean[nDimension]; // init false
 		this.ufMemberLists = new ArrayList<ArrayList<String>>(nDimension);
 
-		memberMap.clear();
-
 		for (int i = 0; i < nDimension; i++) {
 			ufMemberLists.add(null);
 		}
@@ -321,8 +370,8 @@ public class Quax implements Bookmarkable {
 	/**
 	 * add members of dimension to tree recursively
 	 * 
-	 * @param posMembers
-	 *            positon member array
+	 * @param index
+	 *            index of the positions
 	 * @param startIndex
 	 *            start position for this dimension
 	 * @param endIndex
@@ -333,9 +382,10 @@ public class Quax implements Bookmarkable {
 	 *            parent node (previous dimension)
 	 * @return index of position where the member of this dimension changes
 	 */
-	protected int addToPosTree(List<List<Member>> posMembers, int startIndex,
-			int endIndex, int dimIndex, TreeNode<Exp> parentNode) {
-		Member currentOfDim = posMembers.get(startIndex).get(dimIndex);
+	protected int addToPosTree(AxisIndex index, int startIndex, int endIndex,
+			int dimIndex, TreeNode<Exp> parentNode) {
+		Member currentOfDim = index.getMember(startIndex, dimIndex);
+		int currentOrdinal = index.getMemberOrdinal(startIndex, dimIndex);
 
 		Exp exp = quaxUtil.expForMember(currentOfDim);
 		ExpNode newNode = new ExpNode(exp);
@@ -344,19 +394,18 @@ public class Quax implements Bookmarkable {
 		// check range where member of this dimension is constant
 		int endRange = startIndex + 1;
 		for (; endRange < endIndex; endRange++) {
-			if (!OlapUtils.equals(posMembers.get(endRange).get(dimIndex),
-					currentOfDim)) {
+			if (index.getMemberOrdinal(endRange, dimIndex) != currentOrdinal) {
 				break;
 			}
 		}
 
 		int nextDim = dimIndex + 1;
 		if (nextDim < nDimension) {
-			int endChild = addToPosTree(posMembers, startIndex, endRange,
-					nextDim, newNode);
+			int endChild = addToPosTree(index, startIndex, endRange, nextDim,
+					newNode);
 			while (endChild < endRange) {
-				endChild = addToPosTree(posMembers, endChild, endRange,
-						nextDim, newNode);
+				endChild = addToPosTree(index, endChild, endRange, nextDim,
+						newNode);
 			}
 		}
 
@@ -377,6 +426,13 @@ public class Quax implements Bookmarkable {
 		return posTreeRoot;
 	}
 
+	/**
+	 * @return true if the position tree has been created
+	 */
+	boolean hasPosTree() {
+		return posTreeRoot != null;
+	}
+
 	/**
 	 * @param posTreeRoot
 	 * @param hiersChanged
@@ -418,8 +474,6 @@ public class Quax implements Bookmarkable {
 			this.containsUF = new boolean[nDimension]; // init false
 			this.ufMemberLists = new ArrayList<ArrayList<String>>(nDimension);
 
-			memberMap.clear();
-
 			for (int i = 0; i < nDimension; i++) {
 				ufMemberLists.add(null);
 			}
@@ -632,8 +686,6 @@ public class Quax implements Bookmarkable {
 			this.containsUF = new boolean[nDimension]; // init false
 			this.ufMemberLists = new ArrayList<ArrayList<String>>(nDimension);
 
-			memberMap.clear();
-
 			for (int i = 0; i < nDimension; i++) {
 				ufMemberLists.add(null);
 			}
@@ -748,9 +800,9 @@ public class Quax implements Bookmarkable {
 		}
 
 		// first check the cache
-		if (canExpandPosMap.containsKey(memberPath)) {
-			Boolean bCanExpand = (Boolean) canExpandPosMap.get(memberPath);
-			return bCanExpand.booleanValue();
+		Boolean cached = childPositionMap.get(memberPath);
+		if (cached != null) {
+			return !cached;
 		}
 
 		// loop over Position Tree
@@ -758,8 +810,7 @@ public class Quax implements Bookmarkable {
 		boolean childFound = checkChildPosition(memberPath);
 
 		// cache the result
-		Boolean bool = new Boolean(!childFound);
-		canExpandPosMap.put(memberPath, bool);
+		childPositionMap.put(memberPath, childFound);
 
 		return !childFound;
 	}
@@ -770,6 +821,10 @@ public class Quax implements Bookmarkable {
 	 * @param memberPath
 	 */
 	public void expand(List<Member> memberPath) {
+		// resolving the unions rebuilds the tree, so the cache should be
+		// cleared entirely afterwards
+		boolean treeRebuilt = qubonMode;
+
 		if (qubonMode) {
 			resolveUnions();
 
@@ -809,7 +864,7 @@ public class Quax implements Bookmarkable {
 
 		List<TreeNode<Exp>> tailNodeList;
 		if (memberPath.size() < nDimension) {
-			tailNodeList = collectTailNodes(posTreeRoot, memberPath);
+			tailNodeList = collectTailNodes(memberPath);
 		} else {
 			tailNodeList = Collections.emptyList();
 		}
@@ -817,8 +872,8 @@ public class Quax implements Bookmarkable {
 		TreeNode<Exp> newNode;
 
 		Exp oMember = quaxUtil.expForMember(memberPath.get(dimIndex));
-		FunCall fChildren = new FunCall("Children", Syntax.Property);
-		fChildren.getArgs().add(oMember);
+		FunCall fChildren = new FunCall("Children", Syntax.Property,
+				Arrays.asList(oMember));
 
 		TreeNode<Exp> parent = bestNode;
 
@@ -833,7 +888,7 @@ public class Quax implements Bookmarkable {
 				oMember = quaxUtil.expForMember(memberPath.get(i));
 				newNode = new ExpNode(oMember);
 
-				parent.addChild(newNode);
+				addPosTreeNode(parent, newNode);
 				parent = newNode;
 			}
 		}
@@ -846,7 +901,6 @@ public class Quax implements Bookmarkable {
 		}
 
 		newNode = new ExpNode(fChildren);
-		parent.addChild(newNode);
 
 		if (memberPath.size() < nDimension) {
 			for (TreeNode<Exp> tailNode : tailNodeList) {
@@ -854,6 +908,8 @@ public class Quax implements Bookmarkable {
 			}
 		}
 
+		addPosTreeNode(parent, newNode);
+
 		if (logger.isDebugEnabled()) {
 			logger.debug("After expand " + this.toString());
 		}
@@ -861,7 +917,7 @@ public class Quax implements Bookmarkable {
 		this.qubonMode = false;
 		this.hierarchizeNeeded = true;
 
-		fireQuaxChanged(false);
+		fireQuaxChanged(false, treeRebuilt ? null : memberPath);
 	}
 
 	/**
@@ -916,41 +972,26 @@ public class Quax implements Bookmarkable {
 		// update the position member tree
 		// wherever we find monMember, expand it
 		// collect all nodes for monMember in workList
-		posTreeRoot.walkChildren(new TreeNodeCallback<Exp>() {
-
-			/**
-			 * callback find node matching member Path exactly
-			 */
-			public int handleTreeNode(TreeNode<Exp> node) {
-				int nodeIndex = node.getLevel() - 1;
-				if (nodeIndex < dimIndex) {
-					return TreeNodeCallback.CONTINUE; // we are below iDim,
-					// don't care
+		for (TreeNode<Exp> node : getPosTreeIndex().findMemberNodes(member,
+				dimIndex + 1)) {
+			// node Exp must contain member[iDim]
+			Exp oExp = node.getReference();
+			if (quaxUtil.isMember(oExp)) {
+				if (quaxUtil.equalMember(oExp, member)) {
+					nodesForMember.add((ExpNode) node);
 				}
-
-				// iDimNode == iDim
-				// node Exp must contain children of member[iDim]
-				Exp oExp = node.getReference();
-				if (quaxUtil.isMember(oExp)) {
-					if (quaxUtil.equalMember(oExp, member)) {
-						nodesForMember.add((ExpNode) node);
-					}
-				} else {
-					// must be FunCall
-					if (isMemberInFunCall(oExp, member, dimIndex)) {
-						nodesForMember.add((ExpNode) node);
-					}
+			} else {
+				// must be FunCall
+				if (isMemberInFunCall(oExp, member, dimIndex)) {
+					nodesForMember.add((ExpNode) node);
 				}
-
-				return TreeNodeCallback.CONTINUE_SIBLING; // continue next
-				// sibling
 			}
-		});
+		}
 
 		// add children of member to each node in list
 		Exp oMember = quaxUtil.expForMember(member);
-		FunCall fChildren = new FunCall("Children", Syntax.Property);
-		fChildren.getArgs().add(oMember);
+		FunCall fChildren = new FunCall("Children", Syntax.Property,
+				Arrays.asList(oMember));
 
 		for (ExpNode node : nodesForMember) {
 			ExpNode newNode = new ExpNode(fChildren);
@@ -959,8 +1000,7 @@ public class Quax implements Bookmarkable {
 				newNode.addChild(child.deepCopy());
 			}
 
-			TreeNode<Exp> parent = node.getParent();
-			parent.addChild(newNode);
+			addPosTreeNode(node.getParent(), newNode);
 		}
 
 		if (logger.isDebugEnabled()) {
@@ -989,9 +1029,9 @@ public class Quax implements Bookmarkable {
 		}
 
 		// first check the cache
-		if (canCollapsePosMap.containsKey(memberPath)) {
-			boolean canCollapse = canCollapsePosMap.get(memberPath);
-			return canCollapse;
+		Boolean cached = childPositionMap.get(memberPath);
+		if (cached != null) {
+			return cached;
 		}
 
 		// loop over Position Tree
@@ -999,7 +1039,7 @@ public class Quax implements Bookmarkable {
 		boolean childFound = checkChildPosition(memberPath);
 
 		// cache the result
-		canCollapsePosMap.put(memberPath, childFound);
+		childPositionMap.put(memberPath, childFound);
 
 		return childFound;
 	}
@@ -1011,6 +1051,8 @@ public class Quax implements Bookmarkable {
 	 *            member path to be collapsed
 	 */
 	public void collapse(final List<Member> memberPath) {
+		boolean treeRebuilt = qubonMode;
+
 		if (qubonMode) {
 			resolveUnions();
 
@@ -1180,19 +1222,16 @@ public class Quax implements Bookmarkable {
 								}
 
 								if (remaining.length == 1) {
-									node.setReference(remaining[0]); // single
-									// member
+									// single member
+									setPosTreeReference(node, remaining[0]);
 								} else {
-									FunCall newSet = new FunCall("{}",
-											Syntax.Braces);
-									for (Exp arg : remaining) {
-										newSet.getArgs().add(arg);
-									}
-
-									node.setReference(newSet);
+									setPosTreeReference(node, new FunCall("{}",
+											Syntax.Braces, Arrays
+													.asList(remaining)));
 								}
 							}
-						} else if (quaxUtil.isFunCallTo(oExp, "Union")) {
+						} else if (quaxUtil.isFunCallTo(oExp, "Union")
+								|| quaxUtil.isSelfAndBefore(oExp)) {
 							// HHTASK Cleanup, always use
 							// removeDescendantsFromFunCall
 							Exp oRemain = removeDescendantsFromFunCall(oExp,
@@ -1200,7 +1239,7 @@ public class Quax implements Bookmarkable {
 							if (oRemain == null) {
 								removeList.add(node);
 							} else {
-								node.setReference(oRemain);
+								setPosTreeReference(node, oRemain);
 							}
 						}
 						return TreeNodeCallback.CONTINUE_SIBLING;
@@ -1237,7 +1276,7 @@ public class Quax implements Bookmarkable {
 			logger.debug("After collapse " + this.toString());
 		}
 
-		fireQuaxChanged(false);
+		fireQuaxChanged(false, treeRebuilt ? null : memberPath);
 	}
 
 	/**
@@ -1286,65 +1325,675 @@ public class Quax implements Bookmarkable {
 			}
 		}
 
-		final int dimIndex = this.dimIdx(member.getDimension());
+		final int dimIndex = this.dimIdx(member.getDimension());
+
+		final List<TreeNode<Exp>> nodesForMember = new ArrayList<TreeNode<Exp>>();
+
+		// update the position member tree
+		// wherever we find a descendant node of monMember, split and remove it
+		// collect all descendant nodes for monMember in workList
+		posTreeRoot.walkChildren(new TreeNodeCallback<Exp>() {
+
+			/**
+			 * callback find node matching member Path exactly
+			 */
+			public int handleTreeNode(TreeNode<Exp> node) {
+				int nodeIndex = node.getLevel() - 1;
+				if (nodeIndex < dimIndex) {
+					return TreeNodeCallback.CONTINUE; // we are below iDim,
+					// don't care
+				}
+
+				// iDimNode == iDim
+				// node Exp must contain children of member[iDim]
+				Exp oExp = node.getReference();
+				if (quaxUtil.isMember(oExp)) {
+					if (quaxUtil.isDescendant(member, oExp)) {
+						nodesForMember.add(node);
+					}
+				} else {
+					// must be FunCall
+					if (isDescendantOfMemberInFunCall(oExp, member, nodeIndex)) {
+						nodesForMember.add(node);
+					}
+				}
+				return TreeNodeCallback.CONTINUE_SIBLING; // continue next
+				// sibling
+			}
+		});
+
+		for (TreeNode<Exp> node : nodesForMember) {
+			Exp oExp = node.getReference();
+			if (quaxUtil.isMember(oExp)) {
+				removePathToNode(node);
+			} else {
+				// FunCall
+				Exp oComplement = removeDescendantsFromFunCall(oExp, member,
+						dimIndex);
+				if (oComplement == null) {
+					removePathToNode(node);
+				} else {
+					// replace node object by complement
+					setPosTreeReference(node, oComplement);
+				}
+			}
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("After collapse " + this.toString());
+		}
+
+		fireQuaxChanged(false);
+	}
+
+	/**
+	 * Check, whether the members of a hierarchy can be expanded down to a
+	 * level
+	 * 
+	 * @param level
+	 *            level to be expanded to
+	 */
+	public boolean canExpandToLevel(Level level) {
+		int dimIndex = dimIdx(level.getDimension());
+
+		// we only allow expand / collapse for a dimension
+		// left of a "sticky topcount"
+		if (dimIndex < 0 || !allowNavigate(dimIndex, false)) {
+			return false;
+		}
+
+		int depth = level.getDepth();
+
+		for (TreeNode<Exp> node : findNodesForDim(posTreeRoot, dimIndex)) {
+			if (canExpandToLevel(node.getReference(), depth)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check, whether a set has any member above the level depth which can be
+	 * expanded. It's answered from the level depths only, so that neither the
+	 * child members are fetched nor the expanded set is created.
+	 * 
+	 * @param oExp
+	 * @param depth
+	 * @return true if expandToLevel(oExp, level) would change the set
+	 */
+	private boolean canExpandToLevel(Exp oExp, int depth) {
+		if (quaxUtil.isMember(oExp)) {
+			Member member = quaxUtil.memberForExp(oExp);
+
+			return member != null && !member.isCalculated()
+					&& member.getLevel().getDepth() < depth;
+		} else if (quaxUtil.isSelfAndBefore(oExp)) {
+			Level current = quaxUtil.levelForExp(quaxUtil.funCallArg(oExp, 1));
+
+			return current.getDepth() < depth;
+		} else if (quaxUtil.isFunCallTo(oExp, "{}")) {
+			for (Exp arg : ((FunCall) oExp).getArgs()) {
+				if (quaxUtil.isMember(arg) && canExpandToLevel(arg, depth)) {
+					return true;
+				}
+			}
+
+			return false;
+		} else if (quaxUtil.isFunCallTo(oExp, "Children")) {
+			Member parent = quaxUtil.memberForExp(quaxUtil.funCallArg(oExp, 0));
+
+			return parent != null && parent.getLevel().getDepth() + 1 < depth;
+		} else if (quaxUtil.isDescendantsOfMember(oExp)
+				|| quaxUtil.isFunCallTo(oExp, "Members")) {
+			int index = quaxUtil.isFunCallTo(oExp, "Members") ? 0 : 1;
+
+			Level current = quaxUtil.levelForExp(quaxUtil.funCallArg(oExp,
+					index));
+
+			return current.getDepth() < depth;
+		} else if (quaxUtil.isFunCallTo(oExp, "Union")) {
+			return canExpandToLevel(quaxUtil.funCallArg(oExp, 0), depth)
+					|| canExpandToLevel(quaxUtil.funCallArg(oExp, 1), depth);
+		}
+
+		// unknown functions (e.g. TopCount) are not expanded
+		return false;
+	}
+
+	/**
+	 * Expand all members of a hierarchy down to a level. Instead of adding a
+	 * Children node for each member, every set of the hierarchy in the
+	 * position tree is replaced by a single Descendants(set, level,
+	 * SELF_AND_BEFORE) call.
+	 * 
+	 * @param level
+	 *            level to be expanded to
+	 */
+	public void expandToLevel(Level level) {
+		if (qubonMode) {
+			resolveUnions();
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Expand to level after resolveUnions "
+						+ this.toString());
+			}
+		}
+
+		int dimIndex = dimIdx(level.getDimension());
+		if (dimIndex < 0) {
+			throw new PivotException(
+					"Expand to level failed, the hierarchy is not on the axis : "
+							+ level.getUniqueName());
+		}
+
+		for (TreeNode<Exp> node : findNodesForDim(posTreeRoot, dimIndex)) {
+			Exp oExp = node.getReference();
+			Exp oExpanded = expandToLevel(oExp, level);
+
+			if (oExpanded != oExp) {
+				setPosTreeReference(node, oExpanded);
+			}
+		}
+
+		// old stuff, always hierarchize everything
+		this.nHierExclude = 0;
+		this.hierarchizeNeeded = true;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("After expand to level " + this.toString());
+		}
+
+		fireQuaxChanged(false);
+	}
+
+	/**
+	 * Check, whether a hierarchy has any members below a level which can be
+	 * collapsed
+	 * 
+	 * @param level
+	 *            level to be collapsed to
+	 */
+	public boolean canCollapseToLevel(Level level) {
+		int dimIndex = dimIdx(level.getDimension());
+
+		// we only allow expand / collapse for a dimension
+		// left of a "sticky topcount"
+		if (dimIndex < 0 || !allowNavigate(dimIndex, false)) {
+			return false;
+		}
+
+		return collapseTreeToLevel(level, dimIndex) != null;
+	}
+
+	/**
+	 * Remove all members of a hierarchy below a level from the position tree
+	 * 
+	 * @param level
+	 *            level to be collapsed to
+	 */
+	public void collapseToLevel(Level level) {
+		if (qubonMode) {
+			resolveUnions();
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Collapse to level after resolveUnions "
+						+ this.toString());
+			}
+		}
+
+		int dimIndex = dimIdx(level.getDimension());
+		if (dimIndex < 0) {
+			throw new PivotException(
+					"Collapse to level failed, the hierarchy is not on the axis : "
+							+ level.getUniqueName());
+		}
+
+		ExpNode root = collapseTreeToLevel(level, dimIndex);
+		if (root == null) {
+			throw new PivotException(
+					"Collapse to level failed, nothing can be collapsed to : "
+							+ level.getUniqueName());
+		}
+
+		this.posTreeRoot = root;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("After collapse to level " + this.toString());
+		}
+
+		fireQuaxChanged(false);
+	}
+
+	/**
+	 * Collapse a copy of the position tree, so that the tree would not be
+	 * changed if collapsing removes all the positions.
+	 * 
+	 * @param level
+	 * @param dimIndex
+	 * @return collapsed copy of the position tree, or null if nothing was
+	 *         collapsed or no positions were left
+	 */
+	private ExpNode collapseTreeToLevel(Level level, int dimIndex) {
+		ExpNode root = posTreeRoot.deepCopy();
+
+		boolean changed = false;
+
+		List<TreeNode<Exp>> removeList = new ArrayList<TreeNode<Exp>>();
+
+		for (TreeNode<Exp> node : findNodesForDim(root, dimIndex)) {
+			Exp oExp = node.getReference();
+			Exp oRemain = collapseToLevel(oExp, level);
+
+			if (oRemain == null) {
+				removeList.add(node);
+			} else if (oRemain != oExp) {
+				node.setReference(oRemain);
+			} else {
+				continue;
+			}
+
+			changed = true;
+		}
+
+		for (TreeNode<Exp> node : removeList) {
+			// the node might have been removed along with its parent
+			if (node.getRoot() != root) {
+				continue;
+			}
+
+			TreeNode<Exp> parent = node.getParent();
+			node.remove();
+
+			// remove the parent nodes left without any children
+			while (parent.getLevel() > 0 && parent.getChildren().isEmpty()) {
+				TreeNode<Exp> grandParent = parent.getParent();
+				parent.remove();
+				parent = grandParent;
+			}
+		}
+
+		if (!changed || root.getChildren().isEmpty()) {
+			return null;
+		}
+
+		return root;
+	}
+
+	/**
+	 * @param root
+	 * @param dimIndex
+	 * @return all nodes of a dimension
+	 */
+	private List<TreeNode<Exp>> findNodesForDim(TreeNode<Exp> root,
+			final int dimIndex) {
+		final List<TreeNode<Exp>> nodes = new ArrayList<TreeNode<Exp>>();
+
+		root.walkChildren(new TreeNodeCallback<Exp>() {
+
+			public int handleTreeNode(TreeNode<Exp> node) {
+				int nodeIndex = node.getLevel() - 1;
+				if (nodeIndex < dimIndex) {
+					return TreeNodeCallback.CONTINUE;
+				}
+
+				nodes.add(node);
+
+				return TreeNodeCallback.CONTINUE_SIBLING;
+			}
+		});
+
+		return nodes;
+	}
+
+	/**
+	 * Add the descendants down to the level to a set
+	 * 
+	 * @param oExp
+	 * @param level
+	 * @return the expanded set, or the same instance if nothing was added
+	 */
+	private Exp expandToLevel(Exp oExp, Level level) {
+		int depth = level.getDepth();
+
+		if (quaxUtil.isMember(oExp)) {
+			Member member = quaxUtil.memberForExp(oExp);
+			if (member == null || member.isCalculated()
+					|| member.getLevel().getDepth() >= depth) {
+				return oExp;
+			}
+
+			return quaxUtil.createSelfAndBefore(
+					Collections.singletonList(member), level);
+		} else if (quaxUtil.isSelfAndBefore(oExp)) {
+			FunCall f = (FunCall) oExp;
+
+			Level current = quaxUtil.levelForExp(f.getArgs().get(1));
+			if (current.getDepth() >= depth) {
+				return oExp;
+			}
+
+			return quaxUtil.createSelfAndBefore(
+					quaxUtil.getSelfAndBeforeMembers(f), level);
+		} else if (quaxUtil.isFunCallTo(oExp, "{}")) {
+			List<Member> roots = new ArrayList<Member>();
+			List<Exp> others = new ArrayList<Exp>();
+
+			for (Exp arg : ((FunCall) oExp).getArgs()) {
+				Member member = quaxUtil.memberForExp(arg);
+				if (member == null || member.isCalculated()
+						|| member.getLevel().getDepth() >= depth) {
+					others.add(arg);
+				} else {
+					roots.add(member);
+				}
+			}
+
+			if (roots.isEmpty()) {
+				return oExp;
+			}
+
+			Exp oExpanded = quaxUtil.createSelfAndBefore(roots, level);
+			if (others.isEmpty()) {
+				return oExpanded;
+			}
+
+			return createUnion(oExpanded, new FunCall("{}", Syntax.Braces,
+					others));
+		} else if (quaxUtil.isFunCallTo(oExp, "Children")) {
+			Member parent = quaxUtil.memberForExp(quaxUtil.funCallArg(oExp, 0));
+			if (parent == null || parent.getLevel().getDepth() + 1 >= depth) {
+				return oExp;
+			}
+
+			List<Member> children = getChildMembers(parent);
+			if (children.isEmpty()) {
+				return oExp;
+			}
+
+			return quaxUtil.createSelfAndBefore(children, level);
+		} else if (quaxUtil.isDescendantsOfMember(oExp)
+				|| quaxUtil.isFunCallTo(oExp, "Members")) {
+			// add the sets of the same kind for the levels in between
+			boolean isMembers = quaxUtil.isFunCallTo(oExp, "Members");
+
+			FunCall f = (FunCall) oExp;
+
+			Level current = quaxUtil.levelForExp(f.getArgs().get(
+					isMembers ? 0 : 1));
+			if (current.getDepth() >= depth) {
+				return oExp;
+			}
+
+			Exp oExpanded = oExp;
+
+			for (Level lev : level.getHierarchy().getLevels()) {
+				if (lev.getDepth() <= current.getDepth()
+						|| lev.getDepth() > depth) {
+					continue;
+				}
+
+				FunCall set;
+				if (isMembers) {
+					set = new FunCall("Members", Syntax.Property,
+							Arrays.asList(quaxUtil.expForLevel(lev)));
+				} else {
+					set = new FunCall("Descendants", Syntax.Function,
+							Arrays.asList(f.getArgs().get(0),
+									quaxUtil.expForLevel(lev)));
+				}
+
+				oExpanded = createUnion(oExpanded, set);
+			}
+
+			return oExpanded;
+		} else if (quaxUtil.isFunCallTo(oExp, "Union")) {
+			Exp arg0 = quaxUtil.funCallArg(oExp, 0);
+			Exp arg1 = quaxUtil.funCallArg(oExp, 1);
+
+			Exp oExpanded0 = expandToLevel(arg0, level);
+			Exp oExpanded1 = expandToLevel(arg1, level);
+
+			if (oExpanded0 == arg0 && oExpanded1 == arg1) {
+				return oExp;
+			}
+
+			return createUnion(oExpanded0, oExpanded1);
+		}
+
+		// unknown functions (e.g. TopCount) are not expanded
+		return oExp;
+	}
+
+	/**
+	 * Remove the members below the level from a set
+	 * 
+	 * @param oExp
+	 * @param level
+	 * @return the remainder, the same instance if nothing was removed, or
+	 *         null if nothing remains
+	 */
+	private Exp collapseToLevel(Exp oExp, Level level) {
+		int depth = level.getDepth();
+
+		if (quaxUtil.isMember(oExp)) {
+			Member member = quaxUtil.memberForExp(oExp);
+			if (member != null && member.getLevel().getDepth() > depth) {
+				return null;
+			}
+
+			return oExp;
+		} else if (quaxUtil.isSelfAndBefore(oExp)) {
+			FunCall f = (FunCall) oExp;
+
+			List<Member> members = quaxUtil.getSelfAndBeforeMembers(f);
+			List<Member> roots = new ArrayList<Member>(members.size());
+
+			for (Member member : members) {
+				if (member.getLevel().getDepth() <= depth) {
+					roots.add(member);
+				}
+			}
+
+			if (roots.isEmpty()) {
+				return null;
+			}
+
+			Level current = quaxUtil.levelForExp(f.getArgs().get(1));
+			if (current.getDepth() <= depth && roots.size() == members.size()) {
+				return oExp;
+			}
+
+			if (current.getDepth() > depth) {
+				current = level;
+			}
+
+			return quaxUtil.createSelfAndBefore(roots, current);
+		} else if (quaxUtil.isFunCallTo(oExp, "{}")) {
+			List<Exp> args = ((FunCall) oExp).getArgs();
+			List<Exp> remainder = new ArrayList<Exp>(args.size());
+
+			for (Exp arg : args) {
+				if (collapseToLevel(arg, level) != null) {
+					remainder.add(arg);
+				}
+			}
+
+			if (remainder.isEmpty()) {
+				return null;
+			} else if (remainder.size() == args.size()) {
+				return oExp;
+			}
+
+			return new FunCall("{}", Syntax.Braces, remainder);
+		} else if (quaxUtil.isFunCallTo(oExp, "Children")) {
+			Member parent = quaxUtil.memberForExp(quaxUtil.funCallArg(oExp, 0));
+			if (parent != null && parent.getLevel().getDepth() + 1 > depth) {
+				return null;
+			}
+
+			return oExp;
+		} else if (quaxUtil.isDescendantsOfMember(oExp)
+				|| quaxUtil.isFunCallTo(oExp, "Members")) {
+			int index = quaxUtil.isFunCallTo(oExp, "Members") ? 0 : 1;
+
+			Level current = quaxUtil.levelForExp(quaxUtil.funCallArg(oExp,
+					index));
+			if (current.getDepth() > depth) {
+				return null;
+			}
+
+			return oExp;
+		} else if (quaxUtil.isFunCallTo(oExp, "Union")) {
+			Exp arg0 = quaxUtil.funCallArg(oExp, 0);
+			Exp arg1 = quaxUtil.funCallArg(oExp, 1);
+
+			Exp oRemain0 = collapseToLevel(arg0, level);
+			Exp oRemain1 = collapseToLevel(arg1, level);
+
+			if (oRemain0 == arg0 && oRemain1 == arg1) {
+				return oExp;
+			} else if (oRemain0 == null) {
+				return oRemain1;
+			} else if (oRemain1 == null) {
+				return oRemain0;
+			}
+
+			return createUnion(oRemain0, oRemain1);
+		}
+
+		// unknown functions (e.g. TopCount) are not collapsed
+		return oExp;
+	}
+
+	/**
+	 * @param set1
+	 * @param set2
+	 * @return Union FunCall
+	 */
+	private FunCall createUnion(Exp set1, Exp set2) {
+		return new FunCall("Union", Syntax.Function, Arrays.asList(set1, set2));
+	}
+
+	/**
+	 * Remove a member or its descendants from Descendants(set, level,
+	 * SELF_AND_BEFORE) FunCall. The descendants of the members the set starts
+	 * from are split along the path to the member if neccessary.
+	 * 
+	 * @param f
+	 * @param member
+	 * @param removeSelf
+	 *            true to remove the member itself
+	 * @param removeDescendants
+	 *            true to remove the descendants of the member
+	 * @return the remainder, or null if nothing remains
+	 */
+	private Exp removeFromSelfAndBefore(FunCall f, Member member,
+			boolean removeSelf, boolean removeDescendants) {
+		Level level = quaxUtil.levelForExp(f.getArgs().get(1));
+
+		// members to be kept without their descendants
+		List<Member> members = new ArrayList<Member>();
+
+		// members to be kept with their descendants
+		List<Member> roots = new ArrayList<Member>();
+
+		for (Member root : quaxUtil.getSelfAndBeforeMembers(f)) {
+			if (OlapUtils.equals(root, member)) {
+				addRemainder(member, level, removeSelf, removeDescendants,
+						members, roots);
+			} else if (quaxUtil.isDescendant(member, root)) {
+				if (!removeDescendants) {
+					roots.add(root);
+				}
+			} else if (quaxUtil.isDescendant(root, member)
+					&& member.getLevel().getDepth() <= level.getDepth()) {
+				List<Member> path = new ArrayList<Member>();
+
+				Member parent = member.getParentMember();
+				while (!OlapUtils.equals(parent, root)) {
+					path.add(0, parent);
+					parent = parent.getParentMember();
+				}
+
+				path.add(0, root);
+
+				for (int i = 0; i < path.size(); i++) {
+					Member pathMember = path.get(i);
+					Member next = (i + 1 < path.size()) ? path.get(i + 1)
+							: member;
+
+					members.add(pathMember);
+
+					for (Member child : getChildMembers(pathMember)) {
+						if (!OlapUtils.equals(child, next)) {
+							roots.add(child);
+						}
+					}
+				}
+
+				addRemainder(member, level, removeSelf, removeDescendants,
+						members, roots);
+			} else {
+				roots.add(root);
+			}
+		}
+
+		Exp oRemain = null;
 
-		final List<TreeNode<Exp>> nodesForMember = new ArrayList<TreeNode<Exp>>();
+		if (!roots.isEmpty()) {
+			oRemain = quaxUtil.createSelfAndBefore(roots, level);
+		}
 
-		// update the position member tree
-		// wherever we find a descendant node of monMember, split and remove it
-		// collect all descendant nodes for monMember in workList
-		posTreeRoot.walkChildren(new TreeNodeCallback<Exp>() {
+		if (!members.isEmpty()) {
+			List<Exp> exps = new ArrayList<Exp>(members.size());
+			for (Member m : members) {
+				exps.add(quaxUtil.expForMember(m));
+			}
 
-			/**
-			 * callback find node matching member Path exactly
-			 */
-			public int handleTreeNode(TreeNode<Exp> node) {
-				int nodeIndex = node.getLevel() - 1;
-				if (nodeIndex < dimIndex) {
-					return TreeNodeCallback.CONTINUE; // we are below iDim,
-					// don't care
-				}
+			FunCall set = new FunCall("{}", Syntax.Braces, exps);
 
-				// iDimNode == iDim
-				// node Exp must contain children of member[iDim]
-				Exp oExp = node.getReference();
-				if (quaxUtil.isMember(oExp)) {
-					if (quaxUtil.isDescendant(member, oExp)) {
-						nodesForMember.add(node);
-					}
-				} else {
-					// must be FunCall
-					if (isDescendantOfMemberInFunCall(oExp, member, nodeIndex)) {
-						nodesForMember.add(node);
-					}
-				}
-				return TreeNodeCallback.CONTINUE_SIBLING; // continue next
-				// sibling
-			}
-		});
+			oRemain = (oRemain == null) ? set : createUnion(oRemain, set);
+		}
 
-		for (TreeNode<Exp> node : nodesForMember) {
-			Exp oExp = node.getReference();
-			if (quaxUtil.isMember(oExp)) {
-				removePathToNode(node);
-			} else {
-				// FunCall
-				Exp oComplement = removeDescendantsFromFunCall(oExp, member,
-						dimIndex);
-				if (oComplement == null) {
-					removePathToNode(node);
-				} else {
-					node.setReference(oComplement); // replace node object by
-													// complement
-				}
-			}
+		return oRemain;
+	}
+
+	/**
+	 * @param member
+	 * @param level
+	 * @param removeSelf
+	 * @param removeDescendants
+	 * @param members
+	 * @param roots
+	 */
+	private void addRemainder(Member member, Level level, boolean removeSelf,
+			boolean removeDescendants, List<Member> members, List<Member> roots) {
+		if (!removeSelf && !removeDescendants) {
+			roots.add(member);
+			return;
 		}
 
-		if (logger.isDebugEnabled()) {
-			logger.debug("After collapse " + this.toString());
+		if (!removeSelf) {
+			members.add(member);
 		}
 
-		fireQuaxChanged(false);
+		if (!removeDescendants
+				&& member.getLevel().getDepth() < level.getDepth()) {
+			roots.addAll(getChildMembers(member));
+		}
+	}
+
+	/**
+	 * @param member
+	 * @return
+	 */
+	private List<Member> getChildMembers(Member member) {
+		try {
+			return new ArrayList<Member>(member.getChildMembers());
+		} catch (OlapException e) {
+			throw new PivotException(e);
+		}
 	}
 
 	/**
@@ -1367,8 +2016,8 @@ public class Quax implements Bookmarkable {
 		List<Exp> sets = new ArrayList<Exp>(nDimension);
 
 		Exp oMember = quaxUtil.expForMember(member);
-		FunCall fChildren = new FunCall("Children", Syntax.Property);
-		fChildren.getArgs().add(oMember);
+		FunCall fChildren = new FunCall("Children", Syntax.Property,
+				Arrays.asList(oMember));
 
 		for (int i = 0; i < nDimension; i++) {
 			if (i == dimIndex) {
@@ -1489,10 +2138,8 @@ public class Quax implements Bookmarkable {
 
 			Exp exp = expGenerator.generate();
 			// Hierarchize around "everything"
-			FunCall call = new FunCall("Hierarchize", Syntax.Function);
-			call.getArgs().add(exp);
-
-			return call;
+			return new FunCall("Hierarchize", Syntax.Function,
+					Arrays.asList(exp));
 		}
 
 		// special hierarchize to be generated
@@ -1523,9 +2170,8 @@ public class Quax implements Bookmarkable {
 
 			expGenerator.init(leftRoot, leftHiers.size(), quaxUtil);
 
-			leftExp = new FunCall("Hierarchize", Syntax.Function);
-
-			((FunCall) leftExp).getArgs().add(expGenerator.generate());
+			leftExp = new FunCall("Hierarchize", Syntax.Function,
+					Arrays.asList(expGenerator.generate()));
 		}
 
 		// generate the right expression, not to be hierarchized
@@ -1559,11 +2205,8 @@ public class Quax implements Bookmarkable {
 			return rightExp;
 		}
 
-		FunCall exp = new FunCall("CrossJoin", Syntax.Function);
-		exp.getArgs().add(leftExp);
-		exp.getArgs().add(rightExp);
-
-		return exp;
+		return new FunCall("CrossJoin", Syntax.Function, Arrays.asList(
+				leftExp, rightExp));
 	}
 
 	/**
@@ -1625,8 +2268,8 @@ public class Quax implements Bookmarkable {
 			leftExp = expGenerator.generate();
 
 			if (genHierarchize) {
-				leftExp = new FunCall("Hierarchize", Syntax.Function);
-				((FunCall) leftExp).getArgs().add(leftExp);
+				leftExp = new FunCall("Hierarchize", Syntax.Function,
+						Arrays.asList(leftExp));
 			}
 		}
 
@@ -1646,9 +2289,8 @@ public class Quax implements Bookmarkable {
 		// generate the Tuple of dimension.currentmember until generateIndex
 		Exp currentMembersTuple = genCurrentTuple();
 
-		FunCall ocj = new FunCall("Crossjoin", Syntax.Function);
-		ocj.getArgs().add(currentMembersTuple);
-		ocj.getArgs().add(origTopcountSet);
+		Exp ocj = new FunCall("Crossjoin", Syntax.Function, Arrays.asList(
+				currentMembersTuple, origTopcountSet));
 
 		// replace the topcout original set
 		String fun = quaxUtil.funCallName(topcount);
@@ -1664,9 +2306,8 @@ public class Quax implements Bookmarkable {
 
 		Exp newTopCount = new FunCall(fun, Syntax.Function, args);
 
-		FunCall oGenerate = new FunCall("Generate", Syntax.Function);
-		oGenerate.getArgs().add(leftExp);
-		oGenerate.getArgs().add(newTopCount);
+		Exp oGenerate = new FunCall("Generate", Syntax.Function,
+				Arrays.asList(leftExp, newTopCount));
 
 		if (generateIndex + 1 == nDimension) {
 			return oGenerate;
@@ -1689,11 +2330,8 @@ public class Quax implements Bookmarkable {
 		expGenerator.init(root, rightHiers.length, quaxUtil);
 		Exp rightExp = expGenerator.generate();
 
-		FunCall exp = new FunCall("CrossJoin", Syntax.Function);
-		exp.getArgs().add(oGenerate);
-		exp.getArgs().add(rightExp);
-
-		return exp;
+		return new FunCall("CrossJoin", Syntax.Function, Arrays.asList(
+				oGenerate, rightExp));
 	}
 
 	/**
@@ -1706,10 +2344,8 @@ public class Quax implements Bookmarkable {
 			Hierarchy hierarchy = getHierarchy(name);
 			Dimension dim = hierarchy.getDimension();
 
-			FunCall call = new FunCall("CurrentMember", Syntax.Property);
-			call.getArgs().add(quaxUtil.expForDim(dim));
-
-			currentsOfDim.add(call);
+			currentsOfDim.add(new FunCall("CurrentMember", Syntax.Property,
+					Arrays.asList(quaxUtil.expForDim(dim))));
 		}
 
 		Exp oTuple;
@@ -1720,76 +2356,129 @@ public class Quax implements Bookmarkable {
 		}
 
 		// generate set braces around tuple
-		FunCall oSet = new FunCall("{}", Syntax.Braces);
-		oSet.getArgs().add(oTuple);
-
-		return oSet;
+		return new FunCall("{}", Syntax.Braces, Arrays.asList(oTuple));
 	}
 
 	/**
 	 * @return true if child position can be found
 	 */
-	private boolean checkChildPosition(final List<Member> memberPath) {
+	boolean checkChildPosition(final List<Member> memberPath) {
+		int dimIndex = memberPath.size() - 1;
 
-		int result = posTreeRoot.walkChildren(new TreeNodeCallback<Exp>() {
+		Member member = memberPath.get(dimIndex);
 
-			/**
-			 * callback find node matching member Path exactly
-			 */
-			public int handleTreeNode(TreeNode<Exp> node) {
-				int dimIndex = memberPath.size() - 1;
-				int nodeIndex = node.getLevel() - 1;
+		for (TreeNode<Exp> node : getPosTreeIndex().findChildNodes(member,
+				dimIndex + 1)) {
+			// node Exp must contain children of member[iDim]
+			Exp oExp = node.getReference();
 
-				Exp oExp = node.getReference();
-				if (nodeIndex < dimIndex) {
-					// node Exp must match member[iDim]
-					if (quaxUtil.isMember(oExp)) {
-						if (quaxUtil.equalMember(oExp,
-								memberPath.get(nodeIndex))) {
-							return TreeNodeCallback.CONTINUE;
-						} else {
-							return TreeNodeCallback.CONTINUE_SIBLING; // continue
-							// next
-							// sibling
-						}
-					} else {
-						// must be FunCall
-						if (isMemberInFunCall(oExp, memberPath.get(nodeIndex),
-								nodeIndex)) {
-							return TreeNodeCallback.CONTINUE;
-						} else {
-							return TreeNodeCallback.CONTINUE_SIBLING; // continue
-							// next
-							// sibling
-						}
-					}
-				}
+			boolean found;
+			if (quaxUtil.isMember(oExp)) {
+				found = quaxUtil.checkParent(member, oExp);
+			} else {
+				// must be FunCall
+				found = isChildOfMemberInFunCall(oExp, member, dimIndex);
+			}
 
-				// iDimNode == iDim
-				// node Exp must contain children of member[iDim]
-				if (quaxUtil.isMember(oExp)) {
-					if (quaxUtil.checkParent(memberPath.get(nodeIndex), oExp)) {
-						return TreeNodeCallback.BREAK; // found
-					} else {
-						return TreeNodeCallback.CONTINUE_SIBLING; // continue
-						// next
-						// sibling
-					}
-				} else {
-					// must be FunCall
-					if (isChildOfMemberInFunCall(oExp,
-							memberPath.get(nodeIndex), nodeIndex)) {
-						return TreeNodeCallback.BREAK; // found
-					} else {
-						return TreeNodeCallback.CONTINUE_SIBLING; // continue
-						// next
-						// sibling
-					}
+			if (found && matchesPath(node.getParent(), memberPath, false)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check whether the node and its ancestors match the beginning of the
+	 * member path.
+	 * 
+	 * @param node
+	 * @param memberPath
+	 * @param membersOnly
+	 *            true if only the member nodes can match
+	 * @return true if the path from the root to the node matches
+	 */
+	private boolean matchesPath(TreeNode<Exp> node, List<Member> memberPath,
+			boolean membersOnly) {
+		TreeNode<Exp> current = node;
+
+		int nodeIndex = current.getLevel() - 1;
+
+		while (nodeIndex >= 0) {
+			Exp oExp = current.getReference();
+			Member member = memberPath.get(nodeIndex);
+
+			if (quaxUtil.isMember(oExp)) {
+				if (!quaxUtil.equalMember(oExp, member)) {
+					return false;
 				}
+			} else if (membersOnly
+					|| !isMemberInFunCall(oExp, member, nodeIndex)) {
+				return false;
 			}
-		});
 
-		return (result == TreeNodeCallback.BREAK);
+			current = current.getParent();
+			nodeIndex--;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return index of the current position tree, which is updated along
+	 *         with the tree by the navigation methods and created again when
+	 *         the tree has been modified in any other way
+	 */
+	PosTreeIndex getPosTreeIndex() {
+		if (posTreeIndex == null || !posTreeIndex.isValid(posTreeRoot)) {
+			this.posTreeIndex = new PosTreeIndex(posTreeRoot, quaxUtil);
+		}
+
+		return posTreeIndex;
+	}
+
+	/**
+	 * Adds a node to the position tree, updating its index instead of having
+	 * it created again.
+	 * 
+	 * @param parent
+	 * @param node
+	 */
+	private void addPosTreeNode(TreeNode<Exp> parent, TreeNode<Exp> node) {
+		if (posTreeIndex == null) {
+			parent.addChild(node);
+		} else {
+			posTreeIndex.addChild(parent, node);
+		}
+	}
+
+	/**
+	 * Removes a node from the position tree, updating its index instead of
+	 * having it created again.
+	 * 
+	 * @param node
+	 */
+	private void removePosTreeNode(TreeNode<Exp> node) {
+		if (posTreeIndex == null) {
+			node.remove();
+		} else {
+			posTreeIndex.remove(node);
+		}
+	}
+
+	/**
+	 * Replaces the expression of a position tree node, updating the index of
+	 * the tree instead of having it created again.
+	 * 
+	 * @param node
+	 * @param exp
+	 */
+	private void setPosTreeReference(TreeNode<Exp> node, Exp exp) {
+		if (posTreeIndex == null) {
+			node.setReference(exp);
+		} else {
+			posTreeIndex.setReference(node, exp);
+		}
 	}
 
 	/**
@@ -1832,94 +2521,52 @@ public class Quax implements Bookmarkable {
 	/**
 	 * Find the best tree node for member path (longest match)
 	 */
-	private TreeNode<Exp> findBestNode(final List<Member> memberPath) {
-		@SuppressWarnings("unchecked")
-		final TreeNode<Exp>[] bestNode = new TreeNode[1];
-		bestNode[0] = posTreeRoot;
+	TreeNode<Exp> findBestNode(final List<Member> memberPath) {
+		int dimIndex = memberPath.size() - 1;
 
-		posTreeRoot.walkChildren(new TreeNodeCallback<Exp>() {
+		PosTreeIndex index = getPosTreeIndex();
 
-			/**
-			 * callback find node matching member Path exactly
-			 */
-			public int handleTreeNode(TreeNode<Exp> node) {
-				int dimIndex = memberPath.size() - 1;
-				int nodeIndex = node.getLevel() - 1;
-				Exp oExp = node.getReference();
+		// the exactly matching node which would be found first while walking
+		// through the tree
+		for (TreeNode<Exp> node : index.findMemberNodes(
+				memberPath.get(dimIndex), dimIndex + 1)) {
+			if (matchesPath(node, memberPath, true)) {
+				return node;
+			}
+		}
 
-				if (!quaxUtil.isMember(oExp)) {
-					return TreeNodeCallback.CONTINUE_SIBLING; // continue next
-					// sibling
-				}
+		// otherwise, the last partially matching node which would be found
+		// while walking through the tree
+		TreeNode<Exp> bestNode = posTreeRoot;
 
-				if (quaxUtil.equalMember(oExp, memberPath.get(nodeIndex))) {
-					// match
-					if (nodeIndex == dimIndex) {
-						// found exactly matching node
-						bestNode[0] = node;
-						return TreeNodeCallback.BREAK;
-					} else {
-						// best match up to now
-						bestNode[0] = node;
-						return TreeNodeCallback.CONTINUE;
-					}
-				} else {
-					// no match
-					return TreeNodeCallback.CONTINUE_SIBLING; // continue next
-					// sibling
+		for (int i = 0; i < dimIndex; i++) {
+			for (TreeNode<Exp> node : index.findMemberNodes(memberPath.get(i),
+					i + 1)) {
+				if (index.compare(node, bestNode) > 0
+						&& matchesPath(node, memberPath, true)) {
+					bestNode = node;
 				}
 			}
-		});
+		}
 
-		return bestNode[0];
+		return bestNode;
 	}
 
 	/**
 	 * Collect tail nodes for all nodes matching member path
 	 */
-	private List<TreeNode<Exp>> collectTailNodes(TreeNode<Exp> startNode,
-			final List<Member> memberPath) {
-
-		final List<TreeNode<Exp>> tailNodes = new ArrayList<TreeNode<Exp>>();
-		startNode.walkChildren(new TreeNodeCallback<Exp>() {
-
-			/**
-			 * callback find node matching mPath collect tail nodes
-			 */
-			public int handleTreeNode(TreeNode<Exp> node) {
-				int dimIndex = memberPath.size() - 1;
-				int nodeIndex = node.getLevel() - 1;
+	List<TreeNode<Exp>> collectTailNodes(final List<Member> memberPath) {
+		int dimIndex = memberPath.size() - 1;
 
-				Exp oExp = node.getReference();
-				boolean match = false;
-				if (quaxUtil.isMember(oExp)) {
-					// exp is member
-					if (quaxUtil.equalMember(oExp, memberPath.get(nodeIndex))) {
-						match = true;
-					}
-				} else {
-					// must be FunCall
-					if (isMemberInFunCall(oExp, memberPath.get(nodeIndex),
-							nodeIndex)) {
-						match = true;
-					}
-				}
+		List<TreeNode<Exp>> tailNodes = new ArrayList<TreeNode<Exp>>();
 
-				if (match) {
-					if (nodeIndex == dimIndex) {
-						// add the children to the tail list
-						tailNodes.addAll(node.getChildren());
-						return TreeNodeCallback.CONTINUE_SIBLING;
-					} else {
-						// iDimNode < iDim
-						return TreeNodeCallback.CONTINUE;
-					}
-				} else
-					return TreeNodeCallback.CONTINUE_SIBLING; // no match,
-				// continue next
-				// sibling
+		for (TreeNode<Exp> node : getPosTreeIndex().findMemberNodes(
+				memberPath.get(dimIndex), dimIndex + 1)) {
+			if (matchesPath(node, memberPath, false)) {
+				// add the children to the tail list
+				tailNodes.addAll(node.getChildren());
 			}
-		});
+		}
 
 		return tailNodes;
 	}
@@ -1927,37 +2574,23 @@ public class Quax implements Bookmarkable {
 	private boolean findMemberChild(final Member member) {
 		final int iDim = this.dimIdx(member.getDimension());
 
-		int result = posTreeRoot.walkChildren(new TreeNodeCallback<Exp>() {
-
-			/**
-			 * callback find child node of member
-			 */
-			public int handleTreeNode(TreeNode<Exp> node) {
-				int nodeIndex = node.getLevel() - 1;
-				if (nodeIndex < iDim) {
-					return TreeNodeCallback.CONTINUE; // we are below iDim,
-					// don't care
+		for (TreeNode<Exp> node : getPosTreeIndex().findChildNodes(member,
+				iDim + 1)) {
+			// node Exp must contain children of member[iDim]
+			Exp oExp = node.getReference();
+			if (quaxUtil.isMember(oExp)) {
+				if (quaxUtil.checkParent(member, oExp)) {
+					return true; // found
 				}
-
-				// iDimNode == iDim
-				// node Exp must contain children of member[iDim]
-				Exp oExp = node.getReference();
-				if (quaxUtil.isMember(oExp)) {
-					if (quaxUtil.checkParent(member, oExp)) {
-						return TreeNodeCallback.BREAK; // found
-					}
-				} else {
-					// must be FunCall
-					if (isChildOfMemberInFunCall(oExp, member, nodeIndex)) {
-						return TreeNodeCallback.BREAK; // found
-					}
+			} else {
+				// must be FunCall
+				if (isChildOfMemberInFunCall(oExp, member, iDim)) {
+					return true; // found
 				}
-				return TreeNodeCallback.CONTINUE_SIBLING; // continue next
-				// sibling
 			}
-		});
+		}
 
-		return (result == TreeNodeCallback.BREAK);
+		return false;
 	}
 
 	/**
@@ -1996,7 +2629,7 @@ public class Quax implements Bookmarkable {
 		if (oComplement == null) {
 			// this means, that the set resolves to a single member,
 			// mPath[iDimNode]
-			funCall.setReference(quaxUtil.expForMember(member));
+			setPosTreeReference(funCall, quaxUtil.expForMember(member));
 			// nothing to split
 			return;
 		}
@@ -2012,10 +2645,10 @@ public class Quax implements Bookmarkable {
 		}
 
 		TreeNode<Exp> insert = funCall.getParent();
-		funCall.remove();
+		removePosTreeNode(funCall);
 
-		insert.addChild(newNodeComplement);
-		insert.addChild(newNodeMember);
+		addPosTreeNode(insert, newNodeComplement);
+		addPosTreeNode(insert, newNodeMember);
 	}
 
 	/**
@@ -2026,7 +2659,7 @@ public class Quax implements Bookmarkable {
 	private void removePathToNode(TreeNode<Exp> nodeToRemove) {
 		if (nodeToRemove.getParent().getChildren().size() > 1) {
 			// this node has siblings, just remove it
-			nodeToRemove.remove();
+			removePosTreeNode(nodeToRemove);
 		} else {
 			// no siblings, remove the first parent node having siblings
 			TreeNode<Exp> parent = nodeToRemove.getParent();
@@ -2035,7 +2668,7 @@ public class Quax implements Bookmarkable {
 			}
 
 			if (parent.getLevel() > 0) { // should always be true
-				parent.remove();
+				removePosTreeNode(parent);
 			}
 		}
 	}
@@ -2100,11 +2733,8 @@ public class Quax implements Bookmarkable {
 		}
 
 		for (int j = start; j < funCallList.size(); j++) {
-			FunCall call = new FunCall("Union", Syntax.Function);
-			call.getArgs().add(set);
-			call.getArgs().add(funCallList.get(j));
-
-			set = call;
+			set = new FunCall("Union", Syntax.Function, Arrays.asList(set,
+					funCallList.get(j)));
 		}
 
 		return set;
@@ -2147,11 +2777,8 @@ public class Quax implements Bookmarkable {
 					if (expForHier == null) {
 						expForHier = oExp;
 					} else {
-						FunCall call = new FunCall("Union", Syntax.Function);
-						call.getArgs().add(expForHier);
-						call.getArgs().add(oExp);
-
-						expForHier = call;
+						expForHier = new FunCall("Union", Syntax.Function,
+								Arrays.asList(expForHier, oExp));
 					}
 				}
 			}
@@ -2322,7 +2949,12 @@ public class Quax implements Bookmarkable {
 			Exp oMember = quaxUtil.funCallArg(oFun, 0);
 			Member m = quaxUtil.memberForExp(oMember);
 			quaxUtil.addMemberSiblings(list, m, maxLevel);
-		} else if (quaxUtil.isFunCallTo(oFun, "Descendants")) {
+		} else if (quaxUtil.isSelfAndBefore(oFun)) {
+			// the members the set starts from are the topmost ones
+			for (Member m : quaxUtil.getSelfAndBeforeMembers((FunCall) oFun)) {
+				quaxUtil.addMemberUncles(list, m, maxLevel);
+			}
+		} else if (quaxUtil.isDescendantsOfMember(oFun)) {
 			Exp oMember = quaxUtil.funCallArg(oFun, 0);
 			Member m = quaxUtil.memberForExp(oMember);
 			Exp oLevel = quaxUtil.funCallArg(oFun, 1);
@@ -2393,7 +3025,7 @@ public class Quax implements Bookmarkable {
 	 * @param member
 	 * @return
 	 */
-	private boolean isMemberInFunCall(Exp oExp, Member member, int hierIndex) {
+	boolean isMemberInFunCall(Exp oExp, Member member, int hierIndex) {
 		boolean result = false;
 
 		try {
@@ -2445,8 +3077,7 @@ public class Quax implements Bookmarkable {
 	/**
 	 * Check whether a Funcall contains child of member
 	 */
-	private boolean isChildOfMemberInFunCall(Exp oExp, Member member,
-			int hierIndex) {
+	boolean isChildOfMemberInFunCall(Exp oExp, Member member, int hierIndex) {
 		boolean result = false;
 
 		try {
@@ -2532,9 +3163,8 @@ public class Quax implements Bookmarkable {
 
 			List<Exp> newList = new ArrayList<Exp>();
 
-			List<String> members = ufMemberLists.get(hierIndex);
-			for (String name : members) {
-				Member m = getMember(name);
+			List<Member> members = getMembers(ufMemberLists.get(hierIndex));
+			for (Member m : members) {
 				if (!quaxUtil.checkDescendantM(member, m)) {
 					newList.add(quaxUtil.expForMember(m));
 				}
@@ -2555,7 +3185,9 @@ public class Quax implements Bookmarkable {
 			// as we know, that there is a descendent of m in x.children,
 			// we know that *all* x.children are descendants of m
 			return null;
-		} else if (quaxUtil.isFunCallTo(oFun, "Descendants")) {
+		} else if (quaxUtil.isSelfAndBefore(oFun)) {
+			return removeFromSelfAndBefore((FunCall) oFun, member, false, true);
+		} else if (quaxUtil.isDescendantsOfMember(oFun)) {
 			// as we know, that there is a descendent of m in x.descendants
 			// we know that *all* x.descendants are descendants of m
 			return null;
@@ -2593,7 +3225,7 @@ public class Quax implements Bookmarkable {
 			uargs[0] = removeDescendantsFromFunCall(
 					quaxUtil.funCallArg(oFun, 0), member);
 			uargs[1] = removeDescendantsFromFunCall(
-					quaxUtil.funCallArg(oFun, 0), member);
+					quaxUtil.funCallArg(oFun, 1), member);
 
 			if (uargs[0] == null && uargs[1] == null) {
 				return null;
@@ -2608,17 +3240,13 @@ public class Quax implements Bookmarkable {
 			}
 
 			if (quaxUtil.isMember(uargs[0])) {
-				FunCall call = new FunCall("{}", Syntax.Braces);
-				call.getArgs().add(uargs[0]);
-
-				uargs[0] = call;
+				uargs[0] = new FunCall("{}", Syntax.Braces,
+						Arrays.asList(uargs[0]));
 			}
 
 			if (quaxUtil.isMember(uargs[1])) {
-				FunCall call = new FunCall("{}", Syntax.Braces);
-				call.getArgs().add(uargs[1]);
-
-				uargs[1] = call;
+				uargs[1] = new FunCall("{}", Syntax.Braces,
+						Arrays.asList(uargs[1]));
 			}
 
 			if (quaxUtil.isFunCallTo(uargs[0], "{}")
@@ -2655,9 +3283,8 @@ public class Quax implements Bookmarkable {
 
 			List<Exp> newList = new ArrayList<Exp>();
 
-			List<String> members = ufMemberLists.get(hierIndex);
-			for (String name : members) {
-				Member m = getMember(name);
+			List<Member> members = getMembers(ufMemberLists.get(hierIndex));
+			for (Member m : members) {
 				if (!OlapUtils.equals(member, m)) {
 					newList.add(quaxUtil.expForMember(m));
 				}
@@ -2674,7 +3301,9 @@ public class Quax implements Bookmarkable {
 	 */
 	private Exp createComplement(Exp oFun, Member member)
 			throws UnknownExpressionException {
-		if (quaxUtil.isFunCallTo(oFun, "Children")) {
+		if (quaxUtil.isSelfAndBefore(oFun)) {
+			return removeFromSelfAndBefore((FunCall) oFun, member, true, false);
+		} else if (quaxUtil.isFunCallTo(oFun, "Children")) {
 			Exp oParent = quaxUtil.funCallArg(oFun, 0);
 
 			// if member is NOT a child of Funcall arg, then the complement is
@@ -2758,17 +3387,13 @@ public class Quax implements Bookmarkable {
 			} else {
 				// complement can be single member
 				if (!quaxUtil.isFunCall(complements[0])) {
-					FunCall call = new FunCall("{}", Syntax.Braces);
-					call.getArgs().add(complements[0]);
-
-					complements[0] = call;
+					complements[0] = new FunCall("{}", Syntax.Braces,
+							Arrays.asList(complements[0]));
 				}
 
 				if (!quaxUtil.isFunCall(complements[1])) {
-					FunCall call = new FunCall("{}", Syntax.Braces);
-					call.getArgs().add(complements[1]);
-
-					complements[1] = call;
+					complements[1] = new FunCall("{}", Syntax.Braces,
+							Arrays.asList(complements[1]));
 				}
 
 				if (quaxUtil.isFunCallTo(complements[0], "{}")
@@ -2819,7 +3444,7 @@ public class Quax implements Bookmarkable {
 		ArrayList<String> members = new ArrayList<String>(list.size());
 		for (Member member : list) {
 			members.add(member.getUniqueName());
-			memberMap.put(member.getUniqueName(), member);
+			memberCache.put(member);
 		}
 		ufMemberLists.set(iHier, members);
 	}
@@ -2929,20 +3554,14 @@ public class Quax implements Bookmarkable {
 	 * @param uniqueName
 	 */
 	protected Member getMember(String uniqueName) {
-		Member member = memberMap.get(uniqueName);
-
-		if (member == null) {
-			try {
-				member = cube.lookupMember(IdentifierNode.parseIdentifier(
-						uniqueName).getSegmentList());
-			} catch (OlapException e) {
-				throw new PivotException(e);
-			}
-
-			memberMap.put(uniqueName, member);
-		}
+		return memberCache.lookupMember(uniqueName);
+	}
 
-		return member;
+	/**
+	 * @param uniqueNames
+	 */
+	protected List<Member> getMembers(List<String> uniqueNames) {
+		return memberCache.lookupMembers(uniqueNames);
 	}
 
 	/**
@@ -2952,7 +3571,12 @@ public class Quax implements Bookmarkable {
 		Hierarchy hierarchy = hierarchyMap.get(name);
 
 		if (hierarchy == null) {
-			hierarchy = cube.getHierarchies().get(name);
+			if (metadataCache == null) {
+				hierarchy = cube.getHierarchies().get(name);
+			} else {
+				hierarchy = metadataCache.getHierarchy(cube, name);
+			}
+
 			hierarchyMap.put(name, hierarchy);
 		}
 
@@ -9,6 +9,7 @@
 package com.eyeq.pivot4j.query;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -21,6 +22,9 @@ import org.olap4j.metadata.Level;
 import org.olap4j.metadata.Member;
 
 import com.eyeq.pivot4j.PivotException;
+import com.eyeq.pivot4j.cache.MetadataCache;
+import com.eyeq.pivot4j.mdx.CompoundId;
+import com.eyeq.pivot4j.mdx.CompoundId.NamePart;
 import com.eyeq.pivot4j.mdx.Exp;
 import com.eyeq.pivot4j.mdx.FunCall;
 import com.eyeq.pivot4j.mdx.Syntax;
@@ -31,17 +35,31 @@ import com.eyeq.pivot4j.util.OlapUtils;
 
 public class QuaxUtil {
 
+	private static final String SELF_AND_BEFORE = "SELF_AND_BEFORE";
+
 	private Cube cube;
 
+	private MetadataCache metadataCache;
+
 	/**
 	 * @param cube
 	 */
 	public QuaxUtil(Cube cube) {
+		this(cube, null);
+	}
+
+	/**
+	 * @param cube
+	 * @param metadataCache
+	 *            cache to be used to resolve levels by their names, or null
+	 */
+	public QuaxUtil(Cube cube, MetadataCache metadataCache) {
 		if (cube == null) {
 			throw new NullArgumentException("cube");
 		}
 
 		this.cube = cube;
+		this.metadataCache = metadataCache;
 	}
 
 	/**
@@ -145,7 +163,9 @@ public class QuaxUtil {
 
 		if (f.isCallTo("Children")) {
 			return isMemberInChildren(f, member);
-		} else if (f.isCallTo("Descendants")) {
+		} else if (isSelfAndBefore(f)) {
+			return isMemberInSelfAndBefore(f, member);
+		} else if (isDescendantsOfMember(f)) {
 			return isMemberInDescendants(f, member);
 		} else if (f.isCallTo("Members")) {
 			return isMemberInLevel(f, member);
@@ -177,7 +197,27 @@ public class QuaxUtil {
 
 		if (f.isCallTo("Children")) {
 			return OlapUtils.equals(member, memberForExp(f.getArgs().get(0)));
-		} else if (f.isCallTo("Descendants")) {
+		} else if (isSelfAndBefore(f)) {
+			// true, if m is in the set and above the level, or if any of the
+			// members the set starts from is a child of m
+			Level level = levelForExp(f.getArgs().get(1));
+
+			if (member.getLevel().getDepth() >= level.getDepth()) {
+				return false;
+			}
+
+			if (isMemberInSelfAndBefore(f, member)) {
+				return true;
+			}
+
+			for (Member root : getSelfAndBeforeMembers(f)) {
+				if (OlapUtils.equals(member, root.getParentMember())) {
+					return true;
+				}
+			}
+
+			return false;
+		} else if (isDescendantsOfMember(f)) {
 			// true, if f = descendants(m2, level) contains any child of m
 			// so level must be parent-level of m
 			Member ancestor = memberForExp(f.getArgs().get(0));
@@ -262,7 +302,24 @@ public class QuaxUtil {
 			// <==> m is equal or ancestor of m2
 			Member mExp = memberForExp(f.getArgs().get(0));
 			return OlapUtils.equals(member, mExp) || isDescendant(member, mExp);
-		} else if (f.isCallTo("Descendants")) {
+		} else if (isSelfAndBefore(f)) {
+			// true, if m is in the set and above the level, or if m is an
+			// ancestor of any of the members the set starts from
+			Level level = levelForExp(f.getArgs().get(1));
+
+			if (member.getLevel().getDepth() < level.getDepth()
+					&& isMemberInSelfAndBefore(f, member)) {
+				return true;
+			}
+
+			for (Member root : getSelfAndBeforeMembers(f)) {
+				if (isDescendant(member, root)) {
+					return true;
+				}
+			}
+
+			return false;
+		} else if (isDescendantsOfMember(f)) {
 			// true, if descendants(m2) contain descendants of m
 			// <==> m is equal or ancestor of m2
 			Member mExp = memberForExp(f.getArgs().get(0));
@@ -348,7 +405,10 @@ public class QuaxUtil {
 
 		if (f.isCallTo("Children")) {
 			return true; // children *not* top level
-		} else if (f.isCallTo("Descendants")) {
+		} else if (isSelfAndBefore(f)) {
+			Level level = levelForExp(f.getArgs().get(1));
+			return (level.getDepth() > 0);
+		} else if (isDescendantsOfMember(f)) {
 			return true; // descendants*not* top level
 		} else if (f.isCallTo("Members")) {
 			Level level = levelForExp(f.getArgs().get(0));
@@ -479,8 +539,18 @@ public class QuaxUtil {
 	 * @return
 	 */
 	public Level levelForExp(Exp oExp) {
-		if (oExp instanceof DimensionExp) {
-			return ((LevelExp) oExp).getMetadata(cube);
+		if (oExp instanceof LevelExp) {
+			LevelExp levelExp = (LevelExp) oExp;
+
+			// expressions restored from a saved state don't have the level,
+			// so it's resolved through the shared cache
+			if (metadataCache != null && levelExp.getHierarchyName() != null
+					&& levelExp.getName() != null) {
+				return metadataCache.getLevel(cube,
+						levelExp.getHierarchyName(), levelExp.getName());
+			}
+
+			return levelExp.getMetadata(cube);
 		}
 
 		return null;
@@ -499,7 +569,16 @@ public class QuaxUtil {
 			Member m = memberForExp(f.getArgs().get(0));
 			sb.append(m.getUniqueName());
 			sb.append(".Children");
-		} else if (f.isCallTo("Descendants")) {
+		} else if (isSelfAndBefore(f)) {
+			Level lev = levelForExp(f.getArgs().get(1));
+			sb.append("Descendants(");
+			sb.append(memberString(getSelfAndBeforeMembers(f)));
+			sb.append(",");
+			sb.append(lev.getUniqueName());
+			sb.append(",");
+			sb.append(SELF_AND_BEFORE);
+			sb.append(")");
+		} else if (isDescendantsOfMember(f)) {
 			Member m = memberForExp(f.getArgs().get(0));
 			Level lev = levelForExp(f.getArgs().get(1));
 			sb.append("Descendants(");
@@ -661,10 +740,12 @@ public class QuaxUtil {
 		// must be FunCall
 		FunCall f = (FunCall) oExp;
 
-		if (f.isCallTo("Children") || f.isCallTo("Descendants")
-				|| f.isCallTo("{}")) {
+		if (f.isCallTo("Children") || f.isCallTo("{}")) {
 			Member member = memberForExp(f.getArgs().get(0));
 			return member.getHierarchy();
+		} else if (f.isCallTo("Descendants")) {
+			// continue with the set of which descendants are returned
+			return hierForExp(f.getArgs().get(0));
 		} else if (f.isCallTo("Members")) {
 			Level level = levelForExp(f.getArgs().get(0));
 			return level.getHierarchy();
@@ -723,11 +804,8 @@ public class QuaxUtil {
 			// create Union({AllMember}, AllMember.children)
 			Exp mAllChildren = new FunCall("children", Syntax.Property, memar);
 
-			FunCall union = new FunCall("Union", Syntax.Function);
-			union.getArgs().add(mAllSet);
-			union.getArgs().add(mAllChildren);
-
-			return union;
+			return new FunCall("Union", Syntax.Function, Arrays.asList(
+					mAllSet, mAllChildren));
 		}
 
 		// HHTASK ok, for a parent-child hierarchy ?
@@ -818,10 +896,8 @@ public class QuaxUtil {
 				}
 			}
 
-			FunCall uncles = new FunCall("Children", Syntax.Property);
-			uncles.getArgs().add(expForMember(grandPa));
-
-			list.add(uncles);
+			list.add(new FunCall("Children", Syntax.Property, Arrays
+					.asList(expForMember(grandPa))));
 		}
 	}
 
@@ -856,10 +932,8 @@ public class QuaxUtil {
 				}
 			}
 
-			FunCall siblings = new FunCall("Children", Syntax.Property);
-			siblings.getArgs().add(expForMember(parent));
-
-			list.add(siblings);
+			list.add(new FunCall("Children", Syntax.Property, Arrays
+					.asList(expForMember(parent))));
 		}
 	}
 
@@ -892,10 +966,8 @@ public class QuaxUtil {
 				}
 			}
 
-			FunCall children = new FunCall("Children", Syntax.Property);
-			children.getArgs().add(expForMember(member));
-
-			list.add(children);
+			list.add(new FunCall("Children", Syntax.Property, Arrays
+					.asList(expForMember(member))));
 		}
 	}
 
@@ -930,12 +1002,8 @@ public class QuaxUtil {
 				}
 			}
 
-			FunCall children = new FunCall("Descendants", Syntax.Function);
-
-			children.getArgs().add(expForMember(member));
-			children.getArgs().add(expForLevel(level));
-
-			list.add(children);
+			list.add(new FunCall("Descendants", Syntax.Function, Arrays
+					.asList(expForMember(member), expForLevel(level))));
 		}
 	}
 
@@ -966,10 +1034,8 @@ public class QuaxUtil {
 				}
 			}
 
-			FunCall members = new FunCall("Members", Syntax.Property);
-			members.getArgs().add(expForLevel(level));
-
-			list.add(members);
+			list.add(new FunCall("Members", Syntax.Property, Arrays
+					.asList(expForLevel(level))));
 		}
 	}
 
@@ -1046,6 +1112,141 @@ public class QuaxUtil {
 		return OlapUtils.equals(mm, ancestor);
 	}
 
+	/**
+	 * @param oExp
+	 * @return true if oExp is a Descendants(member, level) FunCall
+	 */
+	public boolean isDescendantsOfMember(Exp oExp) {
+		if (!isFunCallTo(oExp, "Descendants")) {
+			return false;
+		}
+
+		List<Exp> args = ((FunCall) oExp).getArgs();
+
+		return args.size() == 2 && isMember(args.get(0))
+				&& args.get(1) instanceof LevelExp;
+	}
+
+	/**
+	 * Other forms of Descendants, e.g. Descendants([X].Children, level,
+	 * SELF_AND_BEFORE) from a hand written query, are not recognized and
+	 * they're handled as unknown expressions.
+	 * 
+	 * @param oExp
+	 * @return true if oExp is a Descendants(set, level, SELF_AND_BEFORE)
+	 *         FunCall, where set is a member or a set of members
+	 */
+	public boolean isSelfAndBefore(Exp oExp) {
+		if (!isFunCallTo(oExp, "Descendants")) {
+			return false;
+		}
+
+		List<Exp> args = ((FunCall) oExp).getArgs();
+		if (args.size() != 3 || !(args.get(1) instanceof LevelExp)
+				|| !(args.get(2) instanceof CompoundId)) {
+			return false;
+		}
+
+		List<NamePart> names = ((CompoundId) args.get(2)).getNames();
+
+		if (names.size() != 1
+				|| !SELF_AND_BEFORE.equalsIgnoreCase(names.get(0)
+						.getUnquotedName())) {
+			return false;
+		}
+
+		Exp set = args.get(0);
+
+		if (isMember(set)) {
+			return true;
+		} else if (!isFunCallTo(set, "{}")) {
+			return false;
+		}
+
+		List<Exp> members = ((FunCall) set).getArgs();
+		if (members.isEmpty()) {
+			return false;
+		}
+
+		for (Exp member : members) {
+			if (!isMember(member)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a set of the members and all their descendants down to the
+	 * level.
+	 * 
+	 * @param members
+	 * @param level
+	 * @return Descendants(set, level, SELF_AND_BEFORE) FunCall
+	 */
+	public FunCall createSelfAndBefore(List<Member> members, Level level) {
+		return new FunCall("Descendants", Syntax.Function, Arrays.<Exp> asList(
+				createMemberSet(members), expForLevel(level), new CompoundId(
+						SELF_AND_BEFORE)));
+	}
+
+	/**
+	 * @param f
+	 *            Descendants(set, level, SELF_AND_BEFORE) FunCall
+	 * @return members which the set of descendants starts from
+	 */
+	public List<Member> getSelfAndBeforeMembers(FunCall f) {
+		Exp set = f.getArgs().get(0);
+
+		if (isMember(set)) {
+			return Collections.singletonList(memberForExp(set));
+		}
+
+		List<Exp> args = ((FunCall) set).getArgs();
+		List<Member> members = new ArrayList<Member>(args.size());
+
+		for (Exp arg : args) {
+			members.add(memberForExp(arg));
+		}
+
+		return members;
+	}
+
+	/**
+	 * @param f
+	 *            Descendants(set, level, SELF_AND_BEFORE) FunCall
+	 * @param member
+	 *            member to search for
+	 * @return true if member is in set of Descendants function
+	 */
+	public boolean isMemberInSelfAndBefore(FunCall f, Member member) {
+		Level level = levelForExp(f.getArgs().get(1));
+		if (member.getLevel().getDepth() > level.getDepth()) {
+			return false;
+		}
+
+		List<Member> roots = getSelfAndBeforeMembers(f);
+
+		Member mm = member;
+		while (mm != null) {
+			for (Member root : roots) {
+				if (OlapUtils.equals(mm, root)) {
+					return true;
+				}
+			}
+
+			// calculated members are not really descendants
+			if (member.isCalculated()) {
+				break;
+			}
+
+			mm = mm.getParentMember();
+		}
+
+		return false;
+	}
+
 	/**
 	 * @param f
 	 *            Members FunCall
@@ -9,11 +9,14 @@
 package com.eyeq.pivot4j.query;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.NullArgumentException;
 import org.apache.commons.lang.ObjectUtils;
@@ -22,24 +25,33 @@ import org.olap4j.CellSet;
 import org.olap4j.CellSetAxis;
 import org.olap4j.OlapException;
 import org.olap4j.Position;
+import org.olap4j.metadata.Cube;
 import org.olap4j.metadata.Dimension;
 import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Level;
 import org.olap4j.metadata.Member;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.eyeq.pivot4j.PivotException;
 import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.cache.MemberInfoCache;
+import com.eyeq.pivot4j.cache.MemberLookupCache;
+import com.eyeq.pivot4j.cache.MetadataCache;
 import com.eyeq.pivot4j.el.EvaluationFailedException;
 import com.eyeq.pivot4j.el.ExpressionEvaluator;
 import com.eyeq.pivot4j.el.ExpressionEvaluatorFactory;
+import com.eyeq.pivot4j.el.VersionedContext;
 import com.eyeq.pivot4j.mdx.AbstractExpVisitor;
 import com.eyeq.pivot4j.mdx.CompoundId;
 import com.eyeq.pivot4j.mdx.Exp;
 import com.eyeq.pivot4j.mdx.ExpressionParameter;
 import com.eyeq.pivot4j.mdx.FunCall;
 import com.eyeq.pivot4j.mdx.Literal;
+import com.eyeq.pivot4j.mdx.MdxCanonicalizer;
+import com.eyeq.pivot4j.mdx.MdxFingerprint;
 import com.eyeq.pivot4j.mdx.MdxParser;
+import com.eyeq.pivot4j.mdx.MdxSerializer;
 import com.eyeq.pivot4j.mdx.MdxStatement;
 import com.eyeq.pivot4j.mdx.MemberParameter;
 import com.eyeq.pivot4j.mdx.QueryAxis;
@@ -47,6 +59,8 @@ import com.eyeq.pivot4j.mdx.Syntax;
 import com.eyeq.pivot4j.mdx.ValueParameter;
 import com.eyeq.pivot4j.mdx.impl.MdxParserImpl;
 import com.eyeq.pivot4j.mdx.metadata.MemberExp;
+import com.eyeq.pivot4j.metrics.MetricsCollector;
+import com.eyeq.pivot4j.metrics.Phase;
 import com.eyeq.pivot4j.state.Bookmarkable;
 
 /**
@@ -58,6 +72,8 @@ public class QueryAdapter implements Bookmarkable {
 
 	private PivotModel model;
 
+	private MetadataCache metadataCache;
+
 	private List<Quax> quaxes; // Array of query axis state object
 
 	private boolean useQuax = false;
@@ -70,6 +86,42 @@ public class QueryAdapter implements Bookmarkable {
 
 	private MdxStatement cloneQuery;
 
+	private AxisExpansion pendingExpansion;
+
+	private AxisExpansion lastExpansion;
+
+	private List<AxisIndex> axisIndexes;
+
+	private MemberInfoCache memberInfoCache;
+
+	private CellSet pendingPrefetch;
+
+	private MdxParser mdxParser;
+
+	private MdxSerializer mdxSerializer = new MdxSerializer();
+
+	private MdxCanonicalizer mdxCanonicalizer = new MdxCanonicalizer();
+
+	private boolean prefetchMemberInfo = true;
+
+	private boolean incrementalEvaluation = false;
+
+	private boolean compactAxes = false;
+
+	private boolean verifyCompactedAxes = false;
+
+	private MdxStatement uncompactedQuery;
+
+	private int updateLevel = 0;
+
+	private int deferredChanges = 0;
+
+	private boolean deferredUpdate = false;
+
+	private AxisExpansion deferredExpansion;
+
+	private Map<String, EvaluatedParameter> evaluatedParameters = new HashMap<String, EvaluatedParameter>();
+
 	private Collection<QueryChangeListener> listeners = new ArrayList<QueryChangeListener>();
 
 	private QuaxChangeListener quaxListener = new QuaxChangeListener() {
@@ -81,14 +133,24 @@ public class QueryAdapter implements Bookmarkable {
 
 	/**
 	 * @param model
-	 * @param parser
 	 */
 	public QueryAdapter(PivotModel model) {
+		this(model, null);
+	}
+
+	/**
+	 * @param model
+	 * @param metadataCache
+	 *            cache which provides the member lookup cache shared by the
+	 *            query axes, or null to let each axis have its own
+	 */
+	public QueryAdapter(PivotModel model, MetadataCache metadataCache) {
 		if (model == null) {
 			throw new NullArgumentException("model");
 		}
 
 		this.model = model;
+		this.metadataCache = metadataCache;
 	}
 
 	public void initialize() {
@@ -98,15 +160,42 @@ public class QueryAdapter implements Bookmarkable {
 
 		this.parsedQuery = parseQuery(model.getMdx());
 		this.cloneQuery = null;
+		this.uncompactedQuery = null;
+
+		this.pendingExpansion = null;
+		this.lastExpansion = null;
+
+		// changes made to the previous query in the current batch are
+		// discarded along with the query itself.
+		this.deferredChanges = 0;
+		this.deferredUpdate = false;
+		this.deferredExpansion = null;
+
+		this.axisIndexes = null;
+		this.pendingPrefetch = null;
+
+		evaluatedParameters.clear();
 
 		List<QueryAxis> queryAxes = parsedQuery.getAxes();
 
 		this.quaxes = new ArrayList<Quax>(queryAxes.size());
 
+		Cube cube = model.getCube();
+
+		MemberLookupCache memberCache;
+		if (metadataCache == null) {
+			memberCache = new MemberLookupCache(cube);
+			this.memberInfoCache = new MemberInfoCache();
+		} else {
+			memberCache = metadataCache.getMemberCache(cube);
+			this.memberInfoCache = metadataCache.getMemberInfoCache(cube);
+		}
+
 		int ordinal = 0;
 		for (@SuppressWarnings("unused")
 		QueryAxis queryAxis : queryAxes) {
-			Quax quax = new Quax(ordinal++, model.getCube());
+			Quax quax = new Quax(ordinal++, cube, memberCache,
+					metadataCache);
 			quax.addChangeListener(quaxListener);
 
 			quaxes.add(quax);
@@ -134,6 +223,144 @@ public class QueryAdapter implements Bookmarkable {
 		return model;
 	}
 
+	/**
+	 * @return the prefetchMemberInfo
+	 */
+	public boolean isPrefetchMemberInfo() {
+		return prefetchMemberInfo;
+	}
+
+	/**
+	 * @param prefetchMemberInfo
+	 *            true to fetch the child member counts of all the members on
+	 *            the axes at once, when the first of them is needed after
+	 *            each query execution
+	 */
+	public void setPrefetchMemberInfo(boolean prefetchMemberInfo) {
+		this.prefetchMemberInfo = prefetchMemberInfo;
+	}
+
+	/**
+	 * @return the incrementalEvaluation
+	 */
+	public boolean isIncrementalEvaluation() {
+		return incrementalEvaluation;
+	}
+
+	/**
+	 * @param incrementalEvaluation
+	 *            true to reuse the result of a parameter until a value it has
+	 *            read from the expression context is changed, or false to
+	 *            evaluate all the parameters for each query execution (e.g.
+	 *            when expressions depend on something other than the
+	 *            context). It's disabled by default.
+	 */
+	public void setIncrementalEvaluation(boolean incrementalEvaluation) {
+		this.incrementalEvaluation = incrementalEvaluation;
+
+		evaluatedParameters.clear();
+	}
+
+	/**
+	 * @return the compactAxes
+	 */
+	public boolean isCompactAxes() {
+		return compactAxes;
+	}
+
+	/**
+	 * @param compactAxes
+	 *            true to rewrite the member lists of the generated axes as
+	 *            equivalent Children, Descendants, Range or level Members sets
+	 * @see ExpOptimizer
+	 */
+	public void setCompactAxes(boolean compactAxes) {
+		this.compactAxes = compactAxes;
+	}
+
+	/**
+	 * @return the verifyCompactedAxes
+	 */
+	public boolean isVerifyCompactedAxes() {
+		return verifyCompactedAxes;
+	}
+
+	/**
+	 * @param verifyCompactedAxes
+	 *            true to keep the query before compacting its axes, so that
+	 *            the results of both queries can be compared for debugging
+	 * @see #getUncompactedMdx(boolean)
+	 */
+	public void setVerifyCompactedAxes(boolean verifyCompactedAxes) {
+		this.verifyCompactedAxes = verifyCompactedAxes;
+
+		if (!verifyCompactedAxes) {
+			this.uncompactedQuery = null;
+		}
+	}
+
+	/**
+	 * @return cache of the child member counts used to decide whether a
+	 *         member can be expanded, or null if not initialized
+	 */
+	public MemberInfoCache getMemberInfoCache() {
+		return memberInfoCache;
+	}
+
+	/**
+	 * @return the mdxParser
+	 */
+	public MdxParser getMdxParser() {
+		return mdxParser;
+	}
+
+	/**
+	 * @param mdxParser
+	 *            parser to be used for the queries, or null to use the
+	 *            default one
+	 */
+	public void setMdxParser(MdxParser mdxParser) {
+		this.mdxParser = mdxParser;
+	}
+
+	/**
+	 * @return the mdxSerializer
+	 */
+	public MdxSerializer getMdxSerializer() {
+		return mdxSerializer;
+	}
+
+	/**
+	 * @param mdxSerializer
+	 *            the mdxSerializer to set
+	 */
+	public void setMdxSerializer(MdxSerializer mdxSerializer) {
+		if (mdxSerializer == null) {
+			throw new NullArgumentException("mdxSerializer");
+		}
+
+		this.mdxSerializer = mdxSerializer;
+	}
+
+	/**
+	 * @return the mdxCanonicalizer
+	 */
+	public MdxCanonicalizer getMdxCanonicalizer() {
+		return mdxCanonicalizer;
+	}
+
+	/**
+	 * @param mdxCanonicalizer
+	 *            the mdxCanonicalizer to set
+	 */
+	public void setMdxCanonicalizer(MdxCanonicalizer mdxCanonicalizer) {
+		if (mdxCanonicalizer == null) {
+			throw new NullArgumentException("mdxCanonicalizer");
+		}
+
+		this.mdxCanonicalizer = mdxCanonicalizer;
+	}
+
 	public String getCubeName() {
 		CompoundId cube = parsedQuery.getCube();
 
@@ -169,10 +396,29 @@ public class QueryAdapter implements Bookmarkable {
 	protected void fireQueryChanged(boolean update) {
 		if (update) {
 			this.useQuax = true;
+		}
 
+		if (updateLevel > 0) {
+			// regenerate the query and notify the listeners only once, when
+			// the batch is finished.
+			if (deferredChanges++ == 0) {
+				this.deferredExpansion = pendingExpansion;
+			}
+
+			this.deferredUpdate |= update;
+			this.pendingExpansion = null;
+			return;
+		}
+
+		if (update) {
 			updateQuery();
 		}
 
+		// only the change caused by an expansion can be followed by a delta
+		// query, so any other change discards the last expansion.
+		this.lastExpansion = pendingExpansion;
+		this.pendingExpansion = null;
+
 		QueryChangeEvent e = new QueryChangeEvent(this);
 
 		List<QueryChangeListener> copiedListeners = new ArrayList<QueryChangeListener>(
@@ -182,6 +428,55 @@ public class QueryAdapter implements Bookmarkable {
 		}
 	}
 
+	/**
+	 * Starts a batch of changes. Until the matching {@link #endUpdate()} is
+	 * called, the query is not regenerated and the listeners are not notified
+	 * of the changes. Calls can be nested.
+	 */
+	public void beginUpdate() {
+		updateLevel++;
+	}
+
+	/**
+	 * Ends a batch of changes started by {@link #beginUpdate()}. When the
+	 * outermost batch is finished, the query is regenerated and the listeners
+	 * are notified only once if anything has been changed.
+	 */
+	public void endUpdate() {
+		if (updateLevel == 0) {
+			throw new IllegalStateException(
+					"endUpdate() was called without beginUpdate().");
+		}
+
+		if (--updateLevel > 0 || deferredChanges == 0) {
+			return;
+		}
+
+		boolean update = deferredUpdate;
+
+		// a delta query can follow only if the expansion was the only change
+		if (deferredChanges == 1) {
+			this.pendingExpansion = deferredExpansion;
+		}
+
+		this.deferredChanges = 0;
+		this.deferredUpdate = false;
+		this.deferredExpansion = null;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Batch update finished.");
+		}
+
+		fireQueryChanged(update);
+	}
+
+	/**
+	 * @return true if a batch of changes is in progress
+	 */
+	public boolean isUpdating() {
+		return updateLevel > 0;
+	}
+
 	/**
 	 * @return the XMLA Query object
 	 */
@@ -193,23 +488,105 @@ public class QueryAdapter implements Bookmarkable {
 	 * @param evaluated
 	 * @return
 	 */
-	public String getCurrentMdx(final boolean evaluated) {
-		MdxStatement stmt = parsedQuery.clone();
+	public String getCurrentMdx(boolean evaluated) {
+		return toMdx(parsedQuery, evaluated);
+	}
 
-		stmt.accept(new AbstractExpVisitor() {
+	/**
+	 * @param stmt
+	 * @param evaluated
+	 * @return
+	 */
+	protected String toMdx(MdxStatement stmt, boolean evaluated) {
+		return mdxSerializer.toMdx(stmt, evaluated);
+	}
 
-			@Override
-			public void visitMemberParameter(MemberParameter exp) {
-				exp.setEvaluated(evaluated);
-			}
+	/**
+	 * @param evaluated
+	 * @return the current query before its axes were compacted, or null if
+	 *         the axes were not compacted or the verification is disabled
+	 * @see #setVerifyCompactedAxes(boolean)
+	 */
+	public String getUncompactedMdx(boolean evaluated) {
+		if (uncompactedQuery == null) {
+			return null;
+		}
 
-			@Override
-			public void visitValueParameter(ValueParameter exp) {
-				exp.setEvaluated(evaluated);
-			}
-		});
+		return toMdx(uncompactedQuery, evaluated);
+	}
 
-		return stmt.toMdx();
+	/**
+	 * @param evaluated
+	 * @return canonical form of the current query
+	 * @see MdxCanonicalizer
+	 */
+	public String getCanonicalMdx(boolean evaluated) {
+		return mdxCanonicalizer.toMdx(parsedQuery, evaluated);
+	}
+
+	/**
+	 * @param evaluated
+	 * @return fingerprint of the canonical form of the current query
+	 */
+	public MdxFingerprint getMdxFingerprint(boolean evaluated) {
+		return MdxFingerprint.compute(getCanonicalMdx(evaluated));
+	}
+
+	/**
+	 * @return the expansion which caused the last change of the query, or
+	 *         null if the query has been changed by other operation since
+	 *         then.
+	 */
+	public AxisExpansion getLastExpansion() {
+		return lastExpansion;
+	}
+
+	/**
+	 * Returns the query as it was before the given expansion was applied,
+	 * with all the other parts of the current query left intact.
+	 * 
+	 * @param expansion
+	 * @param evaluated
+	 * @return
+	 */
+	public String getPreviousMdx(AxisExpansion expansion, boolean evaluated) {
+		if (expansion == null) {
+			throw new NullArgumentException("expansion");
+		}
+
+		MdxStatement stmt = parsedQuery.copy();
+
+		QueryAxis queryAxis = stmt.getAxes().get(expansion.getAxisIndex());
+		queryAxis.setExp(expansion.getPreviousExp());
+
+		return toMdx(stmt, evaluated);
+	}
+
+	/**
+	 * Returns a query which has the same axes as the current query except for
+	 * the expanded axis, which is restricted to the positions added by the
+	 * given expansion.
+	 * 
+	 * @param expansion
+	 * @param evaluated
+	 * @return
+	 */
+	public String getDeltaMdx(AxisExpansion expansion, boolean evaluated) {
+		if (expansion == null) {
+			throw new NullArgumentException("expansion");
+		}
+
+		MdxStatement stmt = parsedQuery.copy();
+
+		QueryAxis queryAxis = stmt.getAxes().get(expansion.getAxisIndex());
+
+		List<Exp> args = new ArrayList<Exp>(2);
+		args.add(queryAxis.getExp());
+		args.add(expansion.getPreviousExp());
+
+		queryAxis.setExp(new FunCall("Except", Syntax.Function, args));
+
+		return toMdx(stmt, evaluated);
 	}
 
 	/**
@@ -249,8 +626,41 @@ public class QueryAdapter implements Bookmarkable {
 
 		Map<String, Object> context = model.getExpressionContext();
 
-		Object result = evaluator.evaluate(exp.getExpression(), context);
-		exp.setResult(ObjectUtils.toString(result));
+		if (!incrementalEvaluation || !(context instanceof VersionedContext)) {
+			Object result = evaluator.evaluate(exp.getExpression(), context);
+			exp.setResult(ObjectUtils.toString(result));
+			return;
+		}
+
+		VersionedContext versionedContext = (VersionedContext) context;
+
+		String key = exp.getNamespace() + ":" + exp.getExpression();
+
+		EvaluatedParameter parameter = evaluatedParameters.get(key);
+
+		if (parameter != null && parameter.isValid(evaluator, versionedContext)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Reusing the result of unchanged parameter : "
+						+ key);
+			}
+
+			exp.setResult(parameter.getResult());
+			return;
+		}
+
+		DependencyTracker tracker = new DependencyTracker(versionedContext);
+
+		Object result = evaluator.evaluate(exp.getExpression(), tracker);
+
+		String value = ObjectUtils.toString(result);
+		exp.setResult(value);
+
+		if (tracker.isTrackable()) {
+			evaluatedParameters.put(key, new EvaluatedParameter(evaluator,
+					value, tracker.getDependencies()));
+		} else {
+			evaluatedParameters.remove(key);
+		}
 	}
 
 	/**
@@ -399,7 +809,7 @@ public class QueryAdapter implements Bookmarkable {
 
 			int i = 0;
 			for (Quax quax : quaxes) {
-				if (quax.getPosTreeRoot() == null) {
+				if (!quax.hasPosTree()) {
 					continue;
 				}
 
@@ -427,15 +837,16 @@ public class QueryAdapter implements Bookmarkable {
 			// Therefore, we clone the orig state of the query object and
 			// use
 			// the clone furthermore in order to avoid duplicate "Order"
-			// functions.
+			// functions. Sorting only replaces the axis expressions, so a
+			// copy sharing the expression nodes is sufficient.
 			if (cloneQuery == null) {
 				if (isSortOnQuery()) {
-					this.cloneQuery = parsedQuery.clone();
+					this.cloneQuery = parsedQuery.copy();
 				}
 			} else {
 				// reset to original state
 				if (isSortOnQuery()) {
-					this.parsedQuery = cloneQuery.clone();
+					this.parsedQuery = cloneQuery.copy();
 				} else {
 					this.parsedQuery = cloneQuery;
 				}
@@ -444,9 +855,56 @@ public class QueryAdapter implements Bookmarkable {
 
 		addSortToQuery();
 
+		this.uncompactedQuery = null;
+
+		if (useQuax && compactAxes) {
+			compactAxes(parsedQuery);
+		}
+
 		return parsedQuery;
 	}
 
+	/**
+	 * Rewrite the member lists of the axes to compact sets
+	 * 
+	 * @param pq
+	 * @see ExpOptimizer
+	 */
+	protected void compactAxes(MdxStatement pq) {
+		MdxStatement original = null;
+
+		if (verifyCompactedAxes) {
+			original = pq.copy();
+		}
+
+		ExpOptimizer optimizer = new ExpOptimizer(new QuaxUtil(model.getCube(),
+				metadataCache));
+
+		boolean compacted = false;
+
+		for (QueryAxis queryAxis : pq.getAxes()) {
+			Exp exp = queryAxis.getExp();
+			if (exp == null) {
+				continue;
+			}
+
+			Exp optimized = optimizer.optimize(exp);
+
+			if (optimized != exp) {
+				queryAxis.setExp(optimized);
+				compacted = true;
+			}
+		}
+
+		if (compacted) {
+			this.uncompactedQuery = original;
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("MDX Generation compacted the axes");
+			}
+		}
+	}
+
 	/**
 	 * Apply sort to query
 	 */
@@ -563,9 +1021,21 @@ public class QueryAdapter implements Bookmarkable {
 	 * @param parsedQuery
 	 */
 	protected MdxStatement parseQuery(String mdxQuery) {
-		MdxParser parser = new MdxParserImpl();
+		MdxParser parser = mdxParser;
+		if (parser == null) {
+			parser = new MdxParserImpl();
+		}
+
+		long start = System.nanoTime();
+
+		MdxStatement statement = parser.parse(mdxQuery);
 
-		return parser.parse(mdxQuery);
+		MetricsCollector collector = model.getMetricsCollector();
+		if (collector != null) {
+			collector.recordTime(model, Phase.PARSE, System.nanoTime() - start);
+		}
+
+		return statement;
 	}
 
 	/**
@@ -579,15 +1049,30 @@ public class QueryAdapter implements Bookmarkable {
 	public void afterExecute(CellSet cellSet) {
 		List<CellSetAxis> axes = cellSet.getAxes();
 
+		// member information is fetched when it's first needed, so the
+		// queries which are never rendered won't pay for it
+		if (prefetchMemberInfo) {
+			this.pendingPrefetch = cellSet;
+		} else {
+			this.pendingPrefetch = null;
+		}
+
+		// index the positions once, so the quaxes and the other components
+		// can look up the members without scanning them again
+		List<AxisIndex> indexes = new ArrayList<AxisIndex>(axes.size());
+		for (CellSetAxis axis : axes) {
+			indexes.add(new AxisIndex(axis.getPositions()));
+		}
+
+		this.axisIndexes = indexes;
+
 		// initialization: get the result positions and set it to quax
 		// if the quaxes are not yet used to generate the query
 		if (!useQuax) {
 			int i = 0;
-			for (CellSetAxis axis : axes) {
-				List<Position> positions = axis.getPositions();
-
+			for (AxisIndex axisIndex : indexes) {
 				int index = axesSwapped ? (i + 1) % 2 : i;
-				quaxes.get(index).initialize(positions);
+				quaxes.get(index).initialize(axisIndex);
 
 				i++;
 			}
@@ -596,14 +1081,14 @@ public class QueryAdapter implements Bookmarkable {
 			int i = 0;
 			for (Quax quax : quaxes) {
 				int index = axesSwapped ? (i + 1) % 2 : i;
-				List<Position> positions = axes.get(index).getPositions();
+				AxisIndex axisIndex = indexes.get(index);
 
 				// after a result for CalcSet.GENERATE was gotten
 				// we have to re-initialize the quax,
 				// so that we can navigate.
 				if (quax.getGenerateMode() == CalcSetMode.Generate) {
 					quax.resetGenerate();
-					quax.initialize(positions);
+					quax.initialize(axisIndex);
 				} else {
 					// unknown function members are collected
 					// - always for a "Sticky generate" unknown function
@@ -612,7 +1097,8 @@ public class QueryAdapter implements Bookmarkable {
 					for (int j = 0; j < nDimension; j++) {
 						// collect members for unknown functions on quax
 						if (quax.isUnknownFunction(j)) {
-							List<Member> members = memListForHier(j, positions);
+							List<Member> members = new ArrayList<Member>(
+									axisIndex.getMembers(j));
 							quax.setHierMemberList(j, members);
 						}
 					}
@@ -672,15 +1158,28 @@ public class QueryAdapter implements Bookmarkable {
 	 */
 	protected List<Member> memListForHier(int hierIndex,
 			List<Position> positions) {
-		List<Member> members = new ArrayList<Member>();
-		for (Position position : positions) {
-			Member member = position.getMembers().get(hierIndex);
-			if (!members.contains(member)) {
-				members.add(member);
-			}
+		return new ArrayList<Member>(new AxisIndex(positions)
+				.getMembers(hierIndex));
+	}
+
+	/**
+	 * @param axis
+	 * @return index of the positions on the result axis of the last execution,
+	 *         or null if the query has not been executed yet
+	 */
+	public AxisIndex getAxisIndex(Axis axis) {
+		if (axis == null) {
+			throw new NullArgumentException("axis");
+		}
+
+		List<AxisIndex> indexes = axisIndexes;
+
+		if (indexes == null || axis.axisOrdinal() < 0
+				|| axis.axisOrdinal() >= indexes.size()) {
+			return null;
 		}
 
-		return members;
+		return indexes.get(axis.axisOrdinal());
 	}
 
 	/**
@@ -699,6 +1198,53 @@ public class QueryAdapter implements Bookmarkable {
 		return new FunCall("{}", Syntax.Braces, exps);
 	}
 
+	/**
+	 * @param member
+	 * @return number of the child members, which is read from the prefetched
+	 *         table if available
+	 */
+	protected int getChildMemberCount(Member member) {
+		if (memberInfoCache == null) {
+			try {
+				return member.getChildMemberCount();
+			} catch (OlapException e) {
+				throw new PivotException(e);
+			}
+		}
+
+		prefetchMemberInfo();
+
+		return memberInfoCache.getChildMemberCount(member);
+	}
+
+	/**
+	 * @param member
+	 * @return true if the member is a calculated member
+	 */
+	protected boolean isCalculated(Member member) {
+		if (memberInfoCache == null) {
+			return member.isCalculated();
+		}
+
+		prefetchMemberInfo();
+
+		return memberInfoCache.isCalculated(member);
+	}
+
+	/**
+	 * Fetches the information of the members on the axes of the last result
+	 * at once, if it has not been fetched yet.
+	 */
+	protected void prefetchMemberInfo() {
+		CellSet cellSet = pendingPrefetch;
+
+		if (cellSet != null && memberInfoCache != null) {
+			this.pendingPrefetch = null;
+
+			memberInfoCache.prefetch(cellSet);
+		}
+	}
+
 	/**
 	 * Find out, whether a member can be expanded. this is true, if - the member
 	 * is on an axis and - the member is not yet expanded and - the member has
@@ -710,18 +1256,10 @@ public class QueryAdapter implements Bookmarkable {
 	 */
 	public boolean canExpand(Member member) {
 		// a calculated member cannot be expanded
-		if (member.isCalculated()) {
+		if (isCalculated(member) || getChildMemberCount(member) <= 0) {
 			return false;
 		}
 
-		try {
-			if (member.getChildMemberCount() <= 0) {
-				return false;
-			}
-		} catch (OlapException e) {
-			throw new PivotException(e);
-		}
-
 		Dimension dim = member.getLevel().getHierarchy().getDimension();
 		Quax quax = findQuax(dim);
 
@@ -740,18 +1278,10 @@ public class QueryAdapter implements Bookmarkable {
 
 		Member member = pathMembers.get(pathMembers.size() - 1);
 		// a calculated member cannot be expanded
-		if (member.isCalculated()) {
+		if (isCalculated(member) || getChildMemberCount(member) <= 0) {
 			return false;
 		}
 
-		try {
-			if (member.getChildMemberCount() <= 0) {
-				return false;
-			}
-		} catch (OlapException e) {
-			throw new PivotException(e);
-		}
-
 		Dimension dim = member.getLevel().getHierarchy().getDimension();
 		Quax quax = findQuax(dim);
 
@@ -765,7 +1295,7 @@ public class QueryAdapter implements Bookmarkable {
 	 */
 	public boolean canCollapse(Member member) {
 		// a calculated member cannot be collapsed
-		if (member.isCalculated()) {
+		if (isCalculated(member)) {
 			return false;
 		}
 
@@ -787,7 +1317,7 @@ public class QueryAdapter implements Bookmarkable {
 
 		Member member = pathMembers.get(pathMembers.size() - 1);
 		// a calculated member cannot be expanded
-		if (member.isCalculated()) {
+		if (isCalculated(member)) {
 			return false;
 		}
 
@@ -817,7 +1347,13 @@ public class QueryAdapter implements Bookmarkable {
 			throw new PivotException(msg);
 		}
 
-		quax.expand(member);
+		this.pendingExpansion = createExpansion(quax, member);
+
+		try {
+			quax.expand(member);
+		} finally {
+			this.pendingExpansion = null;
+		}
 	}
 
 	/**
@@ -841,7 +1377,37 @@ public class QueryAdapter implements Bookmarkable {
 			throw new PivotException(msg);
 		}
 
-		quax.expand(pathMembers);
+		this.pendingExpansion = createExpansion(quax, member);
+
+		try {
+			quax.expand(pathMembers);
+		} finally {
+			this.pendingExpansion = null;
+		}
+	}
+
+	/**
+	 * @param quax
+	 * @param member
+	 * @return
+	 */
+	protected AxisExpansion createExpansion(Quax quax, Member member) {
+		int index = quaxes.indexOf(quax);
+
+		List<QueryAxis> queryAxes = parsedQuery.getAxes();
+		if (index < 0 || index >= queryAxes.size()) {
+			return null;
+		}
+
+		QueryAxis queryAxis = queryAxes.get(index);
+		if (queryAxis.getExp() == null) {
+			return null;
+		}
+
+		// axis expressions are replaced rather than modified when the query
+		// changes, so the current one can be kept without being cloned.
+		return new AxisExpansion(index, queryAxis.getAxis(), member,
+				queryAxis.getExp());
 	}
 
 	/**
@@ -889,6 +1455,81 @@ public class QueryAdapter implements Bookmarkable {
 		quax.collapse(pathMembers);
 	}
 
+	/**
+	 * Find out, whether the members of a hierarchy can be expanded down to a
+	 * level
+	 * 
+	 * @param level
+	 *            Level to be expanded to
+	 * @return true if any member on the axis can be expanded to the level
+	 */
+	public boolean canExpandToLevel(Level level) {
+		Dimension dim = level.getHierarchy().getDimension();
+		Quax quax = findQuax(dim);
+
+		return (quax == null) ? false : quax.canExpandToLevel(level);
+	}
+
+	/**
+	 * Expand all the members of a hierarchy down to a level
+	 * 
+	 * @param level
+	 *            Level to be expanded to
+	 */
+	public void expandToLevel(Level level) {
+		Dimension dim = level.getHierarchy().getDimension();
+		Quax quax = findQuax(dim);
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Expand to level " + level.getUniqueName());
+		}
+
+		if ((quax == null) || !quax.canExpandToLevel(level)) {
+			String msg = "Expand to level failed for " + level.getUniqueName();
+			throw new PivotException(msg);
+		}
+
+		quax.expandToLevel(level);
+	}
+
+	/**
+	 * Find out, whether a hierarchy has any members below a level which can be
+	 * collapsed
+	 * 
+	 * @param level
+	 *            Level to be collapsed to
+	 * @return true if any member below the level can be collapsed
+	 */
+	public boolean canCollapseToLevel(Level level) {
+		Dimension dim = level.getHierarchy().getDimension();
+		Quax quax = findQuax(dim);
+
+		return (quax == null) ? false : quax.canCollapseToLevel(level);
+	}
+
+	/**
+	 * Collapse all the members of a hierarchy up to a level
+	 * 
+	 * @param level
+	 *            Level to be collapsed to
+	 */
+	public void collapseToLevel(Level level) {
+		Dimension dim = level.getHierarchy().getDimension();
+		Quax quax = findQuax(dim);
+
+		if (logger.isInfoEnabled()) {
+			logger.info("Collapse to level " + level.getUniqueName());
+		}
+
+		if ((quax == null) || !quax.canCollapseToLevel(level)) {
+			String msg = "Collapse to level failed for "
+					+ level.getUniqueName();
+			throw new PivotException(msg);
+		}
+
+		quax.collapseToLevel(level);
+	}
+
 	/**
 	 * Drill down is possible if <code>member</code> has children
 	 * 
@@ -896,12 +1537,8 @@ public class QueryAdapter implements Bookmarkable {
 	 *            Member to drill down
 	 */
 	public boolean canDrillDown(Member member) {
-		try {
-			if (member.getChildMemberCount() <= 0) {
-				return false;
-			}
-		} catch (OlapException e) {
-			throw new PivotException(e);
+		if (getChildMemberCount(member) <= 0) {
+			return false;
 		}
 
 		Dimension dim = member.getLevel().getHierarchy().getDimension();
@@ -1089,4 +1726,161 @@ public class QueryAdapter implements Bookmarkable {
 			}
 		}
 	}
+
+	/**
+	 * Result of a parameter along with the versions of the context keys read
+	 * to evaluate it.
+	 */
+	static class EvaluatedParameter {
+
+		private ExpressionEvaluator evaluator;
+
+		private String result;
+
+		private Map<String, Object> dependencies;
+
+		/**
+		 * @param evaluator
+		 * @param result
+		 * @param dependencies
+		 */
+		EvaluatedParameter(ExpressionEvaluator evaluator, String result,
+				Map<String, Object> dependencies) {
+			this.evaluator = evaluator;
+			this.result = result;
+			this.dependencies = dependencies;
+		}
+
+		/**
+		 * @return the result
+		 */
+		String getResult() {
+			return result;
+		}
+
+		/**
+		 * @param evaluator
+		 * @param context
+		 * @return true if the result can be reused with the given evaluator
+		 *         and the current state of the context
+		 */
+		boolean isValid(ExpressionEvaluator evaluator, VersionedContext context) {
+			if (this.evaluator != evaluator) {
+				return false;
+			}
+
+			for (Map.Entry<String, Object> entry : dependencies.entrySet()) {
+				if (!ObjectUtils.equals(entry.getValue(),
+						context.getVersion(entry.getKey()))) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Records the versions of the keys which an expression reads from the
+	 * context. If the expression iterates over the context or modifies it,
+	 * the dependencies cannot be known so its result should not be reused.
+	 * <p>
+	 * Note that template engines may expose the public methods of the context
+	 * object to the expressions, so this class should not add any of them to
+	 * the ones of the Map interface.
+	 */
+	static class DependencyTracker extends AbstractMap<String, Object> {
+
+		private VersionedContext context;
+
+		private Map<String, Object> dependencies = new HashMap<String, Object>();
+
+		private boolean trackable = true;
+
+		/**
+		 * @param context
+		 */
+		DependencyTracker(VersionedContext context) {
+			this.context = context;
+		}
+
+		/**
+		 * @return the trackable
+		 */
+		boolean isTrackable() {
+			return trackable;
+		}
+
+		/**
+		 * @return the dependencies
+		 */
+		Map<String, Object> getDependencies() {
+			return dependencies;
+		}
+
+		/**
+		 * @param key
+		 */
+		private void track(Object key) {
+			if (key instanceof String) {
+				String name = (String) key;
+
+				if (!dependencies.containsKey(name)) {
+					dependencies.put(name, context.getVersion(name));
+				}
+			} else {
+				this.trackable = false;
+			}
+		}
+
+		/**
+		 * @see java.util.AbstractMap#get(java.lang.Object)
+		 */
+		@Override
+		public Object get(Object key) {
+			track(key);
+
+			return context.get(key);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+		 */
+		@Override
+		public boolean containsKey(Object key) {
+			track(key);
+
+			return context.containsKey(key);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+		 */
+		@Override
+		public Object put(String key, Object value) {
+			this.trackable = false;
+
+			return context.put(key, value);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#remove(java.lang.Object)
+		 */
+		@Override
+		public Object remove(Object key) {
+			this.trackable = false;
+
+			return context.remove(key);
+		}
+
+		/**
+		 * @see java.util.AbstractMap#entrySet()
+		 */
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			this.trackable = false;
+
+			return context.entrySet();
+		}
+	}
 }
@@ -0,0 +1,677 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.snapshot;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.AllocationPolicy;
+import org.olap4j.Axis;
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
+import org.olap4j.CellSetAxisMetaData;
+import org.olap4j.CellSetMetaData;
+import org.olap4j.OlapException;
+import org.olap4j.OlapStatement;
+import org.olap4j.Position;
+import org.olap4j.metadata.Member;
+import org.olap4j.metadata.Property;
+import org.olap4j.metadata.Property.StandardCellProperty;
+
+/**
+ * Compact, read only copy of a query result which does not depend on the
+ * statement or the connection it was created from.
+ * <p>
+ * Numeric cell values are kept in a primitive array, empty and error cells in
+ * bit sets, and formatted values along with other cell properties are interned
+ * so that repeated strings (e.g. format strings) are only stored once. Axis
+ * positions refer to a shared member table. Note that numeric values are
+ * always returned as {@link Double} regardless of their original type.
+ * <p>
+ * Drill through and write back operations are not supported by the snapshot.
+ * <p>
+ * Note that the members on the axes are the ones returned by the original
+ * result, so the snapshot still holds the metadata objects of the connection
+ * which executed the query, and possibly the connection itself depending on
+ * the driver. Those are kept in memory for as long as the snapshot is
+ * referenced, e.g. while it stays in a shared
+ * {@link com.eyeq.pivot4j.cache.CellSetCache}, even after the connection has
+ * been closed or returned to a pool.
+ */
+public class CellSetSnapshot extends AbstractDetachedCellSet {
+
+	private CellSetMetaData metaData;
+
+	private List<CellSetAxis> axes;
+
+	private CellSetAxis filterAxis;
+
+	private int[] axisSizes;
+
+	private int cellCount;
+
+	private double[] values;
+
+	private BitSet numericCells;
+
+	private BitSet emptyCells;
+
+	private BitSet errorCells;
+
+	private Map<Integer, Object> otherValues = new HashMap<Integer, Object>();
+
+	private Map<Integer, String> errorTexts = new HashMap<Integer, String>();
+
+	private int[] formattedValues;
+
+	private Map<String, int[]> propertyValues = new LinkedHashMap<String, int[]>();
+
+	private List<Object> internTable = new ArrayList<Object>();
+
+	private Member[] memberTable;
+
+	/**
+	 * Creates a snapshot by copying all the positions and cells from the given
+	 * cell set. The source cell set is not closed by the constructor.
+	 *
+	 * @param cellSet
+	 * @throws OlapException
+	 */
+	public CellSetSnapshot(CellSet cellSet) throws OlapException {
+		if (cellSet == null) {
+			throw new NullArgumentException("cellSet");
+		}
+
+		this.metaData = cellSet.getMetaData();
+
+		Map<Member, Integer> memberIndex = new HashMap<Member, Integer>();
+		List<Member> members = new ArrayList<Member>();
+
+		List<CellSetAxis> sourceAxes = cellSet.getAxes();
+
+		this.axes = new ArrayList<CellSetAxis>(sourceAxes.size());
+		this.axisSizes = new int[sourceAxes.size()];
+
+		int count = 1;
+
+		for (int i = 0; i < axisSizes.length; i++) {
+			CellSetAxis axis = copyAxis(sourceAxes.get(i), memberIndex,
+					members);
+
+			axes.add(axis);
+			axisSizes[i] = axis.getPositionCount();
+
+			count *= axisSizes[i];
+		}
+
+		if (cellSet.getFilterAxis() != null) {
+			this.filterAxis = copyAxis(cellSet.getFilterAxis(), memberIndex,
+					members);
+		}
+
+		this.memberTable = members.toArray(new Member[members.size()]);
+		this.axes = Collections.unmodifiableList(axes);
+
+		this.cellCount = count;
+		this.values = new double[count];
+		this.numericCells = new BitSet(count);
+		this.emptyCells = new BitSet(count);
+		this.errorCells = new BitSet(count);
+		this.formattedValues = new int[count];
+
+		List<Property> properties = new ArrayList<Property>();
+		properties.add(StandardCellProperty.FORMAT_STRING);
+
+		if (metaData != null && metaData.getCellProperties() != null) {
+			properties.addAll(metaData.getCellProperties());
+		}
+
+		for (Property property : properties) {
+			String name = property.getName();
+
+			if (!isComputedProperty(name)
+					&& !propertyValues.containsKey(name)) {
+				propertyValues.put(name, new int[count]);
+			}
+		}
+
+		Map<Object, Integer> internIndex = new HashMap<Object, Integer>();
+
+		for (int ordinal = 0; ordinal < count; ordinal++) {
+			copyCell(cellSet.getCell(ordinal), ordinal, properties,
+					internIndex);
+		}
+	}
+
+	/**
+	 * @param axis
+	 * @param memberIndex
+	 * @param members
+	 * @return
+	 */
+	private CellSetAxis copyAxis(CellSetAxis axis,
+			Map<Member, Integer> memberIndex, List<Member> members) {
+		List<Position> sourcePositions = axis.getPositions();
+		List<Position> positions = new ArrayList<Position>(
+				sourcePositions.size());
+
+		for (Position position : sourcePositions) {
+			List<Member> positionMembers = position.getMembers();
+
+			int[] indexes = new int[positionMembers.size()];
+
+			for (int i = 0; i < indexes.length; i++) {
+				Member member = positionMembers.get(i);
+
+				Integer index = memberIndex.get(member);
+				if (index == null) {
+					index = members.size();
+
+					members.add(member);
+					memberIndex.put(member, index);
+				}
+
+				indexes[i] = index;
+			}
+
+			positions.add(new SnapshotPosition(positions.size(), indexes));
+		}
+
+		return new SnapshotAxis(axis.getAxisOrdinal(), axis.getAxisMetaData(),
+				Collections.unmodifiableList(positions));
+	}
+
+	/**
+	 * @param cell
+	 * @param ordinal
+	 * @param properties
+	 * @param internIndex
+	 */
+	private void copyCell(Cell cell, int ordinal, List<Property> properties,
+			Map<Object, Integer> internIndex) {
+		if (cell.isEmpty()) {
+			emptyCells.set(ordinal);
+		}
+
+		if (cell.isError()) {
+			errorCells.set(ordinal);
+			errorTexts.put(ordinal, cell.getErrorText());
+		}
+
+		Object value = cell.getValue();
+
+		if (value instanceof Number) {
+			values[ordinal] = ((Number) value).doubleValue();
+			numericCells.set(ordinal);
+		} else if (value != null) {
+			otherValues.put(ordinal, value);
+		}
+
+		formattedValues[ordinal] = intern(cell.getFormattedValue(),
+				internIndex);
+
+		for (Property property : properties) {
+			int[] column = propertyValues.get(property.getName());
+			if (column != null) {
+				column[ordinal] = intern(cell.getPropertyValue(property),
+						internIndex);
+			}
+		}
+	}
+
+	/**
+	 * @param value
+	 * @param internIndex
+	 * @return
+	 */
+	private int intern(Object value, Map<Object, Integer> internIndex) {
+		if (value == null) {
+			return -1;
+		}
+
+		Integer index = internIndex.get(value);
+		if (index == null) {
+			index = internTable.size();
+
+			internTable.add(value);
+			internIndex.put(value, index);
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	private boolean isComputedProperty(String name) {
+		return StandardCellProperty.VALUE.getName().equals(name)
+				|| StandardCellProperty.FORMATTED_VALUE.getName().equals(name)
+				|| StandardCellProperty.CELL_ORDINAL.getName().equals(name);
+	}
+
+	/**
+	 * @return number of cells in the snapshot
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * @return number of distinct members which appear on the axes
+	 */
+	public int getMemberCount() {
+		return memberTable.length;
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getStatement()
+	 */
+	@Override
+	public OlapStatement getStatement() throws SQLException {
+		return null;
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getMetaData()
+	 */
+	@Override
+	public CellSetMetaData getMetaData() throws OlapException {
+		return metaData;
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getAxes()
+	 */
+	@Override
+	public List<CellSetAxis> getAxes() {
+		return axes;
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getFilterAxis()
+	 */
+	@Override
+	public CellSetAxis getFilterAxis() {
+		return filterAxis;
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getCell(java.util.List)
+	 */
+	@Override
+	public Cell getCell(List<Integer> coordinates) {
+		return getCell(coordinatesToOrdinal(coordinates));
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getCell(int)
+	 */
+	@Override
+	public Cell getCell(int ordinal) {
+		if (ordinal < 0 || ordinal >= cellCount) {
+			throw new IndexOutOfBoundsException("Cell ordinal " + ordinal
+					+ " is out of range : 0 - " + (cellCount - 1));
+		}
+
+		return new SnapshotCell(ordinal);
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#getCell(org.olap4j.Position[])
+	 */
+	@Override
+	public Cell getCell(Position... positions) {
+		if (positions.length != axisSizes.length) {
+			throw new IllegalArgumentException(
+					"Number of positions does not match the number of axes : "
+							+ positions.length);
+		}
+
+		int ordinal = 0;
+		int stride = 1;
+
+		for (int i = 0; i < positions.length; i++) {
+			int coordinate = positions[i].getOrdinal();
+
+			if (coordinate < 0 || coordinate >= axisSizes[i]) {
+				throw new IndexOutOfBoundsException("Position ordinal "
+						+ coordinate + " is out of range for axis " + i);
+			}
+
+			ordinal += coordinate * stride;
+			stride *= axisSizes[i];
+		}
+
+		return getCell(ordinal);
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#ordinalToCoordinates(int)
+	 */
+	@Override
+	public List<Integer> ordinalToCoordinates(int ordinal) {
+		List<Integer> coordinates = new ArrayList<Integer>(axisSizes.length);
+
+		int remainder = ordinal;
+
+		for (int size : axisSizes) {
+			coordinates.add(remainder % size);
+			remainder /= size;
+		}
+
+		return coordinates;
+	}
+
+	/**
+	 * @see org.olap4j.CellSet#coordinatesToOrdinal(java.util.List)
+	 */
+	@Override
+	public int coordinatesToOrdinal(List<Integer> coordinates) {
+		if (coordinates.size() != axisSizes.length) {
+			throw new IllegalArgumentException(
+					"Number of coordinates does not match the number of axes : "
+							+ coordinates.size());
+		}
+
+		int ordinal = 0;
+		int stride = 1;
+
+		for (int i = 0; i < axisSizes.length; i++) {
+			ordinal += coordinates.get(i) * stride;
+			stride *= axisSizes[i];
+		}
+
+		return ordinal;
+	}
+
+	class SnapshotAxis implements CellSetAxis {
+
+		private Axis axisOrdinal;
+
+		private CellSetAxisMetaData metaData;
+
+		private List<Position> positions;
+
+		/**
+		 * @param axisOrdinal
+		 * @param metaData
+		 * @param positions
+		 */
+		SnapshotAxis(Axis axisOrdinal, CellSetAxisMetaData metaData,
+				List<Position> positions) {
+			this.axisOrdinal = axisOrdinal;
+			this.metaData = metaData;
+			this.positions = positions;
+		}
+
+		/**
+		 * @see org.olap4j.CellSetAxis#getAxisOrdinal()
+		 */
+		@Override
+		public Axis getAxisOrdinal() {
+			return axisOrdinal;
+		}
+
+		/**
+		 * @see org.olap4j.CellSetAxis#getCellSet()
+		 */
+		@Override
+		public CellSet getCellSet() {
+			return CellSetSnapshot.this;
+		}
+
+		/**
+		 * @see org.olap4j.CellSetAxis#getAxisMetaData()
+		 */
+		@Override
+		public CellSetAxisMetaData getAxisMetaData() {
+			return metaData;
+		}
+
+		/**
+		 * @see org.olap4j.CellSetAxis#getPositions()
+		 */
+		@Override
+		public List<Position> getPositions() {
+			return positions;
+		}
+
+		/**
+		 * @see org.olap4j.CellSetAxis#getPositionCount()
+		 */
+		@Override
+		public int getPositionCount() {
+			return positions.size();
+		}
+
+		/**
+		 * @see org.olap4j.CellSetAxis#iterate()
+		 */
+		@Override
+		public ListIterator<Position> iterate() {
+			return positions.listIterator();
+		}
+
+		/**
+		 * @see java.lang.Iterable#iterator()
+		 */
+		@Override
+		public Iterator<Position> iterator() {
+			return positions.iterator();
+		}
+	}
+
+	class SnapshotPosition implements Position {
+
+		private int ordinal;
+
+		private int[] memberIndexes;
+
+		/**
+		 * @param ordinal
+		 * @param memberIndexes
+		 */
+		SnapshotPosition(int ordinal, int[] memberIndexes) {
+			this.ordinal = ordinal;
+			this.memberIndexes = memberIndexes;
+		}
+
+		/**
+		 * @see org.olap4j.Position#getMembers()
+		 */
+		@Override
+		public List<Member> getMembers() {
+			return new AbstractList<Member>() {
+
+				@Override
+				public Member get(int index) {
+					return memberTable[memberIndexes[index]];
+				}
+
+				@Override
+				public int size() {
+					return memberIndexes.length;
+				}
+			};
+		}
+
+		/**
+		 * @see org.olap4j.Position#getOrdinal()
+		 */
+		@Override
+		public int getOrdinal() {
+			return ordinal;
+		}
+	}
+
+	class SnapshotCell implements Cell {
+
+		private int ordinal;
+
+		/**
+		 * @param ordinal
+		 */
+		SnapshotCell(int ordinal) {
+			this.ordinal = ordinal;
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getCellSet()
+		 */
+		@Override
+		public CellSet getCellSet() {
+			return CellSetSnapshot.this;
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getOrdinal()
+		 */
+		@Override
+		public int getOrdinal() {
+			return ordinal;
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getCoordinateList()
+		 */
+		@Override
+		public List<Integer> getCoordinateList() {
+			return ordinalToCoordinates(ordinal);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getPropertyValue(org.olap4j.metadata.Property)
+		 */
+		@Override
+		public Object getPropertyValue(Property property) {
+			String name = property.getName();
+
+			if (StandardCellProperty.VALUE.getName().equals(name)) {
+				return getValue();
+			} else if (StandardCellProperty.FORMATTED_VALUE.getName().equals(
+					name)) {
+				return getFormattedValue();
+			} else if (StandardCellProperty.CELL_ORDINAL.getName().equals(
+					name)) {
+				return ordinal;
+			}
+
+			int[] column = propertyValues.get(name);
+			if (column == null || column[ordinal] < 0) {
+				return null;
+			}
+
+			return internTable.get(column[ordinal]);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#isEmpty()
+		 */
+		@Override
+		public boolean isEmpty() {
+			return emptyCells.get(ordinal);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#isError()
+		 */
+		@Override
+		public boolean isError() {
+			return errorCells.get(ordinal);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#isNull()
+		 */
+		@Override
+		public boolean isNull() {
+			return !numericCells.get(ordinal)
+					&& !otherValues.containsKey(ordinal);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getDoubleValue()
+		 */
+		@Override
+		public double getDoubleValue() throws OlapException {
+			if (!numericCells.get(ordinal)) {
+				throw new OlapException("Cell value is not a number : "
+						+ otherValues.get(ordinal));
+			}
+
+			return values[ordinal];
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getErrorText()
+		 */
+		@Override
+		public String getErrorText() {
+			return errorTexts.get(ordinal);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getValue()
+		 */
+		@Override
+		public Object getValue() {
+			if (numericCells.get(ordinal)) {
+				return values[ordinal];
+			}
+
+			return otherValues.get(ordinal);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#getFormattedValue()
+		 */
+		@Override
+		public String getFormattedValue() {
+			int index = formattedValues[ordinal];
+			if (index < 0) {
+				return null;
+			}
+
+			return (String) internTable.get(index);
+		}
+
+		/**
+		 * @see org.olap4j.Cell#drillThrough()
+		 */
+		@Override
+		public ResultSet drillThrough() throws OlapException {
+			throw new OlapException(
+					"Drill through is not supported by a detached snapshot.");
+		}
+
+		/**
+		 * @see org.olap4j.Cell#setValue(java.lang.Object,
+		 *      org.olap4j.AllocationPolicy, java.lang.Object[])
+		 */
+		@Override
+		public void setValue(Object value, AllocationPolicy allocationPolicy,
+				Object... allocationArgs) throws OlapException {
+			throw new OlapException(
+					"Write back is not supported by a detached snapshot.");
+		}
+	}
+}
@@ -0,0 +1,823 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.snapshot;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.olap4j.Axis;
+import org.olap4j.Cell;
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
+import org.olap4j.CellSetAxisMetaData;
+import org.olap4j.CellSetMetaData;
+import org.olap4j.OlapException;
+import org.olap4j.OlapStatement;
+import org.olap4j.Position;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Member;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges the result of a delta query, which returns only the positions added
+ * to an axis by expanding members of a hierarchy, into the snapshot of the
+ * previous result.
+ * <p>
+ * New positions are placed after the last position of their parent member,
+ * which is the order produced by a hierarchized axis. As it's only valid when
+ * none of the descendants of the parent were visible before the expansion,
+ * the results are not merged otherwise, nor when the delta result contains a
+ * position which already exists in the previous result. Cells of the opposite
+ * axis positions which are missing from the delta result (i.e. filtered out
+ * by NON EMPTY) are filled with an empty cell taken from the same column of
+ * the previous result.
+ */
+public class CellSetSplicer {
+
+	protected Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @param base
+	 *            snapshot of the result before the expansion
+	 * @param delta
+	 *            result of the delta query
+	 * @param axis
+	 *            expanded axis
+	 * @param hierarchy
+	 *            hierarchy of the expanded members
+	 * @return a new snapshot which contains the positions of both results, or
+	 *         null if they cannot be merged
+	 * @throws OlapException
+	 */
+	public CellSetSnapshot splice(CellSetSnapshot base, CellSet delta,
+			Axis axis, Hierarchy hierarchy) throws OlapException {
+		if (base == null) {
+			throw new NullArgumentException("base");
+		}
+
+		if (delta == null) {
+			throw new NullArgumentException("delta");
+		}
+
+		if (axis == null) {
+			throw new NullArgumentException("axis");
+		}
+
+		if (hierarchy == null) {
+			throw new NullArgumentException("hierarchy");
+		}
+
+		List<CellSetAxis> baseAxes = base.getAxes();
+		List<CellSetAxis> deltaAxes = delta.getAxes();
+
+		if (baseAxes.size() != deltaAxes.size() || baseAxes.size() > 2) {
+			return fail("Unsupported number of axes : " + deltaAxes.size());
+		}
+
+		int axisIndex = -1;
+
+		for (int i = 0; i < baseAxes.size(); i++) {
+			if (!baseAxes.get(i).getAxisOrdinal()
+					.equals(deltaAxes.get(i).getAxisOrdinal())) {
+				return fail("Axes of the results do not match.");
+			}
+
+			if (axis.equals(baseAxes.get(i).getAxisOrdinal())) {
+				axisIndex = i;
+			}
+		}
+
+		if (axisIndex < 0) {
+			return fail("Unable to find the expanded axis : " + axis);
+		}
+
+		List<Position> deltaPositions = deltaAxes.get(axisIndex)
+				.getPositions();
+		if (deltaPositions.isEmpty()) {
+			return base;
+		}
+
+		int[] otherIndexes = null;
+
+		if (baseAxes.size() > 1) {
+			int otherAxis = 1 - axisIndex;
+
+			otherIndexes = mapPositions(baseAxes.get(otherAxis),
+					deltaAxes.get(otherAxis));
+
+			if (otherIndexes == null) {
+				return fail("The delta result has new positions on the opposite axis.");
+			}
+		}
+
+		int[] entries = mergePositions(baseAxes.get(axisIndex).getPositions(),
+				deltaPositions, hierarchy);
+
+		if (entries == null) {
+			return fail("Unable to place the new positions after their parents.");
+		}
+
+		SplicedCellSet cellSet = new SplicedCellSet(base, delta, axisIndex,
+				entries, otherIndexes);
+
+		if (!cellSet.fillEmptyCells()) {
+			return fail("No empty cell found to fill the missing cells.");
+		}
+
+		return new CellSetSnapshot(cellSet);
+	}
+
+	/**
+	 * Tells whether the result of expanding the member could be merged into
+	 * the snapshot at all, using only the previous result, so that the delta
+	 * query can be skipped when it would be discarded anyway. Passing this
+	 * check does not guarantee the delta result can be merged.
+	 * 
+	 * @param base
+	 *            snapshot of the result before the expansion
+	 * @param axis
+	 *            expanded axis
+	 * @param member
+	 *            expanded member
+	 * @return false if the result of the expansion cannot be merged
+	 */
+	public boolean canSplice(CellSetSnapshot base, Axis axis, Member member) {
+		if (base == null) {
+			throw new NullArgumentException("base");
+		}
+
+		if (axis == null) {
+			throw new NullArgumentException("axis");
+		}
+
+		if (member == null) {
+			throw new NullArgumentException("member");
+		}
+
+		List<CellSetAxis> baseAxes = base.getAxes();
+
+		if (baseAxes.size() > 2) {
+			fail("Unsupported number of axes : " + baseAxes.size());
+			return false;
+		}
+
+		CellSetAxis expandedAxis = null;
+
+		for (CellSetAxis baseAxis : baseAxes) {
+			if (axis.equals(baseAxis.getAxisOrdinal())) {
+				expandedAxis = baseAxis;
+				break;
+			}
+		}
+
+		if (expandedAxis == null) {
+			fail("Unable to find the expanded axis : " + axis);
+			return false;
+		}
+
+		List<Position> positions = expandedAxis.getPositions();
+		if (positions.isEmpty()) {
+			fail("No position to place the new positions after.");
+			return false;
+		}
+
+		int index = getHierarchyIndex(positions.get(0), member.getLevel()
+				.getHierarchy());
+		if (index < 0) {
+			fail("Unable to find the hierarchy of the expanded member.");
+			return false;
+		}
+
+		boolean found = false;
+
+		for (Position position : positions) {
+			Member baseMember = position.getMembers().get(index);
+
+			if (baseMember.getUniqueName().equals(member.getUniqueName())) {
+				found = true;
+			} else if (baseMember.getDepth() > member.getDepth()
+					&& isAncestor(member, baseMember)) {
+				fail("Descendants of the expanded member are already visible.");
+				return false;
+			}
+		}
+
+		if (!found) {
+			fail("The expanded member is not visible.");
+		}
+
+		return found;
+	}
+
+	/**
+	 * @param ancestor
+	 * @param member
+	 * @return
+	 */
+	private boolean isAncestor(Member ancestor, Member member) {
+		String name = ancestor.getUniqueName();
+
+		Member parent = member.getParentMember();
+
+		while (parent != null) {
+			if (parent.getUniqueName().equals(name)) {
+				return true;
+			}
+
+			parent = parent.getParentMember();
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param baseAxis
+	 * @param deltaAxis
+	 * @return index of the delta position for each base position, or -1 if
+	 *         it is missing in the delta result. Returns null if the delta
+	 *         result contains a position which does not exist in the base
+	 *         result.
+	 */
+	protected int[] mapPositions(CellSetAxis baseAxis, CellSetAxis deltaAxis) {
+		List<Position> basePositions = baseAxis.getPositions();
+
+		Map<String, Integer> index = new HashMap<String, Integer>(
+				basePositions.size());
+
+		int ordinal = 0;
+		for (Position position : basePositions) {
+			index.put(getKey(position.getMembers(), -1), ordinal++);
+		}
+
+		int[] indexes = new int[basePositions.size()];
+		Arrays.fill(indexes, -1);
+
+		ordinal = 0;
+		for (Position position : deltaAxis.getPositions()) {
+			Integer baseIndex = index.get(getKey(position.getMembers(), -1));
+			if (baseIndex == null) {
+				return null;
+			}
+
+			indexes[baseIndex] = ordinal++;
+		}
+
+		return indexes;
+	}
+
+	/**
+	 * @param basePositions
+	 * @param deltaPositions
+	 * @param hierarchy
+	 * @return merged positions, where a non negative value is an index of the
+	 *         base position and a negative value <code>-(i + 1)</code> is an
+	 *         index of the delta position. Returns null if any delta position
+	 *         cannot be placed.
+	 */
+	protected int[] mergePositions(List<Position> basePositions,
+			List<Position> deltaPositions, Hierarchy hierarchy) {
+		int depth = getHierarchyIndex(deltaPositions.get(0), hierarchy);
+		if (depth < 0) {
+			return null;
+		}
+
+		Map<String, Integer> anchors = new HashMap<String, Integer>(
+				basePositions.size());
+
+		Set<String> baseKeys = new HashSet<String>(basePositions.size());
+
+		int ordinal = 0;
+		for (Position position : basePositions) {
+			List<Member> members = position.getMembers();
+			if (members.size() > depth) {
+				anchors.put(getKey(members, depth), ordinal);
+			}
+
+			baseKeys.add(getKey(members, -1));
+
+			ordinal++;
+		}
+
+		Set<String> parents = new HashSet<String>();
+
+		for (Position position : deltaPositions) {
+			List<Member> members = position.getMembers();
+
+			if (baseKeys.contains(getKey(members, -1))) {
+				return null;
+			}
+
+			if (members.size() > depth) {
+				Member parent = members.get(depth).getParentMember();
+
+				if (parent != null) {
+					parents.add(getKey(members, depth, parent));
+				}
+			}
+		}
+
+		// the new positions cannot simply follow their parent if any of its
+		// descendants is already on the axis.
+		for (Position position : basePositions) {
+			List<Member> members = position.getMembers();
+			if (members.size() <= depth) {
+				continue;
+			}
+
+			Member ancestor = members.get(depth).getParentMember();
+
+			while (ancestor != null) {
+				if (parents.contains(getKey(members, depth, ancestor))) {
+					return null;
+				}
+
+				ancestor = ancestor.getParentMember();
+			}
+		}
+
+		Map<Integer, List<Integer>> insertions = new HashMap<Integer, List<Integer>>();
+
+		ordinal = 0;
+		for (Position position : deltaPositions) {
+			List<Member> members = position.getMembers();
+			if (members.size() <= depth) {
+				return null;
+			}
+
+			Member parent = members.get(depth).getParentMember();
+			if (parent == null) {
+				return null;
+			}
+
+			Integer anchor = anchors.get(getKey(members, depth, parent));
+			if (anchor == null) {
+				return null;
+			}
+
+			List<Integer> children = insertions.get(anchor);
+			if (children == null) {
+				children = new LinkedList<Integer>();
+				insertions.put(anchor, children);
+			}
+
+			children.add(ordinal++);
+		}
+
+		int[] entries = new int[basePositions.size() + deltaPositions.size()];
+
+		int index = 0;
+		for (int i = 0; i < basePositions.size(); i++) {
+			entries[index++] = i;
+
+			List<Integer> children = insertions.get(i);
+			if (children != null) {
+				for (Integer child : children) {
+					entries[index++] = -(child + 1);
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * @param position
+	 * @param hierarchy
+	 * @return
+	 */
+	private int getHierarchyIndex(Position position, Hierarchy hierarchy) {
+		String name = hierarchy.getUniqueName();
+
+		int index = 0;
+		for (Member member : position.getMembers()) {
+			if (name.equals(member.getLevel().getHierarchy().getUniqueName())) {
+				return index;
+			}
+
+			index++;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param members
+	 * @param depth
+	 *            index of the last member to be included, or -1 to include
+	 *            all the members
+	 * @return
+	 */
+	private String getKey(List<Member> members, int depth) {
+		int size = depth < 0 ? members.size() : depth + 1;
+
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append('\n');
+			}
+
+			builder.append(members.get(i).getUniqueName());
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * @param members
+	 * @param depth
+	 *            index of the member to be replaced
+	 * @param member
+	 *            member to be used in place of the one at the given depth
+	 * @return key of the leading members up to the given depth
+	 */
+	private String getKey(List<Member> members, int depth, Member member) {
+		List<Member> path = new ArrayList<Member>(depth + 1);
+		path.addAll(members.subList(0, depth));
+		path.add(member);
+
+		return getKey(path, depth);
+	}
+
+	/**
+	 * @param message
+	 * @return
+	 */
+	private CellSetSnapshot fail(String message) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Unable to splice the delta result : " + message);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Read only view of the merged result, which is only used to build a new
+	 * snapshot.
+	 */
+	static class SplicedCellSet extends AbstractDetachedCellSet {
+
+		private CellSet base;
+
+		private CellSet delta;
+
+		private int axisIndex;
+
+		private int[] entries;
+
+		private int[] otherIndexes;
+
+		private Cell[] emptyCells;
+
+		private List<CellSetAxis> axes;
+
+		/**
+		 * @param base
+		 * @param delta
+		 * @param axisIndex
+		 * @param entries
+		 * @param otherIndexes
+		 */
+		SplicedCellSet(CellSet base, CellSet delta, int axisIndex,
+				int[] entries, int[] otherIndexes) {
+			this.base = base;
+			this.delta = delta;
+			this.axisIndex = axisIndex;
+			this.entries = entries;
+			this.otherIndexes = otherIndexes;
+
+			List<CellSetAxis> baseAxes = base.getAxes();
+
+			List<Position> basePositions = baseAxes.get(axisIndex)
+					.getPositions();
+			List<Position> deltaPositions = delta.getAxes().get(axisIndex)
+					.getPositions();
+
+			List<Position> positions = new ArrayList<Position>(entries.length);
+
+			for (int entry : entries) {
+				Position position;
+
+				if (entry < 0) {
+					position = deltaPositions.get(-(entry + 1));
+				} else {
+					position = basePositions.get(entry);
+				}
+
+				positions.add(new SplicedPosition(positions.size(), position
+						.getMembers()));
+			}
+
+			this.axes = new ArrayList<CellSetAxis>(baseAxes.size());
+
+			for (int i = 0; i < baseAxes.size(); i++) {
+				CellSetAxis axis = baseAxes.get(i);
+
+				if (i == axisIndex) {
+					axes.add(new SplicedAxis(axis.getAxisOrdinal(), axis
+							.getAxisMetaData(), Collections
+							.unmodifiableList(positions)));
+				} else {
+					axes.add(new SplicedAxis(axis.getAxisOrdinal(), axis
+							.getAxisMetaData(), axis.getPositions()));
+				}
+			}
+
+			this.axes = Collections.unmodifiableList(axes);
+		}
+
+		/**
+		 * Finds empty cells to be used for the opposite axis positions which
+		 * are missing in the delta result.
+		 *
+		 * @return false if there's no empty cell available for such a position
+		 */
+		boolean fillEmptyCells() {
+			if (otherIndexes == null) {
+				return true;
+			}
+
+			this.emptyCells = new Cell[otherIndexes.length];
+
+			int baseCount = base.getAxes().get(axisIndex).getPositionCount();
+
+			for (int other = 0; other < otherIndexes.length; other++) {
+				if (otherIndexes[other] > -1) {
+					continue;
+				}
+
+				for (int i = 0; i < baseCount; i++) {
+					Cell cell = base.getCell(getCoordinates(i, other));
+					if (cell.isEmpty()) {
+						emptyCells[other] = cell;
+						break;
+					}
+				}
+
+				if (emptyCells[other] == null) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * @param position
+		 *            index of the position on the expanded axis
+		 * @param other
+		 *            index of the position on the opposite axis
+		 * @return
+		 */
+		private List<Integer> getCoordinates(int position, int other) {
+			if (otherIndexes == null) {
+				return Collections.singletonList(position);
+			} else if (axisIndex == 0) {
+				return Arrays.asList(position, other);
+			} else {
+				return Arrays.asList(other, position);
+			}
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getStatement()
+		 */
+		@Override
+		public OlapStatement getStatement() throws SQLException {
+			return null;
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getMetaData()
+		 */
+		@Override
+		public CellSetMetaData getMetaData() throws OlapException {
+			return base.getMetaData();
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getAxes()
+		 */
+		@Override
+		public List<CellSetAxis> getAxes() {
+			return axes;
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getFilterAxis()
+		 */
+		@Override
+		public CellSetAxis getFilterAxis() {
+			return base.getFilterAxis();
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getCell(int)
+		 */
+		@Override
+		public Cell getCell(int ordinal) {
+			return getCell(ordinalToCoordinates(ordinal));
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getCell(java.util.List)
+		 */
+		@Override
+		public Cell getCell(List<Integer> coordinates) {
+			int entry = entries[coordinates.get(axisIndex)];
+			int other = otherIndexes == null ? 0 : coordinates
+					.get(1 - axisIndex);
+
+			if (entry > -1) {
+				return base.getCell(getCoordinates(entry, other));
+			}
+
+			if (otherIndexes != null) {
+				if (otherIndexes[other] < 0) {
+					return emptyCells[other];
+				}
+
+				other = otherIndexes[other];
+			}
+
+			return delta.getCell(getCoordinates(-(entry + 1), other));
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#getCell(org.olap4j.Position[])
+		 */
+		@Override
+		public Cell getCell(Position... positions) {
+			List<Integer> coordinates = new ArrayList<Integer>(
+					positions.length);
+
+			for (Position position : positions) {
+				coordinates.add(position.getOrdinal());
+			}
+
+			return getCell(coordinates);
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#ordinalToCoordinates(int)
+		 */
+		@Override
+		public List<Integer> ordinalToCoordinates(int ordinal) {
+			List<Integer> coordinates = new ArrayList<Integer>(axes.size());
+
+			int remainder = ordinal;
+
+			for (CellSetAxis axis : axes) {
+				int size = axis.getPositionCount();
+
+				coordinates.add(remainder % size);
+				remainder /= size;
+			}
+
+			return coordinates;
+		}
+
+		/**
+		 * @see org.olap4j.CellSet#coordinatesToOrdinal(java.util.List)
+		 */
+		@Override
+		public int coordinatesToOrdinal(List<Integer> coordinates) {
+			int ordinal = 0;
+			int stride = 1;
+
+			for (int i = 0; i < axes.size(); i++) {
+				ordinal += coordinates.get(i) * stride;
+				stride *= axes.get(i).getPositionCount();
+			}
+
+			return ordinal;
+		}
+
+		class SplicedAxis implements CellSetAxis {
+
+			private Axis axisOrdinal;
+
+			private CellSetAxisMetaData metaData;
+
+			private List<Position> positions;
+
+			/**
+			 * @param axisOrdinal
+			 * @param metaData
+			 * @param positions
+			 */
+			SplicedAxis(Axis axisOrdinal, CellSetAxisMetaData metaData,
+					List<Position> positions) {
+				this.axisOrdinal = axisOrdinal;
+				this.metaData = metaData;
+				this.positions = positions;
+			}
+
+			/**
+			 * @see org.olap4j.CellSetAxis#getAxisOrdinal()
+			 */
+			@Override
+			public Axis getAxisOrdinal() {
+				return axisOrdinal;
+			}
+
+			/**
+			 * @see org.olap4j.CellSetAxis#getCellSet()
+			 */
+			@Override
+			public CellSet getCellSet() {
+				return SplicedCellSet.this;
+			}
+
+			/**
+			 * @see org.olap4j.CellSetAxis#getAxisMetaData()
+			 */
+			@Override
+			public CellSetAxisMetaData getAxisMetaData() {
+				return metaData;
+			}
+
+			/**
+			 * @see org.olap4j.CellSetAxis#getPositions()
+			 */
+			@Override
+			public List<Position> getPositions() {
+				return positions;
+			}
+
+			/**
+			 * @see org.olap4j.CellSetAxis#getPositionCount()
+			 */
+			@Override
+			public int getPositionCount() {
+				return positions.size();
+			}
+
+			/**
+			 * @see org.olap4j.CellSetAxis#iterate()
+			 */
+			@Override
+			public ListIterator<Position> iterate() {
+				return positions.listIterator();
+			}
+
+			/**
+			 * @see java.lang.Iterable#iterator()
+			 */
+			@Override
+			public Iterator<Position> iterator() {
+				return positions.iterator();
+			}
+		}
+	}
+
+	static class SplicedPosition implements Position {
+
+		private int ordinal;
+
+		private List<Member> members;
+
+		/**
+		 * @param ordinal
+		 * @param members
+		 */
+		SplicedPosition(int ordinal, List<Member> members) {
+			this.ordinal = ordinal;
+			this.members = members;
+		}
+
+		/**
+		 * @see org.olap4j.Position#getMembers()
+		 */
+		@Override
+		public List<Member> getMembers() {
+			return members;
+		}
+
+		/**
+		 * @see org.olap4j.Position#getOrdinal()
+		 */
+		@Override
+		public int getOrdinal() {
+			return ordinal;
+		}
+	}
+}
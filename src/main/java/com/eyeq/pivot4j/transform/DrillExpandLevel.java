@@ -0,0 +1,49 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.transform;
+
+import org.olap4j.metadata.Level;
+
+/**
+ * allows to expand / collapse all the members of a hierarchy on an axis down
+ * to a level at once, rather than expanding them one by one.
+ * <p>
+ * Example: if you expand "Continent" to "City", all the continents which are
+ * shown on the axis will be displayed along with their countries and cities.
+ * If you collapse the hierarchy to "Continent", no countries or cities will be
+ * shown.
+ * <p>
+ * The expanded members are represented as a single
+ * <code>Descendants(set, level, SELF_AND_BEFORE)</code> set, so expanding a
+ * large hierarchy results in a compact query.
+ */
+public interface DrillExpandLevel extends Transform {
+
+	/**
+	 * true if any member of the level's hierarchy on the axis is above the
+	 * level and is not fully expanded to it
+	 */
+	boolean canExpandToLevel(Level level);
+
+	/**
+	 * true if any member of the level's hierarchy below the level is currently
+	 * displayed
+	 */
+	boolean canCollapseToLevel(Level level);
+
+	/**
+	 * expands all the members of the level's hierarchy down to the level
+	 */
+	void expandToLevel(Level level);
+
+	/**
+	 * collapses all the members of the level's hierarchy up to the level
+	 */
+	void collapseToLevel(Level level);
+}
@@ -0,0 +1,64 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.transform.impl;
+
+import org.olap4j.metadata.Level;
+
+import com.eyeq.pivot4j.query.QueryAdapter;
+import com.eyeq.pivot4j.transform.AbstractTransform;
+import com.eyeq.pivot4j.transform.DrillExpandLevel;
+
+public class DrillExpandLevelImpl extends AbstractTransform implements
+		DrillExpandLevel {
+
+	/**
+	 * @param queryAdapter
+	 */
+	public DrillExpandLevelImpl(QueryAdapter queryAdapter) {
+		super(queryAdapter);
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.transform.DrillExpandLevel#canExpandToLevel(org.olap4j.metadata.Level)
+	 * @param level
+	 *            the level to be checked for potential expansion
+	 * @return true if the hierarchy can be expanded to the level
+	 */
+	public boolean canExpandToLevel(Level level) {
+		return getQueryAdapter().canExpandToLevel(level);
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.transform.DrillExpandLevel#canCollapseToLevel(org.olap4j.metadata.Level)
+	 * @param level
+	 *            the level to be checked for potential collapse
+	 * @return true if the hierarchy can be collapsed to the level
+	 */
+	public boolean canCollapseToLevel(Level level) {
+		return getQueryAdapter().canCollapseToLevel(level);
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.transform.DrillExpandLevel#expandToLevel(org.olap4j.metadata.Level)
+	 * @param level
+	 *            level to be expanded to
+	 */
+	public void expandToLevel(Level level) {
+		getQueryAdapter().expandToLevel(level);
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.transform.DrillExpandLevel#collapseToLevel(org.olap4j.metadata.Level)
+	 * @param level
+	 *            level to be collapsed to
+	 */
+	public void collapseToLevel(Level level) {
+		getQueryAdapter().collapseToLevel(level);
+	}
+}
@@ -9,6 +9,7 @@
 package com.eyeq.pivot4j.transform.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -244,18 +245,13 @@ public class PlaceHierarchiesOnAxesImpl extends AbstractTransform implements
 					// create Union({AllMember}, AllMember.children)
 					Exp allExp = new MemberExp(allMember);
 
-					FunCall allSet = new FunCall("{}", Syntax.Braces);
-					allSet.getArgs().add(allExp);
+					Exp allSet = new FunCall("{}", Syntax.Braces, Arrays
+							.asList(allExp));
+					Exp allChildren = new FunCall("Children",
+							Syntax.Property, Arrays.asList(allExp));
 
-					FunCall mAllChildren = new FunCall("Children",
-							Syntax.Property);
-					mAllChildren.getArgs().add(allExp);
-
-					FunCall union = new FunCall("Union", Syntax.Function);
-					union.getArgs().add(allSet);
-					union.getArgs().add(mAllChildren);
-
-					return union;
+					return new FunCall("Union", Syntax.Function, Arrays
+							.asList(allSet, allChildren));
 				}
 			}
 
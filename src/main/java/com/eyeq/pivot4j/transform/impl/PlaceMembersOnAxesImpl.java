@@ -15,9 +15,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.olap4j.Axis;
-import org.olap4j.CellSet;
-import org.olap4j.CellSetAxis;
-import org.olap4j.Position;
 import org.olap4j.metadata.Hierarchy;
 import org.olap4j.metadata.Member;
 import org.slf4j.Logger;
@@ -27,6 +24,7 @@ import com.eyeq.pivot4j.mdx.Exp;
 import com.eyeq.pivot4j.mdx.FunCall;
 import com.eyeq.pivot4j.mdx.Syntax;
 import com.eyeq.pivot4j.mdx.metadata.MemberExp;
+import com.eyeq.pivot4j.query.AxisIndex;
 import com.eyeq.pivot4j.query.Quax;
 import com.eyeq.pivot4j.query.QueryAdapter;
 import com.eyeq.pivot4j.transform.AbstractTransform;
@@ -320,8 +318,6 @@ public class PlaceMembersOnAxesImpl extends AbstractTransform implements
 	 * @see com.eyeq.pivot4j.transform.PlaceMembersOnAxes#findVisibleMembers(org.olap4j.Axis)
 	 */
 	public List<Member> findVisibleMembers(Axis axis) {
-		List<Member> visibleMembers = new ArrayList<Member>();
-
 		QueryAdapter adapter = getQueryAdapter();
 
 		// find the Quax for this hierarchy
@@ -330,27 +326,12 @@ public class PlaceMembersOnAxesImpl extends AbstractTransform implements
 			return Collections.emptyList(); // should not occur
 		}
 
-		CellSet cellSet = adapter.getModel().getCellSet();
-
-		// locate the appropriate result axis
-		int iAx = quax.getOrdinal();
-		if (adapter.isAxesSwapped()) {
-			iAx = (iAx + 1) % 2;
-		}
-
-		CellSetAxis cellAxis = cellSet.getAxes().get(iAx);
-
-		List<Position> positions = cellAxis.getPositions();
-		for (Position position : positions) {
-			List<Member> members = position.getMembers();
-			for (Member member : members) {
-				if (member != null && !visibleMembers.contains(member)) {
-					visibleMembers.add(member);
-				}
-			}
+		AxisIndex index = getAxisIndex(adapter, quax);
+		if (index == null) {
+			return Collections.emptyList();
 		}
 
-		return visibleMembers;
+		return new ArrayList<Member>(index.getMembers());
 	}
 
 	/**
@@ -358,8 +339,6 @@ public class PlaceMembersOnAxesImpl extends AbstractTransform implements
 	 *      olap4j.metadata.Hierarchy)
 	 */
 	public List<Member> findVisibleMembers(Hierarchy hierarchy) {
-		List<Member> visibleMembers = new ArrayList<Member>();
-
 		QueryAdapter adapter = getQueryAdapter();
 
 		// find the Quax for this hierarchy
@@ -377,25 +356,26 @@ public class PlaceMembersOnAxesImpl extends AbstractTransform implements
 		// It would be possible to add it (again) to the axis, which must be
 		// avoided
 
-		CellSet cellSet = adapter.getModel().getCellSet();
+		AxisIndex index = getAxisIndex(adapter, quax);
+		if (index == null || iDim >= index.getHierarchyCount()) {
+			return Collections.emptyList();
+		}
 
+		return new ArrayList<Member>(index.getMembers(iDim));
+	}
+
+	/**
+	 * @param adapter
+	 * @param quax
+	 * @return index of the result axis which corresponds to the quax
+	 */
+	protected AxisIndex getAxisIndex(QueryAdapter adapter, Quax quax) {
 		// locate the appropriate result axis
 		int iAx = quax.getOrdinal();
 		if (adapter.isAxesSwapped()) {
 			iAx = (iAx + 1) % 2;
 		}
 
-		CellSetAxis axis = cellSet.getAxes().get(iAx);
-
-		List<Position> positions = axis.getPositions();
-		for (Position position : positions) {
-			List<Member> members = position.getMembers();
-			Member member = members.get(iDim);
-			if (member != null && !visibleMembers.contains(member)) {
-				visibleMembers.add(member);
-			}
-		}
-
-		return visibleMembers;
+		return adapter.getModel().getAxisIndex(Axis.Factory.forOrdinal(iAx));
 	}
 }
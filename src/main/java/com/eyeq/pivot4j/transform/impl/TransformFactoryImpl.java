@@ -15,6 +15,7 @@ import java.util.Map;
 import com.eyeq.pivot4j.PivotException;
 import com.eyeq.pivot4j.query.QueryAdapter;
 import com.eyeq.pivot4j.transform.ChangeSlicer;
+import com.eyeq.pivot4j.transform.DrillExpandLevel;
 import com.eyeq.pivot4j.transform.DrillExpandMember;
 import com.eyeq.pivot4j.transform.DrillExpandPosition;
 import com.eyeq.pivot4j.transform.DrillReplace;
@@ -50,6 +51,7 @@ public class TransformFactoryImpl implements TransformFactory {
 	protected void registerDefaultTransforms(
 			Map<Class<? extends Transform>, Class<? extends Transform>> transforms) {
 		transforms.put(DrillExpandMember.class, DrillExpandMemberImpl.class);
+		transforms.put(DrillExpandLevel.class, DrillExpandLevelImpl.class);
 		transforms
 				.put(DrillExpandPosition.class, DrillExpandPositionImpl.class);
 		transforms.put(DrillReplace.class, DrillReplaceImpl.class);
@@ -8,8 +8,6 @@
  */
 package com.eyeq.pivot4j.ui;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +23,7 @@ import org.olap4j.metadata.Member;
 import org.olap4j.metadata.Property;
 
 import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.cache.AncestorIndex;
 import com.eyeq.pivot4j.ui.aggregator.Aggregator;
 
 public class RenderContext {
@@ -69,7 +68,7 @@ public class RenderContext {
 
 	private int rowSpan = 1;
 
-	private Map<String, Member> cachedParents;
+	private AncestorIndex ancestorIndex;
 
 	/**
 	 * @param model
@@ -78,11 +77,33 @@ public class RenderContext {
 	 * @param rowCount
 	 * @param columnHeaderCount
 	 * @param rowHeaderCount
-	 * @parma cachedParents
-	 */
+	 * @param cachedParents
+	 *            ignored, parent members are cached in a new
+	 *            {@link AncestorIndex} instead
+	 * @deprecated Use
+	 *             {@link #RenderContext(PivotModel, PivotRenderer, int, int, int, int, AncestorIndex)}
+	 *             instead.
+	 */
+	@Deprecated
 	public RenderContext(PivotModel model, PivotRenderer renderer,
 			int columnCount, int rowCount, int columnHeaderCount,
 			int rowHeaderCount, Map<String, Member> cachedParents) {
+		this(model, renderer, columnCount, rowCount, columnHeaderCount,
+				rowHeaderCount, (AncestorIndex) null);
+	}
+
+	/**
+	 * @param model
+	 * @param renderer
+	 * @param columnCount
+	 * @param rowCount
+	 * @param columnHeaderCount
+	 * @param rowHeaderCount
+	 * @param ancestorIndex
+	 */
+	public RenderContext(PivotModel model, PivotRenderer renderer,
+			int columnCount, int rowCount, int columnHeaderCount,
+			int rowHeaderCount, AncestorIndex ancestorIndex) {
 		if (model == null) {
 			throw new NullArgumentException("model");
 		}
@@ -118,10 +139,10 @@ public class RenderContext {
 		this.columnHeaderCount = columnHeaderCount;
 		this.rowHeaderCount = rowHeaderCount;
 
-		if (cachedParents == null) {
-			this.cachedParents = new HashMap<String, Member>();
+		if (ancestorIndex == null) {
+			this.ancestorIndex = new AncestorIndex();
 		} else {
-			this.cachedParents = cachedParents;
+			this.ancestorIndex = ancestorIndex;
 		}
 	}
 
@@ -409,6 +430,13 @@ public class RenderContext {
 		return getCellSet().getAxes().get(axis.axisOrdinal());
 	}
 
+	/**
+	 * @return the ancestorIndex
+	 */
+	public AncestorIndex getAncestorIndex() {
+		return ancestorIndex;
+	}
+
 	/**
 	 * Temporary workaround for performance issue.
 	 * 
@@ -417,14 +445,7 @@ public class RenderContext {
 	 * @return
 	 */
 	public Member getParentMember(Member member) {
-		Member parent = cachedParents.get(member.getUniqueName());
-
-		if (parent == null) {
-			parent = member.getParentMember();
-			cachedParents.put(member.getUniqueName(), parent);
-		}
-
-		return parent;
+		return ancestorIndex.getParentMember(member);
 	}
 
 	/**
@@ -435,14 +456,16 @@ public class RenderContext {
 	 * @return
 	 */
 	public List<Member> getAncestorMembers(Member member) {
-		List<Member> ancestors = new ArrayList<Member>();
-
-		Member parent = member;
-
-		while ((parent = parent.getParentMember()) != null) {
-			ancestors.add(parent);
-		}
+		return ancestorIndex.getAncestorMembers(member);
+	}
 
-		return ancestors;
+	/**
+	 * @param ancestor
+	 * @param member
+	 * @return true if the first member is one of the ancestors of the second
+	 *         member
+	 */
+	public boolean isAncestor(Member ancestor, Member member) {
+		return ancestorIndex.isAncestor(ancestor, member);
 	}
 }
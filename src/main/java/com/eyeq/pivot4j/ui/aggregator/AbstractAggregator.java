@@ -130,8 +130,7 @@ public abstract class AbstractAggregator implements Aggregator {
 
 			if (!OlapUtils.equals(member, positionMember)
 					&& (member.getDepth() >= positionMember.getDepth() || !context
-							.getAncestorMembers(positionMember)
-							.contains(member))) {
+							.isAncestor(member, positionMember))) {
 				return;
 			}
 
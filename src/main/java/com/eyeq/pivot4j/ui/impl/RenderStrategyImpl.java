@@ -32,6 +32,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.cache.AncestorIndex;
+import com.eyeq.pivot4j.cache.MetadataCache;
+import com.eyeq.pivot4j.metrics.MetricsCollector;
+import com.eyeq.pivot4j.metrics.Phase;
 import com.eyeq.pivot4j.ui.CellType;
 import com.eyeq.pivot4j.ui.PivotLayoutCallback;
 import com.eyeq.pivot4j.ui.PivotRenderer;
@@ -71,6 +75,8 @@ public class RenderStrategyImpl implements RenderStrategy {
 			return;
 		}
 
+		long start = System.nanoTime();
+
 		TableHeaderNode columnRoot = createAxisTree(model, renderer,
 				Axis.COLUMNS);
 		if (columnRoot == null) {
@@ -82,21 +88,48 @@ public class RenderStrategyImpl implements RenderStrategy {
 			return;
 		}
 
+		start = recordTime(model, Phase.CREATE_AXIS_TREE, start);
+
 		configureAxisTree(model, renderer, Axis.COLUMNS, columnRoot);
 		configureAxisTree(model, renderer, Axis.ROWS, rowRoot);
 
 		invalidateAxisTree(model, Axis.COLUMNS, columnRoot);
 		invalidateAxisTree(model, Axis.ROWS, rowRoot);
 
+		start = recordTime(model, Phase.CONFIGURE_AXIS_TREE, start);
+
 		RenderContext context = createRenderContext(model, renderer,
 				columnRoot, rowRoot);
 
 		callback.startTable(context);
 
 		renderHeader(context, columnRoot, rowRoot, callback);
+
+		start = recordTime(model, Phase.RENDER_HEADER, start);
+
 		renderBody(context, columnRoot, rowRoot, callback);
 
 		callback.endTable(context);
+
+		recordTime(model, Phase.RENDER_BODY, start);
+	}
+
+	/**
+	 * @param model
+	 * @param phase
+	 * @param start
+	 *            start time of the phase in nanoseconds
+	 * @return end time of the phase
+	 */
+	protected long recordTime(PivotModel model, Phase phase, long start) {
+		long now = System.nanoTime();
+
+		MetricsCollector collector = model.getMetricsCollector();
+		if (collector != null) {
+			collector.recordTime(model, phase, now - start);
+		}
+
+		return now;
 	}
 
 	/**
@@ -115,13 +148,25 @@ public class RenderStrategyImpl implements RenderStrategy {
 		int columnCount = columnRoot.getWidth();
 		int rowCount = rowRoot.getWidth();
 
-		Map<String, Member> cachedParents = new HashMap<String, Member>();
+		return new RenderContext(model, renderer, columnCount, rowCount,
+				columnHeaderCount, rowHeaderCount, getAncestorIndex(model));
+	}
 
-		cachedParents.putAll(columnRoot.getReference().getParentMembersCache());
-		cachedParents.putAll(rowRoot.getReference().getParentMembersCache());
+	/**
+	 * Returns the ancestor index which is shared among the renders of the same
+	 * model, so the parent members need to be resolved only once. Models
+	 * which don't provide a metadata cache get a new index for each render.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	protected AncestorIndex getAncestorIndex(PivotModel model) {
+		MetadataCache cache = model.getMetadataCache();
+		if (cache == null) {
+			return new AncestorIndex();
+		}
 
-		return new RenderContext(model, renderer, columnCount, rowCount,
-				columnHeaderCount, rowHeaderCount, cachedParents);
+		return cache.getAncestorIndex(model.getCube());
 	}
 
 	/**
@@ -613,7 +658,7 @@ public class RenderStrategyImpl implements RenderStrategy {
 		}
 
 		TableAxisContext nodeContext = new TableAxisContext(axis, hierarchies,
-				levelsMap, aggregators, renderer);
+				levelsMap, aggregators, renderer, getAncestorIndex(model));
 
 		TableHeaderNode axisRoot = new TableHeaderNode(nodeContext);
 
@@ -718,9 +763,8 @@ public class RenderStrategyImpl implements RenderStrategy {
 
 					if (parentMember != null) {
 						if (lastSibling == null
-								|| axisRoot.getReference()
-										.getAncestorMembers(parentMember)
-										.contains(lastSibling.getParent())) {
+								|| axisRoot.getReference().isAncestor(
+										lastSibling.getParent(), parentMember)) {
 							memberParents.add(new AggregationTarget(
 									parentMember, member.getLevel()));
 						} else if (!OlapUtils.equals(parentMember,
@@ -8,7 +8,6 @@
  */
 package com.eyeq.pivot4j.ui.impl;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -21,6 +20,7 @@ import org.olap4j.metadata.Level;
 import org.olap4j.metadata.Member;
 import org.olap4j.metadata.Property;
 
+import com.eyeq.pivot4j.cache.AncestorIndex;
 import com.eyeq.pivot4j.ui.PivotRenderer;
 import com.eyeq.pivot4j.ui.aggregator.Aggregator;
 
@@ -38,7 +38,7 @@ public class TableAxisContext implements Cloneable {
 
 	private Map<Level, List<Property>> propertyMap;
 
-	private Map<String, Member> cachedParents = new HashMap<String, Member>();
+	private AncestorIndex ancestorIndex;
 
 	/**
 	 * @param axis
@@ -50,6 +50,20 @@ public class TableAxisContext implements Cloneable {
 	public TableAxisContext(Axis axis, List<Hierarchy> hierarchies,
 			Map<Hierarchy, List<Level>> levels, List<Aggregator> aggregators,
 			PivotRenderer renderer) {
+		this(axis, hierarchies, levels, aggregators, renderer, null);
+	}
+
+	/**
+	 * @param axis
+	 * @param hierarchies
+	 * @param levels
+	 * @param aggregators
+	 * @param renderer
+	 * @param ancestorIndex
+	 */
+	public TableAxisContext(Axis axis, List<Hierarchy> hierarchies,
+			Map<Hierarchy, List<Level>> levels, List<Aggregator> aggregators,
+			PivotRenderer renderer, AncestorIndex ancestorIndex) {
 		if (axis == null) {
 			throw new NullArgumentException("axis");
 		}
@@ -76,6 +90,12 @@ public class TableAxisContext implements Cloneable {
 		}
 
 		this.aggregators = aggregators;
+
+		if (ancestorIndex == null) {
+			this.ancestorIndex = new AncestorIndex();
+		} else {
+			this.ancestorIndex = ancestorIndex;
+		}
 	}
 
 	/**
@@ -136,6 +156,13 @@ public class TableAxisContext implements Cloneable {
 		return Collections.unmodifiableList(properties);
 	}
 
+	/**
+	 * @return the ancestorIndex
+	 */
+	public AncestorIndex getAncestorIndex() {
+		return ancestorIndex;
+	}
+
 	/**
 	 * Temporary workaround for performance issue.
 	 * 
@@ -144,14 +171,7 @@ public class TableAxisContext implements Cloneable {
 	 * @return
 	 */
 	public Member getParentMember(Member member) {
-		Member parent = cachedParents.get(member.getUniqueName());
-
-		if (parent == null) {
-			parent = member.getParentMember();
-			cachedParents.put(member.getUniqueName(), parent);
-		}
-
-		return parent;
+		return ancestorIndex.getParentMember(member);
 	}
 
 	/**
@@ -162,18 +182,16 @@ public class TableAxisContext implements Cloneable {
 	 * @return
 	 */
 	public List<Member> getAncestorMembers(Member member) {
-		List<Member> ancestors = new ArrayList<Member>();
-
-		Member parent = member;
-
-		while ((parent = parent.getParentMember()) != null) {
-			ancestors.add(parent);
-		}
-
-		return ancestors;
+		return ancestorIndex.getAncestorMembers(member);
 	}
 
-	Map<String, Member> getParentMembersCache() {
-		return cachedParents;
+	/**
+	 * @param ancestor
+	 * @param member
+	 * @return true if the first member is one of the ancestors of the second
+	 *         member
+	 */
+	public boolean isAncestor(Member ancestor, Member member) {
+		return ancestorIndex.isAncestor(ancestor, member);
 	}
 }
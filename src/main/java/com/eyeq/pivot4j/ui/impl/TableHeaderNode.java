@@ -685,8 +685,7 @@ public class TableHeaderNode extends TreeNode<TableAxisContext> {
 						if (childMember != null) {
 							int childDepth = childMember.getDepth();
 
-							if (getReference().getAncestorMembers(childMember)
-									.contains(member)) {
+							if (getReference().isAncestor(member, childMember)) {
 								childCount[0]++;
 
 								return TreeNodeCallback.CONTINUE_SIBLING;
@@ -695,8 +694,8 @@ public class TableHeaderNode extends TreeNode<TableAxisContext> {
 									return TreeNodeCallback.CONTINUE_SIBLING;
 								}
 							} else if (depth < childDepth
-									|| !getReference().getAncestorMembers(
-											member).contains(childMember)) {
+									|| !getReference().isAncestor(
+											childMember, member)) {
 								return TreeNodeCallback.CONTINUE_SIBLING;
 							}
 						}
@@ -717,9 +716,9 @@ public class TableHeaderNode extends TreeNode<TableAxisContext> {
 									&& parentMember != null) {
 								if (OlapUtils.equals(parentMember,
 										nodeChild.getMember())
-										|| getReference().getAncestorMembers(
-												parentMember).contains(
-												nodeChild.getMember())) {
+										|| getReference().isAncestor(
+												nodeChild.getMember(),
+												parentMember)) {
 									return TreeNodeCallback.CONTINUE;
 								} else {
 									return TreeNodeCallback.CONTINUE_SIBLING;
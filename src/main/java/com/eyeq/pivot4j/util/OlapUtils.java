@@ -17,20 +17,34 @@ import org.olap4j.metadata.Member;
 import org.olap4j.metadata.MetadataElement;
 
 import com.eyeq.pivot4j.PivotException;
+import com.eyeq.pivot4j.cache.MemberLookupCache;
 
 public class OlapUtils {
 
 	private Cube cube;
 
+	private MemberLookupCache memberCache;
+
 	/**
 	 * @param cube
 	 */
 	public OlapUtils(Cube cube) {
+		this(cube, null);
+	}
+
+	/**
+	 * @param cube
+	 * @param memberCache
+	 *            cache to be used to look up members, or null to look them
+	 *            up from the cube directly
+	 */
+	public OlapUtils(Cube cube, MemberLookupCache memberCache) {
 		if (cube == null) {
 			throw new NullArgumentException("cube");
 		}
 
 		this.cube = cube;
+		this.memberCache = memberCache;
 	}
 
 	/**
@@ -45,6 +59,10 @@ public class OlapUtils {
 	 * @return
 	 */
 	public Member lookupMember(String identifier) {
+		if (memberCache != null) {
+			return memberCache.lookupMember(identifier);
+		}
+
 		return lookupMember(cube, identifier);
 	}
 
@@ -26,6 +26,8 @@ public class TreeNode<T> {
 
 	private T reference;
 
+	private int modificationCount = 0;
+
 	public TreeNode() {
 	}
 
@@ -54,11 +56,13 @@ public class TreeNode<T> {
 	public void removeChild(TreeNode<T> child) {
 		if (children.contains(child)) {
 			children.remove(child);
+			nodeChanged();
 		}
 	}
 
 	public void clear() {
 		children.clear();
+		nodeChanged();
 	}
 
 	/**
@@ -71,6 +75,7 @@ public class TreeNode<T> {
 		if (!children.contains(child)) {
 			child.parent = this;
 			children.add(child);
+			nodeChanged();
 		}
 	}
 
@@ -85,6 +90,7 @@ public class TreeNode<T> {
 		if (!children.contains(child)) {
 			child.parent = this;
 			children.add(index, child);
+			nodeChanged();
 		}
 	}
 
@@ -253,6 +259,27 @@ public class TreeNode<T> {
 	 */
 	public void setReference(T object) {
 		reference = object;
+		nodeChanged();
+	}
+
+	/**
+	 * Returns the number of modifications made to the tree which this node
+	 * belongs to, so that the data derived from the tree can tell when it
+	 * should be discarded.
+	 * 
+	 * @return modification count of the whole tree
+	 */
+	public int getModificationCount() {
+		return getRoot().modificationCount;
+	}
+
+	protected void nodeChanged() {
+		TreeNode<T> root = this;
+		while (root.parent != null) {
+			root = root.parent;
+		}
+
+		root.modificationCount++;
 	}
 
 	/**
@@ -0,0 +1,93 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.batch;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.impl.PivotModelImpl;
+
+public class BatchQueryExecutorIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales], [Measures].[Store Cost], [Measures].[Store Sales]} ON COLUMNS, "
+			+ "{([Promotion Media].[All Media], [Product].[All Products])} ON ROWS FROM [Sales] WHERE [Time].[1997]";
+
+	private String invalidQuery = "SELECT {[Measures].[No Such Measure]} ON COLUMNS FROM [Sales]";
+
+	@Test
+	public void testExecute() {
+		List<PivotModel> models = new ArrayList<PivotModel>();
+
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		models.add(model);
+
+		PivotModel otherModel = new PivotModelImpl(getDataSource());
+		otherModel.setMdx(testQuery);
+		otherModel.initialize();
+
+		models.add(otherModel);
+
+		BatchQueryExecutor executor = new BatchQueryExecutor(2);
+		executor.setConcurrencyLimit(getDataSource(), 1);
+
+		try {
+			BatchResult result = executor.execute(models, 1, TimeUnit.MINUTES);
+
+			assertThat("Batch execution did not complete.",
+					result.isComplete(), is(true));
+			assertThat("Invalid result count.", result.getResults().size(),
+					is(equalTo(2)));
+			assertThat("Missing result.", result.getCellSet(model),
+					is(notNullValue()));
+			assertThat("Missing result.", result.getCellSet(otherModel),
+					is(notNullValue()));
+		} finally {
+			executor.shutdown();
+			otherModel.destroy();
+		}
+	}
+
+	@Test
+	public void testExecuteWithError() {
+		List<PivotModel> models = new ArrayList<PivotModel>();
+
+		PivotModel model = getPivotModel();
+		model.setMdx(invalidQuery);
+		model.initialize();
+
+		models.add(model);
+
+		BatchQueryExecutor executor = new BatchQueryExecutor();
+
+		try {
+			BatchResult result = executor.execute(models, 0, TimeUnit.SECONDS);
+
+			assertThat("Batch execution should not complete.",
+					result.isComplete(), is(false));
+			assertThat("Missing error.", result.getError(model),
+					is(instanceOf(Exception.class)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.util.OlapUtils;
+
+public class AncestorIndexIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	@Test
+	public void testAncestors() {
+		Cube cube = getCube();
+
+		Member member = OlapUtils.lookupMember(cube,
+				"[Product].[Drink].[Alcoholic Beverages].[Beer and Wine]");
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		AncestorIndex index = new AncestorIndex();
+
+		List<Member> expected = new ArrayList<Member>();
+
+		Member parent = member;
+		while ((parent = parent.getParentMember()) != null) {
+			expected.add(parent);
+		}
+
+		assertThat("Invalid depth.", index.getDepth(member),
+				is(equalTo(expected.size())));
+		assertThat("Invalid ancestor members.",
+				index.getAncestorMembers(member), is(equalTo(expected)));
+		assertThat("Invalid parent member.", index.getParentMember(member),
+				is(equalTo(member.getParentMember())));
+		assertThat("Whole chain should have been registered.", index.size(),
+				is(equalTo(expected.size() + 1)));
+
+		assertThat("Invalid root member.", index.getAncestorAt(member, 0)
+				.getUniqueName(), is(equalTo("[Product].[All Products]")));
+		assertThat("Member itself is not its ancestor.",
+				index.getAncestorAt(member, expected.size()), is(nullValue()));
+		assertThat("Root member has no parent.",
+				index.getParentMember(expected.get(expected.size() - 1)),
+				is(nullValue()));
+
+		for (Member ancestor : expected) {
+			assertThat("Ancestor was not detected.",
+					index.isAncestor(ancestor, member), is(true));
+			assertThat("Descendant was detected as an ancestor.",
+					index.isAncestor(member, ancestor), is(false));
+		}
+
+		assertThat("Member itself is not its ancestor.",
+				index.isAncestor(member, member), is(false));
+		assertThat("Sibling branch was detected as an ancestor.",
+				index.isAncestor(food, member), is(false));
+
+		assertThat("Invalid id of a registered member.",
+				index.getMember(index.getId(member)), is(equalTo(member)));
+		assertThat("Invalid id should return null.", index.getMember(-1),
+				is(nullValue()));
+	}
+
+	@Test
+	public void testClearWhenFull() {
+		Cube cube = getCube();
+
+		Member member = OlapUtils.lookupMember(cube,
+				"[Product].[Drink].[Alcoholic Beverages].[Beer and Wine]");
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		AncestorIndex index = new AncestorIndex(4);
+
+		index.getDepth(member);
+
+		assertThat("Invalid index size.", index.size(), is(equalTo(4)));
+		assertThat("Index should not have been cleared yet.",
+				index.getClearCount(), is(equalTo(0L)));
+
+		assertThat("Invalid parent after the index is cleared.",
+				index.getParentMember(food).getUniqueName(),
+				is(equalTo("[Product].[All Products]")));
+
+		assertThat("Index should have been cleared.", index.getClearCount(),
+				is(equalTo(1L)));
+		assertThat("Only the new chain should be registered.", index.size(),
+				is(equalTo(2)));
+
+		assertThat("Invalid depth after the index is cleared.",
+				index.getDepth(member), is(equalTo(3)));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		Cube cube = getCube();
+
+		final Member member = OlapUtils.lookupMember(cube,
+				"[Product].[Drink].[Alcoholic Beverages].[Beer and Wine]");
+		final int depth = member.getDepth();
+
+		final AncestorIndex index = new AncestorIndex();
+
+		final List<Integer> depths = new ArrayList<Integer>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int i = 0; i < 4; i++) {
+			threads.add(new Thread() {
+
+				@Override
+				public void run() {
+					int result = index.getDepth(member);
+
+					synchronized (depths) {
+						depths.add(result);
+					}
+				}
+			});
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat("Not all the threads have finished.", depths.size(),
+				is(equalTo(threads.size())));
+
+		for (Integer result : depths) {
+			assertThat("Invalid depth.", result, is(equalTo(depth)));
+		}
+
+		assertThat("Chain should be registered only once.", index.size(),
+				is(equalTo(depth + 1)));
+	}
+
+	/**
+	 * @return
+	 */
+	protected Cube getCube() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		return model.getCube();
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.olap4j.CellSet;
+import org.olap4j.OlapException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+
+public class MemberInfoCacheIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[Product Family].Members} ON ROWS FROM [Sales]";
+
+	@Test
+	public void testPrefetch() throws OlapException {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+
+		MemberInfoCache cache = new MemberInfoCache();
+		cache.prefetch(cellSet);
+
+		assertThat("Only the visible product families should be fetched.",
+				cache.getFetchCount(), is(equalTo((long) cellSet.getAxes()
+						.get(1).getPositionCount())));
+
+		for (Position position : cellSet.getAxes().get(1).getPositions()) {
+			Member member = position.getMembers().get(0);
+
+			assertThat("Invalid child member count.",
+					cache.getChildMemberCount(member),
+					is(equalTo(member.getChildMemberCount())));
+			assertThat("Invalid calculated flag.", cache.isCalculated(member),
+					is(equalTo(member.isCalculated())));
+		}
+
+		assertThat("All the lookups should be served from the cache.",
+				cache.getMissCount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void testPrefetchMetadataCalls() throws OlapException {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+
+		AtomicInteger memberCalls = new AtomicInteger();
+		AtomicInteger levelCalls = new AtomicInteger();
+
+		List<Member> members = new ArrayList<Member>();
+
+		for (Position position : cellSet.getAxes().get(1).getPositions()) {
+			Member member = position.getMembers().get(0);
+
+			members.add(countCalls(member, memberCalls, levelCalls));
+		}
+
+		// the same member appearing twice should be asked only once
+		members.add(members.get(0));
+
+		MemberInfoCache cache = new MemberInfoCache();
+		cache.prefetch(members);
+
+		assertThat("Child member count should be asked once for each member.",
+				memberCalls.get(), is(equalTo(members.size() - 1)));
+		assertThat("Members of the level should not be fetched.",
+				levelCalls.get(), is(equalTo(0)));
+
+		cache.prefetch(members);
+
+		for (Member member : members) {
+			cache.getChildMemberCount(member);
+		}
+
+		assertThat("Cached members should not be asked again.",
+				memberCalls.get(), is(equalTo(members.size() - 1)));
+	}
+
+	/**
+	 * @param member
+	 * @param memberCalls
+	 * @param levelCalls
+	 * @return member which counts the calls to fetch its child member count
+	 *         and the members of its level
+	 */
+	protected Member countCalls(final Member member,
+			final AtomicInteger memberCalls, final AtomicInteger levelCalls) {
+		final Object level = Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { Level.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("getMembers")) {
+							levelCalls.incrementAndGet();
+						}
+
+						return delegate(member.getLevel(), method, args);
+					}
+				});
+
+		return (Member) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Member.class }, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("getChildMemberCount")) {
+							memberCalls.incrementAndGet();
+						} else if (method.getName().equals("getLevel")) {
+							return level;
+						}
+
+						return delegate(member, method, args);
+					}
+				});
+	}
+
+	/**
+	 * @param target
+	 * @param method
+	 * @param args
+	 * @return
+	 * @throws Throwable
+	 */
+	private Object delegate(Object target, Method method, Object[] args)
+			throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.olap4j.OlapException;
+import org.olap4j.mdx.IdentifierSegment;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+
+public class MemberLookupCacheIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	@Test
+	public void testLookupMembers() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		MemberLookupCache cache = new MemberLookupCache(model.getCube(), 2);
+
+		List<Member> members = cache.lookupMembers(Arrays.asList(
+				"[Product].[Drink]", "[Product].[No Such Member]",
+				"[Product].[Food]", "[Product].[Drink]"));
+
+		assertThat("Invalid member count.", members.size(), is(equalTo(4)));
+		assertThat("Invalid member.", members.get(0).getUniqueName(),
+				is(equalTo("[Product].[Drink]")));
+		assertThat("Unknown member should be null.", members.get(1),
+				is(nullValue()));
+		assertThat("Duplicated name should be resolved to the same member.",
+				members.get(3), is(sameInstance(members.get(0))));
+
+		assertThat("Invalid miss count.", cache.getMissCount(),
+				is(equalTo(3L)));
+		assertThat("Invalid cache size.", cache.size(), is(equalTo(2)));
+
+		Member member = cache.lookupMember("[Product].[Food]");
+
+		assertThat("Cached member was not returned.", member,
+				is(sameInstance(members.get(2))));
+		assertThat("Invalid hit count.", cache.getHitCount(), is(equalTo(1L)));
+
+		cache.lookupMember("[Product].[Non-Consumable]");
+
+		assertThat("Cache size should be bounded.", cache.size(),
+				is(equalTo(2)));
+		assertThat("Invalid eviction count.", cache.getEvictionCount(),
+				is(equalTo(1L)));
+	}
+
+	@Test
+	public void testLookupMembersWithSameParent() throws OlapException {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		Cube cube = model.getCube();
+
+		List<Member> children = new ArrayList<Member>(new MemberLookupCache(
+				cube).lookupMember("[Product].[Food]").getChildMembers());
+
+		assertThat("Not enough children to test.", children.size() > 1,
+				is(true));
+
+		List<String> names = new ArrayList<String>(children.size() + 2);
+		for (Member child : children) {
+			names.add(child.getUniqueName());
+		}
+
+		names.add("[Product].[Drink].[Beverages]");
+		names.add("[Product].[Food].[No Such Member]");
+
+		final int[] lookupCount = new int[1];
+		final int[] childrenLookupCount = new int[1];
+
+		MemberLookupCache cache = new MemberLookupCache(cube) {
+
+			@Override
+			protected Member resolve(String uniqueName) {
+				lookupCount[0]++;
+				return super.resolve(uniqueName);
+			}
+
+			@Override
+			protected List<Member> resolveChildren(
+					List<IdentifierSegment> parentSegments) {
+				childrenLookupCount[0]++;
+				return super.resolveChildren(parentSegments);
+			}
+		};
+
+		List<Member> members = cache.lookupMembers(names);
+
+		assertThat("Invalid member count.", members.size(),
+				is(equalTo(names.size())));
+
+		for (int i = 0; i < children.size(); i++) {
+			assertThat("Invalid member.", members.get(i).getUniqueName(),
+					is(equalTo(children.get(i).getUniqueName())));
+		}
+
+		assertThat("Invalid member.", members.get(children.size())
+				.getUniqueName(), is(equalTo("[Product].[Drink].[Beverages]")));
+		assertThat("Unknown member should be null.",
+				members.get(names.size() - 1), is(nullValue()));
+
+		assertThat("Children of the same parent should be fetched once.",
+				childrenLookupCount[0], is(equalTo(1)));
+		assertThat("Only the members which are not among the children "
+				+ "should be looked up one by one.", lookupCount[0],
+				is(equalTo(2)));
+		assertThat("Invalid miss count.", cache.getMissCount(),
+				is(equalTo((long) names.size())));
+
+		cache.lookupMembers(names.subList(0, children.size()));
+
+		assertThat("Cached members should not be looked up again.",
+				childrenLookupCount[0], is(equalTo(1)));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.cache;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Level;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+
+public class MetadataCacheIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	@Test
+	public void testGetHierarchy() {
+		Cube cube = getCube();
+
+		MetadataCache cache = new MetadataCache();
+
+		Hierarchy hierarchy = cache.getHierarchy(cube, "Product");
+
+		assertThat("Hierarchy should not be null.", hierarchy,
+				is(notNullValue()));
+		assertThat("Invalid hierarchy.", hierarchy.getUniqueName(),
+				is(equalTo(cube.getHierarchies().get("Product")
+						.getUniqueName())));
+		assertThat("Invalid miss count.", cache.getMissCount(),
+				is(equalTo(1L)));
+
+		assertThat("Cached hierarchy was not returned.",
+				cache.getHierarchy(cube, "Product"),
+				is(sameInstance(hierarchy)));
+		assertThat("Invalid hit count.", cache.getHitCount(), is(equalTo(1L)));
+
+		assertThat("Unknown hierarchy should be null.",
+				cache.getHierarchy(cube, "No Such Hierarchy"), is(nullValue()));
+
+		cache.invalidate();
+
+		cache.resetStatistics();
+		cache.getHierarchy(cube, "Product");
+
+		assertThat("Hierarchy should be resolved again after invalidation.",
+				cache.getMissCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void testGetLevel() {
+		Cube cube = getCube();
+
+		MetadataCache cache = new MetadataCache();
+
+		Level level = cache.getLevel(cube, "Product", "Product Family");
+
+		assertThat("Level should not be null.", level, is(notNullValue()));
+		assertThat("Invalid level.", level.getUniqueName(),
+				is(equalTo("[Product].[Product Family]")));
+
+		cache.resetStatistics();
+
+		assertThat("Cached level was not returned.",
+				cache.getLevel(cube, "Product", "Product Family"),
+				is(sameInstance(level)));
+		assertThat("Invalid hit count.", cache.getHitCount(), is(equalTo(1L)));
+		assertThat("Invalid miss count.", cache.getMissCount(),
+				is(equalTo(0L)));
+
+		assertThat("Unknown level should be null.",
+				cache.getLevel(cube, "Product", "No Such Level"),
+				is(nullValue()));
+		assertThat("Level of an unknown hierarchy should be null.",
+				cache.getLevel(cube, "No Such Hierarchy", "Product Family"),
+				is(nullValue()));
+	}
+
+	/**
+	 * @return
+	 */
+	protected Cube getCube() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		return model.getCube();
+	}
+}
@@ -12,7 +12,9 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.olap4j.Axis;
@@ -24,6 +26,8 @@ import org.olap4j.metadata.Member;
 
 import com.eyeq.pivot4j.AbstractIntegrationTestCase;
 import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.el.simple.SimpleExpressionEvaluator;
+import com.eyeq.pivot4j.impl.PivotModelImpl;
 import com.eyeq.pivot4j.transform.ChangeSlicer;
 import com.eyeq.pivot4j.transform.DrillExpandMember;
 import com.eyeq.pivot4j.transform.PlaceHierarchiesOnAxes;
@@ -184,4 +188,73 @@ public class ExpressionEvaluatorIT extends AbstractIntegrationTestCase {
 		assertThat("Wrong cell value returned(ratio = 2.5).", cellSet
 				.getCell(0).getFormattedValue(), equalTo("564,068.08"));
 	}
+
+	@Test
+	public void testIncrementalEvaluation() throws OlapException {
+		String query = "WITH MEMBER [Measures].[Calc Cost] AS '[Measures].[Store Cost] * ${s:ratio}' "
+				+ "SELECT {[Measures].[Calc Cost], [Measures].[Store Sales]} ON COLUMNS, "
+				+ "{([Promotion Media].[All Media], [Product].[All Products])} ON ROWS "
+				+ "FROM [Sales] WHERE $[s:year]";
+
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+		ExpressionEvaluatorFactoryImpl factory = new ExpressionEvaluatorFactoryImpl();
+		factory.registerEvaluator(SimpleExpressionEvaluator.NAMESPACE,
+				new SimpleExpressionEvaluator() {
+
+					@Override
+					protected Object doEvaluate(String expression,
+							Map<String, Object> context) throws Exception {
+						Integer count = counts.get(expression);
+						counts.put(expression, count == null ? 1 : count + 1);
+
+						return super.doEvaluate(expression, context);
+					}
+				});
+
+		PivotModelImpl model = (PivotModelImpl) getPivotModel();
+		model.setExpressionEvaluatorFactory(factory);
+		model.setIncrementalEvaluation(true);
+
+		model.setMdx(query);
+		model.initialize();
+
+		model.getExpressionContext().put("ratio", "1.5");
+		model.getExpressionContext().put("year", "[Time].[1997]");
+
+		CellSet cellSet = model.getCellSet();
+
+		assertThat("Wrong cell value returned(ratio = 1.5).", cellSet
+				.getCell(0).getFormattedValue(), equalTo("338,440.85"));
+
+		model.getExpressionContext().put("ratio", "2.5");
+		model.refresh();
+
+		cellSet = model.getCellSet();
+
+		assertThat("Wrong cell value returned(ratio = 2.5).", cellSet
+				.getCell(0).getFormattedValue(), equalTo("564,068.08"));
+
+		Member member = OlapUtils.lookupMember(model.getCube(),
+				"[Product].[All Products]");
+
+		DrillExpandMember drillTransform = model
+				.getTransform(DrillExpandMember.class);
+		drillTransform.expand(member);
+
+		model.getCellSet();
+
+		assertThat("Unchanged parameter should not be evaluated again.",
+				counts.get("year"), is(equalTo(1)));
+		assertThat("Changed parameter should be evaluated again.",
+				counts.get("ratio"), is(equalTo(2)));
+
+		model.setIncrementalEvaluation(false);
+		model.refresh();
+
+		model.getCellSet();
+
+		assertThat("All parameters should be evaluated when disabled.",
+				counts.get("year"), is(equalTo(2)));
+	}
 }
@@ -0,0 +1,103 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.el.freemarker;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FreeMarkerExpressionEvaluatorTest {
+
+	@Test
+	public void testEvaluateWithCache() {
+		FreeMarkerExpressionEvaluator evaluator = new FreeMarkerExpressionEvaluator();
+
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("year", 1997);
+
+		assertThat("Unexpected evaluation result.",
+				evaluator.evaluate("[Time].[${year?c}]", context),
+				is(equalTo((Object) "[Time].[1997]")));
+
+		context.put("year", 1998);
+
+		assertThat("Unexpected evaluation result.",
+				evaluator.evaluate("[Time].[${year?c}]", context),
+				is(equalTo((Object) "[Time].[1998]")));
+
+		assertThat("Unexpected miss count.", evaluator.getMissCount(),
+				is(equalTo(1L)));
+		assertThat("Unexpected hit count.", evaluator.getHitCount(),
+				is(equalTo(1L)));
+
+		context.put("locale", Locale.GERMAN);
+		context.put("ratio", 1.5);
+
+		assertThat("Template should be evaluated with the given locale.",
+				evaluator.evaluate("${ratio}", context),
+				is(equalTo((Object) "1,5")));
+
+		context.put("locale", Locale.ENGLISH);
+
+		assertThat("Template should be evaluated with the given locale.",
+				evaluator.evaluate("${ratio}", context),
+				is(equalTo((Object) "1.5")));
+
+		assertThat("Unexpected number of cached templates.", evaluator.size(),
+				is(equalTo(3)));
+	}
+
+	@Test
+	public void testCacheKeyWithLocale() {
+		FreeMarkerExpressionEvaluator evaluator = new FreeMarkerExpressionEvaluator();
+
+		Map<String, Object> context = new HashMap<String, Object>();
+
+		assertThat("Unexpected evaluation result.",
+				evaluator.evaluate("en:abc", context),
+				is(equalTo((Object) "en:abc")));
+
+		context.put("locale", Locale.ENGLISH);
+
+		assertThat("Template of another expression should not be used.",
+				evaluator.evaluate("abc", context),
+				is(equalTo((Object) "abc")));
+		assertThat("Unexpected miss count.", evaluator.getMissCount(),
+				is(equalTo(2L)));
+	}
+
+	@Test
+	public void testEviction() {
+		FreeMarkerExpressionEvaluator evaluator = new FreeMarkerExpressionEvaluator(
+				2);
+
+		Map<String, Object> context = new HashMap<String, Object>();
+
+		evaluator.evaluate("a", context);
+		evaluator.evaluate("b", context);
+		evaluator.evaluate("a", context);
+		evaluator.evaluate("c", context);
+
+		assertThat("Unexpected number of cached templates.", evaluator.size(),
+				is(equalTo(2)));
+		assertThat("Unexpected eviction count.", evaluator.getEvictionCount(),
+				is(equalTo(1L)));
+
+		evaluator.evaluate("a", context);
+
+		assertThat("Recently used template should not be evicted.",
+				evaluator.getHitCount(), is(equalTo(2L)));
+	}
+}
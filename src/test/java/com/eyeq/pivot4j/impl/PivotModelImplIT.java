@@ -9,26 +9,66 @@
 package com.eyeq.pivot4j.impl;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.pool.impl.GenericObjectPool;
 import org.junit.Test;
+import org.olap4j.Cell;
 import org.olap4j.CellSet;
 import org.olap4j.CellSetAxis;
+import org.olap4j.OlapException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
 
 import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.ModelChangeEvent;
+import com.eyeq.pivot4j.ModelChangeListener;
 import com.eyeq.pivot4j.NotInitializedException;
 import com.eyeq.pivot4j.PivotException;
 import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.QueryEvent;
+import com.eyeq.pivot4j.QueryCancelledException;
+import com.eyeq.pivot4j.QueryListenerAdapter;
+import com.eyeq.pivot4j.QueryTimeoutException;
+import com.eyeq.pivot4j.cache.MemberInfoCache;
+import com.eyeq.pivot4j.cache.MetadataCache;
+import com.eyeq.pivot4j.cache.QueryCoalescer;
+import com.eyeq.pivot4j.cache.impl.CellSetCacheImpl;
+import com.eyeq.pivot4j.datasource.PooledOlapDataSource;
+import com.eyeq.pivot4j.mdx.MdxCanonicalizer;
+import com.eyeq.pivot4j.mdx.MdxFingerprint;
+import com.eyeq.pivot4j.mdx.MdxStatement;
+import com.eyeq.pivot4j.mdx.impl.MdxParserImpl;
+import com.eyeq.pivot4j.metrics.impl.MetricsCollectorImpl;
+import com.eyeq.pivot4j.snapshot.CellSetSnapshot;
+import com.eyeq.pivot4j.transform.DrillExpandMember;
+import com.eyeq.pivot4j.transform.NonEmpty;
 
 public class PivotModelImplIT extends AbstractIntegrationTestCase {
 
 	private String testQuery = "SELECT {[Measures].[Unit Sales], [Measures].[Store Cost], [Measures].[Store Sales]} ON COLUMNS, "
 			+ "{([Promotion Media].[All Media], [Product].[All Products])} ON ROWS FROM [Sales] WHERE [Time].[1997]";
 
+	private String longRunningQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+			+ "CrossJoin([Customers].[Name].Members, [Product].[Product Name].Members) ON ROWS FROM [Sales]";
+
 	/**
 	 * @return the testQuery
 	 */
@@ -36,6 +76,13 @@ public class PivotModelImplIT extends AbstractIntegrationTestCase {
 		return testQuery;
 	}
 
+	/**
+	 * @return query which takes long enough to be cancelled
+	 */
+	protected String getLongRunningQuery() {
+		return longRunningQuery;
+	}
+
 	@Test
 	public void testInitialize() {
 		PivotModel model = getPivotModel();
@@ -84,6 +131,971 @@ public class PivotModelImplIT extends AbstractIntegrationTestCase {
 		assertThat("Invalid cell axes size.", axes.size(), is(equalTo(2)));
 	}
 
+	@Test
+	public void testGetCellSetAsync() throws Exception {
+		PivotModel model = getPivotModel();
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<CellSet> future = model.getCellSetAsync(executor);
+
+			CellSet cellSet = future.get();
+
+			assertThat("CellSet is null.", cellSet, is(notNullValue()));
+			assertThat("Result is not kept in the model.", model.getCellSet(),
+					is(sameInstance(cellSet)));
+			assertThat("No running query should be cancelled.",
+					model.cancelQuery(), is(false));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelQuery() throws Exception {
+		PivotModel model = getPivotModel();
+		model.setMdx(getLongRunningQuery());
+		model.initialize();
+
+		final int[] cancellations = new int[1];
+		final int[] timeouts = new int[1];
+
+		model.addQueryListener(new QueryListenerAdapter() {
+
+			@Override
+			public void queryCancelled(QueryEvent e) {
+				cancellations[0]++;
+			}
+
+			@Override
+			public void queryTimedOut(QueryEvent e) {
+				timeouts[0]++;
+			}
+		});
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<CellSet> future = model.getCellSetAsync(executor);
+
+			long deadline = System.currentTimeMillis() + 30000;
+
+			// wait until the statement is actually running
+			while (!model.cancelQuery()) {
+				assertThat("Query has not been started in time.",
+						System.currentTimeMillis() < deadline, is(true));
+
+				Thread.sleep(50);
+			}
+
+			Throwable error = null;
+
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				error = e.getCause();
+			}
+
+			assertThat("Query should be cancelled.", error,
+					is(instanceOf(QueryCancelledException.class)));
+			assertThat("Cancelled query should not be reported as timed out.",
+					error, is(not(instanceOf(QueryTimeoutException.class))));
+			assertThat("Invalid cancellation count.", cancellations[0],
+					is(equalTo(1)));
+			assertThat("Invalid timeout count.", timeouts[0], is(equalTo(0)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueryTimeout() {
+		PivotModel model = getPivotModel();
+		model.setMdx(getLongRunningQuery());
+		model.setQueryTimeout(1);
+		model.initialize();
+
+		final int[] cancellations = new int[1];
+		final int[] timeouts = new int[1];
+
+		model.addQueryListener(new QueryListenerAdapter() {
+
+			@Override
+			public void queryCancelled(QueryEvent e) {
+				cancellations[0]++;
+			}
+
+			@Override
+			public void queryTimedOut(QueryEvent e) {
+				timeouts[0]++;
+			}
+		});
+
+		Throwable error = null;
+
+		try {
+			model.getCellSet();
+		} catch (QueryCancelledException e) {
+			error = e;
+		}
+
+		assertThat("Query should exceed the timeout.", error,
+				is(instanceOf(QueryTimeoutException.class)));
+		assertThat("Invalid timeout count.", timeouts[0], is(equalTo(1)));
+		assertThat("Invalid cancellation count.", cancellations[0],
+				is(equalTo(0)));
+		assertThat("No running query should be cancelled.",
+				model.cancelQuery(), is(false));
+	}
+
+	@Test
+	public void testGetCellSetWithSharedCache() {
+		CellSetCacheImpl cache = new CellSetCacheImpl();
+
+		PivotModelImpl model = (PivotModelImpl) getPivotModel();
+		model.setCellSetCache(cache);
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+
+		assertThat("Invalid cache miss count.", cache.getMissCount(),
+				is(equalTo(1L)));
+
+		PivotModelImpl otherModel = new PivotModelImpl(getDataSource());
+		otherModel.setCellSetCache(cache);
+		otherModel.setMdx(getTestQuery());
+		otherModel.initialize();
+
+		try {
+			assertThat("Cached result is not a snapshot.", cellSet,
+					is(instanceOf(CellSetSnapshot.class)));
+			assertThat("Cached result was not shared.", otherModel.getCellSet(),
+					is(sameInstance(cellSet)));
+			assertThat("Invalid cache hit count.", cache.getHitCount(),
+					is(equalTo(1L)));
+
+			model.destroy();
+
+			CellSet sharedCellSet = otherModel.getCellSet();
+
+			assertThat("Shared result is not readable after the model which "
+					+ "executed it was destroyed.", sharedCellSet.getCell(0)
+					.getFormattedValue(), is(notNullValue()));
+		} finally {
+			otherModel.destroy();
+		}
+	}
+
+	@Test
+	public void testGetCellSetWithQueryCoalescer() throws Exception {
+		final QueryCoalescer coalescer = new QueryCoalescer();
+
+		// holds the shared execution until the other model joins it
+		final PivotModelImpl leader = new PivotModelImpl(getDataSource()) {
+
+			@Override
+			protected CellSet executeQuery(String mdx) throws OlapException {
+				long deadline = System.currentTimeMillis() + 10000;
+
+				while (coalescer.getCoalescedCount() == 0
+						&& System.currentTimeMillis() < deadline) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+
+				return super.executeQuery(mdx);
+			}
+		};
+
+		leader.setQueryCoalescer(coalescer);
+		leader.setMdx(getTestQuery());
+		leader.initialize();
+
+		final PivotModelImpl follower = new PivotModelImpl(getDataSource());
+		follower.setQueryCoalescer(coalescer);
+		follower.setMdx(getTestQuery());
+		follower.initialize();
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			Future<CellSet> leaderResult = leader.getCellSetAsync(executor);
+
+			long deadline = System.currentTimeMillis() + 10000;
+
+			while (coalescer.getInFlightCount() == 0) {
+				assertThat("Query has not been started in time.",
+						System.currentTimeMillis() < deadline, is(true));
+
+				Thread.sleep(10);
+			}
+
+			Future<CellSet> followerResult = follower
+					.getCellSetAsync(executor);
+
+			CellSet cellSet = leaderResult.get();
+			CellSet sharedCellSet = followerResult.get();
+
+			assertThat("Query should be executed only once.",
+					coalescer.getExecutionCount(), is(equalTo(1L)));
+			assertThat("Invalid coalesced count.",
+					coalescer.getCoalescedCount(), is(equalTo(1L)));
+			assertThat("Shared result is not a snapshot.", sharedCellSet,
+					is(instanceOf(CellSetSnapshot.class)));
+			assertThat("Result was not shared.", sharedCellSet,
+					is(sameInstance(cellSet)));
+
+			leader.destroy();
+
+			List<Position> positions = sharedCellSet.getAxes().get(1)
+					.getPositions();
+
+			assertThat("Shared result is not readable after the model which "
+					+ "executed it was destroyed.", positions.get(0)
+					.getMembers().get(0), is(notNullValue()));
+			assertThat("Shared result is not readable after the model which "
+					+ "executed it was destroyed.", sharedCellSet.getCell(0)
+					.getFormattedValue(), is(notNullValue()));
+		} finally {
+			executor.shutdown();
+
+			if (leader.isInitialized()) {
+				leader.destroy();
+			}
+
+			follower.destroy();
+		}
+	}
+
+	@Test
+	public void testGetCellSetWithCoalescedTimeoutAndCancel() throws Exception {
+		final QueryCoalescer coalescer = new QueryCoalescer();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		// holds the shared execution until the followers are done with it
+		final PivotModelImpl leader = new PivotModelImpl(getDataSource()) {
+
+			@Override
+			protected CellSet executeQuery(String mdx) throws OlapException {
+				try {
+					release.await(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				return super.executeQuery(mdx);
+			}
+		};
+
+		leader.setQueryCoalescer(coalescer);
+		leader.setMdx(getTestQuery());
+		leader.initialize();
+
+		MetricsCollectorImpl collector = new MetricsCollectorImpl();
+
+		List<PivotModelImpl> followers = new ArrayList<PivotModelImpl>();
+
+		for (int i = 0; i < 3; i++) {
+			PivotModelImpl follower = new PivotModelImpl(getDataSource());
+			follower.setQueryCoalescer(coalescer);
+			follower.setMetricsCollector(collector);
+			follower.setMdx(getTestQuery());
+			follower.initialize();
+
+			followers.add(follower);
+		}
+
+		final int[] timeouts = new int[1];
+
+		PivotModelImpl timedOut = followers.get(0);
+		timedOut.setQueryTimeout(1);
+		timedOut.addQueryListener(new QueryListenerAdapter() {
+
+			@Override
+			public void queryTimedOut(QueryEvent e) {
+				timeouts[0]++;
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+
+		try {
+			Future<CellSet> leaderResult = leader.getCellSetAsync(executor);
+
+			long deadline = System.currentTimeMillis() + 10000;
+
+			while (coalescer.getInFlightCount() == 0) {
+				assertThat("Query has not been started in time.",
+						System.currentTimeMillis() < deadline, is(true));
+
+				Thread.sleep(10);
+			}
+
+			Throwable error = null;
+
+			try {
+				timedOut.getCellSet();
+			} catch (QueryCancelledException e) {
+				error = e;
+			}
+
+			assertThat("Follower should honor its own timeout.", error,
+					is(instanceOf(QueryTimeoutException.class)));
+			assertThat("Invalid timeout count.", timeouts[0], is(equalTo(1)));
+
+			PivotModelImpl cancelled = followers.get(1);
+
+			Future<CellSet> cancelledResult = cancelled
+					.getCellSetAsync(executor);
+
+			while (!cancelled.cancelQuery()) {
+				assertThat("Follower has not joined the query in time.",
+						System.currentTimeMillis() < deadline, is(true));
+
+				Thread.sleep(10);
+			}
+
+			error = null;
+
+			try {
+				cancelledResult.get();
+			} catch (ExecutionException e) {
+				error = e.getCause();
+			}
+
+			assertThat("Follower should be cancelled.", error,
+					is(instanceOf(QueryCancelledException.class)));
+
+			PivotModelImpl follower = followers.get(2);
+
+			Future<CellSet> followerResult = follower
+					.getCellSetAsync(executor);
+
+			while (coalescer.getCoalescedCount() < 3) {
+				assertThat("Follower has not joined the query in time.",
+						System.currentTimeMillis() < deadline, is(true));
+
+				Thread.sleep(10);
+			}
+
+			release.countDown();
+
+			assertThat("Result was not shared.", followerResult.get(),
+					is(sameInstance(leaderResult.get())));
+			assertThat("Query should be executed only once.",
+					coalescer.getExecutionCount(), is(equalTo(1L)));
+
+			assertThat("Coalesced query was not recorded for the follower.",
+					collector.getMetrics(follower).getCoalescedCount(),
+					is(equalTo(1L)));
+			assertThat("Failed wait should not be recorded as coalesced.",
+					collector.getGlobalMetrics().getCoalescedCount(),
+					is(equalTo(1L)));
+		} finally {
+			release.countDown();
+
+			executor.shutdown();
+
+			leader.destroy();
+
+			for (PivotModelImpl follower : followers) {
+				follower.destroy();
+			}
+		}
+	}
+
+	@Test
+	public void testGetCellSetWithSnapshotMode() {
+		PivotModel model = getPivotModel();
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+
+		PivotModelImpl snapshotModel = new PivotModelImpl(getDataSource());
+		snapshotModel.setSnapshotMode(true);
+		snapshotModel.setMdx(getTestQuery());
+		snapshotModel.initialize();
+
+		try {
+			CellSet snapshot = snapshotModel.getCellSet();
+
+			assertThat("Result is not a snapshot.", snapshot,
+					is(instanceOf(CellSetSnapshot.class)));
+			assertThat("Invalid cell axes size.", snapshot.getAxes().size(),
+					is(equalTo(cellSet.getAxes().size())));
+
+			int cellCount = ((CellSetSnapshot) snapshot).getCellCount();
+
+			for (int i = 0; i < cellCount; i++) {
+				Cell cell = cellSet.getCell(i);
+				Cell snapshotCell = snapshot.getCell(i);
+
+				assertThat("Formatted value does not match.",
+						snapshotCell.getFormattedValue(),
+						is(equalTo(cell.getFormattedValue())));
+				assertThat("Empty flag does not match.",
+						snapshotCell.isEmpty(), is(equalTo(cell.isEmpty())));
+			}
+		} finally {
+			snapshotModel.destroy();
+		}
+	}
+
+	@Test
+	public void testGetCellSetWithIncrementalDrill() {
+		PivotModel model = getPivotModel();
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		PivotModelImpl incrementalModel = new PivotModelImpl(getDataSource());
+		incrementalModel.setIncrementalDrill(true);
+		incrementalModel.setMdx(getTestQuery());
+		incrementalModel.initialize();
+
+		final List<String> queries = new ArrayList<String>();
+
+		incrementalModel.addQueryListener(new QueryListenerAdapter() {
+
+			@Override
+			public void queryExecuted(QueryEvent e) {
+				queries.add(e.getMdx());
+			}
+		});
+
+		try {
+			List<CellSet> results = new ArrayList<CellSet>(2);
+
+			for (PivotModel pivotModel : new PivotModel[] { model,
+					incrementalModel }) {
+				CellSet cellSet = pivotModel.getCellSet();
+
+				CellSetAxis rows = cellSet.getAxes().get(1);
+				Member member = rows.getPositions().get(0).getMembers().get(1);
+
+				DrillExpandMember transform = pivotModel
+						.getTransform(DrillExpandMember.class);
+				transform.expand(member);
+
+				results.add(pivotModel.getCellSet());
+			}
+
+			assertThat("Invalid number of executed queries.", queries.size(),
+					is(equalTo(2)));
+			assertThat("Expansion was not queried incrementally : "
+					+ queries.get(1), queries.get(1).contains("Except"),
+					is(true));
+
+			assertSameResult(results.get(0), results.get(1));
+		} finally {
+			incrementalModel.destroy();
+		}
+	}
+
+	@Test
+	public void testGetCellSetWithIncrementalDrillFallback() {
+		// a descendant of the member to be expanded is already visible, so
+		// the new positions cannot be simply placed after their parent
+		String mdx = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+				+ "{[Product].[All Products], [Product].[Drink].[Alcoholic Beverages]} ON ROWS "
+				+ "FROM [Sales] WHERE [Time].[1997]";
+
+		PivotModel model = getPivotModel();
+		model.setMdx(mdx);
+		model.initialize();
+
+		PivotModelImpl incrementalModel = new PivotModelImpl(getDataSource());
+		incrementalModel.setIncrementalDrill(true);
+		incrementalModel.setMdx(mdx);
+		incrementalModel.initialize();
+
+		final List<String> queries = new ArrayList<String>();
+
+		incrementalModel.addQueryListener(new QueryListenerAdapter() {
+
+			@Override
+			public void queryExecuted(QueryEvent e) {
+				queries.add(e.getMdx());
+			}
+		});
+
+		try {
+			List<CellSet> results = new ArrayList<CellSet>(2);
+
+			for (PivotModel pivotModel : new PivotModel[] { model,
+					incrementalModel }) {
+				CellSet cellSet = pivotModel.getCellSet();
+
+				CellSetAxis rows = cellSet.getAxes().get(1);
+				Member member = rows.getPositions().get(0).getMembers().get(0);
+
+				DrillExpandMember transform = pivotModel
+						.getTransform(DrillExpandMember.class);
+				transform.expand(member);
+
+				results.add(pivotModel.getCellSet());
+			}
+
+			assertThat("Invalid number of executed queries.", queries.size(),
+					is(equalTo(2)));
+
+			for (String query : queries) {
+				assertThat("Delta query should not be sent when it cannot "
+						+ "be merged : " + query, query.contains("Except"),
+						is(false));
+			}
+
+			assertSameResult(results.get(0), results.get(1));
+		} finally {
+			incrementalModel.destroy();
+		}
+	}
+
+	/**
+	 * @param cellSet
+	 * @param merged
+	 */
+	protected void assertSameResult(CellSet cellSet, CellSet merged) {
+		assertThat("Result is not a snapshot.", merged,
+				is(instanceOf(CellSetSnapshot.class)));
+
+		for (int i = 0; i < cellSet.getAxes().size(); i++) {
+			List<Position> positions = cellSet.getAxes().get(i).getPositions();
+			List<Position> mergedPositions = merged.getAxes().get(i)
+					.getPositions();
+
+			assertThat("Invalid position count.", mergedPositions.size(),
+					is(equalTo(positions.size())));
+
+			for (int j = 0; j < positions.size(); j++) {
+				assertThat("Position members do not match.", mergedPositions
+						.get(j).getMembers(), is(equalTo(positions.get(j)
+						.getMembers())));
+			}
+		}
+
+		int cellCount = ((CellSetSnapshot) merged).getCellCount();
+
+		for (int i = 0; i < cellCount; i++) {
+			assertThat("Formatted value does not match.", merged.getCell(i)
+					.getFormattedValue(), is(equalTo(cellSet.getCell(i)
+					.getFormattedValue())));
+		}
+	}
+
+	@Test
+	public void testBatchUpdate() {
+		PivotModel model = getPivotModel();
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+
+		final int[] changes = new int[1];
+		final int[] executions = new int[1];
+
+		model.addModelChangeListener(new ModelChangeListener() {
+
+			public void modelInitialized(ModelChangeEvent e) {
+			}
+
+			public void modelChanged(ModelChangeEvent e) {
+			}
+
+			public void structureChanged(ModelChangeEvent e) {
+				changes[0]++;
+			}
+
+			public void modelDestroyed(ModelChangeEvent e) {
+			}
+		});
+
+		model.addQueryListener(new QueryListenerAdapter() {
+
+			@Override
+			public void queryExecuted(QueryEvent e) {
+				executions[0]++;
+			}
+		});
+
+		CellSetAxis rows = cellSet.getAxes().get(1);
+
+		Member media = rows.getPositions().get(0).getMembers().get(0);
+		Member product = rows.getPositions().get(0).getMembers().get(1);
+
+		DrillExpandMember drillTransform = model
+				.getTransform(DrillExpandMember.class);
+		NonEmpty nonEmptyTransform = model.getTransform(NonEmpty.class);
+
+		model.beginUpdate();
+
+		try {
+			drillTransform.expand(media);
+			drillTransform.expand(product);
+			nonEmptyTransform.setNonEmpty(true);
+
+			assertThat("Model should be updating.", model.isUpdating(),
+					is(true));
+			assertThat("Listeners should not be notified during the batch.",
+					changes[0], is(equalTo(0)));
+			assertThat("Result should be kept during the batch.",
+					model.getCellSet(), is(sameInstance(cellSet)));
+		} finally {
+			model.endUpdate();
+		}
+
+		assertThat("Model should not be updating.", model.isUpdating(),
+				is(false));
+		assertThat("Listeners should be notified once.", changes[0],
+				is(equalTo(1)));
+
+		String mdx = model.getCurrentMdx();
+
+		assertThat("Expansion is missing : " + mdx,
+				mdx.contains("[Promotion Media].[All Media].Children"),
+				is(true));
+		assertThat("Expansion is missing : " + mdx,
+				mdx.contains("[Product].[All Products].Children"), is(true));
+		assertThat("Non empty is missing : " + mdx,
+				mdx.contains("NON EMPTY"), is(true));
+
+		CellSet result = model.getCellSet();
+
+		assertThat("Result is null.", result, is(notNullValue()));
+		assertThat("Query should be executed once.", executions[0],
+				is(equalTo(1)));
+	}
+
+	@Test
+	public void testGetCellSetWithConnectionLeasing() throws Exception {
+		GenericObjectPool.Config config = new GenericObjectPool.Config();
+		config.maxActive = 1;
+		config.maxWait = 1000;
+		config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_FAIL;
+
+		PooledOlapDataSource dataSource = new PooledOlapDataSource(
+				getDataSource(), config);
+
+		PivotModelImpl model1 = new PivotModelImpl(dataSource);
+		model1.setConnectionLeasing(true);
+		model1.setMdx(getTestQuery());
+		model1.initialize();
+
+		PivotModelImpl model2 = new PivotModelImpl(dataSource);
+		model2.setConnectionLeasing(true);
+		model2.setMdx(getTestQuery());
+		model2.initialize();
+
+		try {
+			assertThat("CellSet is null.", model1.getCellSet(),
+					is(notNullValue()));
+
+			model1.returnConnection();
+
+			assertThat("CellSet is null.", model2.getCellSet(),
+					is(notNullValue()));
+			assertThat("Cube is null.", model2.getCube(), is(notNullValue()));
+
+			model2.returnConnection();
+		} finally {
+			model1.destroy();
+			model2.destroy();
+
+			dataSource.close();
+		}
+	}
+
+	@Test
+	public void testConnectionLeasingWithRoles() throws Exception {
+		GenericObjectPool.Config config = new GenericObjectPool.Config();
+		config.maxActive = 1;
+		config.maxIdle = 1;
+		config.maxWait = 1000;
+		config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_FAIL;
+
+		// both models should share the only connection in the pool
+		PooledOlapDataSource dataSource = new PooledOlapDataSource(
+				getDataSource(), config);
+
+		String mdx = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+				+ "{[Store].[Store Country].Members} ON ROWS FROM [Sales]";
+
+		PivotModelImpl restrictedModel = new PivotModelImpl(dataSource);
+		restrictedModel.setConnectionLeasing(true);
+		restrictedModel.setRoleName("California manager");
+		restrictedModel.setMdx(mdx);
+		restrictedModel.initialize();
+
+		PivotModelImpl model = new PivotModelImpl(dataSource);
+		model.setConnectionLeasing(true);
+		model.setMdx(mdx);
+		model.initialize();
+
+		try {
+			assertThat("Role was not applied to the leased connection.",
+					restrictedModel.getCellSet().getAxes().get(1)
+							.getPositionCount(), is(equalTo(1)));
+
+			restrictedModel.returnConnection();
+
+			assertThat("Role of the previous borrower was not reset.", model
+					.getCellSet().getAxes().get(1).getPositionCount(),
+					is(equalTo(3)));
+
+			model.returnConnection();
+
+			restrictedModel.refresh();
+
+			assertThat("Role was not applied to the leased connection.",
+					restrictedModel.getCellSet().getAxes().get(1)
+							.getPositionCount(), is(equalTo(1)));
+
+			restrictedModel.returnConnection();
+		} finally {
+			restrictedModel.destroy();
+			model.destroy();
+
+			dataSource.close();
+		}
+	}
+
+	@Test
+	public void testReturnConnection() throws Exception {
+		GenericObjectPool.Config config = new GenericObjectPool.Config();
+		config.maxActive = 1;
+		config.maxWait = 1000;
+		config.whenExhaustedAction = GenericObjectPool.WHEN_EXHAUSTED_FAIL;
+
+		PooledOlapDataSource dataSource = new PooledOlapDataSource(
+				getDataSource(), config);
+
+		PivotModelImpl model = new PivotModelImpl(dataSource);
+		model.setConnectionLeasing(true);
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		try {
+			Cube cube = model.getCube();
+
+			assertThat("Connection should be kept while holding metadata.",
+					model.getConnection(), is(notNullValue()));
+
+			CellSet cellSet = model.getCellSet();
+
+			Member media = cellSet.getAxes().get(1).getPositions().get(0)
+					.getMembers().get(0);
+
+			model.getTransform(DrillExpandMember.class).expand(media);
+
+			int positionCount = model.getCellSet().getAxes().get(1)
+					.getPositionCount();
+			String mdx = model.getCurrentMdx();
+
+			long invalidationCount = model.getMetadataCache()
+					.getInvalidationCount();
+
+			model.returnConnection();
+
+			assertThat("Metadata should be discarded with the connection.",
+					model.getMetadataCache().getInvalidationCount()
+							- invalidationCount, is(equalTo(1L)));
+
+			assertThat("Connection was not returned.", model.getConnection(),
+					is(nullValue()));
+			assertThat("Current query should be kept.", model.getCurrentMdx(),
+					is(equalTo(mdx)));
+
+			// the pool would be exhausted if the connection was not returned
+			PivotModelImpl otherModel = new PivotModelImpl(dataSource);
+			otherModel.setConnectionLeasing(true);
+			otherModel.setMdx(getTestQuery());
+			otherModel.initialize();
+
+			try {
+				assertThat("CellSet is null.", otherModel.getCellSet(),
+						is(notNullValue()));
+			} finally {
+				otherModel.destroy();
+			}
+
+			Cube newCube = model.getCube();
+
+			assertThat("Cube should be resolved from the new connection.",
+					newCube, is(not(sameInstance(cube))));
+			assertThat("Expanded state was not restored.", model
+					.getCellSet().getAxes().get(1).getPositionCount(),
+					is(equalTo(positionCount)));
+			assertThat("Current query should be kept.", model.getCurrentMdx(),
+					is(equalTo(mdx)));
+			assertThat("Initial query should be kept.", model.getMdx(),
+					is(equalTo(getTestQuery())));
+
+			media = model.getCellSet().getAxes().get(1).getPositions().get(0)
+					.getMembers().get(0);
+
+			model.getTransform(DrillExpandMember.class).collapse(media);
+
+			assertThat("Members from the new connection should be navigable.",
+					model.getCellSet().getAxes().get(1).getPositionCount(),
+					is(equalTo(1)));
+		} finally {
+			model.destroy();
+
+			dataSource.close();
+		}
+	}
+
+	@Test
+	public void testConnectionLocale() throws Exception {
+		PivotModelImpl model = new PivotModelImpl(getDataSource());
+		model.setConnectionLeasing(true);
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		try {
+			model.getCube();
+
+			Locale locale = model.getConnection().getLocale();
+			Locale otherLocale = Locale.GERMAN.equals(locale) ? Locale.FRENCH
+					: Locale.GERMAN;
+
+			model.setLocale(otherLocale);
+
+			assertThat("Locale of the model was not applied.", model
+					.getConnection().getLocale(), is(equalTo(otherLocale)));
+
+			model.setLocale(null);
+
+			assertThat("Locale of the connection was not restored.", model
+					.getConnection().getLocale(), is(equalTo(locale)));
+		} finally {
+			model.destroy();
+		}
+	}
+
+	@Test
+	public void testGetCubeWithMetadataCache() {
+		PivotModelImpl model = new PivotModelImpl(getDataSource());
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		try {
+			MetadataCache cache = model.getMetadataCache();
+
+			// initialization might have already looked up the metadata
+			long hitCount = cache.getHitCount();
+			long missCount = cache.getMissCount();
+			long invalidationCount = cache.getInvalidationCount();
+
+			Cube cube = model.getCube();
+
+			assertThat("Cube should not be null.", cube, is(notNullValue()));
+			assertThat("Cached cube was not returned.", model.getCube(),
+					is(sameInstance(cube)));
+			assertThat("Cube lookups should hit the cache.",
+					cache.getHitCount() - hitCount, is(equalTo(2L)));
+			assertThat("Cube lookups should not miss the cache.",
+					cache.getMissCount() - missCount, is(equalTo(0L)));
+
+			model.setRoleName(null);
+
+			assertThat("Invalid invalidation count.",
+					cache.getInvalidationCount() - invalidationCount,
+					is(equalTo(1L)));
+
+			hitCount = cache.getHitCount();
+			missCount = cache.getMissCount();
+
+			model.getCube();
+
+			assertThat("Invalidated cube should not be returned.",
+					cache.getHitCount() - hitCount, is(equalTo(0L)));
+			assertThat("Invalidated cube should be resolved again.",
+					cache.getMissCount() - missCount, is(equalTo(1L)));
+
+			model.getCube();
+
+			assertThat("Resolved cube should be cached again.",
+					cache.getHitCount() - hitCount, is(equalTo(1L)));
+		} finally {
+			model.destroy();
+		}
+	}
+
+	@Test
+	public void testGetCellSetWithLazyPrefetch() {
+		PivotModelImpl model = new PivotModelImpl(getDataSource());
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		try {
+			CellSet cellSet = model.getCellSet();
+
+			MemberInfoCache cache = model.getQueryAdapter()
+					.getMemberInfoCache();
+
+			assertThat("Member information should not be fetched eagerly.",
+					cache.getFetchCount(), is(equalTo(0L)));
+
+			Member member = cellSet.getAxes().get(1).getPositions().get(0)
+					.getMembers().get(1);
+
+			DrillExpandMember transform = model
+					.getTransform(DrillExpandMember.class);
+
+			assertThat("Root member should be expandable.",
+					transform.canExpand(member), is(true));
+
+			long fetchCount = cache.getFetchCount();
+
+			assertThat("Member information should be fetched on demand.",
+					fetchCount, is(not(equalTo(0L))));
+
+			transform.canExpand(member);
+
+			assertThat("Member information should be fetched only once.",
+					cache.getFetchCount(), is(equalTo(fetchCount)));
+		} finally {
+			model.destroy();
+		}
+	}
+
+	@Test
+	public void testGetMdxFingerprint() throws Exception {
+		PivotModel model = getPivotModel();
+		model.setMdx(getTestQuery());
+		model.initialize();
+
+		MdxFingerprint initialFingerprint = model.getMdxFingerprint();
+
+		Member media = model.getCellSet().getAxes().get(1).getPositions()
+				.get(0).getMembers().get(0);
+
+		DrillExpandMember transform = model
+				.getTransform(DrillExpandMember.class);
+		transform.expand(media);
+
+		// the query is generated from the members on the quaxes now
+		MdxFingerprint fingerprint = model.getMdxFingerprint();
+
+		MdxStatement parsedQuery = new MdxParserImpl().parse(model
+				.getCurrentMdx());
+
+		assertThat("Parsed and generated queries should have the same "
+				+ "fingerprint.", fingerprint, is(equalTo(new MdxCanonicalizer()
+				.fingerprint(parsedQuery))));
+		assertThat("Different queries should have different fingerprints.",
+				fingerprint, is(not(equalTo(initialFingerprint))));
+	}
+
 	@Test
 	public void testGetMdx() {
 		PivotModel model = getPivotModel();
@@ -0,0 +1,206 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.eyeq.pivot4j.mdx.impl.MdxParserImpl;
+import com.eyeq.pivot4j.mdx.metadata.MemberExp;
+
+public class MdxCanonicalizerTest {
+
+	/**
+	 * @param mdxQuery
+	 * @return
+	 * @throws Exception
+	 */
+	protected MdxStatement parseQuery(String mdxQuery) throws Exception {
+		MdxParser parser = new MdxParserImpl();
+
+		return parser.parse(mdxQuery);
+	}
+
+	/**
+	 * @param mdxQuery
+	 * @return
+	 * @throws Exception
+	 */
+	protected String canonicalize(String mdxQuery) throws Exception {
+		return new MdxCanonicalizer().toMdx(parseQuery(mdxQuery));
+	}
+
+	@Test
+	public void testCanonicalize() throws Exception {
+		String mdx = "select {[Measures].[Unit Sales]} on COLUMNS,\r\n"
+				+ "  non empty crossjoin((([Product].[All Products])).children, {Time.[1997]}) on ROWS\n"
+				+ "from Sales where ([Store].[USA])";
+
+		String canonicalMdx = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+				+ "NON EMPTY CROSSJOIN(([Product].[All Products]).CHILDREN, {[Time].[1997]}) ON ROWS "
+				+ "FROM [Sales] WHERE ([Store].[USA])";
+
+		assertThat("Unexpected canonical MDX query.", canonicalize(mdx),
+				is(equalTo(canonicalMdx)));
+		assertThat("Canonical MDX query should not change.",
+				canonicalize(canonicalMdx), is(equalTo(canonicalMdx)));
+	}
+
+	@Test
+	public void testKeepParenthesesForOperators() throws Exception {
+		String mdx = "WITH MEMBER [Measures].[X] AS '([Measures].[Store Sales] - [Measures].[Store Cost]) * 2' "
+				+ "SELECT {[Measures].[X]} ON COLUMNS FROM [Sales] WHERE ([Store].[USA], [Time].[1997])";
+
+		assertThat("Parentheses for operators and tuples should be kept.",
+				canonicalize(mdx), is(equalTo(parseQuery(mdx).toMdx())));
+	}
+
+	@Test
+	public void testCanonicalizeGeneratedMembers() throws Exception {
+		String mdx = "select {([Product].[Food], [Gender].[F]), ([Product].[Drink]), [Product].[Non-Consumable]} on COLUMNS "
+				+ "from Sales where ([Store].[USA])";
+
+		MdxStatement parsed = parseQuery(mdx);
+
+		// same query with the members generated as they are on a quax
+		MdxStatement generated = parseQuery(mdx);
+
+		List<Exp> members = new ArrayList<Exp>();
+
+		members.add(new FunCall("()", Syntax.Parentheses, Arrays
+				.<Exp> asList(new MemberExp("Food", "[Product].[Food]"),
+						new MemberExp("F", "[Gender].[F]"))));
+		members.add(new FunCall("()", Syntax.Parentheses, Arrays
+				.<Exp> asList(new MemberExp("Drink", "[Product].[Drink]"))));
+		members.add(new MemberExp("Non-Consumable",
+				"[Product].[Non-Consumable]"));
+
+		generated.getAxes().get(0)
+				.setExp(new FunCall("{}", Syntax.Braces, members));
+
+		FunCall slicer = new FunCall("()", Syntax.Parentheses,
+				Arrays.<Exp> asList(new MemberExp("USA", "[Store].[USA]")));
+
+		generated.setSlicer(slicer);
+
+		MdxCanonicalizer canonicalizer = new MdxCanonicalizer();
+
+		assertThat("Parsed and generated members should be canonicalized "
+				+ "identically.", canonicalizer.toMdx(generated),
+				is(equalTo(canonicalizer.toMdx(parsed))));
+		assertThat("Parsed and generated queries should have the same "
+				+ "fingerprint.", canonicalizer.fingerprint(generated),
+				is(equalTo(canonicalizer.fingerprint(parsed))));
+	}
+
+	@Test
+	public void testDistinguishQueries() throws Exception {
+		MdxCanonicalizer canonicalizer = new MdxCanonicalizer();
+
+		String[][] differentQueries = {
+				{
+						"SELECT {[Measures].[Unit Sales]} ON COLUMNS FROM [Sales] WHERE ([Store].[USA])",
+						"SELECT {[Measures].[Unit Sales]} ON COLUMNS FROM [Sales] WHERE [Store].[USA]" },
+				{
+						"SELECT {([Product].[Food])} ON COLUMNS FROM [Sales]",
+						"SELECT {[Product].[Food]} ON COLUMNS FROM [Sales]" },
+				{
+						"SELECT {[Product].[Food], [Product].[Drink]} ON COLUMNS FROM [Sales]",
+						"SELECT {[Product].[Drink], [Product].[Food]} ON COLUMNS FROM [Sales]" },
+				{
+						"SELECT {[Product].[Food]} ON COLUMNS FROM [Sales]",
+						"SELECT {[Product].[Food]} ON ROWS FROM [Sales]" },
+				{
+						"SELECT {[Product].[Food]} ON COLUMNS FROM [Sales]",
+						"SELECT NON EMPTY {[Product].[Food]} ON COLUMNS FROM [Sales]" } };
+
+		for (String[] queries : differentQueries) {
+			assertThat(
+					"Different queries should have different fingerprints : "
+							+ queries[0],
+					canonicalizer.fingerprint(parseQuery(queries[0])),
+					is(not(equalTo(canonicalizer
+							.fingerprint(parseQuery(queries[1]))))));
+		}
+
+		assertThat("Nested parentheses should be removed.",
+				canonicalize("SELECT {(([Product].[Food]))} ON COLUMNS FROM [Sales]"),
+				is(equalTo(canonicalize("SELECT {([Product].[Food])} ON COLUMNS FROM [Sales]"))));
+	}
+
+	@Test
+	public void testCanonicalizeProperties() throws Exception {
+		String mdx = "SELECT [Product].Members DIMENSION PROPERTIES parent_unique_name ON COLUMNS "
+				+ "FROM [Sales] CELL PROPERTIES format_string, VALUE, FORMAT_STRING";
+
+		assertThat(
+				"Unexpected canonical MDX query.",
+				canonicalize(mdx),
+				is(equalTo("SELECT [Product].MEMBERS DIMENSION PROPERTIES PARENT_UNIQUE_NAME ON COLUMNS "
+						+ "FROM [Sales] CELL PROPERTIES VALUE, FORMATTED_VALUE ,FORMAT_STRING")));
+	}
+
+	@Test
+	public void testKeepIdentifierCase() throws Exception {
+		String mdx = "select {store.[USA]} dimension properties store.[Store Country].member_caption on COLUMNS from Sales";
+
+		assertThat(
+				"Only the property name should be written in upper case.",
+				canonicalize(mdx),
+				is(equalTo("SELECT {[store].[USA]} DIMENSION PROPERTIES [store].[Store Country].[MEMBER_CAPTION] ON COLUMNS "
+						+ "FROM [Sales]")));
+
+		String quotedMdx = "SELECT {[Store].[USA]} DIMENSION PROPERTIES [Store].[Store Name].[Store Sqft] ON COLUMNS "
+				+ "FROM [Sales]";
+
+		assertThat("Quoted property name should be kept as it is.",
+				canonicalize(quotedMdx), is(equalTo(quotedMdx)));
+	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+		MdxCanonicalizer canonicalizer = new MdxCanonicalizer();
+
+		MdxFingerprint fingerprint1 = canonicalizer
+				.fingerprint(parseQuery("SELECT {[Measures].[Unit Sales]} ON COLUMNS FROM Sales"));
+		MdxFingerprint fingerprint2 = canonicalizer
+				.fingerprint(parseQuery("select  {Measures.[Unit Sales]} on COLUMNS from [Sales]"));
+		MdxFingerprint fingerprint3 = canonicalizer
+				.fingerprint(parseQuery("SELECT {[Measures].[Store Sales]} ON COLUMNS FROM [Sales]"));
+
+		assertThat("Equivalent queries should have the same fingerprint.",
+				fingerprint1, is(equalTo(fingerprint2)));
+		assertThat("Different queries should have different fingerprints.",
+				fingerprint1, is(not(equalTo(fingerprint3))));
+		assertThat("Unexpected length of the fingerprint.", fingerprint1
+				.toString().length(), is(equalTo(32)));
+	}
+
+	@Test
+	public void testComputeFingerprint() {
+		// reference values of MurmurHash3_x64_128 with the seed of 0.
+		assertThat("Unexpected fingerprint value.",
+				MdxFingerprint.compute("hello").toString(),
+				is(equalTo("cbd8a7b341bd9b025b1e906a48ae1d19")));
+		assertThat(
+				"Unexpected fingerprint value.",
+				MdxFingerprint.compute(
+						"The quick brown fox jumps over the lazy dog")
+						.toString(),
+				is(equalTo("e34bbc7bbc071b6c7a433ca9c49a9347")));
+	}
+}
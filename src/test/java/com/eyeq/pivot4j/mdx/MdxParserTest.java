@@ -12,6 +12,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import java.util.List;
@@ -390,6 +391,76 @@ public class MdxParserTest {
 				func.getArgs().size(), is(equalTo(2)));
 	}
 
+	@Test
+	public void testParseOrOperator() throws Exception {
+		String mdx = "SELECT Filter([Store].Members, [Measures].[Unit Sales] > 1000 or "
+				+ "[Measures].[Store Cost] < 10 Or [Measures].[Profit] = 0) ON COLUMNS FROM [Sales]";
+
+		MdxStatement query = parseQuery(mdx);
+
+		FunCall filter = (FunCall) query.getAxes().get(0).getExp();
+
+		Exp arg = filter.getArgs().get(1);
+
+		assertThat("Wrong argument type.", arg, is(instanceOf(FunCall.class)));
+
+		FunCall func = (FunCall) arg;
+
+		assertThat("Wrong function type.", func.getType(),
+				is(equalTo(Syntax.Infix)));
+		assertThat("Wrong function name.", func.getFunction(),
+				is(equalTo("OR")));
+
+		arg = func.getArgs().get(0);
+
+		assertThat("Wrong argument type.", arg, is(instanceOf(FunCall.class)));
+		assertThat("Wrong function name.", ((FunCall) arg).getFunction(),
+				is(equalTo("OR")));
+	}
+
+	@Test(expected = ParseException.class)
+	public void testParseInvalidOperator() throws Exception {
+		parseQuery("SELECT Filter([Store].Members, [Measures].[Unit Sales] > 1000 er "
+				+ "[Measures].[Store Cost] < 10) ON COLUMNS FROM [Sales]");
+	}
+
+	@Test
+	public void testParseCaseExpression() throws Exception {
+		String mdx = "WITH MEMBER [Measures].[X] AS CASE WHEN [Measures].[Unit Sales] > 100 "
+				+ "THEN 1 ELSE 0 END SELECT [Measures].[X] ON COLUMNS FROM [Sales]";
+
+		MdxStatement query = parseQuery(mdx);
+
+		Exp arg = query.getFormulas().get(0).getExp();
+
+		assertThat("Wrong argument type.", arg, is(instanceOf(FunCall.class)));
+
+		FunCall func = (FunCall) arg;
+
+		assertThat("Wrong function type.", func.getType(),
+				is(equalTo(Syntax.Case)));
+		assertThat("Wrong function name.", func.getFunction(),
+				is(equalTo("_CaseTest")));
+		assertThat("Wrong number of function arguments.",
+				func.getArgs().size(), is(equalTo(3)));
+
+		mdx = "WITH MEMBER [Measures].[X] AS CASE [Measures].[Unit Sales] WHEN 1 THEN 2 "
+				+ "WHEN 3 THEN 4 END SELECT [Measures].[X] ON COLUMNS FROM [Sales]";
+
+		query = parseQuery(mdx);
+
+		arg = query.getFormulas().get(0).getExp();
+
+		assertThat("Wrong argument type.", arg, is(instanceOf(FunCall.class)));
+
+		func = (FunCall) arg;
+
+		assertThat("Wrong function name.", func.getFunction(),
+				is(equalTo("_CaseMatch")));
+		assertThat("Wrong number of function arguments.",
+				func.getArgs().size(), is(equalTo(5)));
+	}
+
 	@Test
 	public void testParseMemberExpression() throws Exception {
 		String mdx = "SELECT [Measures].[Store Sales] ON COLUMNS, [Product].[All Products] ON ROWS FROM [Sales] "
@@ -534,4 +605,61 @@ public class MdxParserTest {
 				parameter.getExpression(),
 				is(equalTo("[1, 2, 3], SELECT, &[AAA], Crossjoin(), \"aaa\"")));
 	}
+
+	@Test
+	public void testGenerateEvaluatedParameter() throws Exception {
+		String mdx = "SELECT [Measures].[Store Sales] ON COLUMNS FROM [Sales] WHERE $[s:member]";
+
+		MdxStatement query = parseQuery(mdx);
+
+		ExpressionParameter parameter = (ExpressionParameter) query.getSlicer();
+		parameter.setResult("[Store].[USA]");
+
+		assertThat("Unexpected evaluated MDX query.", query.toMdx(true),
+				is(equalTo("SELECT [Measures].[Store Sales] ON COLUMNS FROM [Sales] WHERE [Store].[USA]")));
+		assertThat("Unexpected MDX query.", query.toMdx(false),
+				is(equalTo(mdx)));
+		assertThat("Evaluated flag should not be modified.",
+				parameter.isEvaluated(), is(false));
+	}
+
+	@Test
+	public void testCopy() throws Exception {
+		String mdx = "SELECT [Measures].[Store Sales] ON COLUMNS, [Product].[All Products] ON ROWS FROM [Sales]";
+
+		MdxStatement query = parseQuery(mdx);
+		MdxStatement copy = query.copy();
+
+		assertThat("Unexpected MDX query.", copy.toMdx(), is(equalTo(mdx)));
+		assertThat("Expressions should be shared.", copy.getAxes().get(1)
+				.getExp(), is(sameInstance(query.getAxes().get(1).getExp())));
+
+		copy.getAxes().get(1).setExp(new CompoundId("[Store].[All Stores]"));
+
+		assertThat("Original query should not be modified.", query.toMdx(),
+				is(equalTo(mdx)));
+	}
+
+	@Test
+	public void testUnmodifiableArgs() throws Exception {
+		String mdx = "SELECT {[Measures].[Store Sales]} ON COLUMNS FROM [Sales]";
+
+		MdxStatement query = parseQuery(mdx);
+		MdxStatement copy = query.copy();
+
+		FunCall set = (FunCall) copy.getAxes().get(0).getExp();
+
+		UnsupportedOperationException error = null;
+
+		try {
+			set.getArgs().add(new CompoundId("[Measures].[Unit Sales]"));
+		} catch (UnsupportedOperationException e) {
+			error = e;
+		}
+
+		assertThat("Arguments of a shared expression should not be modified.",
+				error, is(instanceOf(UnsupportedOperationException.class)));
+		assertThat("Original query should not be modified.", query.toMdx(),
+				is(equalTo(mdx)));
+	}
 }
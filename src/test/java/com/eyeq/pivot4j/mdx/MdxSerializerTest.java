@@ -0,0 +1,168 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.olap4j.Axis;
+
+import com.eyeq.pivot4j.mdx.impl.MdxParserImpl;
+
+public class MdxSerializerTest {
+
+	private static final String[] QUERIES = {
+			"SELECT FROM DummyCube",
+			"SELECT [AAA] ON COLUMNS FROM DummyCube",
+			"SELECT [Measures].&[1].[AAA] ON COLUMNS FROM DummyCube",
+			"SELECT [Measures].members ON COLUMNS, NON EMPTY [ODB_CUST].members ON ROWS "
+					+ "FROM [ODBOSCEN1/MKTBRANCH] SAP VARIABLES [ODBBRANC] INCLUDING [ODB_BRANC].[CHEM]",
+			"WITH MEMBER [Measures].[Special Discount] AS [Measures].[Discount Amount] * 1.5 "
+					+ "MEMBER [Measures].[Premium Discount] AS [Measures].[Discount Amount] * 2.0 "
+					+ "SELECT [Measures].[Special Discount] on COLUMNS, NON EMPTY [Product].[Product].MEMBERS ON ROWS "
+					+ "FROM [Adventure Works] WHERE [Product].[Category].[Bikes]",
+			"SELECT {[Measures].[Unit Sales], [Measures].[Store Sales]} ON COLUMNS, "
+					+ "NON EMPTY Hierarchize(Union(CrossJoin({[Product].[All Products]}, "
+					+ "{[Time].[1997]}), CrossJoin([Product].[All Products].Children, "
+					+ "{[Time].[1997]}))) DIMENSION PROPERTIES PARENT_UNIQUE_NAME ON ROWS "
+					+ "FROM [Sales] WHERE ([Store].[USA], [Gender].[F])",
+			"SELECT [Measures].[Store Sales] ON COLUMNS, [Product].[All Products] ON ROWS FROM [Sales] "
+					+ "WHERE $[s:parameter]" };
+
+	/**
+	 * @param mdxQuery
+	 * @return
+	 * @throws Exception
+	 */
+	protected MdxStatement parseQuery(String mdxQuery) throws Exception {
+		MdxParser parser = new MdxParserImpl();
+
+		return parser.parse(mdxQuery);
+	}
+
+	@Test
+	public void testSerialize() throws Exception {
+		MdxSerializer serializer = new MdxSerializer();
+
+		for (String mdx : QUERIES) {
+			MdxStatement query = parseQuery(mdx);
+
+			assertThat("Unexpected MDX query.", serializer.toMdx(query),
+					is(equalTo(query.toMdx())));
+		}
+	}
+
+	@Test
+	public void testSerializeWithEstimatedSize() throws Exception {
+		MdxSerializer serializer = new MdxSerializer();
+		serializer.setEstimateSize(true);
+
+		for (String mdx : QUERIES) {
+			MdxStatement query = parseQuery(mdx);
+
+			assertThat("Unexpected MDX query.", serializer.toMdx(query),
+					is(equalTo(query.toMdx())));
+		}
+	}
+
+	@Test
+	public void testSerializeEvaluatedParameter() throws Exception {
+		String mdx = "SELECT [Measures].[Store Sales] ON COLUMNS FROM [Sales] WHERE $[s:member]";
+
+		MdxStatement query = parseQuery(mdx);
+
+		ExpressionParameter parameter = (ExpressionParameter) query.getSlicer();
+		parameter.setResult("[Store].[USA]");
+
+		assertThat("Unexpected evaluated MDX query.",
+				new MdxSerializer(true).toMdx(query),
+				is(equalTo("SELECT [Measures].[Store Sales] ON COLUMNS FROM [Sales] WHERE [Store].[USA]")));
+		assertThat("Unexpected MDX query.",
+				new MdxSerializer(false).toMdx(query), is(equalTo(mdx)));
+		assertThat("Unexpected MDX query.", new MdxSerializer().toMdx(query),
+				is(equalTo(query.toMdx())));
+		assertThat("Evaluated flag should not be modified.",
+				parameter.isEvaluated(), is(false));
+	}
+
+	@Test
+	public void testSerializeNestedEvaluatedParameter() throws Exception {
+		String mdx = "SELECT {[Measures].[Store Sales]} ON COLUMNS, "
+				+ "Hierarchize({$[s:member]}) ON ROWS FROM [Sales]";
+
+		MdxStatement query = parseQuery(mdx);
+
+		FunCall rows = (FunCall) query.getAxis(Axis.ROWS).getExp();
+		FunCall set = (FunCall) rows.getArgs().get(0);
+
+		ExpressionParameter parameter = (ExpressionParameter) set.getArgs()
+				.get(0);
+		parameter.setResult("[Store].[USA]");
+
+		MdxSerializer serializer = new MdxSerializer();
+		serializer.setMemoizeFragments(true);
+		serializer.setMinFragmentLength(0);
+
+		assertThat("Unexpected evaluated MDX query.",
+				serializer.toMdx(query, true),
+				is(equalTo("SELECT {[Measures].[Store Sales]} ON COLUMNS, "
+						+ "Hierarchize({[Store].[USA]}) ON ROWS FROM [Sales]")));
+		assertThat("Unexpected MDX query.", serializer.toMdx(query, false),
+				is(equalTo(mdx)));
+		assertThat("Unexpected MDX query.", serializer.toMdx(query),
+				is(equalTo(mdx)));
+	}
+
+	@Test
+	public void testSerializeWithMemoizedFragments() throws Exception {
+		MdxSerializer serializer = new MdxSerializer();
+		serializer.setMemoizeFragments(true);
+		serializer.setMinFragmentLength(0);
+
+		for (String mdx : QUERIES) {
+			MdxStatement query = parseQuery(mdx);
+
+			String expected = query.toMdx();
+
+			assertThat("Unexpected MDX query.", serializer.toMdx(query),
+					is(equalTo(expected)));
+			assertThat("Unexpected MDX query from memoized fragments.",
+					serializer.toMdx(query), is(equalTo(expected)));
+		}
+	}
+
+	@Test
+	public void testMemoizedFragmentsWithModifiedAxis() throws Exception {
+		String mdx = "SELECT {[Measures].[Unit Sales], [Measures].[Store Sales]} ON COLUMNS, "
+				+ "CrossJoin({[Product].[All Products]}, {[Time].[1997]}) ON ROWS FROM [Sales]";
+
+		MdxSerializer serializer = new MdxSerializer();
+		serializer.setMemoizeFragments(true);
+		serializer.setMinFragmentLength(0);
+
+		MdxStatement query = parseQuery(mdx);
+
+		assertThat("Unexpected MDX query.", serializer.toMdx(query),
+				is(equalTo(query.toMdx())));
+
+		MdxStatement copy = query.copy();
+
+		FunCall rows = new FunCall("Hierarchize", Syntax.Function,
+				Arrays.asList(copy.getAxis(Axis.ROWS).getExp()));
+
+		copy.getAxis(Axis.ROWS).setExp(rows);
+
+		assertThat("Unexpected MDX query.", serializer.toMdx(copy),
+				is(equalTo(copy.toMdx())));
+	}
+}
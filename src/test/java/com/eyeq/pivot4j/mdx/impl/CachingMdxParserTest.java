@@ -0,0 +1,107 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.olap4j.Axis;
+
+import com.eyeq.pivot4j.mdx.CompoundId;
+import com.eyeq.pivot4j.mdx.ExpressionParameter;
+import com.eyeq.pivot4j.mdx.MdxParserTest;
+import com.eyeq.pivot4j.mdx.MdxStatement;
+
+public class CachingMdxParserTest extends MdxParserTest {
+
+	private CachingMdxParser parser = new CachingMdxParser();
+
+	/**
+	 * Parses the query twice so that the statement is always returned from
+	 * the cache.
+	 * 
+	 * @see com.eyeq.pivot4j.mdx.MdxParserTest#parseQuery(java.lang.String)
+	 */
+	@Override
+	protected MdxStatement parseQuery(String mdxQuery) throws Exception {
+		parser.parse(mdxQuery);
+
+		return parser.parse(mdxQuery);
+	}
+
+	@Test
+	public void testParseWithCache() {
+		String mdx = "SELECT {[Measures].[Unit Sales]} ON COLUMNS FROM Sales";
+
+		MdxStatement query = parser.parse(mdx);
+
+		assertThat("Unexpected miss count.", parser.getMissCount(),
+				is(equalTo(1L)));
+
+		MdxStatement cachedQuery = parser.parse("  SELECT {[Measures].[Unit Sales]}\tON COLUMNS  FROM   Sales ");
+
+		assertThat("Unexpected hit count.", parser.getHitCount(),
+				is(equalTo(1L)));
+		assertThat("Cached statement should not be shared.", cachedQuery,
+				is(not(sameInstance(query))));
+		assertThat("Unexpected MDX query.", cachedQuery.toMdx(),
+				is(equalTo(mdx)));
+
+		query.setCube(new CompoundId("Warehouse"));
+
+		assertThat("Modification should not affect the cached statement.",
+				parser.parse(mdx).toMdx(), is(equalTo(mdx)));
+	}
+
+	@Test
+	public void testSharedExpressions() {
+		String mdx = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+				+ "Hierarchize({[Product].[All Products]}) ON ROWS FROM Sales";
+
+		MdxStatement query = parser.parse(mdx);
+		MdxStatement cachedQuery = parser.parse(mdx);
+
+		assertThat("Expressions of the cached statement should be shared.",
+				cachedQuery.getAxis(Axis.ROWS).getExp(),
+				is(sameInstance(query.getAxis(Axis.ROWS).getExp())));
+
+		query.getAxis(Axis.ROWS).setExp(
+				new CompoundId("[Product].[All Products]"));
+
+		assertThat("Modification should not affect the other statement.",
+				cachedQuery.toMdx(), is(equalTo(mdx)));
+		assertThat("Modification should not affect the cached statement.",
+				parser.parse(mdx).toMdx(), is(equalTo(mdx)));
+	}
+
+	@Test
+	public void testParameterizedStatement() {
+		String mdx = "SELECT {[Measures].[Unit Sales]} ON COLUMNS FROM Sales "
+				+ "WHERE $[s:member]";
+
+		MdxStatement query = parser.parse(mdx);
+		MdxStatement cachedQuery = parser.parse(mdx);
+
+		assertThat("Parameters should not be shared.", cachedQuery.getSlicer(),
+				is(not(sameInstance(query.getSlicer()))));
+
+		ExpressionParameter parameter = (ExpressionParameter) query
+				.getSlicer();
+		parameter.setResult("[Store].[USA]");
+
+		assertThat("Evaluated result should not affect the other statement.",
+				((ExpressionParameter) cachedQuery.getSlicer()).getResult(),
+				is(nullValue()));
+	}
+}
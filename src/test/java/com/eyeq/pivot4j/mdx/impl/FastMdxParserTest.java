@@ -0,0 +1,69 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.eyeq.pivot4j.mdx.MdxParser;
+import com.eyeq.pivot4j.mdx.MdxParserTest;
+import com.eyeq.pivot4j.mdx.MdxStatement;
+import com.eyeq.pivot4j.mdx.ParseException;
+
+public class FastMdxParserTest extends MdxParserTest {
+
+	private static final String[] QUERIES = {
+			"SELECT FROM DummyCube",
+			"SELECT {[Measures].[Unit Sales], [Measures].[Store Sales]} ON COLUMNS, "
+					+ "NON EMPTY Hierarchize(Union(CrossJoin({[Product].[All Products]}, "
+					+ "{[Time].[1997]}), CrossJoin([Product].[All Products].Children, "
+					+ "{[Time].[1997]}))) ON ROWS FROM [Sales] WHERE ([Store].[USA], [Gender].[F])",
+			"WITH MEMBER [Measures].[Profit] AS '[Measures].[Store Sales] - [Measures].[Store Cost]', "
+					+ "FORMAT_STRING = \"#,###.00\" SET [Top] AS 'TopCount([Product].Members, 10, [Measures].[Profit])' "
+					+ "SELECT {[Measures].[Profit]} ON COLUMNS, [Top] ON ROWS FROM [Sales]",
+			"SELECT Filter([Store].Members, [Measures].[Unit Sales] > 1000 AND NOT "
+					+ "([Measures].[Store Cost] <= -1.5E2 OR [Measures].[Profit] <> 0)) ON COLUMNS, "
+					+ "{[Time].[1997].[Q1] : [Time].[1997].[Q3]} ON ROWS FROM [Sales]",
+			"SELECT [Time].CurrentMember.Lag(1) ON COLUMNS, "
+					+ "Descendants([Time].[1997], [Time].[Month], SELF_AND_BEFORE) ON ROWS "
+					+ "FROM [Sales] CELL PROPERTIES VALUE, FORMATTED_VALUE, FORMAT_STRING" };
+
+	/**
+	 * @see com.eyeq.pivot4j.mdx.MdxParserTest#parseQuery(java.lang.String)
+	 */
+	@Override
+	protected MdxStatement parseQuery(String mdxQuery) throws Exception {
+		MdxParser parser = new FastMdxParser();
+
+		return parser.parse(mdxQuery);
+	}
+
+	@Test
+	public void testSameAsGeneratedParser() throws Exception {
+		MdxParser parser = new MdxParserImpl();
+
+		for (String mdx : QUERIES) {
+			assertThat("Unexpected MDX query.", parseQuery(mdx).toMdx(),
+					is(equalTo(parser.parse(mdx).toMdx())));
+		}
+	}
+
+	@Test(expected = ParseException.class)
+	public void testParseInvalidQuery() throws Exception {
+		parseQuery("SELECT [Measures].[Unit Sales] ON COLUMNS FROM");
+	}
+
+	@Test(expected = ParseException.class)
+	public void testParseInvalidAxis() throws Exception {
+		parseQuery("SELECT [Measures].[Unit Sales] ON UNKNOWN FROM [Sales]");
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.mdx.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+import com.eyeq.pivot4j.mdx.MdxParser;
+
+/**
+ * Compares the throughput of {@link MdxParserImpl} and {@link FastMdxParser}
+ * with the queries used by the rendering tests and with synthetic queries
+ * which resemble those generated by the query model after many drill downs,
+ * along with that of the cache hits of {@link CachingMdxParser}.
+ * <p>
+ * It's not a unit test, so it needs to be run manually, e.g. :
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.eyeq.pivot4j.mdx.impl.MdxParserBenchmark
+ * </pre>
+ */
+public class MdxParserBenchmark {
+
+	private static final String[] RESOURCES = {
+			"/com/eyeq/pivot4j/ui/html/basic-mdx.txt",
+			"/com/eyeq/pivot4j/ui/html/complex-columns-mdx.txt",
+			"/com/eyeq/pivot4j/ui/html/complex-member-properties-mdx.txt",
+			"/com/eyeq/pivot4j/ui/html/insane-rows-mdx.txt",
+			"/com/eyeq/pivot4j/ui/html/member-properties-mdx.txt",
+			"/com/eyeq/pivot4j/ui/html/more-complex-columns-mdx.txt",
+			"/com/eyeq/pivot4j/ui/html/skipping-level-mdx.txt",
+			"/com/eyeq/pivot4j/ui/aggregator/full.txt" };
+
+	private static final int[] SYNTHETIC_SIZES = { 10, 100, 1000 };
+
+	private static final long DURATION = 2000;
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		List<String> queries = new ArrayList<String>();
+
+		for (String resource : RESOURCES) {
+			queries.add(readResource(resource));
+		}
+
+		for (int size : SYNTHETIC_SIZES) {
+			queries.add(createQuery(size));
+		}
+
+		MdxParser generatedParser = new MdxParserImpl();
+		MdxParser fastParser = new FastMdxParser();
+		MdxParser cachingParser = new CachingMdxParser(fastParser,
+				queries.size());
+
+		System.out.println(String.format("%-40s %8s %14s %14s %8s %14s",
+				"Query", "Length", "CUP (ops/s)", "Fast (ops/s)", "Ratio",
+				"Cached (ops/s)"));
+
+		for (int i = 0; i < queries.size(); i++) {
+			String mdx = queries.get(i);
+
+			String expected = generatedParser.parse(mdx).toMdx();
+			String actual = fastParser.parse(mdx).toMdx();
+
+			if (!expected.equals(actual)) {
+				throw new IllegalStateException(
+						"Parsers returned different results for : " + mdx);
+			}
+
+			String name;
+
+			if (i < RESOURCES.length) {
+				name = RESOURCES[i].substring(RESOURCES[i].lastIndexOf('/') + 1);
+			} else {
+				name = "synthetic-"
+						+ SYNTHETIC_SIZES[i - RESOURCES.length];
+			}
+
+			// warm up
+			measure(generatedParser, mdx, DURATION / 4);
+			measure(fastParser, mdx, DURATION / 4);
+			measure(cachingParser, mdx, DURATION / 4);
+
+			double generated = measure(generatedParser, mdx, DURATION);
+			double fast = measure(fastParser, mdx, DURATION);
+			double cached = measure(cachingParser, mdx, DURATION);
+
+			System.out.println(String.format(
+					"%-40s %8d %14.1f %14.1f %7.2fx %14.1f", name,
+					mdx.length(), generated, fast, fast / generated, cached));
+		}
+	}
+
+	/**
+	 * @param parser
+	 * @param mdx
+	 * @param duration
+	 * @return number of parses per second
+	 */
+	private static double measure(MdxParser parser, String mdx, long duration) {
+		long count = 0;
+
+		long start = System.nanoTime();
+		long end = start + duration * 1000000;
+
+		long now;
+
+		do {
+			parser.parse(mdx);
+			count++;
+
+			now = System.nanoTime();
+		} while (now < end);
+
+		return count * 1000000000.0 / (now - start);
+	}
+
+	/**
+	 * Creates a query of which row axis contains the given number of members
+	 * in nested Union and CrossJoin calls, as the query model does when the
+	 * members are expanded one by one.
+	 *
+	 * @param size
+	 * @return
+	 */
+	private static String createQuery(int size) {
+		StringBuilder builder = new StringBuilder();
+
+		builder.append("WITH MEMBER [Measures].[Profit] AS '[Measures].[Store Sales] - [Measures].[Store Cost]', ");
+		builder.append("FORMAT_STRING = \"#,###.00\" ");
+		builder.append("SELECT {[Measures].[Unit Sales], [Measures].[Profit]} ON COLUMNS, NON EMPTY ");
+
+		String rows = "CrossJoin({[Product].[All Products]}, {[Store].[All Stores]})";
+
+		for (int i = 0; i < size; i++) {
+			rows = "Union(" + rows + ", CrossJoin({[Product].[Product Family "
+					+ (i % 3) + "].&[" + i + "]}, [Store].[Store Country "
+					+ (i % 5) + "].Children))";
+		}
+
+		builder.append("Hierarchize(");
+		builder.append(rows);
+		builder.append(") ON ROWS FROM [Sales] WHERE [Time].[1997]");
+
+		return builder.toString();
+	}
+
+	/**
+	 * @param resource
+	 * @return
+	 * @throws IOException
+	 */
+	private static String readResource(String resource) throws IOException {
+		InputStream in = MdxParserBenchmark.class.getResourceAsStream(resource);
+
+		if (in == null) {
+			throw new IOException("Unable to find resource : " + resource);
+		}
+
+		try {
+			return IOUtils.toString(in, "UTF-8").trim();
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+}
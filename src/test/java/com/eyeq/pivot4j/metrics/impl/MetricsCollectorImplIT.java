@@ -0,0 +1,113 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.metrics.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.impl.PivotModelImpl;
+import com.eyeq.pivot4j.metrics.Phase;
+import com.eyeq.pivot4j.ui.html.HtmlRenderer;
+
+public class MetricsCollectorImplIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales], [Measures].[Store Sales]} ON COLUMNS, "
+			+ "{[Product].[All Products].Children} ON ROWS FROM [Sales] WHERE [Time].[1997]";
+
+	private static final Phase[] EXECUTION_PHASES = { Phase.EVALUATE,
+			Phase.GENERATE_MDX, Phase.EXECUTE, Phase.AFTER_EXECUTE };
+
+	private static final Phase[] RENDER_PHASES = { Phase.CREATE_AXIS_TREE,
+			Phase.CONFIGURE_AXIS_TREE, Phase.RENDER_HEADER, Phase.RENDER_BODY };
+
+	@Test
+	public void testRecordPhases() {
+		MetricsCollectorImpl collector = new MetricsCollectorImpl();
+
+		PivotModelImpl model = (PivotModelImpl) getPivotModel();
+		model.setMetricsCollector(collector);
+		model.setMdx(testQuery);
+		model.initialize();
+
+		Metrics metrics = collector.getMetrics(model);
+
+		assertThat("No metrics were recorded for the model.", metrics,
+				is(notNullValue()));
+
+		assertCount(metrics, Phase.PARSE, 1);
+		assertCount(metrics, EXECUTION_PHASES, 0);
+		assertCount(metrics, RENDER_PHASES, 0);
+
+		model.getCellSet();
+
+		assertCount(metrics, Phase.PARSE, 1);
+		assertCount(metrics, EXECUTION_PHASES, 1);
+		assertCount(metrics, RENDER_PHASES, 0);
+
+		assertThat("Invalid cell count.", metrics.getCellCount(),
+				is(equalTo((long) model.getCellSet().getAxes().get(0)
+						.getPositionCount()
+						* model.getCellSet().getAxes().get(1)
+								.getPositionCount())));
+
+		HtmlRenderer renderer = new HtmlRenderer(new StringWriter());
+		renderer.initialize();
+		renderer.render(model);
+
+		// the result was already available, so it should not be recorded as
+		// another execution
+		assertCount(metrics, EXECUTION_PHASES, 1);
+		assertCount(metrics, RENDER_PHASES, 1);
+
+		model.refresh();
+		model.getCellSet();
+
+		assertCount(metrics, Phase.PARSE, 1);
+		assertCount(metrics, EXECUTION_PHASES, 2);
+		assertCount(metrics, RENDER_PHASES, 1);
+
+		renderer.render(model);
+
+		assertCount(metrics, EXECUTION_PHASES, 2);
+		assertCount(metrics, RENDER_PHASES, 2);
+		assertCount(metrics, Phase.EXPORT_FLUSH, 0);
+
+		assertThat("Global metrics do not match the model metrics.", collector
+				.getGlobalMetrics().getHistogram(Phase.EXECUTE).getCount(),
+				is(equalTo(2L)));
+	}
+
+	/**
+	 * @param metrics
+	 * @param phases
+	 * @param count
+	 */
+	protected void assertCount(Metrics metrics, Phase[] phases, long count) {
+		for (Phase phase : phases) {
+			assertCount(metrics, phase, count);
+		}
+	}
+
+	/**
+	 * @param metrics
+	 * @param phase
+	 * @param count
+	 */
+	protected void assertCount(Metrics metrics, Phase phase, long count) {
+		assertThat("Invalid record count of the phase : " + phase, metrics
+				.getHistogram(phase).getCount(), is(equalTo(count)));
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.olap4j.CellSetAxis;
+import org.olap4j.OlapException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.mdx.Exp;
+import com.eyeq.pivot4j.mdx.FunCall;
+import com.eyeq.pivot4j.mdx.Syntax;
+import com.eyeq.pivot4j.mdx.metadata.MemberExp;
+import com.eyeq.pivot4j.util.OlapUtils;
+
+public class ExpOptimizerIT extends AbstractIntegrationTestCase {
+
+	private String salesQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	private String raggedQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Store].[All Stores]} ON ROWS FROM [Sales Ragged]";
+
+	@Test
+	public void testChildren() throws OlapException {
+		Cube cube = initialize(salesQuery);
+
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		FunCall set = createSet(cube, food.getChildMembers());
+
+		Exp optimized = optimize(cube, set);
+
+		assertThat("Unexpected optimized expression.", optimized.toMdx(),
+				is(equalTo("[Product].[Food].Children")));
+
+		assertSamePositions(cube, set, optimized);
+	}
+
+	@Test
+	public void testPartialChildren() throws OlapException {
+		Cube cube = initialize(salesQuery);
+
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		List<Member> children = new ArrayList<Member>(food.getChildMembers());
+
+		assertThat("Not enough children to test.", children.size() >= 7,
+				is(true));
+
+		// remove a member in the middle of the children
+		int index = children.size() / 2;
+
+		List<Member> members = new ArrayList<Member>(children);
+		members.remove(index);
+
+		FunCall set = createSet(cube, members);
+
+		Exp optimized = optimize(cube, set);
+
+		String expected = "{" + children.get(0).getUniqueName() + " : "
+				+ children.get(index - 1).getUniqueName() + ", "
+				+ children.get(index + 1).getUniqueName() + " : "
+				+ children.get(children.size() - 1).getUniqueName() + "}";
+
+		assertThat("Unexpected optimized expression.", optimized.toMdx(),
+				is(equalTo(expected)));
+
+		assertSamePositions(cube, set, optimized);
+
+		// too short to be compacted
+		set = createSet(cube, children.subList(0, 2));
+
+		assertThat("Set which is too short should not be compacted.",
+				optimize(cube, set), is(sameInstance((Exp) set)));
+	}
+
+	@Test
+	public void testRaggedLevels() throws OlapException {
+		Cube cube = initialize(raggedQuery);
+
+		Member allStores = OlapUtils.lookupMember(cube, "[Store].[All Stores]");
+		Level storeName = cube.getHierarchies().get("Store").getLevels()
+				.get("Store Name");
+
+		FunCall set = createSet(cube, getDescendants(allStores, storeName));
+
+		Exp optimized = optimize(cube, set);
+
+		assertThat("Stores in a ragged hierarchy should be compacted.",
+				optimized, is(not(sameInstance((Exp) set))));
+
+		assertSamePositions(cube, set, optimized);
+
+		for (Member country : allStores.getChildMembers()) {
+			set = createSet(cube, getDescendants(country, storeName));
+
+			assertSamePositions(cube, set, optimize(cube, set));
+		}
+	}
+
+	@Test
+	public void testCalculatedMembers() throws OlapException {
+		Cube cube = initialize(salesQuery);
+
+		List<Member> measures = new ArrayList<Member>();
+		for (String name : new String[] { "[Measures].[Unit Sales]",
+				"[Measures].[Store Cost]", "[Measures].[Store Sales]",
+				"[Measures].[Profit]", "[Measures].[Sales Count]" }) {
+			measures.add(OlapUtils.lookupMember(cube, name));
+		}
+
+		FunCall set = createSet(cube, measures);
+
+		assertThat("Measures should not be compacted.", optimize(cube, set),
+				is(sameInstance((Exp) set)));
+
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		List<Exp> members = new ArrayList<Exp>(createSet(cube,
+				food.getChildMembers()).getArgs());
+		members.add(new MemberExp("Calculated",
+				"[Product].[Food].[Calculated]"));
+
+		set = new FunCall("{}", Syntax.Braces, members);
+
+		assertThat("Set with a calculated member should not be compacted.",
+				optimize(cube, set), is(sameInstance((Exp) set)));
+	}
+
+	@Test
+	public void testRangeAcrossParents() throws OlapException {
+		Cube cube = initialize(salesQuery);
+
+		List<Member> months = new ArrayList<Member>();
+		for (String name : new String[] { "[Time].[1997].[Q1].[2]",
+				"[Time].[1997].[Q1].[3]", "[Time].[1997].[Q2].[4]",
+				"[Time].[1997].[Q2].[5]", "[Time].[1997].[Q2].[6]",
+				"[Time].[1997].[Q3].[7]" }) {
+			months.add(OlapUtils.lookupMember(cube, name));
+		}
+
+		FunCall set = createSet(cube, months);
+
+		Exp optimized = optimize(cube, set);
+
+		assertThat(
+				"Unexpected optimized expression.",
+				optimized.toMdx(),
+				is(equalTo("{[Time].[1997].[Q1].[2], [Time].[1997].[Q1].[3], "
+						+ "[Time].[1997].[Q2].Children, [Time].[1997].[Q3].[7]}")));
+
+		assertSamePositions(cube, set, optimized);
+
+		Member year = OlapUtils.lookupMember(cube, "[Time].[1997]");
+		Level month = cube.getHierarchies().get("Time").getLevels()
+				.get("Month");
+
+		set = createSet(cube, getDescendants(year, month));
+
+		optimized = optimize(cube, set);
+
+		assertThat("Unexpected optimized expression.", optimized.toMdx(),
+				is(equalTo("Descendants([Time].[1997], [Time].[Month])")));
+
+		assertSamePositions(cube, set, optimized);
+	}
+
+	@Test
+	public void testCrossJoinPrefix() throws OlapException {
+		Cube cube = initialize(salesQuery);
+
+		Member allProducts = OlapUtils.lookupMember(cube,
+				"[Product].[All Products]");
+		Member female = OlapUtils.lookupMember(cube, "[Gender].[F]");
+		Member male = OlapUtils.lookupMember(cube, "[Gender].[M]");
+		Member single = OlapUtils.lookupMember(cube, "[Marital Status].[S]");
+
+		QuaxUtil quaxUtil = new QuaxUtil(cube);
+
+		List<Exp> tuples = new ArrayList<Exp>();
+
+		for (Member gender : Arrays.asList(female, male)) {
+			for (Member family : allProducts.getChildMembers()) {
+				tuples.add(createTuple(quaxUtil, gender, family));
+			}
+		}
+
+		FunCall set = new FunCall("{}", Syntax.Braces, tuples);
+
+		Exp optimized = optimize(cube, set);
+
+		assertThat(
+				"Unexpected optimized expression.",
+				optimized.toMdx(),
+				is(equalTo("{CrossJoin({[Gender].[F]}, [Product].[Product Family].Members), "
+						+ "CrossJoin({[Gender].[M]}, [Product].[Product Family].Members)}")));
+
+		assertSamePositions(cube, set, optimized);
+
+		tuples = new ArrayList<Exp>();
+
+		for (Member gender : Arrays.asList(female, male)) {
+			for (Member family : allProducts.getChildMembers()) {
+				tuples.add(createTuple(quaxUtil, gender, single, family));
+			}
+		}
+
+		set = new FunCall("{}", Syntax.Braces, tuples);
+
+		optimized = optimize(cube, set);
+
+		assertThat("Tuples with a common prefix should be compacted.",
+				optimized, is(not(sameInstance((Exp) set))));
+
+		assertSamePositions(cube, set, optimized);
+
+		// runs of tuples which can't be compacted
+		tuples = new ArrayList<Exp>();
+		tuples.add(createTuple(quaxUtil, female, allProducts
+				.getChildMembers().get(0)));
+		tuples.add(createTuple(quaxUtil, female, allProducts
+				.getChildMembers().get(1)));
+		tuples.add(createTuple(quaxUtil, male, allProducts.getChildMembers()
+				.get(0)));
+
+		set = new FunCall("{}", Syntax.Braces, tuples);
+
+		assertThat("Tuples which can't be compacted should be kept.",
+				optimize(cube, set), is(sameInstance((Exp) set)));
+	}
+
+	/**
+	 * @param mdx
+	 * @return
+	 */
+	protected Cube initialize(String mdx) {
+		PivotModel model = getPivotModel();
+		model.setMdx(mdx);
+		model.initialize();
+
+		return model.getCube();
+	}
+
+	/**
+	 * @param cube
+	 * @param exp
+	 * @return
+	 */
+	protected Exp optimize(Cube cube, Exp exp) {
+		String mdx = exp.toMdx();
+
+		Exp optimized = new ExpOptimizer(new QuaxUtil(cube)).optimize(exp);
+
+		assertThat("Original expression should not be modified.",
+				exp.toMdx(), is(equalTo(mdx)));
+
+		return optimized;
+	}
+
+	/**
+	 * @param cube
+	 * @param members
+	 * @return
+	 */
+	protected FunCall createSet(Cube cube, List<? extends Member> members) {
+		QuaxUtil quaxUtil = new QuaxUtil(cube);
+
+		List<Exp> args = new ArrayList<Exp>(members.size());
+
+		for (Member member : members) {
+			args.add(quaxUtil.expForMember(member));
+		}
+
+		return new FunCall("{}", Syntax.Braces, args);
+	}
+
+	/**
+	 * @param quaxUtil
+	 * @param members
+	 * @return
+	 */
+	protected FunCall createTuple(QuaxUtil quaxUtil, Member... members) {
+		List<Exp> args = new ArrayList<Exp>(members.length);
+
+		for (Member member : members) {
+			args.add(quaxUtil.expForMember(member));
+		}
+
+		return new FunCall("()", Syntax.Parentheses, args);
+	}
+
+	/**
+	 * @param member
+	 * @param level
+	 * @return descendants of the member on the level in hierarchical order
+	 * @throws OlapException
+	 */
+	protected List<Member> getDescendants(Member member, Level level)
+			throws OlapException {
+		List<Member> descendants = new ArrayList<Member>();
+
+		for (Member child : member.getChildMembers()) {
+			int depth = child.getLevel().getDepth();
+
+			if (depth == level.getDepth()) {
+				descendants.add(child);
+			} else if (depth < level.getDepth()) {
+				descendants.addAll(getDescendants(child, level));
+			}
+		}
+
+		return descendants;
+	}
+
+	/**
+	 * @param cube
+	 * @param expected
+	 * @param optimized
+	 */
+	protected void assertSamePositions(Cube cube, Exp expected, Exp optimized) {
+		assertThat("Optimized expression returns different positions : "
+				+ optimized.toMdx(), getPositions(cube, optimized),
+				is(equalTo(getPositions(cube, expected))));
+	}
+
+	/**
+	 * @param cube
+	 * @param exp
+	 * @return unique names of the members in each position of the axis
+	 */
+	protected List<List<String>> getPositions(Cube cube, Exp exp) {
+		PivotModel model = getPivotModel();
+		model.setMdx("SELECT " + exp.toMdx() + " ON COLUMNS FROM "
+				+ cube.getUniqueName());
+
+		CellSetAxis axis = model.getCellSet().getAxes().get(0);
+
+		List<List<String>> positions = new ArrayList<List<String>>(
+				axis.getPositionCount());
+
+		for (Position position : axis.getPositions()) {
+			List<String> names = new ArrayList<String>();
+
+			for (Member member : position.getMembers()) {
+				names.add(member.getUniqueName());
+			}
+
+			positions.add(names);
+		}
+
+		return positions;
+	}
+}
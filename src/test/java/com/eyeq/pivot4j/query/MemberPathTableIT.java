@@ -0,0 +1,191 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.olap4j.OlapException;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.util.OlapUtils;
+
+public class MemberPathTableIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	@Test
+	public void testGetAndPut() {
+		Cube cube = getCube();
+
+		Member female = OlapUtils.lookupMember(cube, "[Gender].[F]");
+		Member male = OlapUtils.lookupMember(cube, "[Gender].[M]");
+		Member drink = OlapUtils.lookupMember(cube, "[Product].[Drink]");
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		MemberPathTable table = new MemberPathTable();
+
+		table.put(Arrays.asList(female, drink), true);
+		table.put(Arrays.asList(female), false);
+
+		assertThat("Invalid table size.", table.size(), is(equalTo(2)));
+
+		assertThat("Invalid value of the path.",
+				table.get(Arrays.asList(female, drink)), is(true));
+		assertThat("Invalid value of the path.",
+				table.get(Arrays.asList(female)), is(false));
+
+		assertThat("Path with the members in different order was found.",
+				table.get(Arrays.asList(drink, female)), is(nullValue()));
+		assertThat("Path with a different member was found.",
+				table.get(Arrays.asList(female, food)), is(nullValue()));
+		assertThat("Path of members which are not interned was found.",
+				table.get(Arrays.asList(male)), is(nullValue()));
+		assertThat("Empty path was found.",
+				table.get(Collections.<Member> emptyList()), is(nullValue()));
+
+		table.put(Arrays.asList(female, drink), false);
+
+		assertThat("Existing path should be overwritten.",
+				table.get(Arrays.asList(female, drink)), is(false));
+		assertThat("Overwriting a path should not change the table size.",
+				table.size(), is(equalTo(2)));
+	}
+
+	@Test
+	public void testRehash() throws OlapException {
+		Cube cube = getCube();
+
+		List<Member> genders = cube.getHierarchies().get("Gender")
+				.getLevels().get(1).getMembers();
+		List<Member> categories = cube.getHierarchies().get("Product")
+				.getLevels().get(3).getMembers();
+
+		List<List<Member>> paths = new ArrayList<List<Member>>();
+
+		for (Member gender : genders) {
+			paths.add(Arrays.asList(gender));
+
+			for (Member category : categories) {
+				paths.add(Arrays.asList(gender, category));
+			}
+		}
+
+		assertThat("Not enough paths to grow the table.", paths.size() > 16,
+				is(true));
+
+		MemberPathTable table = new MemberPathTable();
+
+		for (int i = 0; i < paths.size(); i++) {
+			table.put(paths.get(i), i % 3 == 0);
+		}
+
+		assertThat("Invalid table size.", table.size(),
+				is(equalTo(paths.size())));
+
+		for (int i = 0; i < paths.size(); i++) {
+			assertThat("Invalid value of the path : " + paths.get(i),
+					table.get(paths.get(i)), is(i % 3 == 0));
+		}
+	}
+
+	@Test
+	public void testInvalidate() {
+		Cube cube = getCube();
+
+		Member female = OlapUtils.lookupMember(cube, "[Gender].[F]");
+		Member male = OlapUtils.lookupMember(cube, "[Gender].[M]");
+		Member drink = OlapUtils.lookupMember(cube, "[Product].[Drink]");
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+		Member beverages = OlapUtils.lookupMember(cube,
+				"[Product].[Drink].[Beverages]");
+
+		MemberPathTable table = new MemberPathTable();
+
+		table.put(Arrays.asList(female), true);
+		table.put(Arrays.asList(male), true);
+		table.put(Arrays.asList(female, drink), true);
+		table.put(Arrays.asList(female, food), false);
+		table.put(Arrays.asList(male, drink), true);
+		table.put(Arrays.asList(male, food), false);
+		table.put(Arrays.asList(female, drink, beverages), false);
+
+		table.invalidate(Arrays.asList(female, drink));
+
+		assertThat("Changed path should be removed.",
+				table.get(Arrays.asList(female, drink)), is(nullValue()));
+		assertThat("Sibling path should be removed.",
+				table.get(Arrays.asList(female, food)), is(nullValue()));
+		assertThat("Deeper path should be removed.",
+				table.get(Arrays.asList(female, drink, beverages)),
+				is(nullValue()));
+		assertThat("Parent path should be removed.",
+				table.get(Arrays.asList(female)), is(nullValue()));
+		assertThat("Path of another dimension member should be removed.",
+				table.get(Arrays.asList(male)), is(nullValue()));
+
+		assertThat("Path with a different prefix should be kept.",
+				table.get(Arrays.asList(male, drink)), is(true));
+		assertThat("Path with a different prefix should be kept.",
+				table.get(Arrays.asList(male, food)), is(false));
+
+		assertThat("Invalid table size after invalidation.", table.size(),
+				is(equalTo(2)));
+
+		table.put(Arrays.asList(female, drink), false);
+
+		assertThat("Path should be added again after invalidation.",
+				table.get(Arrays.asList(female, drink)), is(false));
+	}
+
+	@Test
+	public void testClear() {
+		Cube cube = getCube();
+
+		Member female = OlapUtils.lookupMember(cube, "[Gender].[F]");
+		Member drink = OlapUtils.lookupMember(cube, "[Product].[Drink]");
+
+		MemberPathTable table = new MemberPathTable();
+
+		table.put(Arrays.asList(female, drink), true);
+		table.clear();
+
+		assertThat("Table should be empty after clear.", table.size(),
+				is(equalTo(0)));
+		assertThat("Path was found after clear.",
+				table.get(Arrays.asList(female, drink)), is(nullValue()));
+
+		table.invalidate(Arrays.asList(female, drink));
+
+		assertThat("Invalidating an empty table should keep it empty.",
+				table.size(), is(equalTo(0)));
+	}
+
+	/**
+	 * @return
+	 */
+	protected Cube getCube() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		return model.getCube();
+	}
+}
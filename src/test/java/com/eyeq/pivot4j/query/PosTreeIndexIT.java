@@ -0,0 +1,326 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.olap4j.CellSet;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.mdx.Exp;
+import com.eyeq.pivot4j.mdx.ExpNode;
+import com.eyeq.pivot4j.mdx.FunCall;
+import com.eyeq.pivot4j.mdx.Syntax;
+import com.eyeq.pivot4j.util.OlapUtils;
+import com.eyeq.pivot4j.util.TreeNode;
+import com.eyeq.pivot4j.util.TreeNodeCallback;
+
+public class PosTreeIndexIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+			+ "CrossJoin({[Gender].[All Gender], [Gender].[F], [Gender].[M]}, "
+			+ "{[Product].[All Products], [Product].[Drink], [Product].[Food]}) ON ROWS FROM [Sales]";
+
+	private String[] genderNames = { "[Gender].[All Gender]", "[Gender].[F]",
+			"[Gender].[M]" };
+
+	private String[] productNames = { "[Product].[All Products]",
+			"[Product].[Drink]", "[Product].[Food]",
+			"[Product].[Non-Consumable]", "[Product].[Drink].[Beverages]",
+			"[Product].[Food].[Baked Goods]" };
+
+	@Test
+	public void testLookupsAfterModification() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+		Cube cube = model.getCube();
+
+		Quax quax = new Quax(1, cube);
+		quax.initialize(cellSet.getAxes().get(1).getPositions());
+
+		QuaxUtil quaxUtil = quax.getQuaxUtil();
+
+		List<List<Member>> paths = createPaths(cube);
+
+		TreeNode<Exp> root = quax.getPosTreeRoot();
+
+		assertSameResults("Initial tree", quax, paths);
+
+		// add a Children call below [Gender].[F]
+		Member drink = OlapUtils.lookupMember(cube, "[Product].[Drink]");
+
+		List<Exp> args = new ArrayList<Exp>(1);
+		args.add(quaxUtil.expForMember(drink));
+
+		TreeNode<Exp> femaleNode = root.getChildren().get(1);
+		femaleNode.addChild(new ExpNode(new FunCall("Children",
+				Syntax.Property, args)));
+
+		assertSameResults("After adding a node", quax, paths);
+
+		// replace [Product].[All Products] below [Gender].[M] with a set
+		FunCall set = new FunCall("{}", Syntax.Braces, Arrays.asList(
+				quaxUtil.expForMember(OlapUtils.lookupMember(cube,
+						"[Product].[Drink].[Beverages]")),
+				quaxUtil.expForMember(OlapUtils.lookupMember(cube,
+						"[Product].[Food].[Baked Goods]"))));
+
+		TreeNode<Exp> maleNode = root.getChildren().get(2);
+		maleNode.getChildren().get(0).setReference(set);
+
+		assertSameResults("After replacing a reference", quax, paths);
+
+		// remove [Product].[Food] below [Gender].[All Gender]
+		root.getChildren().get(0).getChildren().get(2).remove();
+
+		assertSameResults("After removing a node", quax, paths);
+
+		PosTreeIndex index = quax.getPosTreeIndex();
+
+		assertThat("Index should be reused while the tree is not modified.",
+				quax.getPosTreeIndex(), is(sameInstance(index)));
+	}
+
+	@Test
+	public void testIncrementalUpdates() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		CellSet cellSet = model.getCellSet();
+		Cube cube = model.getCube();
+
+		Quax quax = new Quax(1, cube);
+		quax.initialize(cellSet.getAxes().get(1).getPositions());
+
+		List<List<Member>> paths = createPaths(cube);
+
+		PosTreeIndex index = quax.getPosTreeIndex();
+
+		Member female = OlapUtils.lookupMember(cube, "[Gender].[F]");
+		Member drink = OlapUtils.lookupMember(cube, "[Product].[Drink]");
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+
+		quax.expand(drink);
+
+		assertThat("Index should be updated when a member is expanded.",
+				quax.getPosTreeIndex(), is(sameInstance(index)));
+		assertSameResults("After expanding a member", quax, paths);
+
+		quax.expand(Arrays.asList(female, food));
+
+		assertThat("Index should be updated when a path is expanded.",
+				quax.getPosTreeIndex(), is(sameInstance(index)));
+		assertSameResults("After expanding a path", quax, paths);
+
+		quax.collapse(drink);
+
+		assertThat("Index should be updated when a member is collapsed.",
+				quax.getPosTreeIndex(), is(sameInstance(index)));
+		assertSameResults("After collapsing a member", quax, paths);
+
+		quax.collapse(Arrays.asList(female, food));
+
+		assertThat("Index should be updated when a path is collapsed.",
+				quax.getPosTreeIndex(), is(sameInstance(index)));
+		assertSameResults("After collapsing a path", quax, paths);
+	}
+
+	/**
+	 * @param cube
+	 * @return
+	 */
+	protected List<List<Member>> createPaths(Cube cube) {
+		List<List<Member>> paths = new ArrayList<List<Member>>();
+
+		for (String genderName : genderNames) {
+			Member gender = OlapUtils.lookupMember(cube, genderName);
+
+			paths.add(Arrays.asList(gender));
+
+			for (String productName : productNames) {
+				Member product = OlapUtils.lookupMember(cube, productName);
+
+				paths.add(Arrays.asList(gender, product));
+			}
+		}
+
+		return paths;
+	}
+
+	/**
+	 * @param message
+	 * @param quax
+	 * @param paths
+	 */
+	protected void assertSameResults(String message, Quax quax,
+			List<List<Member>> paths) {
+		for (List<Member> path : paths) {
+			String prefix = message + " " + path + " : ";
+
+			assertThat(prefix + "Unexpected best node.",
+					quax.findBestNode(path),
+					is(sameInstance(findBestNode(quax, path))));
+			assertThat(prefix + "Unexpected child position.",
+					quax.checkChildPosition(path),
+					is(equalTo(checkChildPosition(quax, path))));
+			assertThat(prefix + "Unexpected tail nodes.",
+					quax.collectTailNodes(path),
+					is(equalTo(collectTailNodes(quax, path))));
+		}
+	}
+
+	/**
+	 * Walks through the whole tree, as the quax did before the index was
+	 * introduced.
+	 *
+	 * @param quax
+	 * @param memberPath
+	 * @return
+	 */
+	protected TreeNode<Exp> findBestNode(Quax quax,
+			final List<Member> memberPath) {
+		final QuaxUtil quaxUtil = quax.getQuaxUtil();
+
+		TreeNode<Exp> root = quax.getPosTreeRoot();
+
+		final List<TreeNode<Exp>> bestNode = new ArrayList<TreeNode<Exp>>(1);
+		bestNode.add(root);
+
+		root.walkChildren(new TreeNodeCallback<Exp>() {
+
+			public int handleTreeNode(TreeNode<Exp> node) {
+				int dimIndex = memberPath.size() - 1;
+				int nodeIndex = node.getLevel() - 1;
+				Exp oExp = node.getReference();
+
+				if (!quaxUtil.isMember(oExp)
+						|| !quaxUtil.equalMember(oExp, memberPath.get(nodeIndex))) {
+					return TreeNodeCallback.CONTINUE_SIBLING;
+				}
+
+				bestNode.set(0, node);
+
+				if (nodeIndex == dimIndex) {
+					return TreeNodeCallback.BREAK;
+				} else {
+					return TreeNodeCallback.CONTINUE;
+				}
+			}
+		});
+
+		return bestNode.get(0);
+	}
+
+	/**
+	 * @param quax
+	 * @param memberPath
+	 * @return
+	 */
+	protected boolean checkChildPosition(final Quax quax,
+			final List<Member> memberPath) {
+		final QuaxUtil quaxUtil = quax.getQuaxUtil();
+
+		int result = quax.getPosTreeRoot().walkChildren(
+				new TreeNodeCallback<Exp>() {
+
+					public int handleTreeNode(TreeNode<Exp> node) {
+						int dimIndex = memberPath.size() - 1;
+						int nodeIndex = node.getLevel() - 1;
+
+						Exp oExp = node.getReference();
+						Member member = memberPath.get(nodeIndex);
+
+						if (nodeIndex < dimIndex) {
+							boolean match;
+
+							if (quaxUtil.isMember(oExp)) {
+								match = quaxUtil.equalMember(oExp, member);
+							} else {
+								match = quax.isMemberInFunCall(oExp, member,
+										nodeIndex);
+							}
+
+							return match ? TreeNodeCallback.CONTINUE
+									: TreeNodeCallback.CONTINUE_SIBLING;
+						}
+
+						boolean found;
+
+						if (quaxUtil.isMember(oExp)) {
+							found = quaxUtil.checkParent(member, oExp);
+						} else {
+							found = quax.isChildOfMemberInFunCall(oExp,
+									member, nodeIndex);
+						}
+
+						return found ? TreeNodeCallback.BREAK
+								: TreeNodeCallback.CONTINUE_SIBLING;
+					}
+				});
+
+		return result == TreeNodeCallback.BREAK;
+	}
+
+	/**
+	 * @param quax
+	 * @param memberPath
+	 * @return
+	 */
+	protected List<TreeNode<Exp>> collectTailNodes(final Quax quax,
+			final List<Member> memberPath) {
+		final QuaxUtil quaxUtil = quax.getQuaxUtil();
+
+		final List<TreeNode<Exp>> tailNodes = new ArrayList<TreeNode<Exp>>();
+
+		quax.getPosTreeRoot().walkChildren(new TreeNodeCallback<Exp>() {
+
+			public int handleTreeNode(TreeNode<Exp> node) {
+				int dimIndex = memberPath.size() - 1;
+				int nodeIndex = node.getLevel() - 1;
+
+				Exp oExp = node.getReference();
+				Member member = memberPath.get(nodeIndex);
+
+				boolean match;
+
+				if (quaxUtil.isMember(oExp)) {
+					match = quaxUtil.equalMember(oExp, member);
+				} else {
+					match = quax.isMemberInFunCall(oExp, member, nodeIndex);
+				}
+
+				if (!match) {
+					return TreeNodeCallback.CONTINUE_SIBLING;
+				} else if (nodeIndex == dimIndex) {
+					tailNodes.addAll(node.getChildren());
+					return TreeNodeCallback.CONTINUE_SIBLING;
+				} else {
+					return TreeNodeCallback.CONTINUE;
+				}
+			}
+		});
+
+		return tailNodes;
+	}
+}
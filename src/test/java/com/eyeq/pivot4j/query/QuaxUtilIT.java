@@ -0,0 +1,123 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.query;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.olap4j.metadata.Cube;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.AbstractIntegrationTestCase;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.mdx.CompoundId;
+import com.eyeq.pivot4j.mdx.Exp;
+import com.eyeq.pivot4j.mdx.FunCall;
+import com.eyeq.pivot4j.mdx.MdxStatement;
+import com.eyeq.pivot4j.mdx.Syntax;
+import com.eyeq.pivot4j.mdx.impl.MdxParserImpl;
+import com.eyeq.pivot4j.util.OlapUtils;
+
+public class QuaxUtilIT extends AbstractIntegrationTestCase {
+
+	private String testQuery = "SELECT {[Measures].[Unit Sales]} ON COLUMNS, {[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	@Test
+	public void testIsSelfAndBefore() throws Exception {
+		Cube cube = getCube();
+
+		QuaxUtil quaxUtil = new QuaxUtil(cube);
+
+		Member drink = OlapUtils.lookupMember(cube, "[Product].[Drink]");
+		Member food = OlapUtils.lookupMember(cube, "[Product].[Food]");
+		Member beverages = OlapUtils.lookupMember(cube,
+				"[Product].[Drink].[Beverages]");
+
+		Hierarchy hierarchy = cube.getHierarchies().get("Product");
+		Level category = hierarchy.getLevels().get("Product Category");
+
+		FunCall set = quaxUtil.createSelfAndBefore(
+				Collections.singletonList(drink), category);
+
+		assertThat("Descendants of a member should be recognized.",
+				quaxUtil.isSelfAndBefore(set), is(true));
+		assertThat("Member should be in the set.",
+				quaxUtil.isMemberInFunCall(set, beverages), is(true));
+
+		set = quaxUtil.createSelfAndBefore(Arrays.asList(drink, food),
+				category);
+
+		assertThat("Descendants of a set of members should be recognized.",
+				quaxUtil.isSelfAndBefore(set), is(true));
+		assertThat("Member should be in the set.",
+				quaxUtil.isMemberInFunCall(set, beverages), is(true));
+
+		FunCall children = new FunCall("Children", Syntax.Property,
+				Collections.singletonList(quaxUtil.expForMember(drink)));
+
+		set = new FunCall("Descendants", Syntax.Function, Arrays.<Exp> asList(
+				children, quaxUtil.expForLevel(category), new CompoundId(
+						"SELF_AND_BEFORE")));
+
+		assertThat("Descendants of other sets should not be recognized.",
+				quaxUtil.isSelfAndBefore(set), is(false));
+		assertThat("Hierarchy of the set should be found from its argument.",
+				quaxUtil.hierForExp(set).getUniqueName(),
+				is(equalTo(hierarchy.getUniqueName())));
+
+		UnknownExpressionException error = null;
+
+		try {
+			quaxUtil.isMemberInFunCall(set, beverages);
+		} catch (UnknownExpressionException e) {
+			error = e;
+		}
+
+		assertThat("Descendants of other sets should be handled as unknown.",
+				error, is(instanceOf(UnknownExpressionException.class)));
+	}
+
+	@Test
+	public void testIsSelfAndBeforeWithParsedQuery() {
+		Cube cube = getCube();
+
+		QuaxUtil quaxUtil = new QuaxUtil(cube);
+
+		MdxStatement query = new MdxParserImpl()
+				.parse("SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+						+ "Descendants([Product].[Drink].Children, [Product].[Product Category], "
+						+ "SELF_AND_BEFORE) ON ROWS FROM [Sales]");
+
+		Exp set = query.getAxes().get(1).getExp();
+
+		assertThat("Hand written descendants should not be recognized.",
+				quaxUtil.isSelfAndBefore(set), is(false));
+		assertThat("Hand written descendants should not be recognized.",
+				quaxUtil.isDescendantsOfMember(set), is(false));
+	}
+
+	/**
+	 * @return
+	 */
+	protected Cube getCube() {
+		PivotModel model = getPivotModel();
+		model.setMdx(testQuery);
+		model.initialize();
+
+		return model.getCube();
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * ====================================================================
+ * This software is subject to the terms of the Common Public License
+ * Agreement, available at the following URL:
+ *   http://www.opensource.org/licenses/cpl.html .
+ * You must accept the terms of that agreement to use this software.
+ * ====================================================================
+ */
+package com.eyeq.pivot4j.transform.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.olap4j.CellSet;
+import org.olap4j.CellSetAxis;
+import org.olap4j.OlapException;
+import org.olap4j.Position;
+import org.olap4j.metadata.Hierarchy;
+import org.olap4j.metadata.Level;
+import org.olap4j.metadata.Member;
+
+import com.eyeq.pivot4j.PivotException;
+import com.eyeq.pivot4j.PivotModel;
+import com.eyeq.pivot4j.transform.DrillExpandLevel;
+import com.eyeq.pivot4j.transform.DrillExpandMember;
+import com.eyeq.pivot4j.util.OlapUtils;
+
+public class DrillExpandLevelImplIT extends
+		AbstractTransformTestCase<DrillExpandLevel> {
+
+	private String initialQuery = "SELECT {[Measures].[Unit Sales], [Measures].[Store Cost], [Measures].[Store Sales]} ON COLUMNS, "
+			+ "{[Product].[All Products]} ON ROWS FROM [Sales]";
+
+	private String transformedQuery = "SELECT {[Measures].[Unit Sales], [Measures].[Store Cost], [Measures].[Store Sales]} ON COLUMNS, "
+			+ "Hierarchize(Descendants([Product].[All Products], [Product].[Product Department], SELF_AND_BEFORE)) ON ROWS FROM [Sales]";
+
+	private String collapsedQuery = "SELECT {[Measures].[Unit Sales], [Measures].[Store Cost], [Measures].[Store Sales]} ON COLUMNS, "
+			+ "Hierarchize(Descendants([Product].[All Products], [Product].[Product Family], SELF_AND_BEFORE)) ON ROWS FROM [Sales]";
+
+	/**
+	 * @return the initialQuery
+	 * @see com.eyeq.pivot4j.transform.impl.AbstractTransformTestCase#getInitialQuery()
+	 */
+	protected String getInitialQuery() {
+		return initialQuery;
+	}
+
+	/**
+	 * @return the transformedQuery
+	 */
+	protected String getTransformedQuery() {
+		return transformedQuery;
+	}
+
+	/**
+	 * @return the collapsedQuery
+	 */
+	protected String getCollapsedQuery() {
+		return collapsedQuery;
+	}
+
+	/**
+	 * @see com.eyeq.pivot4j.transform.impl.AbstractTransformTestCase#getType()
+	 */
+	@Override
+	protected Class<DrillExpandLevel> getType() {
+		return DrillExpandLevel.class;
+	}
+
+	@Test
+	public void testTransform() {
+		DrillExpandLevel transform = getTransform();
+
+		PivotModel model = getPivotModel();
+
+		CellSet cellSet = model.getCellSet();
+		assertThat("Unable to execute MDX query : " + getInitialQuery(),
+				cellSet, is(notNullValue()));
+
+		CellSetAxis axis = cellSet.getAxes().get(1);
+		assertThat("Unexpected number of positions on the initial axis : ",
+				axis.getPositionCount(), is(equalTo(1)));
+
+		Hierarchy hierarchy = axis.getPositions().get(0).getMembers().get(0)
+				.getHierarchy();
+
+		Level allLevel = hierarchy.getLevels().get(0);
+		Level family = hierarchy.getLevels().get("Product Family");
+		Level department = hierarchy.getLevels().get("Product Department");
+
+		assertThat("Hierarchy should not be collapsible initially",
+				transform.canCollapseToLevel(allLevel), is(false));
+		assertThat("Hierarchy should be expandable initially",
+				transform.canExpandToLevel(department), is(true));
+
+		transform.expandToLevel(department);
+
+		assertThat("Unexpected MDX after expand : ", model.getCurrentMdx(),
+				is(equalTo(getTransformedQuery())));
+
+		cellSet = model.getCellSet();
+		assertThat("Unable to execute MDX query : " + model.getCurrentMdx(),
+				cellSet, is(notNullValue()));
+
+		assertThat("Hierarchy should not be expandable after expand",
+				transform.canExpandToLevel(department), is(false));
+		assertThat("Hierarchy should be collapsible after expand",
+				transform.canCollapseToLevel(family), is(true));
+
+		transform.collapseToLevel(family);
+
+		assertThat("Unexpected MDX after collapse : ", model.getCurrentMdx(),
+				is(equalTo(getCollapsedQuery())));
+
+		assertThat("Hierarchy should not be collapsible to the same level",
+				transform.canCollapseToLevel(family), is(false));
+		assertThat("Hierarchy should be expandable after collapse",
+				transform.canExpandToLevel(department), is(true));
+	}
+
+	@Test(expected = PivotException.class)
+	public void testCollapseToSameLevel() {
+		DrillExpandLevel transform = getTransform();
+
+		PivotModel model = getPivotModel();
+
+		Hierarchy hierarchy = model.getCube().getHierarchies().get("Product");
+
+		Level family = hierarchy.getLevels().get("Product Family");
+		Level department = hierarchy.getLevels().get("Product Department");
+
+		transform.expandToLevel(department);
+		transform.collapseToLevel(family);
+
+		assertThat("Hierarchy should not be collapsible to the same level",
+				transform.canCollapseToLevel(family), is(false));
+
+		transform.collapseToLevel(family);
+	}
+
+	@Test
+	public void testExpandMemberInsideLevel() throws OlapException {
+		DrillExpandLevel transform = getTransform();
+
+		PivotModel model = getPivotModel();
+
+		DrillExpandMember memberTransform = model
+				.getTransform(DrillExpandMember.class);
+
+		Hierarchy hierarchy = model.getCube().getHierarchies().get("Product");
+		Level department = hierarchy.getLevels().get("Product Department");
+
+		transform.expandToLevel(department);
+
+		Member allProducts = OlapUtils.lookupMember(model.getCube(),
+				"[Product].[All Products]");
+		Member drink = OlapUtils.lookupMember(model.getCube(),
+				"[Product].[Drink]");
+		Member food = OlapUtils.lookupMember(model.getCube(),
+				"[Product].[Food]");
+		Member beverages = OlapUtils.lookupMember(model.getCube(),
+				"[Product].[Drink].[Beverages]");
+
+		List<String> expanded = getMemberNames(allProducts, department, null);
+
+		assertThat("Unexpected members after expand : ",
+				getMemberNames(model), is(equalTo(expanded)));
+
+		assertThat("[Drink] should be collapsible after expand",
+				memberTransform.canCollapse(drink), is(true));
+		assertThat("[Drink] should not be expandable after expand",
+				memberTransform.canExpand(drink), is(false));
+
+		memberTransform.collapse(drink);
+
+		assertThat("Unexpected members after collapsing [Drink] : ",
+				getMemberNames(model),
+				is(equalTo(getMemberNames(allProducts, department, drink))));
+
+		assertThat("[Drink] should not be collapsible after collapse",
+				memberTransform.canCollapse(drink), is(false));
+		assertThat("[Drink] should be expandable after collapse",
+				memberTransform.canExpand(drink), is(true));
+		assertThat("[Food] should be still collapsible",
+				memberTransform.canCollapse(food), is(true));
+
+		memberTransform.expand(drink);
+
+		assertThat("Unexpected members after expanding [Drink] : ",
+				getMemberNames(model), is(equalTo(expanded)));
+
+		assertThat("[Beverages] should not be collapsible initially",
+				memberTransform.canCollapse(beverages), is(false));
+		assertThat("[Beverages] should be expandable initially",
+				memberTransform.canExpand(beverages), is(true));
+
+		memberTransform.expand(beverages);
+
+		List<String> names = new ArrayList<String>(expanded);
+
+		int index = names.indexOf(beverages.getUniqueName()) + 1;
+		for (Member child : beverages.getChildMembers()) {
+			names.add(index++, child.getUniqueName());
+		}
+
+		assertThat("Unexpected members after expanding [Beverages] : ",
+				getMemberNames(model), is(equalTo(names)));
+
+		assertThat("[Beverages] should be collapsible after expand",
+				memberTransform.canCollapse(beverages), is(true));
+
+		memberTransform.collapse(beverages);
+
+		assertThat("Unexpected members after collapsing [Beverages] : ",
+				getMemberNames(model), is(equalTo(expanded)));
+
+		memberTransform.collapse(allProducts);
+
+		assertThat("Unexpected members after collapsing [All Products] : ",
+				getMemberNames(model),
+				is(equalTo(getMemberNames(allProducts, department,
+						allProducts))));
+	}
+
+	@Test
+	public void testExpandHandWrittenDescendants() throws OlapException {
+		DrillExpandLevel transform = getTransform();
+
+		PivotModel model = getPivotModel();
+		model.setMdx("SELECT {[Measures].[Unit Sales]} ON COLUMNS, "
+				+ "Descendants([Product].[Drink].Children, [Product].[Product Category], "
+				+ "SELF_AND_BEFORE) ON ROWS FROM [Sales]");
+		model.initialize();
+
+		Hierarchy hierarchy = model.getCube().getHierarchies().get("Product");
+		Level category = hierarchy.getLevels().get("Product Category");
+		Level subcategory = hierarchy.getLevels().get("Product Subcategory");
+
+		Member drink = OlapUtils.lookupMember(model.getCube(),
+				"[Product].[Drink]");
+
+		List<String> names = new ArrayList<String>();
+		for (Member child : drink.getChildMembers()) {
+			names.addAll(getMemberNames(child, category, null));
+		}
+
+		assertThat("Unexpected number of positions of the initial query : ",
+				getMemberNames(model).size(), is(equalTo(names.size())));
+
+		assertThat("Hierarchy should be expandable to a lower level",
+				transform.canExpandToLevel(subcategory), is(true));
+
+		transform.expandToLevel(subcategory);
+
+		names.clear();
+		for (Member child : drink.getChildMembers()) {
+			names.addAll(getMemberNames(child, subcategory, null));
+		}
+
+		assertThat("Unexpected members after expand : ",
+				getMemberNames(model), is(equalTo(names)));
+
+		assertThat("Hierarchy should not be expandable after expand",
+				transform.canExpandToLevel(subcategory), is(false));
+	}
+
+	/**
+	 * @param model
+	 * @return unique names of the members on the row axis
+	 */
+	protected List<String> getMemberNames(PivotModel model) {
+		CellSetAxis axis = model.getCellSet().getAxes().get(1);
+
+		List<String> names = new ArrayList<String>(axis.getPositionCount());
+
+		for (Position position : axis.getPositions()) {
+			names.add(position.getMembers().get(0).getUniqueName());
+		}
+
+		return names;
+	}
+
+	/**
+	 * @param member
+	 * @param level
+	 * @param collapsed
+	 *            member of which descendants should be excluded, or null
+	 * @return unique names of the member and its descendants down to the level
+	 *         in hierarchical order
+	 * @throws OlapException
+	 */
+	protected List<String> getMemberNames(Member member, Level level,
+			Member collapsed) throws OlapException {
+		List<String> names = new ArrayList<String>();
+		names.add(member.getUniqueName());
+
+		if (member.getLevel().getDepth() < level.getDepth()
+				&& !OlapUtils.equals(member, collapsed)) {
+			for (Member child : member.getChildMembers()) {
+				names.addAll(getMemberNames(child, level, collapsed));
+			}
+		}
+
+		return names;
+	}
+}
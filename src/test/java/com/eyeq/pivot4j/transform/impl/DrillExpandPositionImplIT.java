@@ -11,8 +11,11 @@ package com.eyeq.pivot4j.transform.impl;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import java.util.List;
+
 import org.junit.Test;
 import org.olap4j.CellSet;
 import org.olap4j.CellSetAxis;
@@ -164,4 +167,126 @@ public class DrillExpandPositionImplIT extends
 		assertThat("[All Media] should be expandable after collapse",
 				transform.canExpand(position, allMedia), is(true));
 	}
+
+	@Test
+	public void testNavigateAfterResolvingUnions() {
+		DrillExpandPosition transform = getTransform();
+
+		PivotModel model = getPivotModel();
+
+		// the first expansion resolves the unions, so the quax is no longer
+		// in qubon mode afterwards
+		Position position = findPosition(model, "[Time].[1997]");
+		transform.expand(position, position.getMembers().get(0));
+
+		assertNavigable(model, transform, true, false, "[Time].[1997]");
+		assertNavigable(model, transform, false, true, "[Time].[1998]");
+		assertNavigable(model, transform, false, true, "[Time].[1997].[Q1]");
+		assertNavigable(model, transform, false, true, "[Time].[1997].[Q2]");
+		assertNavigable(model, transform, false, true, "[Time].[1997].[Q1]",
+				"[Promotion Media].[All Media]");
+
+		position = findPosition(model, "[Time].[1997].[Q1]");
+		transform.expand(position, position.getMembers().get(0));
+
+		assertNavigable(model, transform, true, false, "[Time].[1997]");
+		assertNavigable(model, transform, true, false, "[Time].[1997].[Q1]");
+		assertNavigable(model, transform, false, true, "[Time].[1997].[Q2]");
+		assertNavigable(model, transform, false, false,
+				"[Time].[1997].[Q1].[1]");
+
+		position = findPosition(model, "[Time].[1998]");
+		transform.expand(position, position.getMembers().get(1));
+
+		assertNavigable(model, transform, true, false, "[Time].[1998]",
+				"[Promotion Media].[All Media]");
+		assertNavigable(model, transform, false, true, "[Time].[1998]");
+		assertNavigable(model, transform, false, true, "[Time].[1997]",
+				"[Promotion Media].[All Media]");
+		assertNavigable(model, transform, true, false, "[Time].[1997]");
+		assertNavigable(model, transform, false, true, "[Time].[1997].[Q2]");
+
+		position = findPosition(model, "[Time].[1997]");
+		transform.collapse(position, position.getMembers().get(0));
+
+		assertNavigable(model, transform, false, true, "[Time].[1997]");
+		assertNavigable(model, transform, true, false, "[Time].[1998]",
+				"[Promotion Media].[All Media]");
+
+		assertThat("Collapsed positions should be removed from the axis.",
+				findPosition(model, "[Time].[1997].[Q1]"), is(nullValue()));
+	}
+
+	/**
+	 * Asserts the navigability of the last member in the specified path.
+	 * 
+	 * @param model
+	 * @param transform
+	 * @param collapsible
+	 * @param expandable
+	 * @param memberNames
+	 *            unique names of the leading members of a position on the row
+	 *            axis
+	 */
+	protected void assertNavigable(PivotModel model,
+			DrillExpandPosition transform, boolean collapsible,
+			boolean expandable, String... memberNames) {
+		Position position = findPosition(model, memberNames);
+
+		assertThat("Unable to find the position : " + toString(memberNames),
+				position, is(notNullValue()));
+
+		Member member = position.getMembers().get(memberNames.length - 1);
+
+		String path = toString(memberNames);
+
+		assertThat("Unexpected collapsibility of " + path,
+				transform.canCollapse(position, member), is(collapsible));
+		assertThat("Unexpected expandability of " + path,
+				transform.canExpand(position, member), is(expandable));
+	}
+
+	/**
+	 * @param model
+	 * @param memberNames
+	 * @return the first position on the row axis which starts with the
+	 *         specified members, or null if there's no such position
+	 */
+	protected Position findPosition(PivotModel model, String... memberNames) {
+		CellSetAxis axis = model.getCellSet().getAxes().get(1);
+
+		for (Position position : axis.getPositions()) {
+			List<Member> members = position.getMembers();
+
+			boolean match = true;
+
+			for (int i = 0; match && i < memberNames.length; i++) {
+				match = members.get(i).getUniqueName().equals(memberNames[i]);
+			}
+
+			if (match) {
+				return position;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param memberNames
+	 * @return
+	 */
+	private String toString(String[] memberNames) {
+		StringBuilder builder = new StringBuilder();
+
+		for (String name : memberNames) {
+			if (builder.length() > 0) {
+				builder.append(", ");
+			}
+
+			builder.append(name);
+		}
+
+		return builder.toString();
+	}
 }